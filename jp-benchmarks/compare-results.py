@@ -0,0 +1,47 @@
+#!/usr/bin/env python3
+"""Compare two JMH JSON result files, e.g. from run-benchmarks.sh on two commits.
+
+Usage: ./compare-results.py results/abc1234.json results/def5678.json [threshold-percent]
+
+Prints every benchmark present in both files with its score change. Changes beyond the
+threshold (default 10%) in the slower direction are marked REGRESSION, and the exit
+status is 1 if there are any.
+"""
+import json
+import sys
+
+
+def load(path):
+    with open(path) as f:
+        results = {}
+        for run in json.load(f):
+            params = ",".join(f"{k}={v}" for k, v in sorted(run.get("params", {}).items()))
+            key = run["benchmark"].rsplit(".", 2)[-2] + "." + run["benchmark"].rsplit(".", 1)[-1]
+            results[(key, params)] = run
+        return results
+
+
+def main():
+    if len(sys.argv) < 3:
+        print(__doc__)
+        return 2
+    before, after = load(sys.argv[1]), load(sys.argv[2])
+    threshold = float(sys.argv[3]) if len(sys.argv) > 3 else 10.0
+
+    regressions = 0
+    print(f"{'Benchmark':<55} {'Params':<40} {'Before':>12} {'After':>12} {'Change':>9}")
+    for key in sorted(before.keys() & after.keys()):
+        old, new = before[key], after[key]
+        old_score, new_score = old["primaryMetric"]["score"], new["primaryMetric"]["score"]
+        unit = new["primaryMetric"]["scoreUnit"]
+        change = (new_score - old_score) / old_score * 100 if old_score else 0.0
+        # Throughput is better when higher, time-based modes when lower
+        worse = -change if new["mode"] == "thrpt" else change
+        flag = "  REGRESSION" if worse > threshold else ""
+        regressions += bool(flag)
+        print(f"{key[0]:<55} {key[1]:<40} {old_score:>12.3f} {new_score:>12.3f} {change:>+8.1f}% {unit}{flag}")
+    return 1 if regressions else 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
@@ -0,0 +1,19 @@
+#!/bin/bash
+
+# Build the benchmarks against the current tree and run them, writing JMH's JSON
+# results to results/<commit>.json so runs can be compared across commits.
+# Any arguments are passed to JMH, e.g.:
+#   ./run-benchmarks.sh FolderContentsBenchmark -p entries=10000
+
+set -euo pipefail
+cd "$(dirname "$0")"
+
+COMMIT=$(git rev-parse --short HEAD 2>/dev/null || echo "unknown")
+if ! git diff --quiet HEAD -- .. 2>/dev/null; then
+    COMMIT="$COMMIT-dirty"
+fi
+
+../mvnw -q -B clean package -DskipTests
+mkdir -p results
+java -jar target/benchmarks.jar -rf json -rff "results/$COMMIT.json" "$@"
+echo "Results written to results/$COMMIT.json"
@@ -0,0 +1,123 @@
+package com.example.jp.benchmarks;
+
+import com.example.jp.JpApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Shared setup for benchmarks that run against the application's services:
+ * a Spring context without a web server whose storage, staging and data files
+ * all live in a throwaway directory.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Start the application context with its state under workDir.
+     * Extra properties ("key=value") override the defaults.
+     */
+    static ConfigurableApplicationContext startApplication(Path workDir, String... properties) {
+        List<String> all = new ArrayList<>(List.of(
+                "app.storage.root=" + workDir.resolve("storage"),
+                "app.storage.staging=" + workDir.resolve("staging"),
+                "app.storage.dedup.blob-root=" + workDir.resolve("blobs"),
+                "app.storage.watch.enabled=false",
+                "app.index.warm-on-startup=false",
+                "app.tasks.journal.path=" + workDir.resolve("task-journal.log"),
+                "app.metadata.catalog.path=" + workDir.resolve("metadata-catalog.mv"),
+                "app.thumbnail.cache-dir=" + workDir.resolve("thumbnails"),
+                "app.thumbnail.pregenerate=false",
+                "logging.level.root=WARN",
+                "spring.main.banner-mode=off"));
+        all.addAll(List.of(properties));
+
+        // As command line arguments, so they take precedence over application.properties
+        return new SpringApplicationBuilder(JpApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(all.stream().map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(directory)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * In-memory upload, standing in for the servlet container's multipart file
+     */
+    static final class BytesMultipartFile implements MultipartFile {
+        private final String name;
+        private final String contentType;
+        private final byte[] content;
+
+        BytesMultipartFile(String name, String contentType, byte[] content) {
+            this.name = name;
+            this.contentType = contentType;
+            this.content = content;
+        }
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return name;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return content.length == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return content.length;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return content;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.write(dest.toPath(), content);
+        }
+
+        @Override
+        public void transferTo(Path dest) throws IOException {
+            Files.write(dest, content);
+        }
+    }
+}
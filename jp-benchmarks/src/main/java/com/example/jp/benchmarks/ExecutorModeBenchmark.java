@@ -0,0 +1,122 @@
+package com.example.jp.benchmarks;
+
+import com.example.jp.config.AsyncConfig;
+import com.example.jp.config.ExecutorMode;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Compares the platform thread pools against the virtual-thread executor mode
+ * for a burst of concurrent blocking uploads. Each simulated upload writes a small
+ * file and waits out some storage latency, like the real upload pipeline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExecutorModeBenchmark {
+
+    private static final byte[] PAYLOAD = new byte[16 * 1024];
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public ExecutorMode mode;
+
+    @Param({"1000", "5000"})
+    public int uploads;
+
+    @Param({"5"})
+    public int storageLatencyMillis;
+
+    private Executor executor;
+    private Path directory;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long completed;
+        public long rejected;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            completed = 0;
+            rejected = 0;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("jp-executor-bench");
+        executor = new AsyncConfig().fileProcessingExecutor(mode, 64);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        if (executor instanceof AutoCloseable closeable) {
+            closeable.close();
+        } else if (executor instanceof org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public void burstOfUploads(Outcome outcome) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(uploads);
+        AtomicInteger rejected = new AtomicInteger();
+
+        for (int i = 0; i < uploads; i++) {
+            Path target = directory.resolve("upload-" + i);
+            try {
+                executor.execute(() -> {
+                    try {
+                        Files.write(target, PAYLOAD);
+                        Thread.sleep(storageLatencyMillis);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                done.countDown();
+            }
+        }
+
+        done.await();
+        outcome.rejected += rejected.get();
+        outcome.completed += uploads - rejected.get();
+    }
+}
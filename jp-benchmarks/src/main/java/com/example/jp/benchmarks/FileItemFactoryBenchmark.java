@@ -0,0 +1,118 @@
+package com.example.jp.benchmarks;
+
+import com.example.jp.metadata.FileTypeDetector;
+import com.example.jp.model.ArchiveFile;
+import com.example.jp.model.AudioFile;
+import com.example.jp.model.DocumentFile;
+import com.example.jp.model.FileItem;
+import com.example.jp.model.FileItemFactory;
+import com.example.jp.model.GenericFile;
+import com.example.jp.model.ImageFile;
+import com.example.jp.model.VideoFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-file type dispatch as done for every entry of a listing: the registry-driven
+ * FileItemFactory, the regex chain it replaced (as a baseline), and FileTypeDetector
+ * on a cache hit and on a cache miss that reads the file's signature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileItemFactoryBenchmark {
+
+    private static final String[] NAMES = {
+            "report.pdf", "photo.JPG", "clip.mp4", "song.mp3", "backup.tar.gz",
+            "notes.txt", "slides.pptx", "README", "data.parquet", "icon.ico"
+    };
+
+    private final FileTypeDetector detector = new FileTypeDetector();
+    private Path directory;
+    private Path[] files;
+    private long[] sizes;
+    private long[] mtimes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        directory = Files.createTempDirectory("jp-dispatch-bench");
+        files = new Path[NAMES.length];
+        sizes = new long[NAMES.length];
+        mtimes = new long[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            files[i] = Files.write(directory.resolve(NAMES[i]), new byte[]{'%', 'P', 'D', 'F', '-', '1', '.', '7'});
+            sizes[i] = Files.size(files[i]);
+            mtimes[i] = Files.getLastModifiedTime(files[i]).toMillis();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        BenchmarkSupport.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public FileItem registryDispatch() {
+        String name = NAMES[next++ % NAMES.length];
+        return FileItemFactory.createFileItem(name, name, 1024L, "application/octet-stream");
+    }
+
+    @Benchmark
+    public FileItem regexDispatchBaseline() {
+        String name = NAMES[next++ % NAMES.length];
+        return RegexFactory.createFileItem(name, name, 1024L, "application/octet-stream");
+    }
+
+    @Benchmark
+    public FileTypeDetector.FileType detectCached() {
+        int i = next++ % NAMES.length;
+        return detector.detect(files[i], NAMES[i], sizes[i], mtimes[i]);
+    }
+
+    @Benchmark
+    public FileTypeDetector.FileType detectUncached() {
+        int i = next++ % NAMES.length;
+        // A new mtime every call misses the cache and reads the signature
+        return detector.detect(files[i], NAMES[i], sizes[i], next);
+    }
+
+    /**
+     * The extension regex chain FileItemFactory used before the category registry
+     */
+    private static final class RegexFactory {
+        static FileItem createFileItem(String name, String path, Long size, String mimeType) {
+            String ext = name.contains(".") ? name.substring(name.lastIndexOf(".") + 1).toLowerCase() : "";
+            if (ext.matches("pdf|doc|docx|txt|rtf|odt|xls|xlsx|ppt|pptx|csv")) {
+                return new DocumentFile(name, path, size, mimeType);
+            } else if (ext.matches("jpg|jpeg|png|gif|svg|bmp|webp|ico|tiff|tif")) {
+                return new ImageFile(name, path, size, mimeType);
+            } else if (ext.matches("mp4|avi|mov|mkv|wmv|flv|webm|mpeg|mpg|3gp")) {
+                return new VideoFile(name, path, size, mimeType);
+            } else if (ext.matches("mp3|wav|flac|aac|ogg|m4a|wma|opus")) {
+                return new AudioFile(name, path, size, mimeType);
+            } else if (ext.matches("zip|rar|7z|tar|gz|gzip|bz2|xz")) {
+                return new ArchiveFile(name, path, size, mimeType);
+            }
+            return new GenericFile(name, path, size, mimeType);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.jp.benchmarks;
+
+import com.example.jp.dto.FolderContentsDTO;
+import com.example.jp.service.FolderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FolderService listings of a synthetic folder with 1k, 10k and 100k files of mixed types,
+ * answered from the in-memory index or by scanning the directory on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FolderContentsBenchmark {
+
+    private static final String[] EXTENSIONS = {"pdf", "jpg", "png", "mp4", "mp3", "zip", "txt", "docx", "bin", "csv"};
+    private static final String FOLDER = "bench";
+
+    @Param({"1000", "10000", "100000"})
+    public int entries;
+
+    @Param({"true", "false"})
+    public boolean index;
+
+    private Path workDir;
+    private ConfigurableApplicationContext context;
+    private FolderService folderService;
+
+    @Setup(Level.Trial)
+    public void createFolder() throws IOException {
+        workDir = Files.createTempDirectory("jp-listing-bench");
+        Path folder = Files.createDirectories(workDir.resolve("storage").resolve(FOLDER));
+        byte[] content = "benchmark content".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < entries; i++) {
+            Files.write(folder.resolve(String.format("file-%06d.%s", i, EXTENSIONS[i % EXTENSIONS.length])), content);
+        }
+        for (int i = 0; i < entries / 100; i++) {
+            Files.createDirectory(folder.resolve(String.format("folder-%04d", i)));
+        }
+
+        context = BenchmarkSupport.startApplication(workDir, "app.index.enabled=" + index);
+        folderService = context.getBean(FolderService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFolder() throws IOException {
+        context.close();
+        BenchmarkSupport.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public FolderContentsDTO getFolderContents() throws IOException {
+        return folderService.getFolderContents(FOLDER);
+    }
+
+    @Benchmark
+    public FolderContentsDTO getFirstPage() throws IOException {
+        return folderService.getFolderContentsPage(FOLDER, null, 100);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.jp.benchmarks;
+
+import com.example.jp.metadata.ImageMetadataExtractor;
+import com.example.jp.metadata.SeekableReader;
+import com.example.jp.model.ImageFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Image metadata extraction: the header-only ImageMetadataExtractor against ImageIO,
+ * both reading just the dimensions through an ImageReader and decoding the whole image.
+ * The corpus is generated at setup, one 1920x1080 image per format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageHeaderBenchmark {
+
+    @Param({"png", "jpg", "gif", "bmp", "tiff"})
+    public String format;
+
+    private final ImageMetadataExtractor extractor = new ImageMetadataExtractor();
+    private Path directory;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void createCorpus() throws IOException {
+        directory = Files.createTempDirectory("jp-image-bench");
+        file = directory.resolve("sample." + format);
+
+        BufferedImage image = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x * 31) ^ (y * 17) << 8);
+            }
+        }
+        if (!ImageIO.write(image, format, file.toFile())) {
+            throw new IllegalStateException("No ImageIO writer for " + format);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public ImageFile headerExtractor() throws IOException {
+        ImageFile image = new ImageFile(file.getFileName().toString(), file.toString(), 0L, null);
+        try (SeekableReader reader = SeekableReader.open(file)) {
+            extractor.extract(reader, image);
+        }
+        return image;
+    }
+
+    @Benchmark
+    public void imageIoReaderDimensions(Blackhole blackhole) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                blackhole.consume(reader.getWidth(0));
+                blackhole.consume(reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    @Benchmark
+    public BufferedImage imageIoFullDecode() throws IOException {
+        return ImageIO.read(file.toFile());
+    }
+}
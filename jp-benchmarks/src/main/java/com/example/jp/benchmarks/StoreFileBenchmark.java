@@ -0,0 +1,87 @@
+package com.example.jp.benchmarks;
+
+import com.example.jp.model.FileItem;
+import com.example.jp.service.FileStorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileStorageService.storeFile, the synchronous upload path, across payload sizes,
+ * with and without content-addressable deduplication. Every invocation stores a new
+ * file name; the folder is emptied after each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreFileBenchmark {
+
+    @Param({"4096", "1048576", "16777216"})
+    public int fileSize;
+
+    @Param({"false", "true"})
+    public boolean dedup;
+
+    private Path workDir;
+    private ConfigurableApplicationContext context;
+    private FileStorageService fileStorageService;
+    private BenchmarkSupport.BytesMultipartFile[] uploads;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void startApplication() throws IOException {
+        workDir = Files.createTempDirectory("jp-store-bench");
+        context = BenchmarkSupport.startApplication(workDir, "app.storage.dedup.enabled=" + dedup);
+        fileStorageService = context.getBean(FileStorageService.class);
+
+        // A few distinct payloads, so deduplication sees both new and repeated content
+        Random random = new Random(42);
+        uploads = new BenchmarkSupport.BytesMultipartFile[4];
+        for (int i = 0; i < uploads.length; i++) {
+            byte[] content = new byte[fileSize];
+            random.nextBytes(content);
+            uploads[i] = new BenchmarkSupport.BytesMultipartFile("payload.bin", "application/octet-stream", content);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void emptyFolder() throws IOException {
+        // Blobs are kept: with deduplication, later iterations measure the repeated-content path
+        BenchmarkSupport.deleteRecursively(workDir.resolve("storage").resolve("bench"));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() throws IOException {
+        context.close();
+        BenchmarkSupport.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public FileItem storeFile() throws IOException {
+        int n = counter++;
+        BenchmarkSupport.BytesMultipartFile payload = uploads[n % uploads.length];
+        return fileStorageService.storeFile(
+                new BenchmarkSupport.BytesMultipartFile("file-" + n + ".bin", payload.getContentType(), payload.getBytes()),
+                "bench");
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.jp.benchmarks;
+
+import com.example.jp.config.ExecutorMode;
+import com.example.jp.dto.FileItemDTO;
+import com.example.jp.service.AsyncFileProcessingService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the asynchronous upload pipeline: a burst of uploads goes through
+ * AsyncFileProcessingService (staging, the processing executor, store, task registry and
+ * journal) and the time until every upload has finished is measured. The pipeline's
+ * simulated one-second processing step is included, as it is in production.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class UploadPipelineBenchmark {
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public ExecutorMode mode;
+
+    @Param({"100"})
+    public int uploads;
+
+    @Param({"65536"})
+    public int fileSize;
+
+    private Path workDir;
+    private ConfigurableApplicationContext context;
+    private AsyncFileProcessingService asyncFileProcessingService;
+    private byte[] content;
+    private int burst;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long completed;
+        public long failed;
+        public long rejected;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            completed = 0;
+            failed = 0;
+            rejected = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void startApplication() throws IOException {
+        workDir = Files.createTempDirectory("jp-pipeline-bench");
+        context = BenchmarkSupport.startApplication(workDir, "app.async.executor-mode=" + mode.name().toLowerCase());
+        asyncFileProcessingService = context.getBean(AsyncFileProcessingService.class);
+
+        content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() throws IOException {
+        context.close();
+        BenchmarkSupport.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public void burstOfUploads(Outcome outcome) {
+        String folder = "bench/burst-" + burst++;
+        List<CompletableFuture<FileItemDTO>> results = new ArrayList<>(uploads);
+
+        for (int i = 0; i < uploads; i++) {
+            String name = "upload-" + i + ".bin";
+            String taskId = asyncFileProcessingService.createUploadTask(name, folder);
+            try {
+                results.add(asyncFileProcessingService.uploadFileAsync(
+                        new BenchmarkSupport.BytesMultipartFile(name, "application/octet-stream", content), folder, taskId));
+            } catch (RejectedExecutionException e) {
+                outcome.rejected++;
+            }
+        }
+
+        for (CompletableFuture<FileItemDTO> result : results) {
+            // Failed uploads complete with null
+            if (result.exceptionally(e -> null).join() != null) {
+                outcome.completed++;
+            } else {
+                outcome.failed++;
+            }
+        }
+    }
+}
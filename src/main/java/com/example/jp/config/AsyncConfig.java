@@ -1,34 +1,48 @@
 package com.example.jp.config;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 
 /**
- * Configuration for asynchronous task execution
+ * Configuration for asynchronous task execution.
+ * app.async.executor-mode selects platform thread pools (default) or virtual threads;
+ * in virtual mode concurrency is bounded per resource instead of by pool size.
  */
 @Configuration
 @EnableAsync
 public class AsyncConfig {
 
     @Bean(name = "fileProcessingExecutor")
-    public Executor fileProcessingExecutor() {
+    public Executor fileProcessingExecutor(
+            @Value("${app.async.executor-mode:platform}") ExecutorMode mode,
+            @Value("${app.async.virtual.disk-concurrency:64}") int diskConcurrency) {
+        if (mode == ExecutorMode.VIRTUAL) {
+            // File processing is blocking disk I/O
+            return new SemaphoreBoundedExecutor("FileProcessing-", diskConcurrency);
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         
-        // Core pool size - minimum threads always alive
+        // Fixed pool - fileProcessingScheduler runs as many jobs at once as there are threads
+        // and queues the rest itself, so the pool never grows past its core size
         executor.setCorePoolSize(5);
+        executor.setMaxPoolSize(5);
         
-        // Maximum pool size - max threads when queue is full
-        executor.setMaxPoolSize(10);
-        
-        // Queue capacity - number of tasks to queue before creating new threads
+        // Only holds a job handed over while a finishing worker is still returning to the pool
         executor.setQueueCapacity(100);
         
         // Thread name prefix for debugging
         executor.setThreadNamePrefix("FileProcessing-");
+        executor.setRejectedExecutionHandler(new CountingRejectedExecutionHandler());
         
         // Wait for tasks to complete on shutdown
         executor.setWaitForTasksToCompleteOnShutdown(true);
@@ -38,18 +52,134 @@ public class AsyncConfig {
         return executor;
     }
 
+    /**
+     * Small/large lanes in front of fileProcessingExecutor, so a few big uploads cannot hold
+     * up many small ones. Concurrency defaults to what the executor runs without queueing.
+     */
+    @Bean(name = "fileProcessingScheduler")
+    public LaneScheduler fileProcessingScheduler(
+            @Qualifier("fileProcessingExecutor") Executor fileProcessingExecutor,
+            @Value("${app.async.lanes.concurrency:0}") int concurrency,
+            @Value("${app.async.lanes.small-max-bytes:1048576}") long smallMaxBytes,
+            @Value("${app.async.lanes.reserved-small-slots:2}") int reservedSmallSlots,
+            @Value("${app.async.lanes.max-large-wait-ms:5000}") long maxLargeWaitMillis,
+            @Value("${app.async.lanes.queue-capacity:100}") int queueCapacity,
+            @Value("${app.fair.max-tracked-tenants:100}") int maxTrackedTenants,
+            LaneScheduler.FairShare fairShare) {
+        if (concurrency <= 0) {
+            concurrency = concurrencyOf(fileProcessingExecutor);
+        }
+        return new LaneScheduler("fileProcessing", fileProcessingExecutor, concurrency,
+                smallMaxBytes, reservedSmallSlots, maxLargeWaitMillis, queueCapacity, fairShare, maxTrackedTenants);
+    }
+
+    /**
+     * Per-tenant fair queuing in front of metadataExtractionExecutor. Extraction only reads
+     * headers, so every job is in the one lane and costs the same.
+     */
+    @Bean(name = "metadataExtractionScheduler")
+    public LaneScheduler metadataExtractionScheduler(
+            @Qualifier("metadataExtractionExecutor") Executor metadataExtractionExecutor,
+            @Value("${app.async.metadata.queue-capacity:50}") int queueCapacity,
+            @Value("${app.fair.max-tracked-tenants:100}") int maxTrackedTenants,
+            LaneScheduler.FairShare fairShare) {
+        return new LaneScheduler("metadataExtraction", metadataExtractionExecutor,
+                concurrencyOf(metadataExtractionExecutor), Long.MAX_VALUE, 0, 0, queueCapacity, fairShare,
+                maxTrackedTenants);
+    }
+
+    /**
+     * How tenants (top-level folders) share the schedulers. Weights are "tenant:weight" pairs.
+     */
+    @Bean
+    public LaneScheduler.FairShare fairShare(
+            @Value("${app.fair.quantum-bytes:262144}") long quantumBytes,
+            @Value("${app.fair.job-cost-bytes:65536}") long jobCostBytes,
+            @Value("${app.fair.weights:}") List<String> weights) {
+        Map<String, Integer> weightByTenant = new HashMap<>();
+        for (String entry : weights) {
+            int separator = entry.lastIndexOf(':');
+            if (separator > 0) {
+                weightByTenant.put(entry.substring(0, separator).trim(),
+                        Integer.parseInt(entry.substring(separator + 1).trim()));
+            }
+        }
+        return new LaneScheduler.FairShare(quantumBytes, jobCostBytes, weightByTenant);
+    }
+
+    /**
+     * Jobs an executor runs at once without queueing
+     */
+    private static int concurrencyOf(Executor executor) {
+        return executor instanceof SemaphoreBoundedExecutor bounded
+                ? bounded.getMaxConcurrency()
+                : ((ThreadPoolTaskExecutor) executor).getCorePoolSize();
+    }
+
     @Bean(name = "metadataExtractionExecutor")
-    public Executor metadataExtractionExecutor() {
+    public Executor metadataExtractionExecutor(
+            @Value("${app.async.executor-mode:platform}") ExecutorMode mode,
+            @Value("${app.async.virtual.extraction-concurrency:0}") int extractionConcurrency) {
+        if (mode == ExecutorMode.VIRTUAL) {
+            // Extraction is CPU-heavy, default to one task per core
+            int permits = extractionConcurrency > 0
+                    ? extractionConcurrency
+                    : Runtime.getRuntime().availableProcessors();
+            return new SemaphoreBoundedExecutor("MetadataExtraction-", permits);
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         
+        // Fixed pool, sized like fileProcessingExecutor by its scheduler's concurrency
         executor.setCorePoolSize(3);
-        executor.setMaxPoolSize(6);
+        executor.setMaxPoolSize(3);
         executor.setQueueCapacity(50);
         executor.setThreadNamePrefix("MetadataExtraction-");
+        executor.setRejectedExecutionHandler(new CountingRejectedExecutionHandler());
         executor.setWaitForTasksToCompleteOnShutdown(true);
         executor.setAwaitTerminationSeconds(60);
         
         executor.initialize();
         return executor;
     }
+
+    @Bean(name = "thumbnailExecutor")
+    public Executor thumbnailExecutor(
+            @Value("${app.async.executor-mode:platform}") ExecutorMode mode,
+            @Value("${app.async.virtual.thumbnail-concurrency:0}") int thumbnailConcurrency) {
+        if (mode == ExecutorMode.VIRTUAL) {
+            // Decoding is CPU and memory heavy, default to half the cores
+            int permits = thumbnailConcurrency > 0
+                    ? thumbnailConcurrency
+                    : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            return new SemaphoreBoundedExecutor("Thumbnail-", permits);
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+        // Few threads bound decoded image memory; the queue holds a gallery page worth of requests
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("Thumbnail-");
+        executor.setRejectedExecutionHandler(new CountingRejectedExecutionHandler());
+
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "progressEventExecutor")
+    public Executor progressEventExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+        // Sends progress events to SSE subscribers, off the upload workers.
+        // Each subscriber queues at most one drain, so the queue is bounded by subscriber count.
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(10000);
+        executor.setThreadNamePrefix("ProgressEvents-");
+
+        executor.initialize();
+        return executor;
+    }
 }
@@ -0,0 +1,24 @@
+package com.example.jp.config;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Abort policy that counts rejections, so a full executor queue shows up in metrics
+ */
+public class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+
+    private final RejectedExecutionHandler delegate = new ThreadPoolExecutor.AbortPolicy();
+    private final LongAdder rejected = new LongAdder();
+
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+        rejected.increment();
+        delegate.rejectedExecution(task, executor);
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.jp.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Executor metrics not covered by Spring Boot's thread pool metrics: rejections of the
+ * platform pools, and in virtual mode the permits in use and tasks waiting for one,
+ * under the same meter names as the pool gauges.
+ */
+@Component
+public class ExecutorMetrics implements MeterBinder {
+
+    private final Map<String, Executor> executors = new LinkedHashMap<>();
+
+    public ExecutorMetrics(
+            @Qualifier("fileProcessingExecutor") Executor fileProcessingExecutor,
+            @Qualifier("metadataExtractionExecutor") Executor metadataExtractionExecutor,
+            @Qualifier("thumbnailExecutor") Executor thumbnailExecutor) {
+        executors.put("fileProcessingExecutor", fileProcessingExecutor);
+        executors.put("metadataExtractionExecutor", metadataExtractionExecutor);
+        executors.put("thumbnailExecutor", thumbnailExecutor);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        executors.forEach((name, executor) -> {
+            if (executor instanceof ThreadPoolTaskExecutor pool
+                    && pool.getThreadPoolExecutor().getRejectedExecutionHandler() instanceof CountingRejectedExecutionHandler handler) {
+                FunctionCounter.builder("executor.rejected", handler, CountingRejectedExecutionHandler::getRejectedCount)
+                        .description("Tasks rejected because the pool and its queue were full")
+                        .tag("name", name)
+                        .register(registry);
+            } else if (executor instanceof SemaphoreBoundedExecutor bounded) {
+                Gauge.builder("executor.active", bounded, SemaphoreBoundedExecutor::getActiveCount)
+                        .description("Tasks holding a permit")
+                        .baseUnit("threads")
+                        .tag("name", name)
+                        .register(registry);
+                Gauge.builder("executor.queued", bounded, SemaphoreBoundedExecutor::getWaitingCount)
+                        .description("Tasks waiting for a permit")
+                        .baseUnit("tasks")
+                        .tag("name", name)
+                        .register(registry);
+                Gauge.builder("executor.pool.max", bounded, SemaphoreBoundedExecutor::getMaxConcurrency)
+                        .description("Permits, the maximum number of tasks running at once")
+                        .baseUnit("threads")
+                        .tag("name", name)
+                        .register(registry);
+            }
+        });
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.jp.config;
+
+/**
+ * How background executors run their tasks
+ */
+public enum ExecutorMode {
+    /**
+     * Fixed-size platform thread pools with bounded queues
+     */
+    PLATFORM,
+
+    /**
+     * One virtual thread per task, with concurrency bounded per resource by a semaphore
+     */
+    VIRTUAL
+}
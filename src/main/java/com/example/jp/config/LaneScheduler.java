@@ -0,0 +1,591 @@
+package com.example.jp.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs jobs on a delegate executor, at most a fixed number at a time, taking them from
+ * a small and a large lane by declared size. Small jobs go first and may use every slot;
+ * large jobs may not use the slots reserved for small ones. Once any large job has waited
+ * longer than maxLargeWait, large jobs are started ahead of small ones, so they always progress.
+ * Within each lane, tenants take turns by deficit round robin (see FairShare), so one
+ * tenant's backlog cannot hold up the others.
+ * <p>
+ * Tenants come from client-chosen folder names, so only tenants with queued or running
+ * jobs and the most recently idle ones, up to maxTrackedTenants, keep their stats and
+ * meters. Longer idle tenants are dropped and start afresh when they come back.
+ */
+@Slf4j
+public class LaneScheduler implements MeterBinder {
+
+    public enum Lane {
+        SMALL,
+        LARGE
+    }
+
+    private final String name;
+    private final Executor delegate;
+    private final int concurrency;
+    private final long smallMaxBytes;
+    private final int largeMaxRunning;
+    private final long maxLargeWaitNanos;
+    private final int queueCapacity;
+    private final FairShare fairShare;
+    private final int maxTrackedTenants;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock
+    private final FairQueue smallQueue;
+    private final FairQueue largeQueue;
+    // Idle tenants are moved to the end, so the longest idle come first
+    private final Map<String, TenantStats> tenantStats = new LinkedHashMap<>();
+    private int runningSmall;
+    private int runningLarge;
+    private MeterRegistry registry;
+
+    private final LongAdder rejected = new LongAdder();
+    private volatile Timer[] waitTimers;
+
+    /**
+     * @param concurrency        jobs running at once; the delegate must be able to run that many without queueing
+     * @param smallMaxBytes      jobs up to this size go to the small lane
+     * @param reservedSmallSlots slots large jobs cannot use, at most concurrency - 1
+     * @param maxLargeWaitMillis wait after which a large job is started before small ones
+     * @param queueCapacity      jobs waiting in both lanes together before new ones are rejected
+     * @param fairShare          how tenants share each lane
+     * @param maxTrackedTenants  tenants whose stats and meters are kept once they are idle
+     */
+    public LaneScheduler(String name, Executor delegate, int concurrency, long smallMaxBytes,
+                         int reservedSmallSlots, long maxLargeWaitMillis, int queueCapacity, FairShare fairShare,
+                         int maxTrackedTenants) {
+        this.name = name;
+        this.delegate = delegate;
+        this.concurrency = Math.max(1, concurrency);
+        this.smallMaxBytes = smallMaxBytes;
+        this.largeMaxRunning = this.concurrency - Math.clamp(reservedSmallSlots, 0, this.concurrency - 1);
+        this.maxLargeWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxLargeWaitMillis);
+        this.queueCapacity = queueCapacity;
+        this.fairShare = fairShare;
+        this.maxTrackedTenants = Math.max(0, maxTrackedTenants);
+        this.smallQueue = new FairQueue(fairShare);
+        this.largeQueue = new FairQueue(fairShare);
+    }
+
+    public Lane laneFor(long size) {
+        return size <= smallMaxBytes ? Lane.SMALL : Lane.LARGE;
+    }
+
+    /**
+     * Queue a job of the given size for a tenant. If the delegate refuses the job once it is
+     * started (it is shutting down), the job is dropped; a task that is a Future is cancelled.
+     *
+     * @throws RejectedExecutionException if both lanes together hold queueCapacity jobs
+     */
+    public void execute(String tenant, long size, Runnable task) {
+        enqueue(new Job(laneFor(size), tenant, fairShare.costOf(size), task, e -> {
+            if (task instanceof Future<?> future) {
+                future.cancel(false);
+            }
+            log.warn("{} dropped a job the delegate refused: {}", name, e.getMessage());
+        }));
+    }
+
+    /**
+     * Queue a job of the given size for a tenant and complete the returned future with its result.
+     * The future fails with the RejectedExecutionException if the delegate refuses the job.
+     *
+     * @throws RejectedExecutionException if both lanes together hold queueCapacity jobs
+     */
+    public <T> CompletableFuture<T> supplyAsync(String tenant, long size, Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable e) {
+                // Failed the way CompletableFuture.supplyAsync fails
+                future.completeExceptionally(e instanceof CompletionException ? e : new CompletionException(e));
+            }
+        };
+        enqueue(new Job(laneFor(size), tenant, fairShare.costOf(size), task, future::completeExceptionally));
+        return future;
+    }
+
+    private void enqueue(Job job) {
+        lock.lock();
+        try {
+            if (smallQueue.size() + largeQueue.size() >= queueCapacity) {
+                rejected.increment();
+                throw new RejectedExecutionException(name + " queue is full");
+            }
+            (job.lane == Lane.SMALL ? smallQueue : largeQueue).add(job);
+            statsOf(job.tenant).queued++;
+            evictIdleTenants();
+        } finally {
+            lock.unlock();
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        boolean refused;
+        do {
+            refused = false;
+            for (Job job : startNext()) {
+                recordWait(job);
+                try {
+                    delegate.execute(job);
+                } catch (RejectedExecutionException e) {
+                    // Only when the delegate is shutting down. Give the slot back and fail the job
+                    // rather than run it here, then let the next queued job try its luck.
+                    release(job, 0, false);
+                    job.onRejected.accept(e);
+                    refused = true;
+                }
+            }
+        } while (refused);
+    }
+
+    /**
+     * Take jobs off the lanes for every free slot
+     */
+    private List<Job> startNext() {
+        List<Job> started = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            Job next;
+            while (runningSmall + runningLarge < concurrency && (next = pollNext(now)) != null) {
+                if (next.lane == Lane.SMALL) {
+                    runningSmall++;
+                } else {
+                    runningLarge++;
+                }
+                TenantStats stats = statsOf(next.tenant);
+                stats.queued--;
+                stats.running++;
+                started.add(next);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return started;
+    }
+
+    private Job pollNext(long now) {
+        boolean largeMayStart = largeQueue.size() > 0 && runningLarge < largeMaxRunning;
+
+        // The next large job in turn may be a recent one, so go by the longest wait in the lane
+        if (largeMayStart && largeQueue.longestWaitNanos(now) >= maxLargeWaitNanos) {
+            return largeQueue.poll();
+        }
+        if (smallQueue.size() > 0) {
+            return smallQueue.poll();
+        }
+        return largeMayStart ? largeQueue.poll() : null;
+    }
+
+    private void finished(Job job, long serviceNanos) {
+        release(job, serviceNanos, true);
+        dispatch();
+    }
+
+    /**
+     * Free a started job's slot, counting it as completed if it ran
+     */
+    private void release(Job job, long serviceNanos, boolean ran) {
+        lock.lock();
+        try {
+            if (job.lane == Lane.SMALL) {
+                runningSmall--;
+            } else {
+                runningLarge--;
+            }
+            TenantStats stats = statsOf(job.tenant);
+            stats.running--;
+            if (ran) {
+                stats.completed++;
+                stats.serviceNanos += serviceNanos;
+                if (stats.serviceTimer != null) {
+                    stats.serviceTimer.record(serviceNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            if (stats.isIdle()) {
+                tenantStats.remove(job.tenant);
+                tenantStats.put(job.tenant, stats);
+                evictIdleTenants();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TenantStats statsOf(String tenant) {
+        TenantStats stats = tenantStats.get(tenant);
+        if (stats == null) {
+            stats = new TenantStats(tenant);
+            tenantStats.put(tenant, stats);
+            if (registry != null) {
+                registerTenant(stats);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Drop the longest idle tenants while more than maxTrackedTenants are tracked.
+     * Tenants with queued or running jobs are always kept.
+     */
+    private void evictIdleTenants() {
+        Iterator<TenantStats> iterator = tenantStats.values().iterator();
+        while (tenantStats.size() > maxTrackedTenants && iterator.hasNext()) {
+            TenantStats stats = iterator.next();
+            if (stats.isIdle()) {
+                iterator.remove();
+                if (registry != null) {
+                    registry.remove(stats.queuedGauge);
+                    registry.remove(stats.serviceTimer);
+                }
+            }
+        }
+    }
+
+    private void recordWait(Job job) {
+        Timer[] timers = waitTimers;
+        if (timers != null) {
+            timers[job.lane.ordinal()].record(System.nanoTime() - job.enqueuedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public int getQueued(Lane lane) {
+        lock.lock();
+        try {
+            return (lane == Lane.SMALL ? smallQueue : largeQueue).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRunning(Lane lane) {
+        lock.lock();
+        try {
+            return lane == Lane.SMALL ? runningSmall : runningLarge;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue depth, running jobs and service time of every tracked tenant
+     */
+    public List<TenantSnapshot> getTenantSnapshots() {
+        lock.lock();
+        try {
+            List<TenantSnapshot> snapshots = new ArrayList<>(tenantStats.size());
+            for (TenantStats stats : tenantStats.values()) {
+                snapshots.add(new TenantSnapshot(name, stats.tenant, fairShare.weightOf(stats.tenant),
+                        stats.queued, stats.running, stats.completed, stats.serviceNanos));
+            }
+            return snapshots;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int queuedFor(TenantStats stats) {
+        lock.lock();
+        try {
+            return stats.queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Timer[] timers = new Timer[Lane.values().length];
+        for (Lane lane : Lane.values()) {
+            String tag = lane.name().toLowerCase();
+            Gauge.builder("jp.scheduler.queued", this, s -> s.getQueued(lane))
+                    .description("Jobs waiting in a scheduler lane")
+                    .tags("scheduler", name, "lane", tag)
+                    .baseUnit("tasks")
+                    .register(registry);
+            Gauge.builder("jp.scheduler.running", this, s -> s.getRunning(lane))
+                    .description("Jobs from a scheduler lane currently running")
+                    .tags("scheduler", name, "lane", tag)
+                    .baseUnit("tasks")
+                    .register(registry);
+            timers[lane.ordinal()] = Timer.builder("jp.scheduler.wait")
+                    .description("Time jobs waited in a scheduler lane before starting")
+                    .tags("scheduler", name, "lane", tag)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        waitTimers = timers;
+        FunctionCounter.builder("jp.scheduler.rejected", rejected, LongAdder::sum)
+                .description("Jobs rejected because the scheduler's lanes were full")
+                .tag("scheduler", name)
+                .register(registry);
+
+        // Tenants are registered as they show up
+        lock.lock();
+        try {
+            this.registry = registry;
+            tenantStats.values().forEach(this::registerTenant);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void registerTenant(TenantStats stats) {
+        stats.queuedGauge = Gauge.builder("jp.scheduler.tenant.queued", this, s -> s.queuedFor(stats))
+                .description("Jobs of a tenant waiting in the scheduler")
+                .tags("scheduler", name, "tenant", stats.tenant)
+                .baseUnit("tasks")
+                .register(registry);
+        stats.serviceTimer = Timer.builder("jp.scheduler.tenant.service")
+                .description("Run time of a tenant's jobs")
+                .tags("scheduler", name, "tenant", stats.tenant)
+                .register(registry);
+    }
+
+    /**
+     * How tenants share a lane: each turn a tenant is credited quantum times its weight,
+     * and a job costs its size plus a fixed charge for per-job overhead. A tenant's jobs
+     * start while it has credit, then the next tenant with queued jobs takes its turn.
+     */
+    public static final class FairShare {
+        private final long quantum;
+        private final long jobCost;
+        private final Map<String, Integer> weights;
+
+        /**
+         * @param quantum credit per turn at weight 1, in bytes
+         * @param jobCost charge per job on top of its size, in bytes
+         * @param weights tenant weights; tenants not listed have weight 1
+         */
+        public FairShare(long quantum, long jobCost, Map<String, Integer> weights) {
+            this.quantum = Math.max(1, quantum);
+            this.jobCost = Math.max(0, jobCost);
+            this.weights = Map.copyOf(weights);
+        }
+
+        public int weightOf(String tenant) {
+            return Math.max(1, weights.getOrDefault(tenant, 1));
+        }
+
+        long costOf(long size) {
+            return Math.max(1, Math.max(0, size) + jobCost);
+        }
+
+        long creditOf(String tenant) {
+            return quantum * weightOf(tenant);
+        }
+    }
+
+    /**
+     * One tenant's share of the scheduler at a point in time
+     */
+    public static final class TenantSnapshot {
+        private final String scheduler;
+        private final String tenant;
+        private final int weight;
+        private final int queued;
+        private final int running;
+        private final long completed;
+        private final long serviceNanos;
+
+        TenantSnapshot(String scheduler, String tenant, int weight, int queued, int running,
+                       long completed, long serviceNanos) {
+            this.scheduler = scheduler;
+            this.tenant = tenant;
+            this.weight = weight;
+            this.queued = queued;
+            this.running = running;
+            this.completed = completed;
+            this.serviceNanos = serviceNanos;
+        }
+
+        public String getScheduler() {
+            return scheduler;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getServiceNanos() {
+            return serviceNanos;
+        }
+    }
+
+    /**
+     * Per-tenant queues served by deficit round robin. Not thread-safe; guarded by the scheduler's lock.
+     */
+    private static final class FairQueue {
+        private final FairShare fairShare;
+        private final Map<String, TenantQueue> queues = new HashMap<>();
+        // Tenants with queued jobs, in turn order; the head is the tenant whose turn it is
+        private final ArrayDeque<TenantQueue> turns = new ArrayDeque<>();
+        private int size;
+
+        FairQueue(FairShare fairShare) {
+            this.fairShare = fairShare;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(Job job) {
+            TenantQueue queue = queues.computeIfAbsent(job.tenant, TenantQueue::new);
+            if (queue.jobs.isEmpty()) {
+                // A tenant joining the rotation gets credit for its first turn
+                queue.deficit = fairShare.creditOf(job.tenant);
+                turns.add(queue);
+            }
+            queue.jobs.add(job);
+            size++;
+        }
+
+        /**
+         * The job that goes next. Moves the rotation on past tenants without enough credit,
+         * crediting each for its next turn.
+         */
+        Job peek() {
+            if (turns.isEmpty()) {
+                return null;
+            }
+            while (true) {
+                TenantQueue queue = turns.peek();
+                Job head = queue.jobs.peek();
+                if (queue.deficit >= head.cost) {
+                    return head;
+                }
+                queue.deficit += fairShare.creditOf(queue.tenant);
+                turns.add(turns.poll());
+            }
+        }
+
+        /**
+         * Wait of the oldest queued job; each tenant's jobs are in arrival order, so it is one of the heads
+         */
+        long longestWaitNanos(long now) {
+            long longest = 0;
+            for (TenantQueue queue : turns) {
+                longest = Math.max(longest, now - queue.jobs.peek().enqueuedNanos);
+            }
+            return longest;
+        }
+
+        Job poll() {
+            Job job = peek();
+            if (job == null) {
+                return null;
+            }
+            TenantQueue queue = turns.peek();
+            queue.jobs.poll();
+            queue.deficit -= job.cost;
+            size--;
+            if (queue.jobs.isEmpty()) {
+                // Credit is not saved up while idle, so there is nothing to keep
+                turns.poll();
+                queues.remove(queue.tenant);
+            }
+            return job;
+        }
+    }
+
+    private static final class TenantQueue {
+        private final String tenant;
+        private final ArrayDeque<Job> jobs = new ArrayDeque<>();
+        private long deficit;
+
+        TenantQueue(String tenant) {
+            this.tenant = tenant;
+        }
+    }
+
+    private static final class TenantStats {
+        private final String tenant;
+        private int queued;
+        private int running;
+        private long completed;
+        private long serviceNanos;
+        private Gauge queuedGauge;
+        private Timer serviceTimer;
+
+        TenantStats(String tenant) {
+            this.tenant = tenant;
+        }
+
+        boolean isIdle() {
+            return queued == 0 && running == 0;
+        }
+    }
+
+    private final class Job implements Runnable {
+        private final Lane lane;
+        private final String tenant;
+        private final long cost;
+        private final Runnable task;
+        private final Consumer<RejectedExecutionException> onRejected;
+        private final long enqueuedNanos = System.nanoTime();
+
+        Job(Lane lane, String tenant, long cost, Runnable task, Consumer<RejectedExecutionException> onRejected) {
+            this.lane = lane;
+            this.tenant = tenant;
+            this.cost = cost;
+            this.task = task;
+            this.onRejected = onRejected;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                finished(this, System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.jp.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Executor that runs every task on its own virtual thread and bounds how many
+ * run at once with a semaphore for the resource they use (disk, CPU).
+ * Tasks waiting for a permit are parked virtual threads, so submissions are never rejected.
+ */
+public class SemaphoreBoundedExecutor implements Executor, AutoCloseable {
+
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    public SemaphoreBoundedExecutor(String threadNamePrefix, int maxConcurrency) {
+        this.delegate = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name(threadNamePrefix, 1).factory()
+        );
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        delegate.execute(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Tasks currently holding a permit
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * Tasks waiting for a permit
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Wait for submitted tasks to finish, then stop accepting new ones
+     */
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -1,16 +1,30 @@
 package com.example.jp.controller;
 
 import com.example.jp.dto.FileItemDTO;
+import com.example.jp.dto.FileUploadTaskDTO;
+import com.example.jp.dto.TaskRegistryStatsDTO;
+import com.example.jp.dto.TenantQueueStatsDTO;
 import com.example.jp.model.FileUploadTask;
 import com.example.jp.service.AsyncFileProcessingService;
+import com.example.jp.service.UploadAdmissionService;
+import com.example.jp.service.UploadProgressBroadcaster;
+import com.example.jp.service.UploadRejectedException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Controller for asynchronous file operations
@@ -21,6 +35,8 @@ import java.util.concurrent.CompletableFuture;
 public class AsyncFileController {
 
     private final AsyncFileProcessingService asyncFileProcessingService;
+    private final UploadProgressBroadcaster uploadProgressBroadcaster;
+    private final UploadAdmissionService uploadAdmissionService;
 
     /**
      * Upload file asynchronously - returns immediately with task ID
@@ -30,6 +46,14 @@ public class AsyncFileController {
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "folderPath", required = false, defaultValue = "") String folderPath) {
         
+        // Admit before creating the task, so a rejected upload leaves nothing behind
+        long size = file.getSize();
+        try {
+            uploadAdmissionService.acquire(size, 1);
+        } catch (UploadRejectedException e) {
+            return rejected(e).body(Map.of("message", e.getMessage()));
+        }
+
         // Create task
         String taskId = asyncFileProcessingService.createUploadTask(
             file.getOriginalFilename(),
@@ -37,12 +61,20 @@ public class AsyncFileController {
         );
         
         // Start async upload
-        asyncFileProcessingService.uploadFileAsync(file, folderPath, taskId);
+        CompletableFuture<FileItemDTO> result = asyncFileProcessingService.uploadFileAsync(file, folderPath, taskId);
+        result.whenComplete((dto, ex) -> uploadAdmissionService.release(size, 1));
+
+        if (result.isCompletedExceptionally() && result.exceptionNow() instanceof RejectedExecutionException) {
+            UploadRejectedException e = new UploadRejectedException("Processing queue is full, retry later",
+                    uploadAdmissionService.estimateRetryAfterSeconds(size, 1));
+            return rejected(e).body(Map.of("message", e.getMessage(), "taskId", taskId));
+        }
         
         Map<String, String> response = new HashMap<>();
         response.put("taskId", taskId);
         response.put("message", "File upload started");
         response.put("statusUrl", "/api/async/files/status/" + taskId);
+        response.put("eventsUrl", "/api/async/files/status/" + taskId + "/events");
         
         return ResponseEntity.accepted().body(response);
     }
@@ -55,28 +87,88 @@ public class AsyncFileController {
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "folderPath", required = false, defaultValue = "") String folderPath) {
         
+        long size = file.getSize();
+        try {
+            uploadAdmissionService.acquire(size, 1);
+        } catch (UploadRejectedException e) {
+            return CompletableFuture.completedFuture(rejected(e).build());
+        }
+
         String taskId = asyncFileProcessingService.createUploadTask(
             file.getOriginalFilename(),
             folderPath
         );
         
         return asyncFileProcessingService.uploadFileAsync(file, folderPath, taskId)
+            .whenComplete((dto, ex) -> uploadAdmissionService.release(size, 1))
             .thenApply(ResponseEntity::ok)
-            .exceptionally(ex -> ResponseEntity.internalServerError().build());
+            .exceptionally(ex -> {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (cause instanceof RejectedExecutionException) {
+                    UploadRejectedException e = new UploadRejectedException("Processing queue is full, retry later",
+                            uploadAdmissionService.estimateRetryAfterSeconds(size, 1));
+                    return rejected(e).build();
+                }
+                return ResponseEntity.internalServerError().build();
+            });
     }
 
     /**
      * Get upload task status
      */
     @GetMapping("/status/{taskId}")
-    public ResponseEntity<FileUploadTask> getTaskStatus(@PathVariable String taskId) {
+    public ResponseEntity<FileUploadTaskDTO> getTaskStatus(@PathVariable String taskId) {
         FileUploadTask task = asyncFileProcessingService.getTaskStatus(taskId);
         
         if (task == null) {
             return ResponseEntity.notFound().build();
         }
         
-        return ResponseEntity.ok(task);
+        return ResponseEntity.ok(FileUploadTaskDTO.fromTask(task));
+    }
+
+    /**
+     * Stream upload task progress as Server-Sent Events until the task finishes
+     */
+    @GetMapping(value = "/status/{taskId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamTaskStatus(@PathVariable String taskId) {
+        SseEmitter emitter = uploadProgressBroadcaster.subscribeTask(taskId);
+
+        if (emitter == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * Stream progress of every task in a batch upload until all of them finish
+     */
+    @GetMapping(value = "/groups/{groupId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamGroupStatus(@PathVariable String groupId) {
+        SseEmitter emitter = uploadProgressBroadcaster.subscribeGroup(groupId);
+
+        if (emitter == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * Get task registry occupancy and eviction stats
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<TaskRegistryStatsDTO> getTaskRegistryStats() {
+        return ResponseEntity.ok(asyncFileProcessingService.getTaskRegistryStats());
+    }
+
+    /**
+     * Get per-tenant queue depth and service time of the background schedulers
+     */
+    @GetMapping("/stats/tenants")
+    public ResponseEntity<List<TenantQueueStatsDTO>> getTenantQueueStats() {
+        return ResponseEntity.ok(asyncFileProcessingService.getTenantQueueStats());
     }
 
     /**
@@ -96,22 +188,50 @@ public class AsyncFileController {
             @RequestParam("files") MultipartFile[] files,
             @RequestParam(value = "folderPath", required = false, defaultValue = "") String folderPath) {
         
+        // The whole batch is admitted or rejected, never part of it
+        long totalSize = 0;
+        for (MultipartFile file : files) {
+            totalSize += file.getSize();
+        }
+        try {
+            uploadAdmissionService.acquire(totalSize, files.length);
+        } catch (UploadRejectedException e) {
+            return rejected(e).body(Map.of("message", e.getMessage()));
+        }
+
         Map<String, String> taskIds = new HashMap<>();
+        String groupId = UUID.randomUUID().toString();
         
         for (MultipartFile file : files) {
             String taskId = asyncFileProcessingService.createUploadTask(
                 file.getOriginalFilename(),
-                folderPath
+                folderPath,
+                groupId
             );
-            asyncFileProcessingService.uploadFileAsync(file, folderPath, taskId);
+            long size = file.getSize();
+            asyncFileProcessingService.uploadFileAsync(file, folderPath, taskId)
+                .whenComplete((dto, ex) -> uploadAdmissionService.release(size, 1));
             taskIds.put(file.getOriginalFilename(), taskId);
         }
         
         Map<String, Object> response = new HashMap<>();
         response.put("totalFiles", files.length);
         response.put("taskIds", taskIds);
+        response.put("groupId", groupId);
+        response.put("eventsUrl", "/api/async/files/groups/" + groupId + "/events");
         response.put("message", "Batch upload started");
         
         return ResponseEntity.accepted().body(response);
     }
+
+    /**
+     * 429 with Retry-After while at capacity, 413 for a batch that can never be admitted
+     */
+    private static ResponseEntity.BodyBuilder rejected(UploadRejectedException e) {
+        if (!e.isRetryable()) {
+            return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE);
+        }
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()));
+    }
 }
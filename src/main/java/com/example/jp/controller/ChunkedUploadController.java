@@ -0,0 +1,108 @@
+package com.example.jp.controller;
+
+import com.example.jp.dto.ChunkedUploadStatusDTO;
+import com.example.jp.dto.FileItemDTO;
+import com.example.jp.dto.InitChunkedUploadRequest;
+import com.example.jp.model.ChunkedUploadSession;
+import com.example.jp.service.ChunkedUploadService;
+import com.example.jp.service.UploadRejectedException;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * Controller for resumable chunked uploads.
+ * Flow: init a session, PUT chunks at byte offsets (in parallel, in any order),
+ * check status to find missing ranges after a failure, then complete.
+ */
+@RestController
+@RequestMapping("/api/files/chunked")
+@RequiredArgsConstructor
+public class ChunkedUploadController {
+
+    private final ChunkedUploadService chunkedUploadService;
+
+    @PostMapping
+    public ResponseEntity<ChunkedUploadStatusDTO> initUpload(@RequestBody InitChunkedUploadRequest request) throws IOException {
+        if (request.getTotalSize() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        ChunkedUploadSession session;
+        try {
+            session = chunkedUploadService.initSession(
+                request.getFileName(),
+                request.getFolderPath(),
+                request.getTotalSize(),
+                request.getContentType()
+            );
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (UploadRejectedException e) {
+            if (!e.isRetryable()) {
+                return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE).build();
+            }
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                    .build();
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).body(ChunkedUploadStatusDTO.fromSession(session));
+    }
+
+    @PutMapping("/{sessionId}")
+    public ResponseEntity<ChunkedUploadStatusDTO> uploadChunk(
+            @PathVariable String sessionId,
+            @RequestParam("offset") long offset,
+            HttpServletRequest request) throws IOException {
+        ChunkedUploadSession session;
+        try {
+            session = chunkedUploadService.writeChunk(sessionId, offset, request.getInputStream());
+        } catch (IllegalArgumentException e) {
+            // Offset or chunk end outside the declared size
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).build();
+        }
+
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(ChunkedUploadStatusDTO.fromSession(session));
+    }
+
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<ChunkedUploadStatusDTO> getUploadStatus(@PathVariable String sessionId) {
+        ChunkedUploadSession session = chunkedUploadService.getSession(sessionId);
+
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok(ChunkedUploadStatusDTO.fromSession(session));
+    }
+
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<FileItemDTO> completeUpload(@PathVariable String sessionId) throws IOException {
+        FileItemDTO file;
+        try {
+            file = chunkedUploadService.completeSession(sessionId);
+        } catch (IllegalStateException e) {
+            // Bytes still missing
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+
+        if (file == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(file);
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abortUpload(@PathVariable String sessionId) {
+        chunkedUploadService.abortSession(sessionId);
+        return ResponseEntity.noContent().build();
+    }
+}
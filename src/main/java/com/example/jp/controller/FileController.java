@@ -1,19 +1,29 @@
 package com.example.jp.controller;
 
+import com.example.jp.dto.ArchiveEntryDTO;
 import com.example.jp.dto.FileItemDTO;
 import com.example.jp.model.FileItem;
+import com.example.jp.service.FileDownloadService;
 import com.example.jp.service.FileItemService;
+import com.example.jp.service.ThumbnailService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpHeaders;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Path;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/files")
@@ -21,6 +31,11 @@ import java.nio.file.Path;
 public class FileController {
 
     private final FileItemService fileItemService;
+    private final FileDownloadService fileDownloadService;
+    private final ThumbnailService thumbnailService;
+
+    @Value("${app.listing.max-page-size:1000}")
+    private int maxPageSize;
 
     @PostMapping("/upload")
     public ResponseEntity<FileItemDTO> uploadFile(
@@ -31,20 +46,63 @@ public class FileController {
     }
 
     @GetMapping("/download")
-    public ResponseEntity<Resource> downloadFile(@RequestParam("path") String filePath) throws IOException {
-        FileItem fileItem = fileItemService.getFile(filePath);
-        Path path = fileItemService.getFilePath(filePath);
-        Resource resource = new UrlResource(path.toUri());
+    public void downloadFile(@RequestParam("path") String filePath,
+                             HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        fileDownloadService.serve(filePath, request, response);
+    }
+
+    @GetMapping("/metadata")
+    public ResponseEntity<FileItem> getFileMetadata(@RequestParam("path") String filePath) throws IOException {
+        FileItem fileItem = fileItemService.getFileDetails(filePath);
+        if (fileItem == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(fileItem);
+    }
+
+    @GetMapping("/archive/entries")
+    public ResponseEntity<List<ArchiveEntryDTO>> getArchiveEntries(
+            @RequestParam("path") String filePath,
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestParam(value = "limit", defaultValue = "1000") int limit) throws IOException {
+        List<ArchiveEntryDTO> entries;
+        try {
+            entries = fileItemService.getArchiveEntries(filePath, prefix, Math.clamp(limit, 1, maxPageSize));
+        } catch (InterruptedIOException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        if (entries == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(entries);
+    }
+
+    @GetMapping("/thumbnail")
+    public CompletableFuture<ResponseEntity<Resource>> getThumbnail(
+            @RequestParam("path") String filePath,
+            @RequestParam(value = "size", required = false) Integer size) throws IOException {
+        int thumbnailSize = size != null ? size : thumbnailService.getDefaultSize();
+        if (!thumbnailService.isSupportedSize(thumbnailSize)) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
 
-        if (!resource.exists()) {
-            throw new RuntimeException("File not found");
+        CompletableFuture<ThumbnailService.Thumbnail> thumbnail;
+        try {
+            thumbnail = thumbnailService.getThumbnail(filePath, thumbnailSize);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
         }
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(fileItem.getMimeType()))
-                .header(HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename=\"" + fileItem.getName() + "\"")
-                .body(resource);
+        // The ETag names the content hash, so unchanged images revalidate with a 304
+        return thumbnail.thenApply(result -> result == null
+                ? ResponseEntity.notFound().build()
+                : ResponseEntity.ok()
+                        .contentType(MediaType.parseMediaType(result.getMediaType()))
+                        .contentLength(result.getLength())
+                        .eTag(result.getKey())
+                        .cacheControl(CacheControl.noCache())
+                        .body(new FileSystemResource(result.getFile())));
     }
 
     @DeleteMapping
@@ -3,19 +3,33 @@ package com.example.jp.controller;
 import com.example.jp.dto.CreateFolderRequest;
 import com.example.jp.dto.FolderContentsDTO;
 import com.example.jp.dto.FolderDTO;
+import com.example.jp.dto.FolderEntryDTO;
 import com.example.jp.service.FolderService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.SequenceWriter;
+import tools.jackson.databind.json.JsonMapper;
 
 import java.io.IOException;
+import java.util.Iterator;
 
 @RestController
 @RequestMapping("/api/folders")
 @RequiredArgsConstructor
 public class FolderController {
 
+    private static final int STREAM_FLUSH_INTERVAL = 256;
+
     private final FolderService folderService;
+    private final JsonMapper jsonMapper;
+
+    @Value("${app.listing.max-page-size:1000}")
+    private int maxPageSize;
 
     @PostMapping
     public ResponseEntity<FolderDTO> createFolder(@RequestBody CreateFolderRequest request) throws IOException {
@@ -25,15 +39,79 @@ public class FolderController {
 
     @GetMapping("/contents")
     public ResponseEntity<FolderContentsDTO> getFolderContents(
-            @RequestParam(value = "path", required = false, defaultValue = "") String folderPath) throws IOException {
-        FolderContentsDTO contents = folderService.getFolderContents(folderPath);
-        return ResponseEntity.ok(contents);
+            @RequestParam(value = "path", required = false, defaultValue = "") String folderPath,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) throws IOException {
+        if (limit == null && cursor == null) {
+            FolderContentsDTO contents = folderService.getFolderContents(folderPath);
+            return ResponseEntity.ok(contents);
+        }
+
+        FolderContentsDTO page;
+        try {
+            page = folderService.getFolderContentsPage(folderPath, cursor, pageSize(limit));
+        } catch (IllegalArgumentException e) {
+            // Malformed cursor
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(page);
     }
 
     @GetMapping("/root")
-    public ResponseEntity<FolderContentsDTO> getRootContents() throws IOException {
-        FolderContentsDTO contents = folderService.getFolderContents(null);
-        return ResponseEntity.ok(contents);
+    public ResponseEntity<FolderContentsDTO> getRootContents(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) throws IOException {
+        return getFolderContents("", limit, cursor);
+    }
+
+    /**
+     * Stream folder contents entry by entry, as NDJSON (default) or as a JSON array.
+     * The first entries go out immediately. With the listing index enabled, memory use does
+     * not grow with folder size; without it the folder is scanned and sorted in full first.
+     */
+    @GetMapping("/contents/stream")
+    public ResponseEntity<StreamingResponseBody> streamFolderContents(
+            @RequestParam(value = "path", required = false, defaultValue = "") String folderPath,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "format", required = false, defaultValue = "ndjson") String format) throws IOException {
+        Iterator<FolderEntryDTO> entries;
+        try {
+            entries = folderService.iterateFolderContents(folderPath, cursor);
+        } catch (IllegalArgumentException e) {
+            // Malformed cursor
+            return ResponseEntity.badRequest().build();
+        }
+        boolean array = "array".equalsIgnoreCase(format);
+
+        StreamingResponseBody body = out -> {
+            ObjectWriter writer = jsonMapper.writer();
+            try (SequenceWriter sequence = array
+                    ? writer.writeValuesAsArray(out)
+                    : writer.withRootValueSeparator("\n").writeValues(out)) {
+                int written = 0;
+                while (entries.hasNext()) {
+                    sequence.write(entries.next());
+                    if (++written % STREAM_FLUSH_INTERVAL == 0) {
+                        sequence.flush();
+                    }
+                }
+                if (!array && written > 0) {
+                    sequence.flush();
+                    out.write('\n');
+                }
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(array ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return maxPageSize;
+        }
+        return Math.min(limit, maxPageSize);
     }
 
     @DeleteMapping
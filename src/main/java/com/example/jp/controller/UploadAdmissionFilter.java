@@ -0,0 +1,63 @@
+package com.example.jp.controller;
+
+import com.example.jp.service.UploadAdmissionService;
+import com.example.jp.service.UploadRejectedException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Turns away async uploads that admission control would reject before their multipart body
+ * is parsed, judging them by Content-Length. The multipart resolver runs before any handler
+ * interceptor, so this has to be a filter. It only checks and takes no capacity; the
+ * controller still admits each upload by its actual size.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 100)
+@RequiredArgsConstructor
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    private static final Set<String> UPLOAD_PATHS = Set.of(
+            "/api/async/files/upload",
+            "/api/async/files/upload-sync",
+            "/api/async/files/batch-upload");
+
+    private final UploadAdmissionService uploadAdmissionService;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) || !UPLOAD_PATHS.contains(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long contentLength = request.getContentLengthLong();
+        if (contentLength >= 0) {
+            try {
+                // A batch has at least one file; the controller counts the rest
+                uploadAdmissionService.check(contentLength, 1);
+            } catch (UploadRejectedException e) {
+                if (e.isRetryable()) {
+                    response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                    response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()));
+                } else {
+                    response.setStatus(HttpStatus.CONTENT_TOO_LARGE.value());
+                }
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.jp.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for reading one file's attributes and type
+ */
+@Name("com.example.jp.FileMetadata")
+@Label("File Metadata")
+@Description("Attributes, type detection and FileItem creation for one file")
+@Category({"JP", "Storage"})
+@StackTrace(false)
+public class FileMetadataEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
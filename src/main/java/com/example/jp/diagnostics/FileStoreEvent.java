@@ -0,0 +1,30 @@
+package com.example.jp.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for an upload written into storage
+ */
+@Name("com.example.jp.FileStore")
+@Label("File Store")
+@Description("Upload written or moved into storage")
+@Category({"JP", "Storage"})
+@StackTrace(false)
+public class FileStoreEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Staged")
+    @Description("Moved from the staging directory rather than copied from the request")
+    public boolean staged;
+}
@@ -0,0 +1,30 @@
+package com.example.jp.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a recursive folder delete
+ */
+@Name("com.example.jp.FolderDelete")
+@Label("Folder Delete")
+@Description("Recursive delete of a folder and everything in it")
+@Category({"JP", "Storage"})
+@StackTrace(false)
+public class FolderDeleteEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Entries")
+    @Description("Files and folders deleted")
+    public int entries;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,27 @@
+package com.example.jp.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a full folder listing
+ */
+@Name("com.example.jp.FolderListing")
+@Label("Folder Listing")
+@Description("Full contents of one folder, from the index or by directory scan")
+@Category({"JP", "Storage"})
+@StackTrace(false)
+public class FolderListingEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Indexed")
+    public boolean indexed;
+}
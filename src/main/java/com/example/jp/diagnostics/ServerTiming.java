@@ -0,0 +1,78 @@
+package com.example.jp.diagnostics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-request phase timings for the Server-Timing response header.
+ * Services report phases for the current thread; outside a timed request
+ * (background workers, or with the header disabled) reporting does nothing.
+ */
+public final class ServerTiming {
+
+    private static final ThreadLocal<ServerTiming> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private ServerTiming() {
+    }
+
+    static ServerTiming begin() {
+        ServerTiming timing = new ServerTiming();
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Start of a phase, or 0 if the current thread is not timing a request
+     */
+    public static long start() {
+        return CURRENT.get() != null ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Add the time since start() to a phase; repeated phases add up
+     */
+    public static void stop(String phase, long startNanos) {
+        if (startNanos != 0L) {
+            record(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Add an already measured duration to a phase
+     */
+    public static void record(String phase, long nanos) {
+        ServerTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.add(phase, nanos);
+        }
+    }
+
+    private synchronized void add(String phase, long nanos) {
+        phases.merge(phase, nanos, Long::sum);
+    }
+
+    /**
+     * Header value with every phase so far plus "total", the time since the request started
+     */
+    synchronized String toHeaderValue() {
+        StringBuilder value = new StringBuilder();
+        phases.forEach((phase, nanos) -> append(value, phase, nanos));
+        append(value, "total", System.nanoTime() - startNanos);
+        return value.toString();
+    }
+
+    private static void append(StringBuilder value, String phase, long nanos) {
+        if (!value.isEmpty()) {
+            value.append(", ");
+        }
+        value.append(phase).append(";dur=").append(String.format(Locale.ROOT, "%.3f", nanos / 1e6));
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.jp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One entry of an archive listing, read from the archive's directory without extracting anything
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ArchiveEntryDTO {
+    private String name;
+    private boolean directory;
+    private Long size;
+    private Long compressedSize;
+    private String compressionMethod;
+    private boolean encrypted;
+    private LocalDateTime lastModified;
+}
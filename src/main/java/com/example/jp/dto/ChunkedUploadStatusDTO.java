@@ -0,0 +1,39 @@
+package com.example.jp.dto;
+
+import com.example.jp.model.ChunkedUploadSession;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for chunked upload session status.
+ * Ranges are [start, end) byte offsets.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkedUploadStatusDTO {
+    private String sessionId;
+    private String fileName;
+    private String folderPath;
+    private Long totalSize;
+    private Long receivedBytes;
+    private Boolean complete;
+    private List<long[]> receivedRanges;
+    private List<long[]> missingRanges;
+
+    public static ChunkedUploadStatusDTO fromSession(ChunkedUploadSession session) {
+        ChunkedUploadStatusDTO dto = new ChunkedUploadStatusDTO();
+        dto.setSessionId(session.getSessionId());
+        dto.setFileName(session.getFileName());
+        dto.setFolderPath(session.getFolderPath());
+        dto.setTotalSize(session.getTotalSize());
+        dto.setReceivedBytes(session.getReceivedBytes());
+        dto.setComplete(session.isComplete());
+        dto.setReceivedRanges(session.getReceivedRanges());
+        dto.setMissingRanges(session.getMissingRanges());
+        return dto;
+    }
+}
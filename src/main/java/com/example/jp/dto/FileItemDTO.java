@@ -1,10 +1,12 @@
 package com.example.jp.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -19,5 +21,8 @@ public class FileItemDTO {
     private String extension;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    // Format-specific fields from the metadata catalog (dimensions, duration, page count, ...)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, Object> metadata;
 }
 
@@ -1,6 +1,7 @@
 package com.example.jp.dto;
 
 import com.example.jp.model.FileUploadTask;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -15,6 +16,8 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class FileUploadTaskDTO {
     private String taskId;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String groupId;
     private String fileName;
     private String folderPath;
     private String status;
@@ -29,6 +32,7 @@ public class FileUploadTaskDTO {
     public static FileUploadTaskDTO fromTask(FileUploadTask task) {
         FileUploadTaskDTO dto = new FileUploadTaskDTO();
         dto.setTaskId(task.getTaskId());
+        dto.setGroupId(task.getGroupId());
         dto.setFileName(task.getFileName());
         dto.setFolderPath(task.getFolderPath());
         dto.setStatus(task.getStatus() != null ? task.getStatus().name() : null);
@@ -39,10 +43,8 @@ public class FileUploadTaskDTO {
         dto.setEndTime(task.getEndTime());
         dto.setProgressPercent(task.getProgressPercent());
         
-        if (task.getStartTime() != null && task.getEndTime() != null) {
-            dto.setDurationMs(
-                java.time.Duration.between(task.getStartTime(), task.getEndTime()).toMillis()
-            );
+        if (task.getEndTimeMillis() > 0) {
+            dto.setDurationMs(task.getEndTimeMillis() - task.getStartTimeMillis());
         }
         
         return dto;
@@ -1,5 +1,6 @@
 package com.example.jp.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -12,5 +13,9 @@ import java.util.List;
 public class FolderContentsDTO {
     private List<FolderDTO> folders;
     private List<FileItemDTO> files;
+
+    // Only set for paged listings; pass it back as the cursor to get the next page
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
 }
 
@@ -0,0 +1,27 @@
+package com.example.jp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One entry of a streamed folder listing: either a folder or a file
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FolderEntryDTO {
+    private String type; // "folder" or "file"
+    private FolderDTO folder;
+    private FileItemDTO file;
+
+    public static FolderEntryDTO ofFolder(FolderDTO folder) {
+        return new FolderEntryDTO("folder", folder, null);
+    }
+
+    public static FolderEntryDTO ofFile(FileItemDTO file) {
+        return new FolderEntryDTO("file", null, file);
+    }
+}
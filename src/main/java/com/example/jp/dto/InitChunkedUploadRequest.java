@@ -0,0 +1,15 @@
+package com.example.jp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InitChunkedUploadRequest {
+    private String fileName;
+    private String folderPath;
+    private Long totalSize;
+    private String contentType;
+}
@@ -0,0 +1,23 @@
+package com.example.jp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for upload task registry occupancy and eviction counters
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskRegistryStatsDTO {
+    private Integer size;
+    private Integer maxEntries;
+    private Long ttlMillis;
+    private Integer activeTasks;
+    private Integer terminalTasks;
+    private Long evictedExpired;
+    private Long evictedOverflow;
+    private Long removedByClient;
+    private Long failedStuck;
+}
@@ -0,0 +1,21 @@
+package com.example.jp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for one tenant's share of a background work scheduler
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TenantQueueStatsDTO {
+    private String scheduler;
+    private String tenant;
+    private Integer weight;
+    private Integer queued;
+    private Integer running;
+    private Long completed;
+    private Double averageServiceMillis;
+}
@@ -0,0 +1,61 @@
+package com.example.jp.event;
+
+/**
+ * Published when a file or folder under the storage root is created, modified or deleted.
+ * The path is relative to the storage root.
+ */
+public class StorageChangeEvent {
+
+    public enum Kind {
+        CREATED,
+        MODIFIED,
+        DELETED
+    }
+
+    private final Kind kind;
+    private final String path;
+    private final boolean directory;
+
+    public StorageChangeEvent(Kind kind, String path, boolean directory) {
+        this.kind = kind;
+        this.path = path;
+        this.directory = directory;
+    }
+
+    public static StorageChangeEvent created(String path, boolean directory) {
+        return new StorageChangeEvent(Kind.CREATED, path, directory);
+    }
+
+    public static StorageChangeEvent modified(String path, boolean directory) {
+        return new StorageChangeEvent(Kind.MODIFIED, path, directory);
+    }
+
+    public static StorageChangeEvent deleted(String path, boolean directory) {
+        return new StorageChangeEvent(Kind.DELETED, path, directory);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * Path of the folder containing this entry ("" for the storage root)
+     */
+    public String getParentPath() {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + (directory ? "folder " : "file ") + path;
+    }
+}
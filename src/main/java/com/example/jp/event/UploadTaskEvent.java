@@ -0,0 +1,25 @@
+package com.example.jp.event;
+
+import com.example.jp.model.FileUploadTask;
+
+/**
+ * Published whenever an upload task's status or progress changes.
+ * Carries the live task, so listeners read its current state rather than a copy.
+ */
+public class UploadTaskEvent {
+
+    private final FileUploadTask task;
+
+    public UploadTaskEvent(FileUploadTask task) {
+        this.task = task;
+    }
+
+    public FileUploadTask getTask() {
+        return task;
+    }
+
+    @Override
+    public String toString() {
+        return task.getTaskId() + " " + task.getStatus() + " " + task.getProgressPercent() + "%";
+    }
+}
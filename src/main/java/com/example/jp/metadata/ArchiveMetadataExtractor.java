@@ -0,0 +1,286 @@
+package com.example.jp.metadata;
+
+import com.example.jp.dto.ArchiveEntryDTO;
+import com.example.jp.model.ArchiveFile;
+import com.example.jp.model.FileItem;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Reads entry counts, uncompressed size, compression method and encryption from archives
+ * without extracting them: the ZIP central directory (see ZipCentralDirectory), tar headers
+ * visited by skipping over each entry's data, and the gzip trailer's ISIZE field.
+ */
+@Component
+public class ArchiveMetadataExtractor implements MetadataExtractor {
+
+    private static final byte[] GZIP_SIGNATURE = {0x1f, (byte) 0x8b};
+    private static final byte[] USTAR_MAGIC = {'u', 's', 't', 'a', 'r'};
+
+    private static final int TAR_BLOCK = 512;
+    private static final int MAX_TAR_LONG_NAME = 4096;
+
+    @Override
+    public boolean supports(FileItem item) {
+        return item instanceof ArchiveFile;
+    }
+
+    @Override
+    public void extract(SeekableReader reader, FileItem item) throws IOException {
+        ArchiveFile archive = (ArchiveFile) item;
+
+        long[] files = {0};
+        long[] uncompressed = {0};
+        String[] method = {null};
+        boolean[] encrypted = {false};
+        boolean recognised = walk(reader, item.getName(), entry -> {
+            if (entry.isDirectory()) {
+                return true;
+            }
+            files[0]++;
+            if (entry.getSize() != null) {
+                uncompressed[0] += entry.getSize();
+            }
+            // Archives mixing methods (e.g. stored images next to deflated text) report "Mixed"
+            if (method[0] == null) {
+                method[0] = entry.getCompressionMethod();
+            } else if (!method[0].equals(entry.getCompressionMethod())) {
+                method[0] = "Mixed";
+            }
+            encrypted[0] |= entry.isEncrypted();
+            return true;
+        });
+        if (!recognised) {
+            return;
+        }
+
+        archive.setFileCount((int) Math.min(files[0], Integer.MAX_VALUE));
+        archive.setUncompressedSize(uncompressed[0]);
+        archive.setCompressionMethod(method[0]);
+        archive.setIsEncrypted(encrypted[0]);
+    }
+
+    /**
+     * List entries whose name starts with prefix, at most limit of them.
+     * Returns null if the file is not a recognised archive.
+     */
+    public List<ArchiveEntryDTO> listEntries(SeekableReader reader, String fileName, String prefix, int limit) throws IOException {
+        List<ArchiveEntryDTO> entries = new ArrayList<>();
+        boolean recognised = walk(reader, fileName, entry -> {
+            if (prefix == null || entry.getName().startsWith(prefix)) {
+                entries.add(entry);
+            }
+            return entries.size() < limit;
+        });
+        return recognised ? entries : null;
+    }
+
+    /**
+     * Visit every entry until the visitor returns false. Returns whether the format was recognised.
+     */
+    private boolean walk(SeekableReader reader, String fileName, Predicate<ArchiveEntryDTO> visitor) throws IOException {
+        if (reader.matches(0, GZIP_SIGNATURE)) {
+            walkGzip(reader, fileName, visitor);
+            return true;
+        }
+        if (isTarHeader(reader, 0)) {
+            walkTar(reader, visitor);
+            return true;
+        }
+
+        ZipCentralDirectory directory = ZipCentralDirectory.open(reader);
+        if (directory == null) {
+            return false;
+        }
+        directory.forEach(entry -> visitor.test(new ArchiveEntryDTO(
+                entry.getName(),
+                entry.isDirectory(),
+                entry.getSize(),
+                entry.getCompressedSize(),
+                ZipCentralDirectory.methodName(entry.getMethod()),
+                entry.isEncrypted(),
+                entry.getLastModified())));
+        return true;
+    }
+
+    // ---- tar ----
+
+    private void walkTar(SeekableReader reader, Predicate<ArchiveEntryDTO> visitor) throws IOException {
+        long header = 0;
+        String longName = null;
+        // Two zero blocks (or a truncated file) end the archive
+        while (header + TAR_BLOCK <= reader.size() && reader.u8(header) != 0) {
+            reader.checkDeadline();
+            long size = tarNumber(reader, header + 124, 12);
+            if (size < 0) {
+                throw new IOException("Negative tar entry size at " + header);
+            }
+            char type = (char) reader.u8(header + 156);
+            long data = header + TAR_BLOCK;
+            long current = header;
+            // Only the header is read; the entry's data is skipped in whole blocks
+            header = data + (size + TAR_BLOCK - 1) / TAR_BLOCK * TAR_BLOCK;
+            if (header <= current) {
+                throw new IOException("Tar entry size overflows at " + current);
+            }
+
+            if (type == 'L') {
+                // GNU long name: the data holds the next entry's name
+                longName = tarString(reader, data, (int) Math.min(size, MAX_TAR_LONG_NAME));
+                continue;
+            }
+            if (type == 'x') {
+                String path = paxPath(reader, data, size);
+                longName = path != null ? path : longName;
+                continue;
+            }
+            if (type == 'g' || type == 'K') {
+                continue;
+            }
+
+            String name = longName != null ? longName : tarName(reader, current);
+            longName = null;
+            boolean directory = type == '5' || name.endsWith("/");
+            boolean regular = type == '0' || type == '\0' || type == '7';
+            // Links and devices carry no data of their own
+            Long entrySize = directory ? null : Long.valueOf(regular ? size : 0);
+            ArchiveEntryDTO entry = new ArchiveEntryDTO(
+                    name,
+                    directory,
+                    entrySize,
+                    null,
+                    "None",
+                    false,
+                    dateTime(tarNumber(reader, current + 136, 12)));
+            if (!visitor.test(entry)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Whether a valid tar header starts at position: the stored checksum must match the header's bytes
+     */
+    private boolean isTarHeader(SeekableReader reader, long position) throws IOException {
+        if (position + TAR_BLOCK > reader.size() || reader.u8(position) == 0) {
+            return false;
+        }
+        if (reader.matches(position + 257, USTAR_MAGIC)) {
+            return true;
+        }
+        // Pre-POSIX (v7) archives have no magic; checksum fields count as spaces
+        byte[] header = reader.bytes(position, TAR_BLOCK);
+        long sum = 0;
+        for (int i = 0; i < TAR_BLOCK; i++) {
+            sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+        }
+        return sum == tarNumber(reader, position + 148, 8);
+    }
+
+    private String tarName(SeekableReader reader, long header) throws IOException {
+        String name = tarString(reader, header, 100);
+        if (reader.matches(header + 257, USTAR_MAGIC)) {
+            String prefix = tarString(reader, header + 345, 155);
+            if (!prefix.isEmpty()) {
+                return prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    private String tarString(SeekableReader reader, long position, int length) throws IOException {
+        byte[] bytes = reader.bytes(position, length);
+        int end = 0;
+        while (end < bytes.length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, 0, end, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Octal number field, or base-256 when the high bit of the first byte is set (GNU, sizes over 8 GB)
+     */
+    private long tarNumber(SeekableReader reader, long position, int length) throws IOException {
+        if ((reader.u8(position) & 0x80) != 0) {
+            return reader.u64be(position + length - 8);
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            int c = reader.u8(position + i);
+            if (c >= '0' && c <= '7') {
+                value = value * 8 + (c - '0');
+            } else if (c != ' ' || value != 0) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * The path record of a pax extended header ("NN path=value\n" lines), if present
+     */
+    private String paxPath(SeekableReader reader, long data, long size) throws IOException {
+        if (size > MAX_TAR_LONG_NAME) {
+            return null;
+        }
+        String records = new String(reader.bytes(data, (int) size), StandardCharsets.UTF_8);
+        for (String line : records.split("\n")) {
+            int key = line.indexOf(" path=");
+            if (key >= 0) {
+                return line.substring(key + 6);
+            }
+        }
+        return null;
+    }
+
+    // ---- gzip ----
+
+    private void walkGzip(SeekableReader reader, String fileName, Predicate<ArchiveEntryDTO> visitor) throws IOException {
+        int flags = reader.u8(3);
+        long mtime = reader.u32le(4);
+
+        // The original name follows the optional FEXTRA field
+        String name = null;
+        long position = 10;
+        if ((flags & 0x04) != 0) {
+            position += 2 + reader.u16le(position);
+            if (position > reader.size()) {
+                throw new IOException("gzip extra field runs past end of file");
+            }
+        }
+        if ((flags & 0x08) != 0) {
+            name = tarString(reader, position, (int) Math.min(MAX_TAR_LONG_NAME, reader.size() - position));
+        }
+        if (name == null || name.isEmpty()) {
+            name = fileName.replaceFirst("(?i)\\.t?gz(ip)?$", fileName.toLowerCase().endsWith(".tgz") ? ".tar" : "");
+        }
+
+        // ISIZE is the uncompressed length modulo 2^32 of the last member
+        Long size = reader.size() >= 18 ? reader.u32le(reader.size() - 4) : null;
+        visitor.test(new ArchiveEntryDTO(
+                name,
+                false,
+                size,
+                reader.size(),
+                "Deflate",
+                false,
+                mtime == 0 ? null : dateTime(mtime)));
+    }
+
+    private static LocalDateTime dateTime(long epochSecond) throws IOException {
+        try {
+            return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+        } catch (DateTimeException e) {
+            throw new IOException("Modification time out of range: " + epochSecond, e);
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package com.example.jp.metadata;
+
+import com.example.jp.model.AudioFile;
+import com.example.jp.model.FileItem;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads duration, bitrate, sample rate and artist / album / genre tags from audio files.
+ * Only a bounded prefix and suffix of each file is read:
+ * MP3 - ID3v2 frames, the first MPEG frame header with its Xing/Info or VBRI header, ID3v1;
+ * FLAC - STREAMINFO and VORBIS_COMMENT blocks;
+ * WAV - the fmt, data and LIST/INFO chunks;
+ * Ogg Vorbis / Opus - identification and comment headers plus the granule position of the last page.
+ */
+@Component
+public class AudioMetadataExtractor implements MetadataExtractor {
+
+    private static final byte[] ID3_SIGNATURE = {'I', 'D', '3'};
+    private static final byte[] FLAC_SIGNATURE = {'f', 'L', 'a', 'C'};
+    private static final byte[] RIFF_SIGNATURE = {'R', 'I', 'F', 'F'};
+    private static final byte[] WAVE_SIGNATURE = {'W', 'A', 'V', 'E'};
+    private static final byte[] OGG_SIGNATURE = {'O', 'g', 'g', 'S'};
+    private static final byte[] ID3V1_SIGNATURE = {'T', 'A', 'G'};
+
+    // Bounds on how much of a file is looked at
+    private static final int MAX_FRAME_SYNC_SCAN = 64 * 1024;
+    private static final int MAX_TAG_FRAMES = 512;
+    private static final int MAX_TEXT_LENGTH = 1024;
+    private static final int MAX_COMMENTS = 256;
+    private static final int MAX_CHUNKS = 1024;
+    private static final int OGG_TAIL_SCAN = 64 * 1024;
+
+    private static final int[][] MPEG_BITRATES = {
+        // MPEG-1 layer I, II, III
+        {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+        {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+        // MPEG-2/2.5 layer I, II/III
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+        {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+    };
+    private static final int[] MPEG1_SAMPLE_RATES = {44100, 48000, 32000};
+
+    private static final String[] ID3V1_GENRES = {
+        "Blues", "Classic Rock", "Country", "Dance", "Disco", "Funk", "Grunge", "Hip-Hop", "Jazz", "Metal",
+        "New Age", "Oldies", "Other", "Pop", "R&B", "Rap", "Reggae", "Rock", "Techno", "Industrial",
+        "Alternative", "Ska", "Death Metal", "Pranks", "Soundtrack", "Euro-Techno", "Ambient", "Trip-Hop",
+        "Vocal", "Jazz+Funk", "Fusion", "Trance", "Classical", "Instrumental", "Acid", "House", "Game",
+        "Sound Clip", "Gospel", "Noise", "AlternRock", "Bass", "Soul", "Punk", "Space", "Meditative",
+        "Instrumental Pop", "Instrumental Rock", "Ethnic", "Gothic", "Darkwave", "Techno-Industrial",
+        "Electronic", "Pop-Folk", "Eurodance", "Dream", "Southern Rock", "Comedy", "Cult", "Gangsta",
+        "Top 40", "Christian Rap", "Pop/Funk", "Jungle", "Native American", "Cabaret", "New Wave",
+        "Psychadelic", "Rave", "Showtunes", "Trailer", "Lo-Fi", "Tribal", "Acid Punk", "Acid Jazz", "Polka",
+        "Retro", "Musical", "Rock & Roll", "Hard Rock",
+    };
+
+    @Override
+    public boolean supports(FileItem item) {
+        return item instanceof AudioFile;
+    }
+
+    @Override
+    public void extract(SeekableReader reader, FileItem item) throws IOException {
+        AudioFile audio = (AudioFile) item;
+
+        if (reader.matches(0, FLAC_SIGNATURE)) {
+            readFlac(reader, audio);
+        } else if (reader.matches(0, RIFF_SIGNATURE) && reader.matches(8, WAVE_SIGNATURE)) {
+            readWav(reader, audio);
+        } else if (reader.matches(0, OGG_SIGNATURE)) {
+            readOgg(reader, audio);
+        } else {
+            readMp3(reader, audio);
+        }
+    }
+
+    // ---- MP3 ----
+
+    private void readMp3(SeekableReader reader, AudioFile audio) throws IOException {
+        long audioStart = 0;
+        if (reader.matches(0, ID3_SIGNATURE)) {
+            audioStart = readId3v2(reader, audio);
+        }
+
+        long audioEnd = reader.size();
+        if (reader.size() >= 128 && reader.matches(reader.size() - 128, ID3V1_SIGNATURE)) {
+            readId3v1(reader, reader.size() - 128, audio);
+            audioEnd -= 128;
+        }
+
+        long frame = findFrameSync(reader, audioStart, audioEnd);
+        if (frame < 0) {
+            return;
+        }
+
+        int b1 = reader.u8(frame + 1);
+        int b2 = reader.u8(frame + 2);
+        int b3 = reader.u8(frame + 3);
+        int version = (b1 >> 3) & 3;     // 0 = 2.5, 2 = 2, 3 = 1
+        int layer = 4 - ((b1 >> 1) & 3);  // 1, 2 or 3
+        boolean mpeg1 = version == 3;
+        boolean mono = (b3 >> 6) == 3;
+
+        int sampleRate = MPEG1_SAMPLE_RATES[(b2 >> 2) & 3] >> (mpeg1 ? 0 : version == 2 ? 1 : 2);
+        int bitrateRow = mpeg1 ? layer - 1 : layer == 1 ? 3 : 4;
+        int bitrateKbps = MPEG_BITRATES[bitrateRow][b2 >> 4];
+        int samplesPerFrame = layer == 1 ? 384 : layer == 3 && !mpeg1 ? 576 : 1152;
+        audio.setSampleRate(sampleRate);
+
+        // VBR files carry the frame count in a Xing/Info header inside the first frame
+        long frames = -1;
+        long bytes = -1;
+        long xing = frame + 4 + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+        long vbri = frame + 4 + 32;
+        boolean vbr = false;
+        if (xing + 16 <= audioEnd && (reader.ascii(xing, 4).equals("Xing") || reader.ascii(xing, 4).equals("Info"))) {
+            vbr = reader.ascii(xing, 4).equals("Xing");
+            long flags = reader.u32be(xing + 4);
+            long field = xing + 8;
+            if ((flags & 1) != 0) {
+                frames = reader.u32be(field);
+                field += 4;
+            }
+            if ((flags & 2) != 0) {
+                bytes = reader.u32be(field);
+            }
+        } else if (vbri + 18 <= audioEnd && reader.ascii(vbri, 4).equals("VBRI")) {
+            vbr = true;
+            bytes = reader.u32be(vbri + 10);
+            frames = reader.u32be(vbri + 14);
+        }
+
+        double seconds;
+        if (frames > 0) {
+            seconds = (double) frames * samplesPerFrame / sampleRate;
+            long streamBytes = bytes > 0 ? bytes : audioEnd - frame;
+            bitrateKbps = (int) Math.round(streamBytes * 8 / seconds / 1000);
+        } else if (bitrateKbps > 0) {
+            // Constant bitrate: duration follows from the stream length
+            seconds = (audioEnd - frame) * 8.0 / (bitrateKbps * 1000);
+        } else {
+            return;
+        }
+
+        audio.setDurationSeconds((int) Math.round(seconds));
+        audio.setBitrate(vbr ? bitrateKbps + " kbps (VBR)" : bitrateKbps + " kbps");
+    }
+
+    private long findFrameSync(SeekableReader reader, long start, long end) throws IOException {
+        long limit = Math.min(end - 4, start + MAX_FRAME_SYNC_SCAN);
+        for (long position = start; position <= limit; position++) {
+            if (reader.u8(position) != 0xff) {
+                continue;
+            }
+            int b1 = reader.u8(position + 1);
+            int b2 = reader.u8(position + 2);
+            boolean sync = (b1 & 0xe0) == 0xe0;
+            boolean validVersion = ((b1 >> 3) & 3) != 1;
+            boolean validLayer = ((b1 >> 1) & 3) != 0;
+            boolean validBitrate = (b2 >> 4) != 15;
+            boolean validSampleRate = ((b2 >> 2) & 3) != 3;
+            if (sync && validVersion && validLayer && validBitrate && validSampleRate) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read ID3v2 text frames and return the position just past the tag
+     */
+    private long readId3v2(SeekableReader reader, AudioFile audio) throws IOException {
+        int major = reader.u8(3);
+        int flags = reader.u8(5);
+        long tagEnd = 10 + syncsafe(reader, 6) + ((flags & 0x10) != 0 ? 10 : 0);
+        long tagLimit = Math.min(tagEnd, reader.size());
+
+        long position = 10;
+        if ((flags & 0x40) != 0 && major >= 3) {
+            // Extended header: v2.4 size includes itself, v2.3 size excludes its 4 bytes
+            position += major == 4 ? syncsafe(reader, position) : reader.u32be(position) + 4;
+        }
+
+        boolean v22 = major == 2;
+        int headerSize = v22 ? 6 : 10;
+        for (int i = 0; i < MAX_TAG_FRAMES && position + headerSize <= tagLimit; i++) {
+            reader.checkDeadline();
+            if (reader.u8(position) == 0) {
+                // Padding
+                break;
+            }
+            String id = reader.ascii(position, v22 ? 3 : 4);
+            long size = v22 ? (reader.u16be(position + 3) << 8 | reader.u8(position + 5))
+                    : major == 4 ? syncsafe(reader, position + 4) : reader.u32be(position + 4);
+            long content = position + headerSize;
+            if (size <= 0 || content + size > tagLimit) {
+                break;
+            }
+
+            switch (id) {
+                case "TPE1", "TP1" -> audio.setArtist(id3Text(reader, content, size));
+                case "TALB", "TAL" -> audio.setAlbum(id3Text(reader, content, size));
+                case "TCON", "TCO" -> audio.setGenre(genreName(id3Text(reader, content, size)));
+                default -> {
+                    // Other frames, including pictures, are skipped without being read
+                }
+            }
+            position = content + size;
+        }
+        return tagEnd;
+    }
+
+    private void readId3v1(SeekableReader reader, long tag, AudioFile audio) throws IOException {
+        if (audio.getArtist() == null) {
+            audio.setArtist(fixedText(reader, tag + 33, 30));
+        }
+        if (audio.getAlbum() == null) {
+            audio.setAlbum(fixedText(reader, tag + 63, 30));
+        }
+        int genre = reader.u8(tag + 127);
+        if (audio.getGenre() == null && genre < ID3V1_GENRES.length) {
+            audio.setGenre(ID3V1_GENRES[genre]);
+        }
+    }
+
+    private long syncsafe(SeekableReader reader, long position) throws IOException {
+        return (long) reader.u8(position) << 21 | reader.u8(position + 1) << 14
+                | reader.u8(position + 2) << 7 | reader.u8(position + 3);
+    }
+
+    private String id3Text(SeekableReader reader, long content, long size) throws IOException {
+        int length = (int) Math.min(size - 1, MAX_TEXT_LENGTH);
+        if (length <= 0) {
+            return null;
+        }
+        Charset charset = switch (reader.u8(content)) {
+            case 1 -> StandardCharsets.UTF_16;
+            case 2 -> StandardCharsets.UTF_16BE;
+            case 3 -> StandardCharsets.UTF_8;
+            default -> StandardCharsets.ISO_8859_1;
+        };
+        String text = new String(reader.bytes(content + 1, length), charset);
+        // Multiple values are null separated; keep the first
+        int nul = text.indexOf('\0');
+        return blankToNull(nul >= 0 ? text.substring(0, nul) : text);
+    }
+
+    private String fixedText(SeekableReader reader, long position, int length) throws IOException {
+        String text = new String(reader.bytes(position, length), StandardCharsets.ISO_8859_1);
+        int nul = text.indexOf('\0');
+        return blankToNull(nul >= 0 ? text.substring(0, nul) : text);
+    }
+
+    /**
+     * Resolve ID3 genre references like "(17)" or "17" to names
+     */
+    private String genreName(String genre) {
+        if (genre == null) {
+            return null;
+        }
+        String reference = genre.startsWith("(") && genre.indexOf(')') > 0
+                ? genre.substring(1, genre.indexOf(')'))
+                : genre;
+        if (!reference.isEmpty() && reference.length() <= 3 && reference.chars().allMatch(Character::isDigit)) {
+            int index = Integer.parseInt(reference);
+            if (index < ID3V1_GENRES.length) {
+                return ID3V1_GENRES[index];
+            }
+        }
+        // "(17)Rock" style refinements carry the name after the reference
+        return genre.startsWith("(") && genre.indexOf(')') + 1 < genre.length()
+                ? genre.substring(genre.indexOf(')') + 1)
+                : genre;
+    }
+
+    // ---- FLAC ----
+
+    private void readFlac(SeekableReader reader, AudioFile audio) throws IOException {
+        long position = 4;
+        for (int i = 0; i < MAX_CHUNKS && position + 4 <= reader.size(); i++) {
+            reader.checkDeadline();
+            int header = reader.u8(position);
+            boolean last = (header & 0x80) != 0;
+            int type = header & 0x7f;
+            long length = (long) reader.u16be(position + 1) << 8 | reader.u8(position + 3);
+            long content = position + 4;
+
+            if (type == 0 && length >= 18) {
+                // STREAMINFO: 20-bit sample rate, 3-bit channels, 5-bit depth, 36-bit sample count
+                long packed = reader.u64be(content + 10);
+                int sampleRate = (int) (packed >>> 44);
+                long totalSamples = packed & 0xfffffffffL;
+                audio.setSampleRate(sampleRate);
+                if (sampleRate > 0 && totalSamples > 0) {
+                    double seconds = (double) totalSamples / sampleRate;
+                    audio.setDurationSeconds((int) Math.round(seconds));
+                    audio.setBitrate(Math.round(reader.size() * 8 / seconds / 1000) + " kbps");
+                }
+            } else if (type == 4) {
+                readVorbisComments(reader, content, content + length, audio);
+            }
+
+            if (last) {
+                break;
+            }
+            position = content + length;
+        }
+    }
+
+    /**
+     * Vorbis comment block as used by FLAC and Ogg: vendor string, then KEY=value pairs
+     */
+    private void readVorbisComments(SeekableReader reader, long start, long end, AudioFile audio) throws IOException {
+        long position = start + 4 + reader.u32le(start);
+        if (position + 4 > end) {
+            return;
+        }
+        long count = Math.min(reader.u32le(position), MAX_COMMENTS);
+        position += 4;
+
+        for (int i = 0; i < count && position + 4 <= end; i++) {
+            reader.checkDeadline();
+            long length = reader.u32le(position);
+            position += 4;
+            if (position + length > end) {
+                break;
+            }
+            if (length <= MAX_TEXT_LENGTH) {
+                String comment = new String(reader.bytes(position, (int) length), StandardCharsets.UTF_8);
+                int separator = comment.indexOf('=');
+                if (separator > 0) {
+                    String value = blankToNull(comment.substring(separator + 1));
+                    switch (comment.substring(0, separator).toUpperCase()) {
+                        case "ARTIST" -> audio.setArtist(value);
+                        case "ALBUM" -> audio.setAlbum(value);
+                        case "GENRE" -> audio.setGenre(value);
+                        default -> {
+                        }
+                    }
+                }
+            }
+            // Longer comments (embedded cover art) are skipped
+            position += length;
+        }
+    }
+
+    // ---- WAV ----
+
+    private void readWav(SeekableReader reader, AudioFile audio) throws IOException {
+        long byteRate = 0;
+        long dataSize = -1;
+
+        long position = 12;
+        for (int i = 0; i < MAX_CHUNKS && position + 8 <= reader.size(); i++) {
+            reader.checkDeadline();
+            String id = reader.ascii(position, 4);
+            long size = reader.u32le(position + 4);
+            long content = position + 8;
+
+            switch (id) {
+                case "fmt " -> {
+                    audio.setSampleRate((int) reader.u32le(content + 4));
+                    byteRate = reader.u32le(content + 8);
+                }
+                case "data" -> dataSize = Math.min(size, reader.size() - content);
+                case "LIST" -> {
+                    if (reader.ascii(content, 4).equals("INFO")) {
+                        readRiffInfo(reader, content + 4, Math.min(content + size, reader.size()), audio);
+                    }
+                }
+                default -> {
+                }
+            }
+            // Chunks are word aligned
+            position = content + size + (size & 1);
+        }
+
+        if (byteRate > 0) {
+            audio.setBitrate(byteRate * 8 / 1000 + " kbps");
+            if (dataSize >= 0) {
+                audio.setDurationSeconds((int) Math.round((double) dataSize / byteRate));
+            }
+        }
+    }
+
+    private void readRiffInfo(SeekableReader reader, long start, long end, AudioFile audio) throws IOException {
+        long position = start;
+        for (int i = 0; i < MAX_CHUNKS && position + 8 <= end; i++) {
+            reader.checkDeadline();
+            String id = reader.ascii(position, 4);
+            long size = reader.u32le(position + 4);
+            long content = position + 8;
+            if (content + size > end) {
+                break;
+            }
+            if (size <= MAX_TEXT_LENGTH) {
+                switch (id) {
+                    case "IART" -> audio.setArtist(fixedText(reader, content, (int) size));
+                    case "IPRD" -> audio.setAlbum(fixedText(reader, content, (int) size));
+                    case "IGNR" -> audio.setGenre(fixedText(reader, content, (int) size));
+                    default -> {
+                    }
+                }
+            }
+            position = content + size + (size & 1);
+        }
+    }
+
+    // ---- Ogg ----
+
+    private void readOgg(SeekableReader reader, AudioFile audio) throws IOException {
+        long firstPacket = oggPageData(reader, 0);
+        long serial = reader.u32le(14);
+
+        boolean opus;
+        long sampleRate;
+        long preSkip = 0;
+        long nominalBitrate = 0;
+        if (reader.matches(firstPacket, "\u0001vorbis".getBytes(StandardCharsets.ISO_8859_1))) {
+            opus = false;
+            sampleRate = reader.u32le(firstPacket + 12);
+            nominalBitrate = reader.i32le(firstPacket + 20);
+        } else if (reader.matches(firstPacket, "OpusHead".getBytes(StandardCharsets.ISO_8859_1))) {
+            opus = true;
+            preSkip = reader.u16le(firstPacket + 10);
+            // Opus always runs at 48 kHz; the header records the original input rate
+            sampleRate = 48000;
+            long inputRate = reader.u32le(firstPacket + 12);
+            audio.setSampleRate((int) (inputRate > 0 ? inputRate : sampleRate));
+        } else {
+            return;
+        }
+        if (!opus) {
+            audio.setSampleRate((int) sampleRate);
+        }
+
+        // The comment header starts the second page
+        long secondPage = firstPacket + oggPageDataLength(reader, 0);
+        if (secondPage + 27 <= reader.size() && reader.matches(secondPage, OGG_SIGNATURE)) {
+            long commentPacket = oggPageData(reader, secondPage);
+            long pageEnd = commentPacket + oggPageDataLength(reader, secondPage);
+            int magic = opus ? 8 : 7;
+            readVorbisComments(reader, commentPacket + magic, pageEnd, audio);
+        }
+
+        long granule = lastGranule(reader, serial);
+        if (granule > preSkip && sampleRate > 0) {
+            double seconds = (double) (granule - preSkip) / sampleRate;
+            audio.setDurationSeconds((int) Math.round(seconds));
+            long kbps = nominalBitrate > 0 ? nominalBitrate / 1000 : Math.round(reader.size() * 8 / seconds / 1000);
+            audio.setBitrate(kbps + " kbps");
+        }
+    }
+
+    private long oggPageData(SeekableReader reader, long page) throws IOException {
+        return page + 27 + reader.u8(page + 26);
+    }
+
+    private long oggPageDataLength(SeekableReader reader, long page) throws IOException {
+        int segments = reader.u8(page + 26);
+        long length = 0;
+        for (int i = 0; i < segments; i++) {
+            length += reader.u8(page + 27 + i);
+        }
+        return length;
+    }
+
+    /**
+     * Granule position of the stream's last page, found by scanning back from the end of the file
+     */
+    private long lastGranule(SeekableReader reader, long serial) throws IOException {
+        long scanStart = Math.max(0, reader.size() - OGG_TAIL_SCAN);
+        byte[] tail = reader.bytes(scanStart, (int) (reader.size() - scanStart));
+        for (int i = tail.length - 27; i >= 0; i--) {
+            if (tail[i] == 'O' && tail[i + 1] == 'g' && tail[i + 2] == 'g' && tail[i + 3] == 'S'
+                    && reader.u32le(scanStart + i + 14) == serial) {
+                long granule = reader.u64le(scanStart + i + 6);
+                if (granule >= 0) {
+                    return granule;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String blankToNull(String text) {
+        if (text == null) {
+            return null;
+        }
+        String trimmed = text.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.jp.metadata;
+
+import com.example.jp.model.DocumentFile;
+import com.example.jp.model.FileItem;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads document page counts: PDF through PdfPageCounter, and Office Open XML (docx, pptx, xlsx)
+ * and OpenDocument text files from the one small properties part they keep in their ZIP container,
+ * located through the central directory. Spreadsheets report their worksheet count.
+ */
+@Component
+public class DocumentMetadataExtractor implements MetadataExtractor {
+
+    private static final String OOXML_PROPERTIES = "docProps/app.xml";
+    private static final String ODF_PROPERTIES = "meta.xml";
+    private static final int MAX_PROPERTIES_SIZE = 1024 * 1024;
+
+    private static final Pattern PAGES = Pattern.compile("<(?:\\w+:)?Pages>(\\d+)<");
+    private static final Pattern SLIDES = Pattern.compile("<(?:\\w+:)?Slides>(\\d+)<");
+    // HeadingPairs alternates a (localized) part name with its count; worksheets come first
+    private static final Pattern WORKSHEETS = Pattern.compile("<HeadingPairs>.*?<vt:i4>(\\d+)<", Pattern.DOTALL);
+    private static final Pattern ODF_PAGE_COUNT = Pattern.compile("meta:page-count=\"(\\d+)\"");
+
+    @Override
+    public boolean supports(FileItem item) {
+        return item instanceof DocumentFile;
+    }
+
+    @Override
+    public void extract(SeekableReader reader, FileItem item) throws IOException {
+        DocumentFile document = (DocumentFile) item;
+
+        if (PdfPageCounter.isPdf(reader)) {
+            document.setPageCount(PdfPageCounter.count(reader));
+            return;
+        }
+
+        String extension = item.getExtension();
+        if (!extension.matches("docx|pptx|xlsx|odt")) {
+            return;
+        }
+        ZipCentralDirectory directory = ZipCentralDirectory.open(reader);
+        if (directory == null) {
+            return;
+        }
+
+        ZipCentralDirectory.Entry entry = directory.find(extension.equals("odt") ? ODF_PROPERTIES : OOXML_PROPERTIES);
+        byte[] content = entry != null ? ZipCentralDirectory.readContent(reader, entry, MAX_PROPERTIES_SIZE) : null;
+        if (content == null) {
+            return;
+        }
+
+        String xml = new String(content, StandardCharsets.UTF_8);
+        Pattern pattern = switch (extension) {
+            case "docx" -> PAGES;
+            case "pptx" -> SLIDES;
+            case "xlsx" -> WORKSHEETS;
+            default -> ODF_PAGE_COUNT;
+        };
+        Matcher matcher = pattern.matcher(xml);
+        if (matcher.find()) {
+            String count = matcher.group(1);
+            // Beyond nine digits it would not fit an int and is not a real page count
+            if (count.length() > 9) {
+                throw new IOException("Page count out of range: " + count);
+            }
+            document.setPageCount(Integer.parseInt(count));
+        }
+    }
+}
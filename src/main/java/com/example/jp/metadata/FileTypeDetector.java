@@ -0,0 +1,353 @@
+package com.example.jp.metadata;
+
+import com.example.jp.event.StorageChangeEvent;
+import com.example.jp.model.FileCategory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Determines a file's category and MIME type from its extension and the signature in its first bytes,
+ * so mislabeled files (a PNG named .txt, a ZIP named .pdf) are typed by what they contain.
+ * Signatures live in a byte trie with wildcard edges (for magic at an offset, like RIFF forms or tar's
+ * "ustar"); the longest matching signature wins. Results are cached by path, size and mtime.
+ */
+@Component
+public class FileTypeDetector {
+
+    public static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+
+    private static final Map<String, String> MIME_TYPES = new HashMap<>();
+
+    static {
+        mime("application/pdf", "pdf");
+        mime("application/msword", "doc");
+        mime("application/vnd.openxmlformats-officedocument.wordprocessingml.document", "docx");
+        mime("text/plain", "txt", "log");
+        mime("application/rtf", "rtf");
+        mime("application/vnd.oasis.opendocument.text", "odt");
+        mime("application/vnd.ms-excel", "xls");
+        mime("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx");
+        mime("application/vnd.ms-powerpoint", "ppt");
+        mime("application/vnd.openxmlformats-officedocument.presentationml.presentation", "pptx");
+        mime("text/csv", "csv");
+        mime("image/jpeg", "jpg", "jpeg");
+        mime("image/png", "png");
+        mime("image/gif", "gif");
+        mime("image/svg+xml", "svg");
+        mime("image/bmp", "bmp");
+        mime("image/webp", "webp");
+        mime("image/vnd.microsoft.icon", "ico");
+        mime("image/tiff", "tiff", "tif");
+        mime("video/mp4", "mp4");
+        mime("video/x-msvideo", "avi");
+        mime("video/quicktime", "mov");
+        mime("video/x-matroska", "mkv");
+        mime("video/x-ms-wmv", "wmv");
+        mime("video/x-flv", "flv");
+        mime("video/webm", "webm");
+        mime("video/mpeg", "mpeg", "mpg");
+        mime("video/3gpp", "3gp");
+        mime("audio/mpeg", "mp3");
+        mime("audio/wav", "wav");
+        mime("audio/flac", "flac");
+        mime("audio/aac", "aac");
+        mime("audio/ogg", "ogg");
+        mime("audio/mp4", "m4a");
+        mime("audio/x-ms-wma", "wma");
+        mime("audio/opus", "opus");
+        mime("application/zip", "zip");
+        mime("application/vnd.rar", "rar");
+        mime("application/x-7z-compressed", "7z");
+        mime("application/x-tar", "tar");
+        mime("application/gzip", "gz", "gzip", "tgz");
+        mime("application/x-bzip2", "bz2");
+        mime("application/x-xz", "xz");
+        mime("application/json", "json");
+        mime("application/xml", "xml");
+        mime("text/html", "html", "htm");
+        mime("text/markdown", "md");
+        mime("text/css", "css");
+        mime("text/javascript", "js");
+    }
+
+    private static final int ANY = -1;
+
+    private final Node root = new Node();
+    private int headerLength;
+
+    // Relative path -> type detected at a given size and mtime
+    private final Map<String, CachedType> cache = new ConcurrentHashMap<>();
+
+    // Initialized as well so the detector also works outside the application context
+    @Value("${app.filetype.sniff-content:true}")
+    private boolean sniffContent = true;
+
+    @Value("${app.filetype.cache-size:100000}")
+    private int cacheSize = 100_000;
+
+    public FileTypeDetector() {
+        register(bytes(0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a), "image/png", FileCategory.IMAGE, "png");
+        register(bytes(0xff, 0xd8, 0xff), "image/jpeg", FileCategory.IMAGE, "jpg", "jpeg");
+        register(ascii("GIF87a"), "image/gif", FileCategory.IMAGE, "gif");
+        register(ascii("GIF89a"), "image/gif", FileCategory.IMAGE, "gif");
+        register(concat(ascii("RIFF"), any(4), ascii("WEBP")), "image/webp", FileCategory.IMAGE, "webp");
+        register(ascii("II*\0"), "image/tiff", FileCategory.IMAGE, "tif", "tiff");
+        register(ascii("MM\0*"), "image/tiff", FileCategory.IMAGE, "tif", "tiff");
+        registerWeak(ascii("BM"), "image/bmp", FileCategory.IMAGE, "bmp");
+        registerWeak(bytes(0, 0, 1, 0), "image/vnd.microsoft.icon", FileCategory.IMAGE, "ico");
+
+        // ISO-BMFF: the brand after "ftyp" tells audio-only and QuickTime files apart
+        register(concat(any(4), ascii("ftyp")), "video/mp4", FileCategory.VIDEO, "mp4", "mov", "m4a", "3gp");
+        register(concat(any(4), ascii("ftypqt  ")), "video/quicktime", FileCategory.VIDEO, "mov");
+        register(concat(any(4), ascii("ftypM4A ")), "audio/mp4", FileCategory.AUDIO, "m4a", "mp4");
+        register(concat(any(4), ascii("ftyp3gp")), "video/3gpp", FileCategory.VIDEO, "3gp");
+        register(bytes(0x1a, 0x45, 0xdf, 0xa3), "video/x-matroska", FileCategory.VIDEO, "mkv", "webm");
+        register(concat(ascii("RIFF"), any(4), ascii("AVI ")), "video/x-msvideo", FileCategory.VIDEO, "avi");
+        register(ascii("FLV\1"), "video/x-flv", FileCategory.VIDEO, "flv");
+        register(bytes(0, 0, 1, 0xba), "video/mpeg", FileCategory.VIDEO, "mpeg", "mpg");
+        register(bytes(0, 0, 1, 0xb3), "video/mpeg", FileCategory.VIDEO, "mpeg", "mpg");
+        // ASF holds both Windows Media video and audio
+        register(bytes(0x30, 0x26, 0xb2, 0x75, 0x8e, 0x66, 0xcf, 0x11), "video/x-ms-asf", FileCategory.VIDEO, "wmv", "wma");
+
+        register(ascii("ID3"), "audio/mpeg", FileCategory.AUDIO, "mp3");
+        registerWeak(bytes(0xff, 0xfb), "audio/mpeg", FileCategory.AUDIO, "mp3");
+        registerWeak(bytes(0xff, 0xf3), "audio/mpeg", FileCategory.AUDIO, "mp3");
+        registerWeak(bytes(0xff, 0xf1), "audio/aac", FileCategory.AUDIO, "aac");
+        register(ascii("fLaC"), "audio/flac", FileCategory.AUDIO, "flac");
+        register(ascii("OggS"), "audio/ogg", FileCategory.AUDIO, "ogg", "opus");
+        register(concat(ascii("RIFF"), any(4), ascii("WAVE")), "audio/wav", FileCategory.AUDIO, "wav");
+
+        register(ascii("%PDF-"), "application/pdf", FileCategory.DOCUMENT, "pdf");
+        register(ascii("{\\rtf"), "application/rtf", FileCategory.DOCUMENT, "rtf");
+        // OLE2 compound files are the pre-2007 Office formats
+        register(bytes(0xd0, 0xcf, 0x11, 0xe0, 0xa1, 0xb1, 0x1a, 0xe1), "application/x-ole-storage",
+                FileCategory.DOCUMENT, "doc", "xls", "ppt");
+
+        // Office Open XML and OpenDocument files are ZIP containers
+        register(ascii("PK\3\4"), "application/zip", FileCategory.ARCHIVE, "zip", "docx", "xlsx", "pptx", "odt");
+        register(ascii("PK\5\6"), "application/zip", FileCategory.ARCHIVE, "zip");
+        register(ascii("Rar!\u001a\7"), "application/vnd.rar", FileCategory.ARCHIVE, "rar");
+        register(bytes('7', 'z', 0xbc, 0xaf, 0x27, 0x1c), "application/x-7z-compressed", FileCategory.ARCHIVE, "7z");
+        register(bytes(0x1f, 0x8b), "application/gzip", FileCategory.ARCHIVE, "gz", "gzip", "tgz");
+        register(ascii("BZh"), "application/x-bzip2", FileCategory.ARCHIVE, "bz2");
+        register(bytes(0xfd, '7', 'z', 'X', 'Z', 0), "application/x-xz", FileCategory.ARCHIVE, "xz");
+        register(concat(any(257), ascii("ustar")), "application/x-tar", FileCategory.ARCHIVE, "tar");
+    }
+
+    /**
+     * Type of a file by extension and content. Unreadable or empty files are typed by extension.
+     */
+    public FileType detect(Path file, String relativePath, long size, long mtimeMillis) {
+        CachedType cached = cache.get(relativePath);
+        if (cached != null && cached.size == size && cached.mtimeMillis == mtimeMillis) {
+            return cached.type;
+        }
+
+        FileType type = sniffContent ? sniff(file, FileCategory.extensionOf(file.getFileName().toString())) : null;
+        if (type == null) {
+            type = byExtension(file.getFileName().toString());
+        }
+
+        if (cache.size() >= cacheSize) {
+            // Entries are cheap to recompute; starting over keeps the cache bounded without LRU bookkeeping
+            cache.clear();
+        }
+        cache.put(relativePath, new CachedType(size, mtimeMillis, type));
+        return type;
+    }
+
+    /**
+     * Type of a file by its name alone
+     */
+    public static FileType byExtension(String fileName) {
+        String extension = FileCategory.extensionOf(fileName);
+        return new FileType(FileCategory.forExtension(extension), MIME_TYPES.getOrDefault(extension, DEFAULT_MIME_TYPE));
+    }
+
+    @EventListener
+    public void onStorageChange(StorageChangeEvent event) {
+        if (event.getKind() != StorageChangeEvent.Kind.DELETED) {
+            return;
+        }
+        String path = event.getPath();
+        if (event.isDirectory()) {
+            String prefix = path.isEmpty() ? "" : path + "/";
+            cache.keySet().removeIf(key -> key.startsWith(prefix));
+        } else {
+            cache.remove(path);
+        }
+    }
+
+    /**
+     * Type from the file's signature, or null if the extension should decide
+     */
+    private FileType sniff(Path file, String extension) {
+        byte[] header;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(headerLength, channel.size()));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            header = Arrays.copyOf(buffer.array(), buffer.position());
+        } catch (IOException e) {
+            return null;
+        }
+
+        Signature signature = longestMatch(root, header, 0);
+        if (signature == null || signature.confirms.contains(extension)) {
+            // Nothing recognisable, or the extension names this format (or a more specific one)
+            return null;
+        }
+        if (signature.weak && FileCategory.isKnownExtension(extension)) {
+            // Short signatures also occur at the start of text; only trust them for unknown extensions
+            return null;
+        }
+        return new FileType(signature.category, signature.mimeType);
+    }
+
+    private static Signature longestMatch(Node node, byte[] header, int depth) {
+        Signature best = node.signature;
+        if (depth >= header.length) {
+            return best;
+        }
+        Node exact = node.children != null ? node.children[header[depth] & 0xff] : null;
+        Signature viaExact = exact != null ? longestMatch(exact, header, depth + 1) : null;
+        Signature viaAny = node.any != null ? longestMatch(node.any, header, depth + 1) : null;
+        for (Signature candidate : new Signature[]{viaExact, viaAny}) {
+            if (candidate != null && (best == null || candidate.length > best.length)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private void register(int[] pattern, String mimeType, FileCategory category, String... confirms) {
+        add(pattern, new Signature(pattern.length, mimeType, category, false, Set.of(confirms)));
+    }
+
+    private void registerWeak(int[] pattern, String mimeType, FileCategory category, String... confirms) {
+        add(pattern, new Signature(pattern.length, mimeType, category, true, Set.of(confirms)));
+    }
+
+    private void add(int[] pattern, Signature signature) {
+        Node node = root;
+        for (int value : pattern) {
+            if (value == ANY) {
+                node = node.any != null ? node.any : (node.any = new Node());
+            } else {
+                if (node.children == null) {
+                    node.children = new Node[256];
+                }
+                node = node.children[value] != null ? node.children[value] : (node.children[value] = new Node());
+            }
+        }
+        node.signature = signature;
+        headerLength = Math.max(headerLength, pattern.length);
+    }
+
+    private static void mime(String mimeType, String... extensions) {
+        for (String extension : extensions) {
+            MIME_TYPES.put(extension, mimeType);
+        }
+    }
+
+    private static int[] bytes(int... values) {
+        return values;
+    }
+
+    private static int[] ascii(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        int[] pattern = new int[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            pattern[i] = bytes[i] & 0xff;
+        }
+        return pattern;
+    }
+
+    private static int[] any(int count) {
+        int[] pattern = new int[count];
+        Arrays.fill(pattern, ANY);
+        return pattern;
+    }
+
+    private static int[] concat(int[]... parts) {
+        int[] pattern = new int[0];
+        for (int[] part : parts) {
+            int start = pattern.length;
+            pattern = Arrays.copyOf(pattern, start + part.length);
+            System.arraycopy(part, 0, pattern, start, part.length);
+        }
+        return pattern;
+    }
+
+    /**
+     * A file's category and MIME type
+     */
+    public static final class FileType {
+        private final FileCategory category;
+        private final String mimeType;
+
+        public FileType(FileCategory category, String mimeType) {
+            this.category = category;
+            this.mimeType = mimeType;
+        }
+
+        public FileCategory getCategory() {
+            return category;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+    }
+
+    private static final class Node {
+        private Node[] children;
+        private Node any;
+        private Signature signature;
+    }
+
+    private static final class Signature {
+        private final int length;
+        private final String mimeType;
+        private final FileCategory category;
+        private final boolean weak;
+        // Extensions naming this format or a more specific one stored in it (docx in a ZIP)
+        private final Set<String> confirms;
+
+        Signature(int length, String mimeType, FileCategory category, boolean weak, Set<String> confirms) {
+            this.length = length;
+            this.mimeType = mimeType;
+            this.category = category;
+            this.weak = weak;
+            this.confirms = confirms;
+        }
+    }
+
+    private static final class CachedType {
+        private final long size;
+        private final long mtimeMillis;
+        private final FileType type;
+
+        CachedType(long size, long mtimeMillis, FileType type) {
+            this.size = size;
+            this.mtimeMillis = mtimeMillis;
+            this.type = type;
+        }
+    }
+}
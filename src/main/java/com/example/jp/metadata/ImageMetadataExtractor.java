@@ -0,0 +1,277 @@
+package com.example.jp.metadata;
+
+import com.example.jp.model.FileItem;
+import com.example.jp.model.ImageFile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Reads image dimensions and color information from the file header:
+ * PNG IHDR, JPEG SOF markers, GIF logical screen descriptor, BMP DIB header,
+ * WebP VP8/VP8L/VP8X chunks, TIFF IFD0 and ICO directory.
+ * The format is detected from the leading bytes, not the extension.
+ */
+@Component
+public class ImageMetadataExtractor implements MetadataExtractor {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] JPEG_SIGNATURE = {(byte) 0xff, (byte) 0xd8};
+    private static final byte[] GIF_SIGNATURE = {'G', 'I', 'F', '8'};
+    private static final byte[] BMP_SIGNATURE = {'B', 'M'};
+    private static final byte[] RIFF_SIGNATURE = {'R', 'I', 'F', 'F'};
+    private static final byte[] WEBP_SIGNATURE = {'W', 'E', 'B', 'P'};
+    private static final byte[] TIFF_LE_SIGNATURE = {'I', 'I', 42, 0};
+    private static final byte[] TIFF_BE_SIGNATURE = {'M', 'M', 0, 42};
+    private static final byte[] ICO_SIGNATURE = {0, 0, 1, 0};
+
+    // JPEG markers are followed by a segment length, except these
+    private static final int JPEG_SOS = 0xda;
+    private static final int JPEG_EOI = 0xd9;
+
+    // PNG chunks are never read past this many bytes while looking for tRNS
+    private static final long PNG_CHUNK_SCAN_LIMIT = 64 * 1024;
+
+    @Override
+    public boolean supports(FileItem item) {
+        return item instanceof ImageFile;
+    }
+
+    @Override
+    public void extract(SeekableReader reader, FileItem item) throws IOException {
+        ImageFile image = (ImageFile) item;
+
+        if (reader.matches(0, PNG_SIGNATURE)) {
+            readPng(reader, image);
+        } else if (reader.matches(0, JPEG_SIGNATURE)) {
+            readJpeg(reader, image);
+        } else if (reader.matches(0, GIF_SIGNATURE)) {
+            readGif(reader, image);
+        } else if (reader.matches(0, BMP_SIGNATURE)) {
+            readBmp(reader, image);
+        } else if (reader.matches(0, RIFF_SIGNATURE) && reader.matches(8, WEBP_SIGNATURE)) {
+            readWebp(reader, image);
+        } else if (reader.matches(0, TIFF_LE_SIGNATURE)) {
+            readTiff(reader, image, true);
+        } else if (reader.matches(0, TIFF_BE_SIGNATURE)) {
+            readTiff(reader, image, false);
+        } else if (reader.matches(0, ICO_SIGNATURE)) {
+            readIco(reader, image);
+        }
+    }
+
+    private void readPng(SeekableReader reader, ImageFile image) throws IOException {
+        if (!"IHDR".equals(reader.ascii(12, 4))) {
+            return;
+        }
+        image.setWidth(dimension(reader.u32be(16)));
+        image.setHeight(dimension(reader.u32be(20)));
+
+        int colorType = reader.u8(25);
+        image.setColorSpace(switch (colorType) {
+            case 0 -> "Grayscale";
+            case 2 -> "RGB";
+            case 3 -> "Indexed";
+            case 4 -> "Grayscale+Alpha";
+            case 6 -> "RGBA";
+            default -> null;
+        });
+
+        if (colorType == 4 || colorType == 6) {
+            image.setHasTransparency(true);
+            return;
+        }
+
+        // Other color types are transparent only with a tRNS chunk, which precedes IDAT
+        boolean transparent = false;
+        long position = 33;
+        while (position + 8 <= reader.size() && position < PNG_CHUNK_SCAN_LIMIT) {
+            long length = reader.u32be(position);
+            String type = reader.ascii(position + 4, 4);
+            if (type.equals("tRNS")) {
+                transparent = true;
+                break;
+            }
+            if (type.equals("IDAT") || type.equals("IEND")) {
+                break;
+            }
+            position += 12 + length;
+        }
+        image.setHasTransparency(transparent);
+    }
+
+    private void readJpeg(SeekableReader reader, ImageFile image) throws IOException {
+        long position = 2;
+        while (position + 4 <= reader.size()) {
+            reader.checkDeadline();
+            if (reader.u8(position) != 0xff) {
+                return;
+            }
+            int marker = reader.u8(position + 1);
+            if (marker == 0xff) {
+                // Fill byte
+                position++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7)) {
+                // Standalone markers without a length
+                position += 2;
+                continue;
+            }
+            if (marker == JPEG_SOS || marker == JPEG_EOI) {
+                return;
+            }
+
+            int length = reader.u16be(position + 2);
+            if (isStartOfFrame(marker)) {
+                image.setHeight(reader.u16be(position + 5));
+                image.setWidth(reader.u16be(position + 7));
+                image.setColorSpace(switch (reader.u8(position + 9)) {
+                    case 1 -> "Grayscale";
+                    case 3 -> "YCbCr";
+                    case 4 -> "CMYK";
+                    default -> null;
+                });
+                image.setHasTransparency(false);
+                return;
+            }
+            // Skip the segment (EXIF, ICC profiles, ...) without reading it
+            position += 2 + length;
+        }
+    }
+
+    private boolean isStartOfFrame(int marker) {
+        // SOF0-SOF15 except DHT (C4), JPG (C8) and DAC (CC)
+        return marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc;
+    }
+
+    private void readGif(SeekableReader reader, ImageFile image) throws IOException {
+        image.setWidth(reader.u16le(6));
+        image.setHeight(reader.u16le(8));
+        image.setColorSpace("Indexed");
+    }
+
+    private void readBmp(SeekableReader reader, ImageFile image) throws IOException {
+        long headerSize = reader.u32le(14);
+        int bitsPerPixel;
+        if (headerSize == 12) {
+            // OS/2 BITMAPCOREHEADER
+            image.setWidth(reader.u16le(18));
+            image.setHeight(reader.u16le(20));
+            bitsPerPixel = reader.u16le(24);
+        } else {
+            image.setWidth(dimension(Math.abs((long) reader.i32le(18))));
+            // Negative height means rows are stored top-down
+            image.setHeight(dimension(Math.abs((long) reader.i32le(22))));
+            bitsPerPixel = reader.u16le(28);
+        }
+
+        // Only V4+ headers carry an alpha mask
+        boolean alpha = bitsPerPixel == 32 && headerSize >= 56;
+        image.setColorSpace(bitsPerPixel <= 8 ? "Indexed" : alpha ? "RGBA" : "RGB");
+        image.setHasTransparency(alpha);
+    }
+
+    private void readWebp(SeekableReader reader, ImageFile image) throws IOException {
+        String chunk = reader.ascii(12, 4);
+        switch (chunk) {
+            case "VP8 " -> {
+                // Lossy: key frame header follows the 3-byte start code
+                if (reader.u8(23) != 0x9d || reader.u8(24) != 0x01 || reader.u8(25) != 0x2a) {
+                    return;
+                }
+                image.setWidth(reader.u16le(26) & 0x3fff);
+                image.setHeight(reader.u16le(28) & 0x3fff);
+                image.setColorSpace("YCbCr");
+                image.setHasTransparency(false);
+            }
+            case "VP8L" -> {
+                // Lossless: 14-bit width - 1, 14-bit height - 1, alpha hint
+                if (reader.u8(20) != 0x2f) {
+                    return;
+                }
+                long bits = reader.u32le(21);
+                image.setWidth((int) (bits & 0x3fff) + 1);
+                image.setHeight((int) ((bits >> 14) & 0x3fff) + 1);
+                boolean alpha = ((bits >> 28) & 1) == 1;
+                image.setColorSpace(alpha ? "RGBA" : "RGB");
+                image.setHasTransparency(alpha);
+            }
+            case "VP8X" -> {
+                // Extended: flags, then 24-bit canvas width - 1 and height - 1
+                boolean alpha = (reader.u8(20) & 0x10) != 0;
+                image.setWidth(reader.u24le(24) + 1);
+                image.setHeight(reader.u24le(27) + 1);
+                image.setColorSpace(alpha ? "RGBA" : "RGB");
+                image.setHasTransparency(alpha);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void readTiff(SeekableReader reader, ImageFile image, boolean littleEndian) throws IOException {
+        long ifd = littleEndian ? reader.u32le(4) : reader.u32be(4);
+        int entries = littleEndian ? reader.u16le(ifd) : reader.u16be(ifd);
+
+        Integer photometric = null;
+        boolean extraSamples = false;
+        for (int i = 0; i < entries; i++) {
+            reader.checkDeadline();
+            long entry = ifd + 2 + i * 12L;
+            int tag = littleEndian ? reader.u16le(entry) : reader.u16be(entry);
+            int type = littleEndian ? reader.u16le(entry + 2) : reader.u16be(entry + 2);
+            // SHORT values sit in the first two bytes of the value field, LONG values fill it
+            long value = type == 3
+                    ? (littleEndian ? reader.u16le(entry + 8) : reader.u16be(entry + 8))
+                    : (littleEndian ? reader.u32le(entry + 8) : reader.u32be(entry + 8));
+
+            switch (tag) {
+                case 256 -> image.setWidth(dimension(value));
+                case 257 -> image.setHeight(dimension(value));
+                case 262 -> photometric = (int) value;
+                case 338 -> extraSamples = true;
+                default -> {
+                }
+            }
+        }
+
+        if (photometric != null) {
+            image.setColorSpace(switch (photometric) {
+                case 0, 1 -> "Grayscale";
+                case 2 -> extraSamples ? "RGBA" : "RGB";
+                case 3 -> "Indexed";
+                case 5 -> "CMYK";
+                case 6 -> "YCbCr";
+                case 8 -> "CIELab";
+                default -> null;
+            });
+        }
+        image.setHasTransparency(extraSamples);
+    }
+
+    private void readIco(SeekableReader reader, ImageFile image) throws IOException {
+        if (reader.u16le(4) == 0) {
+            return;
+        }
+        // First directory entry; a stored 0 means 256 pixels
+        int width = reader.u8(6);
+        int height = reader.u8(7);
+        image.setWidth(width == 0 ? 256 : width);
+        image.setHeight(height == 0 ? 256 : height);
+
+        boolean alpha = reader.u16le(12) == 32;
+        image.setColorSpace(alpha ? "RGBA" : "Indexed");
+        image.setHasTransparency(alpha);
+    }
+
+    /**
+     * A width or height as an int; a larger one means the header is corrupt
+     */
+    private static int dimension(long value) throws IOException {
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Image dimension out of range: " + value);
+        }
+        return (int) value;
+    }
+}
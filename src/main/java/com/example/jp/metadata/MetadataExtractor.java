@@ -0,0 +1,23 @@
+package com.example.jp.metadata;
+
+import com.example.jp.model.FileItem;
+
+import java.io.IOException;
+
+/**
+ * Reads format-specific metadata from a file's headers into its FileItem.
+ * Implementations read only the bytes they need through the SeekableReader
+ * and never decode the file's content.
+ */
+public interface MetadataExtractor {
+
+    /**
+     * Whether this extractor handles the given file type
+     */
+    boolean supports(FileItem item);
+
+    /**
+     * Fill in the item's metadata. Unrecognised or truncated files leave the item unchanged.
+     */
+    void extract(SeekableReader reader, FileItem item) throws IOException;
+}
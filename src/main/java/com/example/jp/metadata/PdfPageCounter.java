@@ -0,0 +1,549 @@
+package com.example.jp.metadata;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Finds a PDF's page count without parsing its content. The count is the /Count of the page
+ * tree root, reached from the trailer's /Root catalog through the cross-reference data at the
+ * end of the file: classic xref tables (entries are looked up by position, not parsed) and
+ * xref streams, including objects stored in object streams. Linearized files answer from their
+ * first bytes. Files whose cross-reference data is broken fall back to a bounded scan for
+ * page tree nodes.
+ */
+public class PdfPageCounter {
+
+    private static final byte[] PDF_SIGNATURE = {'%', 'P', 'D', 'F', '-'};
+
+    // startxref must be in the last 1024 bytes; allow for trailing garbage
+    private static final int TAIL_SIZE = 4096;
+    private static final int HEADER_SIZE = 1024;
+    private static final int MAX_OBJECT_TEXT = 64 * 1024;
+    private static final int MAX_XREF_SECTIONS = 64;
+    private static final int MAX_STREAM_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_REFERENCE_DEPTH = 8;
+    private static final long SCAN_LIMIT = 32 * 1024 * 1024;
+    private static final int SCAN_CHUNK = 1024 * 1024;
+    private static final int SCAN_OVERLAP = 4096;
+
+    private static final Pattern STARTXREF = Pattern.compile("startxref\\s+(\\d+)");
+    private static final Pattern OBJECT_HEADER = Pattern.compile("^\\s*(\\d+)\\s+(\\d+)\\s+obj");
+    private static final Pattern STREAM_KEYWORD = Pattern.compile("stream(\\r\\n|\\n|\\r)");
+    private static final Pattern INTEGER = Pattern.compile("-?\\d+");
+    private static final Pattern PAGES_TYPE = Pattern.compile("/Type\\s*/Pages(?![A-Za-z0-9])");
+    private static final Pattern COUNT = Pattern.compile("/Count\\s+(\\d{1,18})(?!\\d)");
+    private static final Pattern FILTER_CHAIN = Pattern.compile("/Filter\\s*\\[[^\\]]*/\\w+\\s*/\\w+");
+
+    private final SeekableReader reader;
+    private final List<XrefSection> sections = new ArrayList<>();
+    private final Map<Long, ObjectStream> objectStreams = new HashMap<>();
+
+    private PdfPageCounter(SeekableReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Whether the file starts with a PDF header (allowing leading junk in the first kilobyte)
+     */
+    public static boolean isPdf(SeekableReader reader) throws IOException {
+        if (reader.matches(0, PDF_SIGNATURE)) {
+            return true;
+        }
+        int length = (int) Math.min(HEADER_SIZE, reader.size());
+        return text(reader, 0, length).contains("%PDF-");
+    }
+
+    /**
+     * Page count, or null if it can't be determined
+     */
+    public static Integer count(SeekableReader reader) throws IOException {
+        PdfPageCounter counter = new PdfPageCounter(reader);
+        Integer linearized = counter.linearizedCount();
+        if (linearized != null) {
+            return linearized;
+        }
+        try {
+            Long count = counter.countFromPageTree();
+            if (count != null) {
+                return (int) Math.min(count, Integer.MAX_VALUE);
+            }
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            // Damaged or unusual cross-reference data: fall back to scanning
+        }
+        return counter.scanForPageTree();
+    }
+
+    /**
+     * A linearization dictionary is valid only while its recorded length matches the file
+     */
+    private Integer linearizedCount() throws IOException {
+        String header = text(reader, 0, (int) Math.min(HEADER_SIZE, reader.size()));
+        int start = header.indexOf("/Linearized");
+        if (start < 0) {
+            return null;
+        }
+        int end = header.indexOf(">>", start);
+        String dictionary = end > 0 ? header.substring(start, end) : header.substring(start);
+        Long length = directInteger(dictionary, "L");
+        Long pages = directInteger(dictionary, "N");
+        return length != null && pages != null && pages >= 0 && length == reader.size()
+                ? (int) Math.min(pages, Integer.MAX_VALUE)
+                : null;
+    }
+
+    // ---- cross-reference data ----
+
+    private Long countFromPageTree() throws IOException {
+        int tailLength = (int) Math.min(TAIL_SIZE, reader.size());
+        String tail = text(reader, reader.size() - tailLength, tailLength);
+        Matcher startxref = STARTXREF.matcher(tail);
+        long offset = -1;
+        while (startxref.find()) {
+            // The last one belongs to the latest incremental update
+            offset = Long.parseLong(startxref.group(1));
+        }
+
+        long[] root = null;
+        Set<Long> visited = new HashSet<>();
+        while (offset >= 0 && offset < reader.size() && sections.size() < MAX_XREF_SECTIONS && visited.add(offset)) {
+            reader.checkDeadline();
+            XrefSection section = readSection(offset);
+            sections.add(section);
+            if (root == null) {
+                root = reference(section.trailer, "Root");
+            }
+            // Hybrid files keep entries for compressed objects in a separate xref stream
+            Long hybrid = directInteger(section.trailer, "XRefStm");
+            if (hybrid != null && visited.add(hybrid)) {
+                sections.add(readSection(hybrid));
+            }
+            Long previous = directInteger(section.trailer, "Prev");
+            offset = previous != null ? previous : -1;
+        }
+        if (root == null) {
+            return null;
+        }
+
+        String catalog = objectText(root[0]);
+        long[] pages = catalog != null ? reference(catalog, "Pages") : null;
+        String pageTree = pages != null ? objectText(pages[0]) : null;
+        return pageTree != null ? integer(pageTree, "Count", 0) : null;
+    }
+
+    private XrefSection readSection(long offset) throws IOException {
+        String start = text(reader, offset, (int) Math.min(16, reader.size() - offset)).stripLeading();
+        return start.startsWith("xref") ? readTable(offset) : readStream(offset);
+    }
+
+    /**
+     * Classic table: only subsection headers are read; entries are fixed-width and read on lookup
+     */
+    private XrefSection readTable(long offset) throws IOException {
+        XrefSection section = new XrefSection();
+        long position = offset + text(reader, offset, (int) Math.min(16, reader.size() - offset)).indexOf("xref") + 4;
+        while (position < reader.size()) {
+            reader.checkDeadline();
+            String line = text(reader, position, (int) Math.min(64, reader.size() - position));
+            String trimmed = line.stripLeading();
+            position += line.length() - trimmed.length();
+            if (trimmed.startsWith("trailer")) {
+                int length = (int) Math.min(MAX_OBJECT_TEXT, reader.size() - position);
+                String trailer = text(reader, position, length);
+                int end = trailer.indexOf("startxref");
+                section.trailer = end > 0 ? trailer.substring(0, end) : trailer;
+                return section;
+            }
+
+            Matcher numbers = INTEGER.matcher(trimmed);
+            if (!numbers.find() || numbers.start() != 0) {
+                throw new IOException("Malformed xref subsection at " + position);
+            }
+            long first = Long.parseLong(numbers.group());
+            if (!numbers.find()) {
+                throw new IOException("Malformed xref subsection at " + position);
+            }
+            long count = Long.parseLong(numbers.group());
+            if (first < 0 || count < 0) {
+                throw new IOException("Negative xref subsection bounds at " + position);
+            }
+            long entries = position + numbers.end();
+            while (isEol(reader.u8(entries)) || reader.u8(entries) == ' ') {
+                entries++;
+            }
+            // Entries are 20 bytes; some writers emit 19 with a bare line feed
+            int entrySize = count > 0 && reader.u8(entries + 18) == '\n' && Character.isDigit(reader.u8(entries + 19)) ? 19 : 20;
+            section.subsections.add(new long[]{first, count, entries, entrySize});
+            long next = entries + count * entrySize;
+            if (next <= position) {
+                throw new IOException("xref subsection size overflows at " + position);
+            }
+            position = next;
+        }
+        throw new IOException("xref table without trailer");
+    }
+
+    /**
+     * Cross-reference stream: the trailer keys live in the stream dictionary
+     */
+    private XrefSection readStream(long offset) throws IOException {
+        String object = rawObjectText(offset);
+        if (object == null || !object.contains("/XRef")) {
+            throw new IOException("No xref data at " + offset);
+        }
+        XrefSection section = new XrefSection();
+        section.trailer = dictionaryPart(object);
+        section.data = streamData(offset, object);
+
+        long[] widths = integerArray(section.trailer, "W");
+        if (widths == null || widths.length != 3) {
+            throw new IOException("xref stream without /W");
+        }
+        section.widths = new int[]{(int) widths[0], (int) widths[1], (int) widths[2]};
+        long[] index = integerArray(section.trailer, "Index");
+        if (index == null) {
+            Long size = directInteger(section.trailer, "Size");
+            index = new long[]{0, size != null ? size : 0};
+        }
+        long row = 0;
+        for (int i = 0; i + 1 < index.length; i += 2) {
+            section.subsections.add(new long[]{index[i], index[i + 1], row, 0});
+            row += index[i + 1];
+        }
+        return section;
+    }
+
+    /**
+     * Where an object lives: {1, offset} in the file, or {2, object stream number, index}
+     */
+    private long[] locate(long number) throws IOException {
+        for (XrefSection section : sections) {
+            for (long[] subsection : section.subsections) {
+                long first = subsection[0];
+                if (number < first || number >= first + subsection[1]) {
+                    continue;
+                }
+                if (section.data == null) {
+                    long entry = subsection[2] + (number - first) * subsection[3];
+                    String text = text(reader, entry, 18);
+                    return text.charAt(17) == 'n' ? new long[]{1, Long.parseLong(text.substring(0, 10).trim())} : null;
+                }
+
+                int rowSize = section.widths[0] + section.widths[1] + section.widths[2];
+                int row = (int) ((subsection[2] + number - first) * rowSize);
+                if (row + rowSize > section.data.length) {
+                    return null;
+                }
+                long type = section.widths[0] == 0 ? 1 : field(section.data, row, section.widths[0]);
+                long second = field(section.data, row + section.widths[0], section.widths[1]);
+                long third = field(section.data, row + section.widths[0] + section.widths[1], section.widths[2]);
+                // Type 0 entries are free: the object was deleted in this revision
+                return type == 0 ? null : new long[]{type, second, third};
+            }
+        }
+        return null;
+    }
+
+    private static long field(byte[] data, int position, int width) {
+        long value = 0;
+        for (int i = 0; i < width; i++) {
+            value = value << 8 | (data[position + i] & 0xff);
+        }
+        return value;
+    }
+
+    // ---- objects ----
+
+    /**
+     * Text of an object's dictionary or value, without any stream data
+     */
+    private String objectText(long number) throws IOException {
+        long[] location = locate(number);
+        if (location == null) {
+            return null;
+        }
+        if (location[0] == 1) {
+            String text = rawObjectText(location[1]);
+            return text != null ? dictionaryPart(text) : null;
+        }
+        if (location[0] == 2) {
+            ObjectStream stream = objectStream(location[1]);
+            return stream != null ? stream.get(number) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Text from "n g obj" up to endobj or the stream keyword, read in one bounded piece
+     */
+    private String rawObjectText(long offset) throws IOException {
+        if (offset < 0 || offset >= reader.size()) {
+            return null;
+        }
+        String text = text(reader, offset, (int) Math.min(MAX_OBJECT_TEXT, reader.size() - offset));
+        if (!OBJECT_HEADER.matcher(text).find()) {
+            return null;
+        }
+        int end = text.indexOf("endobj");
+        return end > 0 ? text.substring(0, end) : text;
+    }
+
+    private static String dictionaryPart(String object) {
+        Matcher stream = STREAM_KEYWORD.matcher(object);
+        return stream.find() ? object.substring(0, stream.start()) : object;
+    }
+
+    private ObjectStream objectStream(long number) throws IOException {
+        if (objectStreams.containsKey(number)) {
+            return objectStreams.get(number);
+        }
+        objectStreams.put(number, null);
+        long[] location = locate(number);
+        if (location == null || location[0] != 1) {
+            return null;
+        }
+        String object = rawObjectText(location[1]);
+        if (object == null) {
+            return null;
+        }
+        String dictionary = dictionaryPart(object);
+        Long count = directInteger(dictionary, "N");
+        Long first = directInteger(dictionary, "First");
+        if (count == null || first == null) {
+            return null;
+        }
+
+        byte[] data = streamData(location[1], object);
+        String content = new String(data, StandardCharsets.ISO_8859_1);
+        Matcher numbers = INTEGER.matcher(content.substring(0, (int) Math.min(first, content.length())));
+        ObjectStream stream = new ObjectStream(content, first.intValue());
+        for (int i = 0; i < count && numbers.find(); i++) {
+            long objectNumber = Long.parseLong(numbers.group());
+            if (!numbers.find()) {
+                break;
+            }
+            stream.offsets.put(objectNumber, Integer.parseInt(numbers.group()));
+        }
+        objectStreams.put(number, stream);
+        return stream;
+    }
+
+    /**
+     * Decoded data of the stream object at offset. Only FlateDecode (with PNG predictors) is supported.
+     */
+    private byte[] streamData(long offset, String object) throws IOException {
+        Matcher keyword = STREAM_KEYWORD.matcher(object);
+        if (!keyword.find()) {
+            throw new IOException("Object at " + offset + " has no stream");
+        }
+        String dictionary = object.substring(0, keyword.start());
+        Long length = integer(dictionary, "Length", 0);
+        if (length == null || length < 0 || length > MAX_STREAM_SIZE) {
+            throw new IOException("Unsupported stream length at " + offset);
+        }
+        long start = offset + keyword.end();
+        byte[] raw = reader.bytes(start, (int) Math.min(length, reader.size() - start));
+
+        if (!dictionary.contains("/Filter")) {
+            return raw;
+        }
+        if (!dictionary.contains("/FlateDecode") || FILTER_CHAIN.matcher(dictionary).find()) {
+            throw new IOException("Unsupported stream filter at " + offset);
+        }
+        byte[] decoded = inflate(raw);
+        Long predictor = directInteger(dictionary, "Predictor");
+        if (predictor != null && predictor >= 10) {
+            Long columns = directInteger(dictionary, "Columns");
+            decoded = unpredict(decoded, columns != null ? columns : 1);
+        } else if (predictor != null && predictor != 1) {
+            throw new IOException("Unsupported predictor " + predictor);
+        }
+        return decoded;
+    }
+
+    private static byte[] inflate(byte[] raw) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(raw);
+            byte[] buffer = new byte[Math.max(1024, raw.length * 4)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    if (buffer.length >= MAX_STREAM_SIZE) {
+                        throw new IOException("Stream too large");
+                    }
+                    buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_STREAM_SIZE));
+                }
+                int inflated = inflater.inflate(buffer, length, buffer.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    // Many writers omit the final bytes of the zlib stream
+                    break;
+                }
+                length += inflated;
+            }
+            return Arrays.copyOf(buffer, length);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt FlateDecode stream", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Undo PNG row filters: each row of the given width is prefixed with its filter type
+     */
+    private static byte[] unpredict(byte[] data, long columnCount) throws IOException {
+        if (columnCount < 1 || columnCount > MAX_STREAM_SIZE) {
+            throw new IOException("Invalid predictor /Columns " + columnCount);
+        }
+        int columns = (int) columnCount;
+        int rows = data.length / (columns + 1);
+        byte[] out = new byte[rows * columns];
+        for (int row = 0; row < rows; row++) {
+            int filter = data[row * (columns + 1)] & 0xff;
+            for (int column = 0; column < columns; column++) {
+                int raw = data[row * (columns + 1) + 1 + column] & 0xff;
+                int left = column > 0 ? out[row * columns + column - 1] & 0xff : 0;
+                int up = row > 0 ? out[(row - 1) * columns + column] & 0xff : 0;
+                int upLeft = row > 0 && column > 0 ? out[(row - 1) * columns + column - 1] & 0xff : 0;
+                int value = switch (filter) {
+                    case 1 -> raw + left;
+                    case 2 -> raw + up;
+                    case 3 -> raw + (left + up) / 2;
+                    case 4 -> raw + paeth(left, up, upLeft);
+                    default -> raw;
+                };
+                out[row * columns + column] = (byte) value;
+            }
+        }
+        return out;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int toLeft = Math.abs(estimate - left);
+        int toUp = Math.abs(estimate - up);
+        int toUpLeft = Math.abs(estimate - upLeft);
+        return toLeft <= toUp && toLeft <= toUpLeft ? left : toUp <= toUpLeft ? up : upLeft;
+    }
+
+    // ---- dictionary values ----
+
+    private static long[] reference(String dictionary, String key) {
+        Matcher matcher = Pattern.compile("/" + key + "\\s+(\\d+)\\s+(\\d+)\\s+R").matcher(dictionary);
+        return matcher.find() ? new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))} : null;
+    }
+
+    private static Long directInteger(String dictionary, String key) {
+        // At most 18 digits, so the value always fits a long
+        Matcher matcher = Pattern.compile("/" + key + "\\s+(-?\\d{1,18})(?![\\d.])").matcher(dictionary);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : null;
+    }
+
+    /**
+     * An integer value, following an indirect reference if needed
+     */
+    private Long integer(String dictionary, String key, int depth) throws IOException {
+        long[] reference = reference(dictionary, key);
+        if (reference == null) {
+            return directInteger(dictionary, key);
+        }
+        String value = depth < MAX_REFERENCE_DEPTH ? objectText(reference[0]) : null;
+        if (value == null) {
+            return null;
+        }
+        Matcher header = OBJECT_HEADER.matcher(value);
+        String body = header.find() ? value.substring(header.end()) : value;
+        Matcher number = INTEGER.matcher(body);
+        return number.find() ? Long.parseLong(number.group()) : null;
+    }
+
+    private static long[] integerArray(String dictionary, String key) {
+        Matcher matcher = Pattern.compile("/" + key + "\\s*\\[([^\\]]*)]").matcher(dictionary);
+        if (!matcher.find()) {
+            return null;
+        }
+        return INTEGER.matcher(matcher.group(1)).results().mapToLong(result -> Long.parseLong(result.group())).toArray();
+    }
+
+    // ---- fallback ----
+
+    /**
+     * Largest /Count among page tree nodes in the first SCAN_LIMIT bytes; the root holds the total
+     */
+    private Integer scanForPageTree() throws IOException {
+        long limit = Math.min(reader.size(), SCAN_LIMIT);
+        long best = -1;
+        for (long position = 0; position < limit; position += SCAN_CHUNK) {
+            reader.checkDeadline();
+            int length = (int) Math.min(SCAN_CHUNK + SCAN_OVERLAP, reader.size() - position);
+            String chunk = text(reader, position, length);
+            Matcher pages = PAGES_TYPE.matcher(chunk);
+            while (pages.find()) {
+                int objectStart = Math.max(chunk.lastIndexOf("obj", pages.start()), 0);
+                int objectEnd = chunk.indexOf("endobj", pages.end());
+                Matcher count = COUNT.matcher(chunk.substring(objectStart, objectEnd > 0 ? objectEnd : chunk.length()));
+                if (count.find()) {
+                    best = Math.max(best, Long.parseLong(count.group(1)));
+                }
+            }
+        }
+        return best >= 0 ? (int) Math.min(best, Integer.MAX_VALUE) : null;
+    }
+
+    private static boolean isEol(int c) {
+        return c == '\r' || c == '\n';
+    }
+
+    private static String text(SeekableReader reader, long position, int length) throws IOException {
+        return new String(reader.bytes(position, length), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * One xref table or stream. Subsections are {first, count, entries position or first row, entry size}.
+     */
+    private static class XrefSection {
+        final List<long[]> subsections = new ArrayList<>();
+        String trailer = "";
+        byte[] data;
+        int[] widths;
+    }
+
+    private static class ObjectStream {
+        final Map<Long, Integer> offsets = new HashMap<>();
+        final String content;
+        final int first;
+
+        ObjectStream(String content, int first) {
+            this.content = content;
+            this.first = first;
+        }
+
+        String get(long number) {
+            Integer offset = offsets.get(number);
+            if (offset == null || first + offset > content.length()) {
+                return null;
+            }
+            // Objects run until the next one starts; a generous bound suffices for dictionaries
+            int end = Math.min(content.length(), first + offset + MAX_OBJECT_TEXT);
+            int next = offsets.values().stream().filter(o -> o > offset).min(Integer::compare).orElse(Integer.MAX_VALUE);
+            if (next != Integer.MAX_VALUE) {
+                end = Math.min(end, first + next);
+            }
+            return content.substring(first + offset, end);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.jp.metadata;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random-access reader over a file for header parsing.
+ * Reads go through a small window that is refilled with a single positional read
+ * when a request falls outside it, so walking a header costs one or two system calls
+ * and skipping over large segments costs nothing.
+ * An optional deadline is checked on every read that goes to the file, and parsers call
+ * checkDeadline() once per record they visit, so a parser looping over a pathological file
+ * fails with an InterruptedIOException instead of running on.
+ */
+public class SeekableReader implements Closeable {
+
+    private static final int WINDOW_SIZE = 8 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+    private long windowStart;
+    private int windowLength;
+    private long deadlineNanos;
+    private boolean hasDeadline;
+
+    public SeekableReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    public static SeekableReader open(Path path) throws IOException {
+        return new SeekableReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Fail reads that reach the file after the given budget has elapsed from now
+     */
+    public void setTimeBudget(long millis) {
+        this.deadlineNanos = System.nanoTime() + millis * 1_000_000;
+        this.hasDeadline = millis > 0;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public int u8(long position) throws IOException {
+        return window.get(fill(position, 1)) & 0xff;
+    }
+
+    public int u16be(long position) throws IOException {
+        return window.order(ByteOrder.BIG_ENDIAN).getShort(fill(position, 2)) & 0xffff;
+    }
+
+    public int u16le(long position) throws IOException {
+        return window.order(ByteOrder.LITTLE_ENDIAN).getShort(fill(position, 2)) & 0xffff;
+    }
+
+    public int u24le(long position) throws IOException {
+        int index = fill(position, 3);
+        return (window.get(index) & 0xff) | (window.get(index + 1) & 0xff) << 8 | (window.get(index + 2) & 0xff) << 16;
+    }
+
+    public long u32be(long position) throws IOException {
+        return window.order(ByteOrder.BIG_ENDIAN).getInt(fill(position, 4)) & 0xffffffffL;
+    }
+
+    public long u32le(long position) throws IOException {
+        return window.order(ByteOrder.LITTLE_ENDIAN).getInt(fill(position, 4)) & 0xffffffffL;
+    }
+
+    public int i32le(long position) throws IOException {
+        return window.order(ByteOrder.LITTLE_ENDIAN).getInt(fill(position, 4));
+    }
+
+    public long u64be(long position) throws IOException {
+        return window.order(ByteOrder.BIG_ENDIAN).getLong(fill(position, 8));
+    }
+
+    public long u64le(long position) throws IOException {
+        return window.order(ByteOrder.LITTLE_ENDIAN).getLong(fill(position, 8));
+    }
+
+    /**
+     * Read length bytes as ISO-8859-1 text, e.g. a four-character code
+     */
+    public String ascii(long position, int length) throws IOException {
+        int index = fill(position, length);
+        return new String(window.array(), index, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Whether the bytes at position equal the given signature; false if the file is too short
+     */
+    public boolean matches(long position, byte[] signature) throws IOException {
+        if (position < 0 || position + signature.length > size) {
+            return false;
+        }
+        int index = fill(position, signature.length);
+        for (int i = 0; i < signature.length; i++) {
+            if (window.get(index + i) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy length bytes starting at position
+     */
+    public byte[] bytes(long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        if (length <= WINDOW_SIZE) {
+            System.arraycopy(window.array(), fill(position, length), bytes, 0, length);
+            return bytes;
+        }
+
+        checkDeadline();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Map [position, position + length) read-only, for regions such as a ZIP central directory
+     * that are walked record by record and too large for the window
+     */
+    public MappedByteBuffer map(long position, long length) throws IOException {
+        if (position < 0 || length < 0 || position + length > size) {
+            throw new EOFException("Mapping of " + length + " bytes at " + position + " past end of file (" + size + ")");
+        }
+        checkDeadline();
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    /**
+     * Make [position, position + length) available in the window and return its index there
+     */
+    private int fill(long position, int length) throws IOException {
+        if (position >= windowStart && position + length <= windowStart + windowLength) {
+            return (int) (position - windowStart);
+        }
+        if (position < 0 || position + length > size) {
+            throw new EOFException("Read of " + length + " bytes at " + position + " past end of file (" + size + ")");
+        }
+        checkDeadline();
+
+        window.clear();
+        while (window.hasRemaining()) {
+            int read = channel.read(window, position + window.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        windowStart = position;
+        windowLength = window.position();
+
+        if (windowLength < length) {
+            throw new EOFException("Unexpected end of file at " + (position + windowLength));
+        }
+        return 0;
+    }
+
+    /**
+     * Fail with an InterruptedIOException once the time budget has elapsed.
+     * Loops over records that may all sit inside the window must call this themselves.
+     */
+    public void checkDeadline() throws InterruptedIOException {
+        if (hasDeadline && System.nanoTime() - deadlineNanos > 0) {
+            throw new InterruptedIOException("Time budget exceeded");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,548 @@
+package com.example.jp.metadata;
+
+import com.example.jp.model.FileItem;
+import com.example.jp.model.VideoFile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads duration, resolution, frame rate, codec and audio presence from video containers
+ * without touching the media payload.
+ * ISO-BMFF (MP4, MOV, 3GP): walks the top-level boxes by header to find moov wherever it is,
+ * then mvhd and each trak's tkhd / mdhd / hdlr / stsd / stts.
+ * Matroska / WebM: walks the Segment's EBML elements up to the first Cluster, using the
+ * SeekHead for Info and Tracks that are stored after the clusters.
+ */
+@Component
+public class VideoMetadataExtractor implements MetadataExtractor {
+
+    private static final byte[] EBML_SIGNATURE = {0x1a, 0x45, (byte) 0xdf, (byte) 0xa3};
+
+    // Guards against malformed files with endless or self-referencing structures
+    private static final int MAX_ELEMENTS = 10_000;
+    private static final int MAX_STTS_ENTRIES = 4096;
+
+    // Matroska element IDs
+    private static final long MKV_SEGMENT = 0x18538067L;
+    private static final long MKV_SEEK_HEAD = 0x114d9b74L;
+    private static final long MKV_SEEK = 0x4dbbL;
+    private static final long MKV_SEEK_ID = 0x53abL;
+    private static final long MKV_SEEK_POSITION = 0x53acL;
+    private static final long MKV_INFO = 0x1549a966L;
+    private static final long MKV_TIMESTAMP_SCALE = 0x2ad7b1L;
+    private static final long MKV_DURATION = 0x4489L;
+    private static final long MKV_TRACKS = 0x1654ae6bL;
+    private static final long MKV_TRACK_ENTRY = 0xaeL;
+    private static final long MKV_TRACK_TYPE = 0x83L;
+    private static final long MKV_CODEC_ID = 0x86L;
+    private static final long MKV_DEFAULT_DURATION = 0x23e383L;
+    private static final long MKV_VIDEO = 0xe0L;
+    private static final long MKV_PIXEL_WIDTH = 0xb0L;
+    private static final long MKV_PIXEL_HEIGHT = 0xbaL;
+    private static final long MKV_CLUSTER = 0x1f43b675L;
+
+    @Override
+    public boolean supports(FileItem item) {
+        return item instanceof VideoFile;
+    }
+
+    @Override
+    public void extract(SeekableReader reader, FileItem item) throws IOException {
+        VideoFile video = (VideoFile) item;
+
+        if (reader.matches(0, EBML_SIGNATURE)) {
+            readMatroska(reader, video);
+        } else if (reader.size() >= 8 && isIsoBmffBox(reader.ascii(4, 4))) {
+            readIsoBmff(reader, video);
+        }
+    }
+
+    // ---- ISO-BMFF ----
+
+    private boolean isIsoBmffBox(String type) {
+        return type.equals("ftyp") || type.equals("moov") || type.equals("mdat")
+                || type.equals("free") || type.equals("skip") || type.equals("wide");
+    }
+
+    private void readIsoBmff(SeekableReader reader, VideoFile video) throws IOException {
+        Box moov = findChild(reader, 0, reader.size(), "moov");
+        if (moov == null) {
+            return;
+        }
+
+        long movieDuration = 0;
+        long movieTimescale = 0;
+        Box mvhd = findChild(reader, moov.contentStart(), moov.end(), "mvhd");
+        if (mvhd != null) {
+            boolean v1 = reader.u8(mvhd.contentStart()) == 1;
+            long fields = mvhd.contentStart() + 4 + (v1 ? 16 : 8);
+            movieTimescale = reader.u32be(fields);
+            movieDuration = v1 ? reader.u64be(fields + 4) : reader.u32be(fields + 4);
+        }
+
+        boolean hasAudio = false;
+        boolean foundVideo = false;
+        double longestTrackSeconds = 0;
+
+        long position = moov.contentStart();
+        for (int i = 0; i < MAX_ELEMENTS && position + 8 <= moov.end(); i++) {
+            reader.checkDeadline();
+            Box box = Box.read(reader, position, moov.end());
+            if (box == null) {
+                break;
+            }
+            position = box.end();
+            if (!box.type.equals("trak")) {
+                continue;
+            }
+
+            Box mdia = findChild(reader, box.contentStart(), box.end(), "mdia");
+            if (mdia == null) {
+                continue;
+            }
+            Box hdlr = findChild(reader, mdia.contentStart(), mdia.end(), "hdlr");
+            String handler = hdlr != null ? reader.ascii(hdlr.contentStart() + 8, 4) : "";
+
+            // Media timescale and duration
+            long timescale = 0;
+            long duration = 0;
+            Box mdhd = findChild(reader, mdia.contentStart(), mdia.end(), "mdhd");
+            if (mdhd != null) {
+                boolean v1 = reader.u8(mdhd.contentStart()) == 1;
+                long fields = mdhd.contentStart() + 4 + (v1 ? 16 : 8);
+                timescale = reader.u32be(fields);
+                duration = v1 ? reader.u64be(fields + 4) : reader.u32be(fields + 4);
+                if (timescale > 0) {
+                    longestTrackSeconds = Math.max(longestTrackSeconds, (double) duration / timescale);
+                }
+            }
+
+            if (handler.equals("soun")) {
+                hasAudio = true;
+                continue;
+            }
+            if (!handler.equals("vide") || foundVideo) {
+                continue;
+            }
+            foundVideo = true;
+
+            Box stbl = findPath(reader, mdia, "minf", "stbl");
+            readVideoTrack(reader, box, stbl, timescale, duration, video);
+        }
+
+        if (movieTimescale > 0 && movieDuration > 0) {
+            video.setDurationSeconds((int) Math.round((double) movieDuration / movieTimescale));
+        } else if (longestTrackSeconds > 0) {
+            // Fragmented files leave the movie duration empty
+            video.setDurationSeconds((int) Math.round(longestTrackSeconds));
+        }
+        video.setHasAudio(hasAudio);
+    }
+
+    private void readVideoTrack(SeekableReader reader, Box trak, Box stbl, long timescale, long duration,
+                                VideoFile video) throws IOException {
+        // Display size from the track header, 16.16 fixed point
+        Box tkhd = findChild(reader, trak.contentStart(), trak.end(), "tkhd");
+        if (tkhd != null) {
+            boolean v1 = reader.u8(tkhd.contentStart()) == 1;
+            long size = tkhd.contentStart() + (v1 ? 88 : 76);
+            if (size + 8 <= tkhd.end()) {
+                int width = (int) (reader.u32be(size) >>> 16);
+                int height = (int) (reader.u32be(size + 4) >>> 16);
+                if (width > 0 && height > 0) {
+                    video.setResolution(width + "x" + height);
+                }
+            }
+        }
+        if (stbl == null) {
+            return;
+        }
+
+        Box stsd = findChild(reader, stbl.contentStart(), stbl.end(), "stsd");
+        if (stsd != null && reader.u32be(stsd.contentStart() + 4) > 0) {
+            long entry = stsd.contentStart() + 8;
+            video.setCodec(isoCodecName(reader.ascii(entry + 4, 4)));
+            if (video.getResolution() == null) {
+                // Coded size from the visual sample entry
+                video.setResolution(reader.u16be(entry + 32) + "x" + reader.u16be(entry + 34));
+            }
+        }
+
+        Box stts = findChild(reader, stbl.contentStart(), stbl.end(), "stts");
+        if (stts != null && timescale > 0) {
+            long entries = Math.min(reader.u32be(stts.contentStart() + 4), MAX_STTS_ENTRIES);
+            long samples = 0;
+            long sampleTime = 0;
+            for (int i = 0; i < entries; i++) {
+                long entry = stts.contentStart() + 8 + i * 8L;
+                long count = reader.u32be(entry);
+                samples += count;
+                sampleTime += count * reader.u32be(entry + 4);
+            }
+            long span = sampleTime > 0 ? sampleTime : duration;
+            if (samples > 0 && span > 0) {
+                video.setFrameRate((int) Math.round(samples * (double) timescale / span));
+            }
+        }
+    }
+
+    private String isoCodecName(String fourcc) {
+        return switch (fourcc) {
+            case "avc1", "avc3" -> "H.264";
+            case "hvc1", "hev1" -> "H.265";
+            case "av01" -> "AV1";
+            case "vp08" -> "VP8";
+            case "vp09" -> "VP9";
+            case "mp4v" -> "MPEG-4 Visual";
+            case "s263", "h263" -> "H.263";
+            case "apcn", "apch", "apcs", "apco", "ap4h" -> "ProRes";
+            case "jpeg", "mjpa", "mjpb" -> "Motion JPEG";
+            default -> fourcc.trim();
+        };
+    }
+
+    private Box findPath(SeekableReader reader, Box parent, String... types) throws IOException {
+        Box box = parent;
+        for (String type : types) {
+            box = findChild(reader, box.contentStart(), box.end(), type);
+            if (box == null) {
+                return null;
+            }
+        }
+        return box;
+    }
+
+    private Box findChild(SeekableReader reader, long start, long end, String type) throws IOException {
+        long position = start;
+        for (int i = 0; i < MAX_ELEMENTS && position + 8 <= end; i++) {
+            reader.checkDeadline();
+            Box box = Box.read(reader, position, end);
+            if (box == null) {
+                return null;
+            }
+            if (box.type.equals(type)) {
+                return box;
+            }
+            position = box.end();
+        }
+        return null;
+    }
+
+    private static class Box {
+        final String type;
+        final long position;
+        final long headerSize;
+        final long size;
+
+        Box(String type, long position, long headerSize, long size) {
+            this.type = type;
+            this.position = position;
+            this.headerSize = headerSize;
+            this.size = size;
+        }
+
+        static Box read(SeekableReader reader, long position, long limit) throws IOException {
+            long size = reader.u32be(position);
+            String type = reader.ascii(position + 4, 4);
+            long headerSize = 8;
+            if (size == 1) {
+                size = reader.u64be(position + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                // Extends to the end of the enclosing box or file
+                size = limit - position;
+            }
+            if (size < headerSize || position + size > limit) {
+                return null;
+            }
+            return new Box(type, position, headerSize, size);
+        }
+
+        long contentStart() {
+            return position + headerSize;
+        }
+
+        long end() {
+            return position + size;
+        }
+    }
+
+    // ---- Matroska / WebM ----
+
+    private void readMatroska(SeekableReader reader, VideoFile video) throws IOException {
+        // Skip the EBML header, then find the Segment
+        Element header = Element.read(reader, 0, reader.size());
+        if (header == null) {
+            return;
+        }
+        Element segment = Element.read(reader, header.end(), reader.size());
+        if (segment == null || segment.id != MKV_SEGMENT) {
+            return;
+        }
+
+        long infoPosition = -1;
+        long tracksPosition = -1;
+        long seekInfo = -1;
+        long seekTracks = -1;
+
+        long position = segment.dataStart;
+        for (int i = 0; i < MAX_ELEMENTS && position < segment.end(); i++) {
+            reader.checkDeadline();
+            Element element = Element.read(reader, position, segment.end());
+            if (element == null) {
+                break;
+            }
+            if (element.id == MKV_INFO) {
+                infoPosition = element.position;
+            } else if (element.id == MKV_TRACKS) {
+                tracksPosition = element.position;
+            } else if (element.id == MKV_SEEK_HEAD) {
+                long[] targets = readSeekHead(reader, element, segment.dataStart);
+                seekInfo = targets[0];
+                seekTracks = targets[1];
+            } else if (element.id == MKV_CLUSTER || element.unknownSize) {
+                // Media data from here on; anything else is reached through the SeekHead
+                break;
+            }
+            if (infoPosition >= 0 && tracksPosition >= 0) {
+                break;
+            }
+            position = element.end();
+        }
+
+        if (infoPosition < 0) {
+            infoPosition = seekInfo;
+        }
+        if (tracksPosition < 0) {
+            tracksPosition = seekTracks;
+        }
+
+        if (infoPosition >= 0) {
+            Element info = Element.read(reader, infoPosition, segment.end());
+            if (info != null && info.id == MKV_INFO) {
+                readMatroskaInfo(reader, info, video);
+            }
+        }
+
+        video.setHasAudio(false);
+        if (tracksPosition >= 0) {
+            Element tracks = Element.read(reader, tracksPosition, segment.end());
+            if (tracks != null && tracks.id == MKV_TRACKS) {
+                readMatroskaTracks(reader, tracks, video);
+            }
+        }
+    }
+
+    /**
+     * Absolute positions of Info and Tracks listed in a SeekHead, -1 where absent
+     */
+    private long[] readSeekHead(SeekableReader reader, Element seekHead, long segmentDataStart) throws IOException {
+        long[] targets = {-1, -1};
+        for (Element seek : children(reader, seekHead)) {
+            if (seek.id != MKV_SEEK) {
+                continue;
+            }
+            long id = -1;
+            long offset = -1;
+            for (Element field : children(reader, seek)) {
+                if (field.id == MKV_SEEK_ID) {
+                    id = readUnsigned(reader, field);
+                } else if (field.id == MKV_SEEK_POSITION) {
+                    offset = readUnsigned(reader, field);
+                }
+            }
+            if (offset < 0) {
+                continue;
+            }
+            if (id == MKV_INFO) {
+                targets[0] = segmentDataStart + offset;
+            } else if (id == MKV_TRACKS) {
+                targets[1] = segmentDataStart + offset;
+            }
+        }
+        return targets;
+    }
+
+    private void readMatroskaInfo(SeekableReader reader, Element info, VideoFile video) throws IOException {
+        long timestampScale = 1_000_000;
+        double duration = -1;
+        for (Element field : children(reader, info)) {
+            if (field.id == MKV_TIMESTAMP_SCALE) {
+                timestampScale = readUnsigned(reader, field);
+            } else if (field.id == MKV_DURATION) {
+                duration = readFloat(reader, field);
+            }
+        }
+        if (duration > 0) {
+            // Duration is in TimestampScale units (nanoseconds each)
+            video.setDurationSeconds((int) Math.round(duration * timestampScale / 1e9));
+        }
+    }
+
+    private void readMatroskaTracks(SeekableReader reader, Element tracks, VideoFile video) throws IOException {
+        boolean foundVideo = false;
+        for (Element entry : children(reader, tracks)) {
+            if (entry.id != MKV_TRACK_ENTRY) {
+                continue;
+            }
+
+            long type = -1;
+            String codecId = null;
+            long defaultDuration = -1;
+            Element videoSettings = null;
+            for (Element field : children(reader, entry)) {
+                if (field.id == MKV_TRACK_TYPE) {
+                    type = readUnsigned(reader, field);
+                } else if (field.id == MKV_CODEC_ID) {
+                    codecId = reader.ascii(field.dataStart, (int) Math.min(field.size, 64)).trim();
+                } else if (field.id == MKV_DEFAULT_DURATION) {
+                    defaultDuration = readUnsigned(reader, field);
+                } else if (field.id == MKV_VIDEO) {
+                    videoSettings = field;
+                }
+            }
+
+            if (type == 2) {
+                video.setHasAudio(true);
+                continue;
+            }
+            if (type != 1 || foundVideo) {
+                continue;
+            }
+            foundVideo = true;
+
+            if (codecId != null) {
+                video.setCodec(matroskaCodecName(codecId));
+            }
+            if (defaultDuration > 0) {
+                // Nanoseconds per frame
+                video.setFrameRate((int) Math.round(1e9 / defaultDuration));
+            }
+            if (videoSettings != null) {
+                long width = -1;
+                long height = -1;
+                for (Element field : children(reader, videoSettings)) {
+                    if (field.id == MKV_PIXEL_WIDTH) {
+                        width = readUnsigned(reader, field);
+                    } else if (field.id == MKV_PIXEL_HEIGHT) {
+                        height = readUnsigned(reader, field);
+                    }
+                }
+                if (width > 0 && height > 0) {
+                    video.setResolution(width + "x" + height);
+                }
+            }
+        }
+    }
+
+    private String matroskaCodecName(String codecId) {
+        return switch (codecId) {
+            case "V_MPEG4/ISO/AVC" -> "H.264";
+            case "V_MPEGH/ISO/HEVC" -> "H.265";
+            case "V_AV1" -> "AV1";
+            case "V_VP8" -> "VP8";
+            case "V_VP9" -> "VP9";
+            case "V_THEORA" -> "Theora";
+            case "V_MPEG4/ISO/SP", "V_MPEG4/ISO/ASP", "V_MPEG4/ISO/AP" -> "MPEG-4 Visual";
+            case "V_MPEG2" -> "MPEG-2";
+            case "V_MJPEG" -> "Motion JPEG";
+            default -> codecId.startsWith("V_") ? codecId.substring(2) : codecId;
+        };
+    }
+
+    private List<Element> children(SeekableReader reader, Element parent) throws IOException {
+        List<Element> children = new ArrayList<>();
+        long position = parent.dataStart;
+        for (int i = 0; i < MAX_ELEMENTS && position < parent.end(); i++) {
+            reader.checkDeadline();
+            Element child = Element.read(reader, position, parent.end());
+            if (child == null || child.unknownSize) {
+                break;
+            }
+            children.add(child);
+            position = child.end();
+        }
+        return children;
+    }
+
+    private long readUnsigned(SeekableReader reader, Element element) throws IOException {
+        long value = 0;
+        for (int i = 0; i < Math.min(element.size, 8); i++) {
+            value = value << 8 | reader.u8(element.dataStart + i);
+        }
+        return value;
+    }
+
+    private double readFloat(SeekableReader reader, Element element) throws IOException {
+        if (element.size == 4) {
+            return Float.intBitsToFloat((int) reader.u32be(element.dataStart));
+        }
+        if (element.size == 8) {
+            return Double.longBitsToDouble(reader.u64be(element.dataStart));
+        }
+        return -1;
+    }
+
+    private static class Element {
+        final long id;
+        final long position;
+        final long dataStart;
+        final long size;
+        final boolean unknownSize;
+
+        Element(long id, long position, long dataStart, long size, boolean unknownSize) {
+            this.id = id;
+            this.position = position;
+            this.dataStart = dataStart;
+            this.size = size;
+            this.unknownSize = unknownSize;
+        }
+
+        static Element read(SeekableReader reader, long position, long limit) throws IOException {
+            if (position >= limit) {
+                return null;
+            }
+            // Element IDs keep their length marker bits
+            int first = reader.u8(position);
+            int idLength = Integer.numberOfLeadingZeros(first) - 23;
+            if (idLength < 1 || idLength > 4 || position + idLength >= limit) {
+                return null;
+            }
+            long id = first;
+            for (int i = 1; i < idLength; i++) {
+                id = id << 8 | reader.u8(position + i);
+            }
+
+            long sizePosition = position + idLength;
+            int sizeFirst = reader.u8(sizePosition);
+            int sizeLength = Integer.numberOfLeadingZeros(sizeFirst) - 23;
+            if (sizeLength < 1 || sizeLength > 8) {
+                return null;
+            }
+            long size = sizeFirst & (0xff >> sizeLength);
+            boolean allOnes = size == (0xff >> sizeLength);
+            for (int i = 1; i < sizeLength; i++) {
+                int next = reader.u8(sizePosition + i);
+                allOnes &= next == 0xff;
+                size = size << 8 | next;
+            }
+
+            long dataStart = sizePosition + sizeLength;
+            if (allOnes) {
+                // Unknown size (live streams): runs to the end of the parent
+                return new Element(id, position, dataStart, limit - dataStart, true);
+            }
+            if (dataStart + size > limit) {
+                return null;
+            }
+            return new Element(id, position, dataStart, size, false);
+        }
+
+        long end() {
+            return dataStart + size;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.example.jp.metadata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * ZIP central directory located through the end-of-central-directory record (and its ZIP64
+ * counterpart) in a mapped tail of the file. Entries are read from the mapped central directory
+ * alone, so listing an archive never touches local headers or compressed data.
+ */
+public class ZipCentralDirectory {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    // Names without the UTF-8 flag are in the original IBM PC code page
+    private static final Charset LEGACY_CHARSET = Charset.isSupported("IBM437")
+            ? Charset.forName("IBM437")
+            : StandardCharsets.ISO_8859_1;
+
+    private final SeekableReader reader;
+    private final ByteBuffer directory;
+    private final long entryCount;
+    private final long offsetShift;
+
+    private ZipCentralDirectory(SeekableReader reader, ByteBuffer directory, long entryCount, long offsetShift) {
+        this.reader = reader;
+        this.directory = directory;
+        this.entryCount = entryCount;
+        this.offsetShift = offsetShift;
+    }
+
+    /**
+     * Locate the central directory, or return null if the file has no end-of-central-directory record
+     */
+    public static ZipCentralDirectory open(SeekableReader reader) throws IOException {
+        long size = reader.size();
+        if (size < EOCD_SIZE) {
+            return null;
+        }
+
+        // The record sits at the very end, followed only by an optional comment
+        long tailStart = Math.max(0, size - EOCD_SIZE - MAX_COMMENT_SIZE);
+        ByteBuffer tail = reader.map(tailStart, size - tailStart).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = -1;
+        for (int i = tail.limit() - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE && i + EOCD_SIZE + (tail.getShort(i + 20) & 0xffff) == tail.limit()) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            return null;
+        }
+
+        long entryCount = tail.getShort(eocd + 10) & 0xffff;
+        long directorySize = tail.getInt(eocd + 12) & 0xffffffffL;
+        long directoryOffset = tail.getInt(eocd + 16) & 0xffffffffL;
+        long eocdPosition = tailStart + eocd;
+        long directoryEnd = eocdPosition;
+
+        // Saturated fields mean the real values are in the ZIP64 record named by the locator
+        long locator = eocdPosition - ZIP64_LOCATOR_SIZE;
+        if ((entryCount == 0xffff || directorySize == 0xffffffffL || directoryOffset == 0xffffffffL)
+                && locator >= 0 && reader.u32le(locator) == ZIP64_LOCATOR_SIGNATURE) {
+            long zip64Eocd = reader.u64le(locator + 8);
+            if (zip64Eocd >= 0 && zip64Eocd + 56 <= locator && reader.u32le(zip64Eocd) == ZIP64_EOCD_SIGNATURE) {
+                entryCount = reader.u64le(zip64Eocd + 32);
+                directorySize = reader.u64le(zip64Eocd + 40);
+                directoryOffset = reader.u64le(zip64Eocd + 48);
+                directoryEnd = zip64Eocd;
+            }
+        }
+
+        if (entryCount < 0 || directorySize < 0 || directoryOffset < 0) {
+            throw new IOException("Negative ZIP64 end of central directory field");
+        }
+
+        // Archives with data prepended (self-extractors) record offsets relative to the original start
+        long offsetShift = directoryEnd - directorySize - directoryOffset;
+        if (offsetShift < 0 || directorySize > Integer.MAX_VALUE) {
+            throw new IOException("Inconsistent or oversized ZIP central directory");
+        }
+
+        ByteBuffer directory = reader.map(directoryOffset + offsetShift, directorySize).order(ByteOrder.LITTLE_ENDIAN);
+        return new ZipCentralDirectory(reader, directory, entryCount, offsetShift);
+    }
+
+    /**
+     * Number of entries declared by the end-of-central-directory record
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Visit entries in directory order until the visitor returns false.
+     * Returns the number of entries visited.
+     */
+    public long forEach(Predicate<Entry> visitor) throws IOException {
+        ByteBuffer buffer = directory.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int position = 0;
+        long visited = 0;
+        while (visited < entryCount && position + CENTRAL_HEADER_SIZE <= buffer.limit()) {
+            reader.checkDeadline();
+            if (buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Bad ZIP central directory header at entry " + visited);
+            }
+            Entry entry = readEntry(buffer, position);
+            visited++;
+            position += CENTRAL_HEADER_SIZE + entry.headerExtraLength;
+            if (!visitor.test(entry)) {
+                break;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Find an entry by its full name, or null
+     */
+    public Entry find(String name) throws IOException {
+        Entry[] found = new Entry[1];
+        forEach(entry -> {
+            if (entry.getName().equals(name)) {
+                found[0] = entry;
+                return false;
+            }
+            return true;
+        });
+        return found[0];
+    }
+
+    /**
+     * Read a small stored or deflated entry's content, e.g. an OOXML part.
+     * Returns null if the entry is encrypted, uses another method or exceeds maxSize.
+     */
+    public static byte[] readContent(SeekableReader reader, Entry entry, int maxSize) throws IOException {
+        if (entry.isEncrypted() || entry.getSize() > maxSize || entry.getCompressedSize() > maxSize
+                || (entry.getMethod() != 0 && entry.getMethod() != 8)) {
+            return null;
+        }
+        long header = entry.getLocalHeaderOffset();
+        if (reader.u32le(header) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Bad ZIP local header for " + entry.getName());
+        }
+        // The local extra field may differ from the central one, so take its length from here
+        long data = header + 30 + reader.u16le(header + 26) + reader.u16le(header + 28);
+        byte[] compressed = reader.bytes(data, (int) entry.getCompressedSize());
+        if (entry.getMethod() == 0) {
+            return compressed;
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] content = new byte[(int) entry.getSize()];
+            int length = 0;
+            while (length < content.length && !inflater.finished()) {
+                int inflated = inflater.inflate(content, length, content.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != content.length) {
+                throw new IOException("Truncated ZIP entry " + entry.getName());
+            }
+            return content;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt ZIP entry " + entry.getName(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private Entry readEntry(ByteBuffer buffer, int position) throws IOException {
+        int flags = buffer.getShort(position + 8) & 0xffff;
+        int method = buffer.getShort(position + 10) & 0xffff;
+        int dosTime = buffer.getShort(position + 12) & 0xffff;
+        int dosDate = buffer.getShort(position + 14) & 0xffff;
+        long compressedSize = buffer.getInt(position + 20) & 0xffffffffL;
+        long size = buffer.getInt(position + 24) & 0xffffffffL;
+        int nameLength = buffer.getShort(position + 28) & 0xffff;
+        int extraLength = buffer.getShort(position + 30) & 0xffff;
+        int commentLength = buffer.getShort(position + 32) & 0xffff;
+        long localHeaderOffset = buffer.getInt(position + 42) & 0xffffffffL;
+
+        int nameStart = position + CENTRAL_HEADER_SIZE;
+        int extraStart = nameStart + nameLength;
+        if (extraStart + extraLength + commentLength > buffer.limit()) {
+            throw new IOException("Truncated ZIP central directory entry");
+        }
+        byte[] nameBytes = new byte[nameLength];
+        buffer.get(nameStart, nameBytes);
+        String name = new String(nameBytes, (flags & 0x800) != 0 ? StandardCharsets.UTF_8 : LEGACY_CHARSET);
+
+        // ZIP64 extended information holds, in order, only the fields saturated above
+        int extra = extraStart;
+        while (extra + 4 <= extraStart + extraLength) {
+            int id = buffer.getShort(extra) & 0xffff;
+            int length = buffer.getShort(extra + 2) & 0xffff;
+            if (id == ZIP64_EXTRA_ID) {
+                int field = extra + 4;
+                int end = field + length;
+                if (size == 0xffffffffL && field + 8 <= end) {
+                    size = buffer.getLong(field);
+                    field += 8;
+                }
+                if (compressedSize == 0xffffffffL && field + 8 <= end) {
+                    compressedSize = buffer.getLong(field);
+                    field += 8;
+                }
+                if (localHeaderOffset == 0xffffffffL && field + 8 <= end) {
+                    localHeaderOffset = buffer.getLong(field);
+                }
+                break;
+            }
+            extra += 4 + length;
+        }
+        // ZIP64 values are unsigned 64-bit; anything past Long.MAX_VALUE is corrupt
+        if (size < 0 || compressedSize < 0 || localHeaderOffset < 0 || localHeaderOffset + offsetShift < 0) {
+            throw new IOException("Invalid ZIP64 size or offset for " + name);
+        }
+
+        return new Entry(name, flags, method, dosDate, dosTime, compressedSize, size,
+                localHeaderOffset + offsetShift, nameLength + extraLength + commentLength);
+    }
+
+    /**
+     * Name of a ZIP compression method
+     */
+    public static String methodName(int method) {
+        return switch (method) {
+            case 0 -> "Stored";
+            case 8 -> "Deflate";
+            case 9 -> "Deflate64";
+            case 12 -> "BZip2";
+            case 14 -> "LZMA";
+            case 93 -> "Zstandard";
+            case 95 -> "XZ";
+            case 98 -> "PPMd";
+            case 99 -> "AES";
+            default -> "Method " + method;
+        };
+    }
+
+    /**
+     * One central directory record
+     */
+    public static class Entry {
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final int dosDate;
+        private final int dosTime;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+        private final int headerExtraLength;
+
+        Entry(String name, int flags, int method, int dosDate, int dosTime, long compressedSize, long size,
+              long localHeaderOffset, int headerExtraLength) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosDate = dosDate;
+            this.dosTime = dosTime;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.headerExtraLength = headerExtraLength;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Position of the entry's local file header, adjusted for any prepended data
+         */
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public boolean isEncrypted() {
+            return (flags & 1) != 0 || method == 99;
+        }
+
+        public LocalDateTime getLastModified() {
+            if (dosDate == 0) {
+                return null;
+            }
+            try {
+                return LocalDateTime.of(1980 + (dosDate >> 9), (dosDate >> 5) & 0xf, dosDate & 0x1f,
+                        dosTime >> 11, (dosTime >> 5) & 0x3f, Math.min((dosTime & 0x1f) * 2, 59));
+            } catch (DateTimeException e) {
+                // Out-of-range fields from a sloppy writer
+                return null;
+            }
+        }
+    }
+}
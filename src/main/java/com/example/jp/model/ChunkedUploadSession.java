@@ -0,0 +1,168 @@
+package com.example.jp.model;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * State of a resumable chunked upload.
+ * Chunks are written concurrently into a preallocated staging file, and the
+ * received byte ranges are tracked as a set of merged, non-overlapping intervals.
+ */
+public class ChunkedUploadSession {
+
+    private final String sessionId;
+    private final String fileName;
+    private final String folderPath;
+    private final String contentType;
+    private final long totalSize;
+    private final Path stagedFile;
+    private final FileChannel channel;
+    private final long createdAt;
+    private volatile long lastActivity;
+
+    // Chunk writes share the read lock so they run in parallel; completing, aborting and
+    // expiring the session take the write lock, so no write is in flight when it closes
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock
+    private boolean closed;
+
+    // start offset -> end offset (exclusive) of each received range
+    private final TreeMap<Long, Long> receivedRanges = new TreeMap<>();
+    private long receivedBytes;
+
+    public ChunkedUploadSession(String sessionId, String fileName, String folderPath, String contentType,
+                                long totalSize, Path stagedFile, FileChannel channel) {
+        this.sessionId = sessionId;
+        this.fileName = fileName;
+        this.folderPath = folderPath;
+        this.contentType = contentType;
+        this.totalSize = totalSize;
+        this.stagedFile = stagedFile;
+        this.channel = channel;
+        this.createdAt = System.currentTimeMillis();
+        this.lastActivity = createdAt;
+    }
+
+    /**
+     * Record that the bytes in [start, end) have been written, merging adjacent ranges
+     */
+    public synchronized void addRange(long start, long end) {
+        lastActivity = System.currentTimeMillis();
+        if (start >= end) {
+            return;
+        }
+
+        Map.Entry<Long, Long> floor = receivedRanges.floorEntry(start);
+        if (floor != null && floor.getValue() >= start) {
+            start = floor.getKey();
+            end = Math.max(end, floor.getValue());
+        }
+
+        Map.Entry<Long, Long> next = receivedRanges.ceilingEntry(start);
+        while (next != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            receivedRanges.remove(next.getKey());
+            next = receivedRanges.ceilingEntry(start);
+        }
+        receivedRanges.put(start, end);
+
+        long total = 0;
+        for (Map.Entry<Long, Long> range : receivedRanges.entrySet()) {
+            total += range.getValue() - range.getKey();
+        }
+        receivedBytes = total;
+    }
+
+    public synchronized List<long[]> getReceivedRanges() {
+        List<long[]> ranges = new ArrayList<>(receivedRanges.size());
+        receivedRanges.forEach((start, end) -> ranges.add(new long[]{start, end}));
+        return ranges;
+    }
+
+    public synchronized List<long[]> getMissingRanges() {
+        List<long[]> missing = new ArrayList<>();
+        long position = 0;
+        for (Map.Entry<Long, Long> range : receivedRanges.entrySet()) {
+            if (range.getKey() > position) {
+                missing.add(new long[]{position, range.getKey()});
+            }
+            position = range.getValue();
+        }
+        if (position < totalSize) {
+            missing.add(new long[]{position, totalSize});
+        }
+        return missing;
+    }
+
+    public synchronized long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public synchronized boolean isComplete() {
+        return receivedBytes == totalSize;
+    }
+
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Whether the session was completed, aborted or expired. Call with the lock held.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Mark the session completed, aborted or expired. Call with the write lock held.
+     */
+    public void markClosed() {
+        closed = true;
+    }
+
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getFolderPath() {
+        return folderPath;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public Path getStagedFile() {
+        return stagedFile;
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getLastActivity() {
+        return lastActivity;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.jp.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * File type categories, each with the extensions that belong to it
+ */
+public enum FileCategory {
+    DOCUMENT("pdf", "doc", "docx", "txt", "rtf", "odt", "xls", "xlsx", "ppt", "pptx", "csv"),
+    IMAGE("jpg", "jpeg", "png", "gif", "svg", "bmp", "webp", "ico", "tiff", "tif"),
+    VIDEO("mp4", "avi", "mov", "mkv", "wmv", "flv", "webm", "mpeg", "mpg", "3gp"),
+    AUDIO("mp3", "wav", "flac", "aac", "ogg", "m4a", "wma", "opus"),
+    ARCHIVE("zip", "rar", "7z", "tar", "gz", "gzip", "tgz", "bz2", "xz"),
+    GENERIC;
+
+    // Built once, so looking up a category is a single hash lookup
+    private static final Map<String, FileCategory> BY_EXTENSION = new HashMap<>();
+
+    static {
+        for (FileCategory category : values()) {
+            for (String extension : category.extensions) {
+                BY_EXTENSION.put(extension, category);
+            }
+        }
+    }
+
+    private final String[] extensions;
+
+    FileCategory(String... extensions) {
+        this.extensions = extensions;
+    }
+
+    /**
+     * Category of a lower-case extension, GENERIC if it is not known
+     */
+    public static FileCategory forExtension(String extension) {
+        return BY_EXTENSION.getOrDefault(extension, GENERIC);
+    }
+
+    /**
+     * Whether the lower-case extension belongs to any category other than GENERIC
+     */
+    public static boolean isKnownExtension(String extension) {
+        return BY_EXTENSION.containsKey(extension);
+    }
+
+    /**
+     * Lower-case extension of a file name, or "" if it has none
+     */
+    public static String extensionOf(String fileName) {
+        if (fileName != null && fileName.contains(".")) {
+            return fileName.substring(fileName.lastIndexOf(".") + 1).toLowerCase();
+        }
+        return "";
+    }
+}
@@ -1,14 +1,14 @@
 package com.example.jp.model;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public abstract class FileItem {
     private String name;
     private String path;
@@ -16,6 +16,21 @@ public abstract class FileItem {
     private String mimeType;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+
+    /**
+     * Format-specific fields as stored in the metadata catalog, null until the file has been extracted
+     */
+    @JsonIgnore
+    private Map<String, Object> extractedMetadata;
+
+    public FileItem(String name, String path, Long size, String mimeType, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this.name = name;
+        this.path = path;
+        this.size = size;
+        this.mimeType = mimeType;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
     
     /**
      * Get the file extension
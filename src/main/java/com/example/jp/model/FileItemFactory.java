@@ -1,55 +1,43 @@
 package com.example.jp.model;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 /**
- * Factory class to create appropriate FileItem subclass based on file extension
+ * Factory class to create appropriate FileItem subclass for a file's category
  */
 public class FileItemFactory {
 
     /**
-     * Create a FileItem instance of the appropriate type based on file extension
+     * Constructor of a FileItem subclass
      */
-    public static FileItem createFileItem(String name, String path, Long size, String mimeType) {
-        String extension = extractExtension(name);
-        
-        if (isDocumentFile(extension)) {
-            return new DocumentFile(name, path, size, mimeType);
-        } else if (isImageFile(extension)) {
-            return new ImageFile(name, path, size, mimeType);
-        } else if (isVideoFile(extension)) {
-            return new VideoFile(name, path, size, mimeType);
-        } else if (isAudioFile(extension)) {
-            return new AudioFile(name, path, size, mimeType);
-        } else if (isArchiveFile(extension)) {
-            return new ArchiveFile(name, path, size, mimeType);
-        } else {
-            return new GenericFile(name, path, size, mimeType);
-        }
-    }
-
-    private static String extractExtension(String filename) {
-        if (filename != null && filename.contains(".")) {
-            return filename.substring(filename.lastIndexOf(".") + 1).toLowerCase();
-        }
-        return "";
-    }
-
-    private static boolean isDocumentFile(String ext) {
-        return ext.matches("pdf|doc|docx|txt|rtf|odt|xls|xlsx|ppt|pptx|csv");
+    @FunctionalInterface
+    public interface FileItemConstructor {
+        FileItem create(String name, String path, Long size, String mimeType);
     }
 
-    private static boolean isImageFile(String ext) {
-        return ext.matches("jpg|jpeg|png|gif|svg|bmp|webp|ico|tiff|tif");
-    }
+    private static final Map<FileCategory, FileItemConstructor> REGISTRY = new EnumMap<>(FileCategory.class);
 
-    private static boolean isVideoFile(String ext) {
-        return ext.matches("mp4|avi|mov|mkv|wmv|flv|webm|mpeg|mpg|3gp");
+    static {
+        REGISTRY.put(FileCategory.DOCUMENT, DocumentFile::new);
+        REGISTRY.put(FileCategory.IMAGE, ImageFile::new);
+        REGISTRY.put(FileCategory.VIDEO, VideoFile::new);
+        REGISTRY.put(FileCategory.AUDIO, AudioFile::new);
+        REGISTRY.put(FileCategory.ARCHIVE, ArchiveFile::new);
+        REGISTRY.put(FileCategory.GENERIC, GenericFile::new);
     }
 
-    private static boolean isAudioFile(String ext) {
-        return ext.matches("mp3|wav|flac|aac|ogg|m4a|wma|opus");
+    /**
+     * Create a FileItem instance of the appropriate type based on file extension
+     */
+    public static FileItem createFileItem(String name, String path, Long size, String mimeType) {
+        return createFileItem(FileCategory.forExtension(FileCategory.extensionOf(name)), name, path, size, mimeType);
     }
 
-    private static boolean isArchiveFile(String ext) {
-        return ext.matches("zip|rar|7z|tar|gz|gzip|bz2|xz");
+    /**
+     * Create a FileItem instance for a category already determined, e.g. from the file's content
+     */
+    public static FileItem createFileItem(FileCategory category, String name, String path, Long size, String mimeType) {
+        return REGISTRY.get(category).create(name, path, size, mimeType);
     }
 }
@@ -1,33 +1,193 @@
 package com.example.jp.model;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
-
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
- * Represents the status of an asynchronous file upload task
+ * Represents the status of an asynchronous file upload task.
+ * Kept compact because the registry may hold many of them: timestamps are epoch
+ * millis, the status is stored as its ordinal, and progress is updated atomically
+ * without a separate wrapper object. A task finishes exactly once: the move to a
+ * terminal status is a compare-and-set, and anything that comes after it is ignored.
  */
-@Data
-@NoArgsConstructor
-@AllArgsConstructor
 public class FileUploadTask {
-    private String taskId;
-    private String fileName;
-    private String folderPath;
-    private TaskStatus status;
-    private String message;
-    private String filePath;
-    private Long fileSize;
-    private LocalDateTime startTime;
-    private LocalDateTime endTime;
-    private Integer progressPercent;
+
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    private static final AtomicIntegerFieldUpdater<FileUploadTask> STATUS =
+            AtomicIntegerFieldUpdater.newUpdater(FileUploadTask.class, "status");
+    private static final AtomicIntegerFieldUpdater<FileUploadTask> PROGRESS =
+            AtomicIntegerFieldUpdater.newUpdater(FileUploadTask.class, "progressPercent");
+
+    private final String taskId;
+    private final String groupId;          // null unless part of a batch
+    private final String fileName;
+    private final String folderPath;
+    private final long startTimeMillis;
+
+    private volatile int status;
+    private volatile int progressPercent;
+    private volatile long endTimeMillis;   // 0 while running
+    private volatile long fileSize = -1;   // -1 until known
+    private volatile String message;
+    private volatile String filePath;
+
+    public FileUploadTask(String taskId, String fileName, String folderPath) {
+        this(taskId, null, fileName, folderPath, System.currentTimeMillis());
+    }
+
+    public FileUploadTask(String taskId, String groupId, String fileName, String folderPath, long startTimeMillis) {
+        this.taskId = taskId;
+        this.groupId = groupId;
+        this.fileName = fileName;
+        this.folderPath = folderPath;
+        this.startTimeMillis = startTimeMillis;
+        this.status = TaskStatus.PENDING.ordinal();
+    }
 
     public enum TaskStatus {
         PENDING,
         IN_PROGRESS,
         COMPLETED,
-        FAILED
+        FAILED;
+
+        public boolean isTerminal() {
+            return this == COMPLETED || this == FAILED;
+        }
+    }
+
+    /**
+     * Mark the task completed with the stored file's location.
+     * Returns false, changing nothing, if the task had already finished.
+     */
+    public boolean complete(String filePath, long fileSize, String message) {
+        if (!finish(TaskStatus.COMPLETED)) {
+            return false;
+        }
+        this.filePath = filePath;
+        this.fileSize = fileSize;
+        this.message = message;
+        PROGRESS.set(this, 100);
+        return true;
+    }
+
+    /**
+     * Mark the task failed.
+     * Returns false, changing nothing, if the task had already finished.
+     */
+    public boolean fail(String message) {
+        if (!finish(TaskStatus.FAILED)) {
+            return false;
+        }
+        this.message = message;
+        return true;
+    }
+
+    /**
+     * Restore a finished task's outcome, e.g. from the task journal after a restart
+     */
+    public void restoreFinished(TaskStatus status, long endTimeMillis, String filePath, long fileSize, String message) {
+        this.filePath = filePath;
+        this.fileSize = fileSize;
+        this.message = message;
+        PROGRESS.set(this, status == TaskStatus.COMPLETED ? 100 : progressPercent);
+        this.endTimeMillis = endTimeMillis;
+        this.status = status.ordinal();
+    }
+
+    private boolean finish(TaskStatus terminalStatus) {
+        int current;
+        do {
+            current = status;
+            if (STATUSES[current].isTerminal()) {
+                return false;
+            }
+        } while (!STATUS.compareAndSet(this, current, terminalStatus.ordinal()));
+        this.endTimeMillis = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Move a running task to another non-terminal status.
+     * Returns false if the status did not change, including when the task has already finished.
+     */
+    public boolean moveTo(TaskStatus status) {
+        int current;
+        do {
+            current = this.status;
+            if (STATUSES[current].isTerminal() || current == status.ordinal()) {
+                return false;
+            }
+        } while (!STATUS.compareAndSet(this, current, status.ordinal()));
+        return true;
+    }
+
+    public boolean isTerminal() {
+        return getStatus().isTerminal();
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getFolderPath() {
+        return folderPath;
+    }
+
+    public TaskStatus getStatus() {
+        return STATUSES[status];
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public Long getFileSize() {
+        return fileSize >= 0 ? fileSize : null;
+    }
+
+    public Integer getProgressPercent() {
+        return progressPercent;
+    }
+
+    public void setProgressPercent(int progressPercent) {
+        PROGRESS.set(this, progressPercent);
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getEndTimeMillis() {
+        return endTimeMillis;
+    }
+
+    public LocalDateTime getStartTime() {
+        return toLocalDateTime(startTimeMillis);
+    }
+
+    public LocalDateTime getEndTime() {
+        return endTimeMillis > 0 ? toLocalDateTime(endTimeMillis) : null;
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
     }
 }
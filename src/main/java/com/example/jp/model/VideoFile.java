@@ -16,7 +16,7 @@ public class VideoFile extends FileItem {
 
     public VideoFile(String name, String path, Long size, String mimeType) {
         super(name, path, size, mimeType, null, null);
-        this.hasAudio = true; // Default assumption
+        // hasAudio stays unknown until the container has been read
     }
 
     @Override
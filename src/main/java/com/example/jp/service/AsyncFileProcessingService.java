@@ -1,25 +1,28 @@
 package com.example.jp.service;
 
+import com.example.jp.config.LaneScheduler;
 import com.example.jp.dto.FileItemDTO;
+import com.example.jp.dto.TaskRegistryStatsDTO;
+import com.example.jp.dto.TenantQueueStatsDTO;
 import com.example.jp.model.FileItem;
 import com.example.jp.model.FileUploadTask;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.time.LocalDateTime;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executor;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Service for handling asynchronous file processing operations
@@ -29,133 +32,197 @@ import java.util.concurrent.Executor;
 public class AsyncFileProcessingService {
 
     private final FileStorageService fileStorageService;
-    private final Executor fileProcessingExecutor;
-    private final Map<String, FileUploadTask> taskStore = new ConcurrentHashMap<>();
+    private final LaneScheduler fileProcessingScheduler;
+    private final UploadTaskRegistry taskRegistry;
+    private final MetadataExtractionService metadataExtractionService;
+    private final StorageMetrics storageMetrics;
+    private final UploadAdmissionService uploadAdmissionService;
 
     @Autowired
     public AsyncFileProcessingService(
             FileStorageService fileStorageService,
-            @Qualifier("fileProcessingExecutor") Executor fileProcessingExecutor) {
+            @Qualifier("fileProcessingScheduler") LaneScheduler fileProcessingScheduler,
+            UploadTaskRegistry taskRegistry,
+            MetadataExtractionService metadataExtractionService,
+            StorageMetrics storageMetrics,
+            UploadAdmissionService uploadAdmissionService) {
         this.fileStorageService = fileStorageService;
-        this.fileProcessingExecutor = fileProcessingExecutor;
+        this.fileProcessingScheduler = fileProcessingScheduler;
+        this.taskRegistry = taskRegistry;
+        this.metadataExtractionService = metadataExtractionService;
+        this.storageMetrics = storageMetrics;
+        this.uploadAdmissionService = uploadAdmissionService;
     }
 
     /**
      * Upload file asynchronously
-     * Note: We buffer file bytes immediately because the temp file may be deleted
-     * after the HTTP request completes but before the async thread processes it.
+     * Note: We stage the upload on the request thread because the multipart temp file
+     * may be deleted after the HTTP request completes but before the async thread processes it.
+     * Staging renames or copies the temp file on disk, so heap use per upload does not depend on file size.
      */
     public CompletableFuture<FileItemDTO> uploadFileAsync(MultipartFile file, String folderPath, String taskId) {
         log.info("Starting async upload for file: {} with taskId: {}", file.getOriginalFilename(), taskId);
         
-        FileUploadTask task = taskStore.get(taskId);
+        FileUploadTask task = taskRegistry.get(taskId);
         if (task == null) {
-            task = new FileUploadTask();
-            task.setTaskId(taskId);
-            task.setFileName(file.getOriginalFilename());
-            task.setFolderPath(folderPath);
-            task.setStartTime(LocalDateTime.now());
-            taskStore.put(taskId, task);
+            task = new FileUploadTask(taskId, file.getOriginalFilename(), folderPath);
+            taskRegistry.register(task);
         }
 
-        // Buffer file data immediately before async handoff to avoid temp file issues
-        final byte[] fileBytes;
+        // Stage file data immediately before async handoff to avoid temp file issues
+        final Path stagedFile;
         final String originalFilename = file.getOriginalFilename();
         final String contentType = file.getContentType();
-        final long fileSize = file.getSize();
         
         try {
-            fileBytes = file.getBytes();
-            task.setStatus(FileUploadTask.TaskStatus.IN_PROGRESS);
-            task.setProgressPercent(10);
+            stagedFile = fileStorageService.stageUpload(file);
         } catch (Exception e) {
-            log.error("Failed to read file bytes: {}", originalFilename, e);
-            task.setStatus(FileUploadTask.TaskStatus.FAILED);
-            task.setMessage("Failed to read file: " + e.getMessage());
-            task.setEndTime(LocalDateTime.now());
+            log.error("Failed to stage file: {}", originalFilename, e);
+            taskRegistry.fail(task, "Failed to read file: " + e.getMessage());
             return CompletableFuture.failedFuture(e);
         }
 
-        final FileUploadTask finalTask = task;
-        
-        return CompletableFuture.supplyAsync(() -> {
+        try {
+            taskRegistry.staged(task, stagedFile, contentType);
+        } catch (IOException e) {
+            // Without the journal the upload could not be resumed, so do not start it
+            log.error("Failed to journal staged file: {}: {}", originalFilename, e.getMessage());
+            fileStorageService.discardStagedFile(stagedFile);
+            taskRegistry.fail(task, "Failed to record upload: " + e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return processStagedUpload(task, stagedFile, contentType);
+    }
+
+    /**
+     * Resume uploads that were staged but not stored when the application last stopped.
+     * They are admitted like new uploads; one that does not fit the current limits fails.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedUploads() {
+        for (UploadTaskJournal.ResumableUpload upload : taskRegistry.getResumableUploads()) {
+            FileUploadTask task = upload.getTask();
+            Path stagedFile = upload.getStagedFile();
+            long size = stagedSize(stagedFile);
             try {
-                // Simulate processing for demonstration
-                Thread.sleep(1000);
-                finalTask.setProgressPercent(50);
-                
-                // Create a simple MultipartFile wrapper from buffered bytes
-                MultipartFile bufferedFile = new ByteArrayMultipartFile(
-                    fileBytes, originalFilename, contentType, fileSize
-                );
-                
-                // Store the file
-                FileItem fileItem = fileStorageService.storeFile(bufferedFile, folderPath);
-                finalTask.setProgressPercent(90);
-                
-                return fileItem;
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+                uploadAdmissionService.acquire(size, 1);
+            } catch (UploadRejectedException e) {
+                log.warn("Cannot resume upload for file: {} with taskId: {}: {}", task.getFileName(), task.getTaskId(),
+                        e.getMessage());
+                fileStorageService.discardStagedFile(stagedFile);
+                taskRegistry.fail(task, "Upload could not be resumed: " + e.getMessage());
+                continue;
             }
-        }, fileProcessingExecutor).thenApply(fileItem -> {
+
+            log.info("Resuming interrupted upload for file: {} with taskId: {}", task.getFileName(), task.getTaskId());
+            taskRegistry.transition(task, FileUploadTask.TaskStatus.IN_PROGRESS, 10);
+            processStagedUpload(task, stagedFile, upload.getContentType())
+                .whenComplete((dto, ex) -> uploadAdmissionService.release(size, 1));
+        }
+    }
+
+    /**
+     * Store a staged upload on the file processing scheduler. The returned future fails if the upload does.
+     */
+    private CompletableFuture<FileItemDTO> processStagedUpload(FileUploadTask finalTask, Path stagedFile, String contentType) {
+        final String taskId = finalTask.getTaskId();
+        final String originalFilename = finalTask.getFileName();
+        final String folderPath = finalTask.getFolderPath();
+
+        final String tenant = FileStorageService.tenantOf(folderPath);
+
+        CompletableFuture<FileItem> stored;
+        try {
+            stored = fileProcessingScheduler.supplyAsync(tenant, stagedSize(stagedFile), () -> {
+                try {
+                    // Simulate processing for demonstration
+                    Thread.sleep(1000);
+                    taskRegistry.progress(finalTask, 50);
+
+                    // Journal the target first, so a crash after the move is not mistaken for a lost upload
+                    Path targetFile = fileStorageService.reserveTargetFile(folderPath, originalFilename);
+                    taskRegistry.storing(finalTask, targetFile);
+
+                    // Move the staged file into place
+                    FileItem fileItem = fileStorageService.storeStagedFile(
+                        stagedFile, targetFile, contentType, folderPath
+                    );
+                    taskRegistry.progress(finalTask, 90);
+
+                    return fileItem;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Fail the task rather than leave it waiting for a worker that will never run it
+            log.warn("File processing queue full, rejecting upload: {} with taskId: {}", originalFilename, taskId);
+            fileStorageService.discardStagedFile(stagedFile);
+            taskRegistry.fail(finalTask, "Upload rejected: processing queue is full");
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return stored.thenApply(fileItem -> {
             // Convert to DTO
             FileItemDTO dto = convertToDTO(fileItem);
             
             // Update task as completed
-            finalTask.setStatus(FileUploadTask.TaskStatus.COMPLETED);
-            finalTask.setProgressPercent(100);
-            finalTask.setFilePath(fileItem.getPath());
-            finalTask.setFileSize(fileItem.getSize());
-            finalTask.setEndTime(LocalDateTime.now());
-            finalTask.setMessage("File uploaded successfully");
+            taskRegistry.complete(finalTask, fileItem.getPath(), fileItem.getSize(), "File uploaded successfully");
             
             log.info("Completed async upload for file: {} with taskId: {}", originalFilename, taskId);
+
+            // Container headers are read in the background, off the upload path
+            try {
+                extractMetadataAsync(fileItem.getPath());
+            } catch (RejectedExecutionException e) {
+                log.warn("Metadata extraction queue full, skipping {}", fileItem.getPath());
+            }
             
             return dto;
         }).exceptionally(ex -> {
             log.error("Failed to upload file: {} with taskId: {}", originalFilename, taskId, ex);
-            finalTask.setStatus(FileUploadTask.TaskStatus.FAILED);
-            finalTask.setMessage("Upload failed: " + ex.getMessage());
-            finalTask.setEndTime(LocalDateTime.now());
-            return null;
+            fileStorageService.discardStagedFile(stagedFile);
+            taskRegistry.fail(finalTask, "Upload failed: " + ex.getMessage());
+            throw ex instanceof CompletionException completion ? completion : new CompletionException(ex);
         });
     }
 
     /**
-     * Process file metadata extraction asynchronously
+     * Size of a staged upload, which picks its scheduler lane
      */
-    @Async("metadataExtractionExecutor")
-    public CompletableFuture<Void> extractMetadataAsync(String filePath) {
-        log.info("Starting metadata extraction for file: {}", filePath);
-        
+    private static long stagedSize(Path stagedFile) {
         try {
-            // Simulate metadata extraction
-            Thread.sleep(2000);
-            
-            log.info("Completed metadata extraction for file: {}", filePath);
-            return CompletableFuture.completedFuture(null);
-            
-        } catch (Exception e) {
-            log.error("Failed to extract metadata for file: {}", filePath, e);
-            return CompletableFuture.failedFuture(e);
+            return Files.size(stagedFile);
+        } catch (IOException e) {
+            // The store step will fail on its own; the lane does not matter
+            return 0;
         }
     }
 
+    /**
+     * Process file metadata extraction asynchronously
+     */
+    public CompletableFuture<FileItem> extractMetadataAsync(String filePath) {
+        log.info("Starting metadata extraction for file: {}", filePath);
+        return metadataExtractionService.extractAsync(filePath);
+    }
+
     /**
      * Create a new upload task
      */
     public String createUploadTask(String fileName, String folderPath) {
+        return createUploadTask(fileName, folderPath, null);
+    }
+
+    /**
+     * Create a new upload task as part of a batch
+     */
+    public String createUploadTask(String fileName, String folderPath, String groupId) {
         String taskId = UUID.randomUUID().toString();
         
-        FileUploadTask task = new FileUploadTask();
-        task.setTaskId(taskId);
-        task.setFileName(fileName);
-        task.setFolderPath(folderPath);
-        task.setStatus(FileUploadTask.TaskStatus.PENDING);
-        task.setProgressPercent(0);
-        task.setStartTime(LocalDateTime.now());
-        
-        taskStore.put(taskId, task);
+        FileUploadTask task = new FileUploadTask(taskId, groupId, fileName, folderPath, System.currentTimeMillis());
+        taskRegistry.register(task);
         
         log.info("Created upload task with ID: {}", taskId);
         return taskId;
@@ -165,18 +232,48 @@ public class AsyncFileProcessingService {
      * Get task status
      */
     public FileUploadTask getTaskStatus(String taskId) {
-        return taskStore.get(taskId);
+        return taskRegistry.get(taskId);
+    }
+
+    /**
+     * Task registry occupancy and eviction stats
+     */
+    public TaskRegistryStatsDTO getTaskRegistryStats() {
+        return taskRegistry.getStats();
+    }
+
+    /**
+     * Per-tenant queue depth and service time of upload processing and metadata extraction
+     */
+    public List<TenantQueueStatsDTO> getTenantQueueStats() {
+        List<LaneScheduler.TenantSnapshot> snapshots = new ArrayList<>(fileProcessingScheduler.getTenantSnapshots());
+        snapshots.addAll(metadataExtractionService.getTenantSnapshots());
+
+        List<TenantQueueStatsDTO> stats = new ArrayList<>(snapshots.size());
+        for (LaneScheduler.TenantSnapshot snapshot : snapshots) {
+            stats.add(new TenantQueueStatsDTO(
+                snapshot.getScheduler(),
+                snapshot.getTenant(),
+                snapshot.getWeight(),
+                snapshot.getQueued(),
+                snapshot.getRunning(),
+                snapshot.getCompleted(),
+                snapshot.getCompleted() == 0 ? 0.0 : snapshot.getServiceNanos() / 1e6 / snapshot.getCompleted()
+            ));
+        }
+        return stats;
     }
 
     /**
      * Remove completed task
      */
     public void removeTask(String taskId) {
-        taskStore.remove(taskId);
+        taskRegistry.remove(taskId);
         log.info("Removed task with ID: {}", taskId);
     }
 
     private FileItemDTO convertToDTO(FileItem file) {
+        long start = System.nanoTime();
         FileItemDTO dto = new FileItemDTO();
         dto.setName(file.getName());
         dto.setPath(file.getPath());
@@ -187,65 +284,7 @@ public class AsyncFileProcessingService {
         dto.setExtension(file.getExtension());
         dto.setCreatedAt(file.getCreatedAt());
         dto.setUpdatedAt(file.getUpdatedAt());
+        storageMetrics.recordStage(StorageMetrics.Stage.DTO, System.nanoTime() - start);
         return dto;
     }
-
-    /**
-     * Simple MultipartFile implementation backed by a byte array
-     */
-    private static class ByteArrayMultipartFile implements MultipartFile {
-        private final byte[] content;
-        private final String name;
-        private final String originalFilename;
-        private final String contentType;
-        private final long size;
-
-        public ByteArrayMultipartFile(byte[] content, String originalFilename, String contentType, long size) {
-            this.content = content;
-            this.name = "file";
-            this.originalFilename = originalFilename;
-            this.contentType = contentType;
-            this.size = size;
-        }
-
-        @Override
-        public String getName() {
-            return name;
-        }
-
-        @Override
-        public String getOriginalFilename() {
-            return originalFilename;
-        }
-
-        @Override
-        public String getContentType() {
-            return contentType;
-        }
-
-        @Override
-        public boolean isEmpty() {
-            return content == null || content.length == 0;
-        }
-
-        @Override
-        public long getSize() {
-            return size;
-        }
-
-        @Override
-        public byte[] getBytes() throws IOException {
-            return content;
-        }
-
-        @Override
-        public InputStream getInputStream() throws IOException {
-            return new ByteArrayInputStream(content);
-        }
-
-        @Override
-        public void transferTo(File dest) throws IOException, IllegalStateException {
-            java.nio.file.Files.write(dest.toPath(), content);
-        }
-    }
 }
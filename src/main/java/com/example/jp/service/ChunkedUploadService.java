@@ -0,0 +1,309 @@
+package com.example.jp.service;
+
+import com.example.jp.dto.FileItemDTO;
+import com.example.jp.model.ChunkedUploadSession;
+import com.example.jp.model.FileItem;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Service for resumable chunked uploads.
+ * Each session owns a preallocated staging file; chunks are written with positional
+ * FileChannel writes so clients can send them in parallel and in any order.
+ * Sessions idle longer than the timeout are discarded by a periodic sweep.
+ * The declared size of a session and the number of open sessions are capped, since
+ * each session holds an open file and disk space reserved for its whole size.
+ */
+@Service
+@Slf4j
+public class ChunkedUploadService {
+
+    private final FileStorageService fileStorageService;
+    private final Map<String, ChunkedUploadSession> sessions = new ConcurrentHashMap<>();
+
+    @Value("${app.upload.chunked.session-timeout-minutes:60}")
+    private long sessionTimeoutMinutes;
+
+    @Value("${app.upload.chunked.max-total-size:10737418240}")
+    private long maxTotalSize;
+
+    @Value("${app.upload.chunked.max-sessions:1000}")
+    private int maxSessions;
+
+    // One permit per session that may still be opened
+    private Semaphore sessionPermits;
+
+    public ChunkedUploadService(FileStorageService fileStorageService) {
+        this.fileStorageService = fileStorageService;
+    }
+
+    @PostConstruct
+    void init() {
+        sessionPermits = new Semaphore(maxSessions);
+    }
+
+    /**
+     * Start a new chunked upload session
+     *
+     * @throws IllegalArgumentException if the file name or size is invalid
+     * @throws UploadRejectedException if the size is over the limit, or too many sessions are open
+     */
+    public ChunkedUploadSession initSession(String fileName, String folderPath, long totalSize, String contentType) throws IOException {
+        if (fileName == null || fileName.isEmpty()) {
+            throw new IllegalArgumentException("Invalid filename");
+        }
+        if (totalSize < 0) {
+            throw new IllegalArgumentException("Invalid total size: " + totalSize);
+        }
+        if (totalSize > maxTotalSize) {
+            throw new UploadRejectedException("Total size " + totalSize + " exceeds the limit of " + maxTotalSize, 0);
+        }
+        if (!sessionPermits.tryAcquire()) {
+            throw new UploadRejectedException("Too many open chunked upload sessions", secondsUntilNextExpiry());
+        }
+
+        Path stagedFile;
+        FileChannel channel;
+        try {
+            stagedFile = fileStorageService.allocateStagingFile(totalSize);
+            channel = FileChannel.open(stagedFile, StandardOpenOption.WRITE);
+        } catch (IOException | RuntimeException e) {
+            sessionPermits.release();
+            throw e;
+        }
+
+        String sessionId = UUID.randomUUID().toString();
+        ChunkedUploadSession session = new ChunkedUploadSession(
+            sessionId,
+            fileName,
+            folderPath != null ? folderPath : "",
+            contentType != null ? contentType : "application/octet-stream",
+            totalSize,
+            stagedFile,
+            channel
+        );
+        sessions.put(sessionId, session);
+
+        log.info("Created chunked upload session {} for file: {} ({} bytes)", sessionId, fileName, totalSize);
+        return session;
+    }
+
+    /**
+     * Write one chunk at the given offset. Safe to call concurrently for the same session.
+     * Returns null if the session does not exist or has been completed or aborted.
+     *
+     * @throws IllegalArgumentException if the chunk does not fit within the declared size
+     */
+    public ChunkedUploadSession writeChunk(String sessionId, long offset, InputStream body) throws IOException {
+        ChunkedUploadSession session = sessions.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+
+        Lock lock = session.getLock().readLock();
+        lock.lock();
+        try {
+            if (session.isClosed()) {
+                return null;
+            }
+            if (offset < 0 || offset > session.getTotalSize()) {
+                throw new IllegalArgumentException("Offset out of range: " + offset);
+            }
+
+            // transferFrom copies through the JDK's per-thread temporary buffer, so no buffer per chunk
+            FileChannel channel = session.getChannel();
+            ReadableByteChannel source = Channels.newChannel(body);
+            long end = session.getTotalSize();
+            long position = offset;
+            long transferred;
+            while (position < end && (transferred = channel.transferFrom(source, position, end - position)) > 0) {
+                position += transferred;
+            }
+            if (body.read() != -1) {
+                throw new IllegalArgumentException("Chunk extends past declared size of " + session.getTotalSize());
+            }
+
+            // Only record the range once all of its bytes are written
+            session.addRange(offset, position);
+            return session;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get a session by ID, or null if it does not exist
+     */
+    public ChunkedUploadSession getSession(String sessionId) {
+        ChunkedUploadSession session = sessions.get(sessionId);
+        if (session != null) {
+            session.touch();
+        }
+        return session;
+    }
+
+    /**
+     * Finish a session once every byte has been received and store the file.
+     * Waits for chunk writes in flight. Returns null if the session does not exist
+     * or has already been completed or aborted. If storing fails while the staged file
+     * is still there, the session stays open so the client can retry or abort it.
+     *
+     * @throws IllegalStateException if bytes are still missing
+     */
+    public FileItemDTO completeSession(String sessionId) throws IOException {
+        ChunkedUploadSession session = sessions.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+
+        Lock lock = session.getLock().writeLock();
+        lock.lock();
+        try {
+            if (session.isClosed()) {
+                return null;
+            }
+            if (!session.isComplete()) {
+                throw new IllegalStateException("Upload incomplete: received " + session.getReceivedBytes()
+                        + " of " + session.getTotalSize() + " bytes");
+            }
+            session.getChannel().force(false);
+
+            // Stored under the write lock, so no chunk write or abort runs while the file is moved
+            FileItem fileItem;
+            try {
+                fileItem = fileStorageService.storeStagedFile(
+                    session.getStagedFile(),
+                    session.getFileName(),
+                    session.getContentType(),
+                    session.getFolderPath()
+                );
+            } catch (IOException | RuntimeException e) {
+                if (Files.notExists(session.getStagedFile())) {
+                    // Moved before the failure, so there is nothing left to retry with
+                    close(session);
+                }
+                throw e;
+            }
+
+            session.markClosed();
+            remove(session);
+            closeQuietly(session);
+
+            log.info("Completed chunked upload session {} for file: {}", sessionId, fileItem.getPath());
+            return convertToDTO(fileItem);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Abort a session and discard its staged data. Waits for chunk writes in flight.
+     */
+    public void abortSession(String sessionId) {
+        ChunkedUploadSession session = sessions.get(sessionId);
+        if (session == null) {
+            return;
+        }
+
+        Lock lock = session.getLock().writeLock();
+        lock.lock();
+        try {
+            if (!session.isClosed()) {
+                close(session);
+                log.info("Aborted chunked upload session {}", sessionId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.chunked.sweep-interval-ms:60000}")
+    void expireIdleSessions() {
+        long cutoff = System.currentTimeMillis() - sessionTimeoutMinutes * 60_000;
+        for (ChunkedUploadSession session : sessions.values()) {
+            if (session.getLastActivity() >= cutoff) {
+                continue;
+            }
+            // A session with a chunk write in flight is not idle
+            Lock lock = session.getLock().writeLock();
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                if (!session.isClosed()) {
+                    close(session);
+                    log.info("Expired idle chunked upload session {}", session.getSessionId());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Remove a session and discard its staged data. Call with the session's write lock held.
+     */
+    private void close(ChunkedUploadSession session) {
+        session.markClosed();
+        remove(session);
+        closeQuietly(session);
+        fileStorageService.discardStagedFile(session.getStagedFile());
+    }
+
+    private void remove(ChunkedUploadSession session) {
+        if (sessions.remove(session.getSessionId(), session)) {
+            sessionPermits.release();
+        }
+    }
+
+    private static void closeQuietly(ChunkedUploadSession session) {
+        try {
+            session.getChannel().close();
+        } catch (IOException e) {
+            // Channel is being thrown away anyway
+        }
+    }
+
+    /**
+     * Upper bound on the wait for a free session: until the longest idle session expires
+     */
+    private long secondsUntilNextExpiry() {
+        long oldestActivity = System.currentTimeMillis();
+        for (ChunkedUploadSession session : sessions.values()) {
+            oldestActivity = Math.min(oldestActivity, session.getLastActivity());
+        }
+        long expiresAt = oldestActivity + sessionTimeoutMinutes * 60_000;
+        return Math.max(1, (expiresAt - System.currentTimeMillis() + 999) / 1000);
+    }
+
+    private FileItemDTO convertToDTO(FileItem file) {
+        FileItemDTO dto = new FileItemDTO();
+        dto.setName(file.getName());
+        dto.setPath(file.getPath());
+        dto.setSize(file.getSize());
+        dto.setMimeType(file.getMimeType());
+        dto.setFileTypeCategory(file.getFileTypeCategory());
+        dto.setFileTypeDescription(file.getFileTypeDescription());
+        dto.setExtension(file.getExtension());
+        dto.setCreatedAt(file.getCreatedAt());
+        dto.setUpdatedAt(file.getUpdatedAt());
+        return dto;
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.jp.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressable blob store used to deduplicate stored files.
+ * Every distinct content is kept once under blobRoot/ab/cd/&lt;sha256&gt; and logical files
+ * under the storage root are hard links to it. The file system's link count is the
+ * reference count: a blob whose only remaining link is its own entry is garbage.
+ * <p>
+ * Files under the storage root must be treated as immutable while this store is enabled.
+ * A hard link shares its inode with the blob and every other file of the same content, so
+ * writing to one in place changes all of them and leaves the blob under a stale hash.
+ * Replace a file by writing a new one and moving it over instead.
+ */
+@Service
+@Slf4j
+public class ContentAddressableStore {
+
+    private static final int LOCK_STRIPES = 64;
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    @Value("${app.storage.dedup.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.storage.dedup.blob-root:data/blobs}")
+    private String blobRoot;
+
+    // File key (device + inode) of each blob -> blob path, so a logical file can find its blob
+    private final Map<Object, Path> blobsByFileKey = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public ContentAddressableStore() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        Path root = Paths.get(blobRoot).toAbsolutePath();
+        Path tmpDir = root.resolve("tmp");
+        Files.createDirectories(tmpDir);
+
+        if (!root.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+            log.warn("File system does not expose link counts, content deduplication disabled");
+            enabled = false;
+            return;
+        }
+
+        // Rebuild the file key index and drop blobs nothing links to any more
+        int blobs = 0;
+        int collected = 0;
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) walk::iterator) {
+                if (tmpDir.equals(path.getParent())) {
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                if (!Files.isRegularFile(path)) {
+                    continue;
+                }
+                if (linkCount(path) <= 1) {
+                    Files.deleteIfExists(path);
+                    collected++;
+                    continue;
+                }
+                blobsByFileKey.put(Files.readAttributes(path, BasicFileAttributes.class).fileKey(), path);
+                blobs++;
+            }
+        }
+
+        log.info("Content-addressable store ready: {} blobs, {} unreferenced blobs removed", blobs, collected);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Store the content of a stream, hashing it while it is written to disk
+     */
+    public void store(InputStream content, Path target) throws IOException {
+        Path tempFile = Paths.get(blobRoot, "tmp", UUID.randomUUID() + ".part");
+        MessageDigest digest = newDigest();
+
+        try {
+            try (DigestInputStream in = new DigestInputStream(content, digest)) {
+                Files.copy(in, tempFile);
+            }
+            storeHashed(tempFile, HexFormat.of().formatHex(digest.digest()), target);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Store the content of a staged file. The staged file no longer exists afterwards.
+     */
+    public void store(Path stagedFile, Path target) throws IOException {
+        storeHashed(stagedFile, hash(stagedFile), target);
+    }
+
+    /**
+     * SHA-256 of a deduplicated file's content, which is its blob's name, or null if the file is not deduplicated
+     */
+    public String contentHash(Path logicalFile) throws IOException {
+        if (!enabled) {
+            return null;
+        }
+        Path blob = blobsByFileKey.get(Files.readAttributes(logicalFile, BasicFileAttributes.class).fileKey());
+        return blob != null ? blob.getFileName().toString() : null;
+    }
+
+    /**
+     * SHA-256 of a file's content, as hex
+     */
+    public static String hash(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Delete a logical file, and its blob if that was the last reference
+     */
+    public void release(Path logicalFile) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(logicalFile, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+
+        Path blob = attrs.isRegularFile() ? blobsByFileKey.get(attrs.fileKey()) : null;
+        if (blob == null) {
+            // Not deduplicated (stored before dedup was enabled, or links unsupported)
+            Files.deleteIfExists(logicalFile);
+            return;
+        }
+
+        synchronized (lockFor(blob.getFileName().toString())) {
+            Files.deleteIfExists(logicalFile);
+            if (linkCount(blob) <= 1) {
+                blobsByFileKey.remove(attrs.fileKey());
+                Files.deleteIfExists(blob);
+                log.debug("Removed unreferenced blob {}", blob.getFileName());
+            }
+        }
+    }
+
+    private void storeHashed(Path source, String digest, Path target) throws IOException {
+        Path blob = Paths.get(blobRoot, digest.substring(0, 2), digest.substring(2, 4), digest);
+
+        synchronized (lockFor(digest)) {
+            if (Files.exists(blob)) {
+                // Duplicate content: only a new link is needed
+                Files.delete(source);
+            } else {
+                Files.createDirectories(blob.getParent());
+                moveToBlob(source, blob);
+                blobsByFileKey.put(Files.readAttributes(blob, BasicFileAttributes.class).fileKey(), blob);
+            }
+
+            try {
+                Files.createLink(target, blob);
+            } catch (FileAlreadyExistsException e) {
+                throw e;
+            } catch (UnsupportedOperationException | IOException e) {
+                // Storage root on another file store: keep a private copy instead
+                log.warn("Could not hard link {} to blob, storing a copy: {}", target, e.getMessage());
+                Files.copy(blob, target);
+                if (linkCount(blob) <= 1) {
+                    blobsByFileKey.values().remove(blob);
+                    Files.deleteIfExists(blob);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move a file to its blob path. A file from another file store is first copied into the
+     * blob root's tmp directory, so a blob never shows up half written under its name.
+     */
+    private void moveToBlob(Path source, Path blob) throws IOException {
+        try {
+            Files.move(source, blob, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Path tempFile = Paths.get(blobRoot, "tmp", UUID.randomUUID() + ".part");
+            try {
+                Files.copy(source, tempFile);
+                Files.move(tempFile, blob, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            Files.delete(source);
+        }
+    }
+
+    private int linkCount(Path path) throws IOException {
+        return (Integer) Files.getAttribute(path, "unix:nlink");
+    }
+
+    private Object lockFor(String digest) {
+        return locks[Math.floorMod(digest.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
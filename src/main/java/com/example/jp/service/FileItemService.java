@@ -1,5 +1,6 @@
 package com.example.jp.service;
 
+import com.example.jp.dto.ArchiveEntryDTO;
 import com.example.jp.dto.FileItemDTO;
 import com.example.jp.model.FileItem;
 import lombok.RequiredArgsConstructor;
@@ -8,12 +9,15 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class FileItemService {
 
     private final FileStorageService fileStorageService;
+    private final MetadataExtractionService metadataExtractionService;
+    private final StorageMetrics storageMetrics;
 
     /**
      * Upload a file to the specified folder path
@@ -45,6 +49,20 @@ public class FileItemService {
         return fileStorageService.getFileMetadata(filePath);
     }
 
+    /**
+     * Get file metadata including format details read from the file's headers, or null if not found
+     */
+    public FileItem getFileDetails(String filePath) throws IOException {
+        return metadataExtractionService.extract(filePath);
+    }
+
+    /**
+     * List entries of an archive without extracting it, or null if the file is not a readable archive
+     */
+    public List<ArchiveEntryDTO> getArchiveEntries(String filePath, String prefix, int limit) throws IOException {
+        return metadataExtractionService.listArchiveEntries(filePath, prefix, limit);
+    }
+
     /**
      * Get file path for download
      */
@@ -53,6 +71,7 @@ public class FileItemService {
     }
 
     private FileItemDTO convertToDTO(FileItem file) {
+        long start = System.nanoTime();
         FileItemDTO dto = new FileItemDTO();
         dto.setName(file.getName());
         dto.setPath(file.getPath());
@@ -63,6 +82,7 @@ public class FileItemService {
         dto.setExtension(file.getExtension());
         dto.setCreatedAt(file.getCreatedAt());
         dto.setUpdatedAt(file.getUpdatedAt());
+        storageMetrics.recordStage(StorageMetrics.Stage.DTO, System.nanoTime() - start);
         return dto;
     }
 }
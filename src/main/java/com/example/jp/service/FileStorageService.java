@@ -1,12 +1,21 @@
 package com.example.jp.service;
 
+import com.example.jp.diagnostics.FileMetadataEvent;
+import com.example.jp.diagnostics.FileStoreEvent;
+import com.example.jp.diagnostics.ServerTiming;
+import com.example.jp.event.StorageChangeEvent;
+import com.example.jp.metadata.FileTypeDetector;
 import com.example.jp.model.FileItem;
 import com.example.jp.model.FileItemFactory;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -14,17 +23,142 @@ import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.UUID;
 
 @Service
+@RequiredArgsConstructor
 public class FileStorageService {
 
     @Value("${app.storage.root}")
     private String storageRoot;
 
+    @Value("${app.storage.staging:data/staging}")
+    private String stagingRoot;
+
+    private final ContentAddressableStore contentStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MetadataCatalogService metadataCatalog;
+    private final FileTypeDetector fileTypeDetector;
+    private final StorageMetrics storageMetrics;
+
     /**
      * Store a file in the specified folder path with its original name
      */
     public FileItem storeFile(MultipartFile file, String folderPath) throws IOException {
+        FileStoreEvent event = new FileStoreEvent();
+        event.begin();
+        Path targetFile = resolveTargetFile(folderPath, file.getOriginalFilename());
+
+        long start = System.nanoTime();
+        if (contentStore.isEnabled()) {
+            contentStore.store(file.getInputStream(), targetFile);
+        } else {
+            Files.copy(file.getInputStream(), targetFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        storageMetrics.recordStored(file.getSize(), System.nanoTime() - start);
+        String relativePath = relativePath(targetFile);
+        eventPublisher.publishEvent(StorageChangeEvent.created(relativePath, false));
+
+        FileItem fileItem = toFileItem(targetFile, folderPath, file.getSize(), file.getContentType());
+        event.path = relativePath;
+        event.bytes = file.getSize();
+        event.commit();
+        return fileItem;
+    }
+
+    /**
+     * Move an upload out of its multipart temp location into the staging directory.
+     * transferTo(File) hands the path to Part.write, which renames the container's temp file
+     * when it is on the same file system and copies it otherwise; transferTo(Path) would
+     * always copy through an input stream.
+     */
+    public Path stageUpload(MultipartFile file) throws IOException {
+        Path stagingDir = Paths.get(stagingRoot).toAbsolutePath();
+        Files.createDirectories(stagingDir);
+
+        Path stagedFile = stagingDir.resolve("upload-" + UUID.randomUUID() + ".part");
+        long start = System.nanoTime();
+        file.transferTo(stagedFile.toFile());
+        storageMetrics.recordStage(StorageMetrics.Stage.READ, System.nanoTime() - start);
+        return stagedFile;
+    }
+
+    /**
+     * Create a staging file of the given size for uploads that arrive in pieces.
+     * The file is sized up front so chunks can be written at any offset.
+     */
+    public Path allocateStagingFile(long size) throws IOException {
+        Path stagingDir = Paths.get(stagingRoot).toAbsolutePath();
+        Files.createDirectories(stagingDir);
+
+        Path stagedFile = stagingDir.resolve("chunked-" + UUID.randomUUID() + ".part");
+        try (RandomAccessFile raf = new RandomAccessFile(stagedFile.toFile(), "rw")) {
+            raf.setLength(size);
+        }
+        return stagedFile;
+    }
+
+    /**
+     * Store a previously staged file in the specified folder path with its original name.
+     * The staged file is moved into place and no longer exists afterwards.
+     */
+    public FileItem storeStagedFile(Path stagedFile, String originalFilename, String contentType, String folderPath) throws IOException {
+        return storeStagedFile(stagedFile, reserveTargetFile(folderPath, originalFilename), contentType, folderPath);
+    }
+
+    /**
+     * Pick the file an upload will be stored as, so it can be recorded before the staged file is moved there
+     */
+    public Path reserveTargetFile(String folderPath, String originalFilename) throws IOException {
+        return resolveTargetFile(folderPath, originalFilename);
+    }
+
+    /**
+     * Store a previously staged file as a target picked by reserveTargetFile
+     */
+    public FileItem storeStagedFile(Path stagedFile, Path targetFile, String contentType, String folderPath) throws IOException {
+        FileStoreEvent event = new FileStoreEvent();
+        event.begin();
+
+        long start = System.nanoTime();
+        if (contentStore.isEnabled()) {
+            contentStore.store(stagedFile, targetFile);
+        } else {
+            try {
+                Files.move(stagedFile, targetFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                // Staging area lives on another file store, fall back to copy + delete
+                Files.move(stagedFile, targetFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        long size = Files.size(targetFile);
+        storageMetrics.recordStored(size, System.nanoTime() - start);
+        String relativePath = relativePath(targetFile);
+        eventPublisher.publishEvent(StorageChangeEvent.created(relativePath, false));
+
+        FileItem fileItem = toFileItem(targetFile, folderPath, size, contentType);
+        event.path = relativePath;
+        event.bytes = size;
+        event.staged = true;
+        event.commit();
+        return fileItem;
+    }
+
+    /**
+     * Delete a staged file that will not be stored
+     */
+    public void discardStagedFile(Path stagedFile) {
+        try {
+            Files.deleteIfExists(stagedFile);
+        } catch (IOException e) {
+            // Leftover staging files are harmless
+        }
+    }
+
+    /**
+     * Resolve the target file for an upload, adding a number suffix if the name is taken
+     */
+    private Path resolveTargetFile(String folderPath, String originalFilename) throws IOException {
         Path targetDir = Paths.get(storageRoot, folderPath);
         
         // Create directory if it doesn't exist
@@ -32,7 +166,6 @@ public class FileStorageService {
             Files.createDirectories(targetDir);
         }
 
-        String originalFilename = file.getOriginalFilename();
         if (originalFilename == null || originalFilename.isEmpty()) {
             throw new IOException("Invalid filename");
         }
@@ -51,23 +184,37 @@ public class FileStorageService {
             
             int counter = 1;
             do {
-                originalFilename = nameWithoutExt + " (" + counter + ")" + extension;
-                targetFile = targetDir.resolve(originalFilename);
+                targetFile = targetDir.resolve(nameWithoutExt + " (" + counter + ")" + extension);
                 counter++;
             } while (Files.exists(targetFile));
         }
 
-        Files.copy(file.getInputStream(), targetFile, StandardCopyOption.REPLACE_EXISTING);
+        return targetFile;
+    }
+
+    private FileItem toFileItem(Path targetFile, String folderPath, long size, String contentType) throws IOException {
+        String fileName = targetFile.getFileName().toString();
 
         // Create FileItem with metadata using factory pattern
+        long start = System.nanoTime();
         BasicFileAttributes attrs = Files.readAttributes(targetFile, BasicFileAttributes.class);
-        
+
+        // The stored bytes decide the type; the client's content type only fills in for unknown files
+        FileTypeDetector.FileType type = fileTypeDetector.detect(
+                targetFile, relativePath(targetFile), attrs.size(), attrs.lastModifiedTime().toMillis());
+        String mimeType = type.getMimeType();
+        if (FileTypeDetector.DEFAULT_MIME_TYPE.equals(mimeType) && contentType != null) {
+            mimeType = contentType;
+        }
+        storageMetrics.recordStage(StorageMetrics.Stage.ATTRIBUTES, System.nanoTime() - start);
+
         // Use factory to create appropriate file type
         FileItem fileItem = FileItemFactory.createFileItem(
-            originalFilename,
-            Paths.get(folderPath, originalFilename).toString(),
-            file.getSize(),
-            file.getContentType()
+            type.getCategory(),
+            fileName,
+            Paths.get(folderPath, fileName).toString(),
+            size,
+            mimeType
         );
         
         fileItem.setCreatedAt(LocalDateTime.ofInstant(attrs.creationTime().toInstant(), ZoneId.systemDefault()));
@@ -81,7 +228,20 @@ public class FileStorageService {
      */
     public void deleteFile(String filePath) throws IOException {
         Path fullPath = Paths.get(storageRoot, filePath);
-        Files.deleteIfExists(fullPath);
+        deleteStoredFile(fullPath);
+        eventPublisher.publishEvent(StorageChangeEvent.deleted(relativePath(fullPath), false));
+    }
+
+    /**
+     * Delete a stored file by its full path. With deduplication enabled this drops
+     * a reference, and the content is only removed with its last reference.
+     */
+    public void deleteStoredFile(Path fullPath) throws IOException {
+        if (contentStore.isEnabled()) {
+            contentStore.release(fullPath);
+        } else {
+            Files.deleteIfExists(fullPath);
+        }
     }
 
     /**
@@ -95,27 +255,87 @@ public class FileStorageService {
      * Get file metadata
      */
     public FileItem getFileMetadata(String filePath) throws IOException {
+        FileMetadataEvent event = new FileMetadataEvent();
+        event.begin();
         Path fullPath = Paths.get(storageRoot, filePath);
         
+        long disk = ServerTiming.start();
         if (!Files.exists(fullPath)) {
             throw new IOException("File not found: " + filePath);
         }
 
         BasicFileAttributes attrs = Files.readAttributes(fullPath, BasicFileAttributes.class);
-        String mimeType = Files.probeContentType(fullPath);
-        
+        ServerTiming.stop("disk", disk);
+
+        FileItem fileItem = describeFile(filePath, fullPath, attrs);
+        event.path = filePath;
+        event.bytes = attrs.size();
+        event.commit();
+        return fileItem;
+    }
+
+    /**
+     * Build file metadata from attributes the caller has already read
+     */
+    public FileItem describeFile(String filePath, Path fullPath, BasicFileAttributes attrs) throws IOException {
+        String relativePath = relativePath(fullPath);
+        long phase = ServerTiming.start();
+        FileTypeDetector.FileType type = fileTypeDetector.detect(
+                fullPath, relativePath, attrs.size(), attrs.lastModifiedTime().toMillis());
+        ServerTiming.stop("type", phase);
+
         // Use factory to create appropriate file type
+        phase = ServerTiming.start();
         FileItem fileItem = FileItemFactory.createFileItem(
+            type.getCategory(),
             fullPath.getFileName().toString(),
             filePath,
             attrs.size(),
-            mimeType != null ? mimeType : "application/octet-stream"
+            type.getMimeType()
         );
         
         fileItem.setCreatedAt(LocalDateTime.ofInstant(attrs.creationTime().toInstant(), ZoneId.systemDefault()));
         fileItem.setUpdatedAt(LocalDateTime.ofInstant(attrs.lastModifiedTime().toInstant(), ZoneId.systemDefault()));
+        ServerTiming.stop("factory", phase);
+
+        // Format-specific fields extracted earlier, if the file is unchanged since
+        phase = ServerTiming.start();
+        metadataCatalog.hydrate(fileItem, relativePath, attrs.size(), attrs.lastModifiedTime().toMillis());
+        ServerTiming.stop("catalog", phase);
 
         return fileItem;
     }
-}
 
+    /**
+     * Path of a file under the storage root, relative to the root and using '/' separators
+     */
+    public String relativePath(Path fullPath) {
+        Path root = Paths.get(storageRoot).toAbsolutePath().normalize();
+        return root.relativize(fullPath.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    /**
+     * Tenant a path belongs to: its top-level folder, or "/" for the storage root
+     */
+    public static String tenantOf(String path) {
+        if (path == null) {
+            return "/";
+        }
+        String normalized = path.replace('\\', '/');
+        int start = 0;
+        while (start < normalized.length() && normalized.charAt(start) == '/') {
+            start++;
+        }
+        int end = normalized.indexOf('/', start);
+        String tenant = end < 0 ? normalized.substring(start) : normalized.substring(start, end);
+        return tenant.isEmpty() ? "/" : tenant;
+    }
+
+    public Path getStorageRoot() {
+        return Paths.get(storageRoot);
+    }
+
+    public Path getStagingRoot() {
+        return Paths.get(stagingRoot).toAbsolutePath();
+    }
+}
@@ -1,23 +1,35 @@
 package com.example.jp.service;
 
+import com.example.jp.diagnostics.FolderDeleteEvent;
+import com.example.jp.diagnostics.FolderListingEvent;
+import com.example.jp.diagnostics.ServerTiming;
 import com.example.jp.dto.FolderContentsDTO;
 import com.example.jp.dto.FolderDTO;
+import com.example.jp.dto.FolderEntryDTO;
 import com.example.jp.dto.FileItemDTO;
+import com.example.jp.event.StorageChangeEvent;
 import com.example.jp.model.FileItem;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 @Service
@@ -28,6 +40,9 @@ public class FolderService {
     private String storageRoot;
 
     private final FileStorageService fileStorageService;
+    private final MetadataIndexService metadataIndexService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StorageMetrics storageMetrics;
 
     /**
      * Create a new folder
@@ -52,6 +67,7 @@ public class FolderService {
 
         // Create directory
         Files.createDirectories(fullPath);
+        eventPublisher.publishEvent(StorageChangeEvent.created(fileStorageService.relativePath(fullPath), true));
 
         // Get metadata
         BasicFileAttributes attrs = Files.readAttributes(fullPath, BasicFileAttributes.class);
@@ -71,6 +87,21 @@ public class FolderService {
      * Get folder contents (subfolders and files)
      */
     public FolderContentsDTO getFolderContents(String folderPath) throws IOException {
+        FolderListingEvent event = new FolderListingEvent();
+        event.begin();
+        long start = System.nanoTime();
+        FolderContentsDTO contents = listFolderContents(folderPath);
+        int entries = contents.getFolders().size() + contents.getFiles().size();
+        storageMetrics.recordListing(entries, metadataIndexService.isEnabled(), System.nanoTime() - start);
+
+        event.path = folderPath;
+        event.entries = entries;
+        event.indexed = metadataIndexService.isEnabled();
+        event.commit();
+        return contents;
+    }
+
+    private FolderContentsDTO listFolderContents(String folderPath) throws IOException {
         Path fullPath = folderPath == null || folderPath.isEmpty()
                 ? Paths.get(storageRoot)
                 : Paths.get(storageRoot, folderPath);
@@ -80,13 +111,26 @@ public class FolderService {
             Files.createDirectories(fullPath);
         }
 
+        if (metadataIndexService.isEnabled()) {
+            long phase = ServerTiming.start();
+            MetadataIndexService.FolderSnapshot snapshot = metadataIndexService.getFolder(folderPath);
+            ServerTiming.stop("index", phase);
+
+            phase = ServerTiming.start();
+            FolderContentsDTO contents = toFolderContents(snapshot);
+            ServerTiming.stop("dto", phase);
+            return contents;
+        }
+
         List<FolderDTO> folders = new ArrayList<>();
         List<FileItemDTO> files = new ArrayList<>();
 
         try (Stream<Path> stream = Files.list(fullPath)) {
             stream.forEach(path -> {
                 try {
+                    long disk = ServerTiming.start();
                     BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    ServerTiming.stop("disk", disk);
                     String relativePath = Paths.get(storageRoot).relativize(path).toString();
 
                     if (attrs.isDirectory()) {
@@ -98,17 +142,9 @@ public class FolderService {
                         folders.add(folderDTO);
                     } else if (attrs.isRegularFile()) {
                         FileItem fileItem = fileStorageService.getFileMetadata(relativePath);
-                        FileItemDTO fileDTO = new FileItemDTO();
-                        fileDTO.setName(fileItem.getName());
-                        fileDTO.setPath(fileItem.getPath());
-                        fileDTO.setSize(fileItem.getSize());
-                        fileDTO.setMimeType(fileItem.getMimeType());
-                        fileDTO.setFileTypeCategory(fileItem.getFileTypeCategory());
-                        fileDTO.setFileTypeDescription(fileItem.getFileTypeDescription());
-                        fileDTO.setExtension(fileItem.getExtension());
-                        fileDTO.setCreatedAt(fileItem.getCreatedAt());
-                        fileDTO.setUpdatedAt(fileItem.getUpdatedAt());
-                        files.add(fileDTO);
+                        long dto = ServerTiming.start();
+                        files.add(toFileItemDTO(fileItem));
+                        ServerTiming.stop("dto", dto);
                     }
                 } catch (IOException e) {
                     // Skip files that can't be read
@@ -127,6 +163,82 @@ public class FolderService {
         return contents;
     }
 
+    /**
+     * Get one page of folder contents. Entries are in name order with folders first;
+     * the page starts after the given cursor (null for the first page).
+     */
+    public FolderContentsDTO getFolderContentsPage(String folderPath, String cursor, int limit) throws IOException {
+        List<FolderDTO> folders = new ArrayList<>();
+        List<FileItemDTO> files = new ArrayList<>();
+
+        Iterator<FolderEntryDTO> entries = iterateFolderContents(folderPath, cursor);
+        FolderEntryDTO last = null;
+        while (entries.hasNext() && folders.size() + files.size() < limit) {
+            last = entries.next();
+            if (last.getFolder() != null) {
+                folders.add(last.getFolder());
+            } else {
+                files.add(last.getFile());
+            }
+        }
+
+        FolderContentsDTO contents = new FolderContentsDTO();
+        contents.setFolders(folders);
+        contents.setFiles(files);
+        if (last != null && entries.hasNext()) {
+            contents.setNextCursor(encodeCursor(last));
+        }
+        return contents;
+    }
+
+    /**
+     * Iterate over folder contents in name order with folders first, starting after the
+     * given cursor. With the index enabled, entries are converted to DTOs one at a time as
+     * they are consumed; otherwise the whole folder is listed and sorted up front.
+     *
+     * @throws IllegalArgumentException if the cursor was not returned by a previous page
+     */
+    public Iterator<FolderEntryDTO> iterateFolderContents(String folderPath, String cursor) throws IOException {
+        String position = cursor != null && !cursor.isEmpty() ? decodeCursor(cursor) : null;
+        String name = position != null ? position.substring(2) : null;
+        boolean afterFolder = position != null && position.startsWith("d:");
+        boolean afterFile = position != null && position.startsWith("f:");
+
+        Iterator<FolderEntryDTO> folderEntries;
+        Iterator<FolderEntryDTO> fileEntries;
+        if (metadataIndexService.isEnabled()) {
+            // Entries are looked up from the cursor and converted as they are consumed
+            ensureFolderExists(folderPath);
+            MetadataIndexService.FolderSnapshot snapshot = metadataIndexService.getFolder(folderPath);
+            Collection<MetadataIndexService.Entry> folders = afterFile ? List.of()
+                    : afterFolder ? snapshot.getFoldersAfter(name) : snapshot.getFolders();
+            Collection<MetadataIndexService.Entry> files = afterFile ? snapshot.getFilesAfter(name) : snapshot.getFiles();
+            folderEntries = folders.stream().map(entry -> FolderEntryDTO.ofFolder(toFolderDTO(entry))).iterator();
+            fileEntries = files.stream().map(entry -> FolderEntryDTO.ofFile(toFileItemDTO(entry.getFile()))).iterator();
+        } else {
+            FolderContentsDTO contents = getFolderContents(folderPath);
+            List<FolderDTO> folders = contents.getFolders();
+            List<FileItemDTO> files = contents.getFiles();
+
+            int folderStart = afterFile ? folders.size() : afterFolder ? positionAfter(folders, FolderDTO::getName, name) : 0;
+            int fileStart = afterFile ? positionAfter(files, FileItemDTO::getName, name) : 0;
+            folderEntries = folders.subList(folderStart, folders.size()).stream().map(FolderEntryDTO::ofFolder).iterator();
+            fileEntries = files.subList(fileStart, files.size()).stream().map(FolderEntryDTO::ofFile).iterator();
+        }
+
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return folderEntries.hasNext() || fileEntries.hasNext();
+            }
+
+            @Override
+            public FolderEntryDTO next() {
+                return folderEntries.hasNext() ? folderEntries.next() : fileEntries.next();
+            }
+        };
+    }
+
     /**
      * Delete a folder and all its contents
      */
@@ -145,17 +257,127 @@ public class FolderService {
             throw new IllegalArgumentException("Path is not a directory: " + folderPath);
         }
 
+        FolderDeleteEvent event = new FolderDeleteEvent();
+        event.begin();
+        // Sizes cost a stat per file, so they are only read while the event is recorded
+        boolean measure = event.isEnabled();
+
         // Delete directory and all contents recursively
         try (Stream<Path> walk = Files.walk(fullPath)) {
             walk.sorted(Comparator.reverseOrder())
                     .forEach(path -> {
                         try {
-                            Files.delete(path);
+                            if (Files.isRegularFile(path)) {
+                                if (measure) {
+                                    event.bytes += Files.size(path);
+                                }
+                                // Drops a reference when content is deduplicated
+                                fileStorageService.deleteStoredFile(path);
+                            } else {
+                                Files.delete(path);
+                            }
+                            event.entries++;
                         } catch (IOException e) {
                             // Log error but continue
                         }
                     });
         }
+        eventPublisher.publishEvent(StorageChangeEvent.deleted(fileStorageService.relativePath(fullPath), true));
+
+        event.path = folderPath;
+        event.commit();
     }
-}
 
+    private FolderContentsDTO toFolderContents(MetadataIndexService.FolderSnapshot snapshot) {
+        List<FolderDTO> folders = new ArrayList<>();
+        for (MetadataIndexService.Entry entry : snapshot.getFolders()) {
+            folders.add(toFolderDTO(entry));
+        }
+
+        List<FileItemDTO> files = new ArrayList<>();
+        for (MetadataIndexService.Entry entry : snapshot.getFiles()) {
+            files.add(toFileItemDTO(entry.getFile()));
+        }
+
+        FolderContentsDTO contents = new FolderContentsDTO();
+        contents.setFolders(folders);
+        contents.setFiles(files);
+
+        return contents;
+    }
+
+    private FolderDTO toFolderDTO(MetadataIndexService.Entry entry) {
+        FolderDTO folderDTO = new FolderDTO();
+        folderDTO.setName(entry.getName());
+        folderDTO.setPath(entry.getPath());
+        folderDTO.setCreatedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.getCreatedMillis()), ZoneId.systemDefault()));
+        folderDTO.setUpdatedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.getModifiedMillis()), ZoneId.systemDefault()));
+        return folderDTO;
+    }
+
+    private FileItemDTO toFileItemDTO(FileItem fileItem) {
+        FileItemDTO fileDTO = new FileItemDTO();
+        fileDTO.setName(fileItem.getName());
+        fileDTO.setPath(fileItem.getPath());
+        fileDTO.setSize(fileItem.getSize());
+        fileDTO.setMimeType(fileItem.getMimeType());
+        fileDTO.setFileTypeCategory(fileItem.getFileTypeCategory());
+        fileDTO.setFileTypeDescription(fileItem.getFileTypeDescription());
+        fileDTO.setExtension(fileItem.getExtension());
+        fileDTO.setCreatedAt(fileItem.getCreatedAt());
+        fileDTO.setUpdatedAt(fileItem.getUpdatedAt());
+        fileDTO.setMetadata(fileItem.getExtractedMetadata());
+        return fileDTO;
+    }
+
+    private void ensureFolderExists(String folderPath) throws IOException {
+        Path fullPath = folderPath == null || folderPath.isEmpty()
+                ? Paths.get(storageRoot)
+                : Paths.get(storageRoot, folderPath);
+
+        // Create root directory if it doesn't exist
+        if (!Files.exists(fullPath)) {
+            Files.createDirectories(fullPath);
+        }
+    }
+
+    private static String encodeCursor(FolderEntryDTO entry) {
+        String position = entry.getFolder() != null
+                ? "d:" + entry.getFolder().getName()
+                : "f:" + entry.getFile().getName();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Position written by encodeCursor: "d:" or "f:" followed by a non-empty name
+     */
+    private static String decodeCursor(String cursor) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (decoded.length() < 3 || !(decoded.startsWith("d:") || decoded.startsWith("f:"))) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return decoded;
+    }
+
+    /**
+     * Index of the first element whose name sorts after the given name
+     */
+    private static <T> int positionAfter(List<T> sorted, Function<T, String> nameOf, String name) {
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (nameOf.apply(sorted.get(mid)).compareTo(name) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.jp.service;
+
+import com.example.jp.event.StorageChangeEvent;
+import com.example.jp.model.FileItem;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.DeserializationFeature;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent catalog of extracted file metadata (image dimensions, durations, tags, page counts, ...),
+ * so each file is extracted once rather than on every request or after every restart.
+ * Entries live in an embedded MVStore map keyed by the file's path relative to the storage root;
+ * each records the size and mtime it was extracted at and only matches a file that still has both.
+ * Failed extractions are recorded too, with no fields, so a malformed file is not parsed again until it changes.
+ * Puts go to MVStore's in-memory map and its background writer commits them in batches.
+ */
+@Service
+@Slf4j
+public class MetadataCatalogService {
+
+    // Fields every FileItem has; only the format-specific rest is stored
+    private static final Set<String> BASE_PROPERTIES = Set.of(
+            "name", "path", "size", "mimeType", "createdAt", "updatedAt",
+            "extension", "fileTypeCategory", "fileTypeDescription");
+
+    private static final TypeReference<Map<String, Object>> FIELD_MAP = new TypeReference<>() {
+    };
+
+    private final JsonMapper jsonMapper;
+
+    @Value("${app.metadata.catalog.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.metadata.catalog.path:data/metadata-catalog.mv}")
+    private String catalogPath;
+
+    @Value("${app.metadata.catalog.commit-delay-ms:1000}")
+    private int commitDelayMillis;
+
+    private MVStore store;
+    private MVMap<String, String> entries;
+
+    public MetadataCatalogService(JsonMapper jsonMapper) {
+        this.jsonMapper = jsonMapper;
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        Path file = Paths.get(catalogPath).toAbsolutePath();
+        Files.createDirectories(file.getParent());
+        try {
+            store = new MVStore.Builder()
+                    .fileName(file.toString())
+                    .compress()
+                    .open();
+            store.setAutoCommitDelay(commitDelayMillis);
+            entries = store.openMap("metadata");
+            log.info("Metadata catalog opened with {} entries", entries.size());
+        } catch (RuntimeException e) {
+            // e.g. locked by another instance: run without the catalog rather than not at all
+            log.warn("Metadata catalog unavailable, metadata will not be persisted: {}", e.getMessage());
+            store = null;
+            entries = null;
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return entries != null;
+    }
+
+    /**
+     * Number of files in the catalog
+     */
+    public long size() {
+        return entries != null ? entries.sizeAsLong() : 0;
+    }
+
+    /**
+     * Fill in an item's format-specific fields from the catalog.
+     * Returns false if the file is not cataloged or changed since it was extracted.
+     */
+    public boolean hydrate(FileItem item, String path, long size, long mtimeMillis) {
+        if (entries == null) {
+            return false;
+        }
+        String stored = entries.get(path);
+        if (stored == null) {
+            return false;
+        }
+
+        try {
+            JsonNode entry = jsonMapper.readTree(stored);
+            if (entry.path("size").asLong(-1) != size || entry.path("mtime").asLong(-1) != mtimeMillis) {
+                return false;
+            }
+            JsonNode fields = entry.path("fields");
+            // Derived read-only values (dimensions, ratios, ...) are stored too and skipped here
+            jsonMapper.readerForUpdating(item)
+                    .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                    .readValue(fields);
+            item.setExtractedMetadata(jsonMapper.convertValue(fields, FIELD_MAP));
+            return true;
+        } catch (JacksonException e) {
+            log.debug("Ignoring unreadable catalog entry for {}: {}", path, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Store an item's extracted fields for the file's current size and mtime
+     */
+    public void record(FileItem item, String path, long size, long mtimeMillis) {
+        if (entries == null) {
+            return;
+        }
+
+        ObjectNode fields = jsonMapper.createObjectNode();
+        for (Map.Entry<String, JsonNode> property : jsonMapper.valueToTree(item).properties()) {
+            if (!BASE_PROPERTIES.contains(property.getKey()) && !property.getValue().isNull()) {
+                fields.set(property.getKey(), property.getValue());
+            }
+        }
+        put(path, size, mtimeMillis, fields, false);
+        item.setExtractedMetadata(jsonMapper.convertValue(fields, FIELD_MAP));
+    }
+
+    /**
+     * Record that extraction failed for the file's current size and mtime.
+     * The file then hydrates with no format-specific metadata until it changes.
+     */
+    public void recordFailure(FileItem item, String path, long size, long mtimeMillis) {
+        if (entries == null) {
+            return;
+        }
+        put(path, size, mtimeMillis, jsonMapper.createObjectNode(), true);
+        item.setExtractedMetadata(Map.of());
+    }
+
+    private void put(String path, long size, long mtimeMillis, ObjectNode fields, boolean failed) {
+        ObjectNode entry = jsonMapper.createObjectNode();
+        entry.put("size", size);
+        entry.put("mtime", mtimeMillis);
+        if (failed) {
+            entry.put("failed", true);
+        }
+        entry.set("fields", fields);
+        entries.put(path, jsonMapper.writeValueAsString(entry));
+    }
+
+    @EventListener
+    public void onStorageChange(StorageChangeEvent event) {
+        if (entries == null || event.getKind() != StorageChangeEvent.Kind.DELETED) {
+            return;
+        }
+        // Modified files need nothing here: their size or mtime no longer matches
+        String path = event.getPath();
+        if (!event.isDirectory()) {
+            entries.remove(path);
+            return;
+        }
+
+        // Keys are sorted, so a folder's files are one contiguous range
+        String prefix = path.isEmpty() ? "" : path + "/";
+        Iterator<String> keys = entries.keyIterator(prefix);
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            entries.remove(key);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.jp.service;
+
+import com.example.jp.config.LaneScheduler;
+import com.example.jp.dto.ArchiveEntryDTO;
+import com.example.jp.event.StorageChangeEvent;
+import com.example.jp.metadata.ArchiveMetadataExtractor;
+import com.example.jp.metadata.MetadataExtractor;
+import com.example.jp.metadata.SeekableReader;
+import com.example.jp.model.ArchiveFile;
+import com.example.jp.model.FileItem;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Fills in format-specific file metadata (image dimensions, ...) by dispatching
+ * to the MetadataExtractor registered for the file's type. Results are kept in the
+ * MetadataCatalogService, so a file is only read again once it changes.
+ */
+@Service
+@Slf4j
+public class MetadataExtractionService {
+
+    private final FileStorageService fileStorageService;
+    private final List<MetadataExtractor> extractors;
+    private final ArchiveMetadataExtractor archiveMetadataExtractor;
+    private final MetadataCatalogService metadataCatalog;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LaneScheduler metadataExtractionScheduler;
+
+    @Value("${app.metadata.extraction-timeout-ms:2000}")
+    private long extractionTimeoutMillis;
+
+    public MetadataExtractionService(
+            FileStorageService fileStorageService,
+            List<MetadataExtractor> extractors,
+            ArchiveMetadataExtractor archiveMetadataExtractor,
+            MetadataCatalogService metadataCatalog,
+            ApplicationEventPublisher eventPublisher,
+            @Qualifier("metadataExtractionScheduler") LaneScheduler metadataExtractionScheduler) {
+        this.fileStorageService = fileStorageService;
+        this.extractors = extractors;
+        this.archiveMetadataExtractor = archiveMetadataExtractor;
+        this.metadataCatalog = metadataCatalog;
+        this.eventPublisher = eventPublisher;
+        this.metadataExtractionScheduler = metadataExtractionScheduler;
+    }
+
+    /**
+     * Get file metadata including details read from the file's headers, or null if there is no such file
+     */
+    public FileItem extract(String filePath) throws IOException {
+        Path fullPath = fileStorageService.loadFile(filePath);
+        if (!Files.isRegularFile(fullPath)) {
+            return null;
+        }
+
+        BasicFileAttributes attrs = Files.readAttributes(fullPath, BasicFileAttributes.class);
+        FileItem item = fileStorageService.describeFile(filePath, fullPath, attrs);
+        // Already hydrated from the catalog unless the file is new or changed
+        if (item.getExtractedMetadata() == null) {
+            String relativePath = fileStorageService.relativePath(fullPath);
+            long mtimeMillis = attrs.lastModifiedTime().toMillis();
+            switch (enrich(item, fullPath)) {
+                case EXTRACTED -> {
+                    metadataCatalog.record(item, relativePath, attrs.size(), mtimeMillis);
+                    // Let the folder index pick up the new fields for listings
+                    eventPublisher.publishEvent(StorageChangeEvent.modified(relativePath, false));
+                }
+                // Remembered so the same bad file is not parsed again until it changes
+                case FAILED -> metadataCatalog.recordFailure(item, relativePath, attrs.size(), mtimeMillis);
+                case UNSUPPORTED -> {
+                }
+            }
+        }
+        return item;
+    }
+
+    /**
+     * List an archive's entries from its directory, or null if there is no such archive
+     *
+     * @throws InterruptedIOException if reading the directory exceeds the extraction time budget
+     */
+    public List<ArchiveEntryDTO> listArchiveEntries(String filePath, String prefix, int limit) throws IOException {
+        Path fullPath = fileStorageService.loadFile(filePath);
+        if (!Files.isRegularFile(fullPath)) {
+            return null;
+        }
+
+        FileItem item = fileStorageService.getFileMetadata(filePath);
+        if (!(item instanceof ArchiveFile)) {
+            return null;
+        }
+        try (SeekableReader reader = SeekableReader.open(fullPath)) {
+            // Runs on the request thread, so a pathological archive must not hold it either
+            reader.setTimeBudget(extractionTimeoutMillis);
+            return archiveMetadataExtractor.listEntries(reader, item.getName(), prefix, limit);
+        }
+    }
+
+    /**
+     * Extract metadata on the metadata extraction executor, queued fairly per top-level folder
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if the extraction queue is full
+     */
+    public CompletableFuture<FileItem> extractAsync(String filePath) {
+        return metadataExtractionScheduler.supplyAsync(FileStorageService.tenantOf(filePath), 0, () -> {
+            try {
+                FileItem item = extract(filePath);
+                log.debug("Extracted metadata for {}: {}", filePath, item);
+                return item;
+            } catch (IOException e) {
+                log.error("Failed to extract metadata for file: {}", filePath, e);
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Per-tenant queue depth and service time of metadata extraction
+     */
+    public List<LaneScheduler.TenantSnapshot> getTenantSnapshots() {
+        return metadataExtractionScheduler.getTenantSnapshots();
+    }
+
+    /**
+     * Read metadata for an item whose file is at fullPath
+     */
+    public Outcome enrich(FileItem item, Path fullPath) {
+        for (MetadataExtractor extractor : extractors) {
+            if (!extractor.supports(item)) {
+                continue;
+            }
+            try (SeekableReader reader = SeekableReader.open(fullPath)) {
+                reader.setTimeBudget(extractionTimeoutMillis);
+                extractor.extract(reader, item);
+                return Outcome.EXTRACTED;
+            } catch (InterruptedIOException e) {
+                // A pathological file must not hold an extraction thread
+                log.warn("Metadata extraction for {} exceeded {} ms, skipped", fullPath, extractionTimeoutMillis);
+                return Outcome.FAILED;
+            } catch (IOException e) {
+                // Truncated or malformed file: keep the basic metadata
+                log.debug("Could not read metadata of {}: {}", fullPath, e.getMessage());
+                return Outcome.FAILED;
+            } catch (RuntimeException e) {
+                // A parser bug on crafted input must not fail the request or the async extraction
+                log.warn("Metadata extractor {} failed on {}", extractor.getClass().getSimpleName(), fullPath, e);
+                return Outcome.FAILED;
+            }
+        }
+        return Outcome.UNSUPPORTED;
+    }
+
+    public enum Outcome {
+        EXTRACTED,
+        /** The file could not be read within the time budget or is malformed */
+        FAILED,
+        /** No extractor handles the file's type */
+        UNSUPPORTED
+    }
+}
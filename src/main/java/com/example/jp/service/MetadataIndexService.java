@@ -0,0 +1,411 @@
+package com.example.jp.service;
+
+import com.example.jp.event.StorageChangeEvent;
+import com.example.jp.model.FileItem;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of folder contents.
+ * Each folder is scanned once (in parallel at startup) and then kept current from
+ * StorageChangeEvents, so listings are answered from memory. A directory mtime check
+ * on every read catches changes made outside the API.
+ */
+@Service
+@Slf4j
+public class MetadataIndexService {
+
+    @Value("${app.index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.index.warm-on-startup:true}")
+    private boolean warmOnStartup;
+
+    private final FileStorageService fileStorageService;
+
+    // Folder path relative to the storage root ("" for the root) -> snapshot
+    private final Map<String, FolderSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    public MetadataIndexService(FileStorageService fileStorageService) {
+        this.fileStorageService = fileStorageService;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the current contents of a folder, rescanning it only if it changed on disk
+     */
+    public FolderSnapshot getFolder(String folderPath) throws IOException {
+        String key = normalize(folderPath);
+        Path dir = resolve(key);
+
+        FileTime mtime = Files.getLastModifiedTime(dir);
+        FolderSnapshot snapshot = snapshots.get(key);
+        if (snapshot != null && snapshot.isCurrent(mtime)) {
+            return snapshot;
+        }
+
+        FolderSnapshot rescanned = scan(key, dir, snapshot);
+        snapshots.put(key, rescanned);
+        return rescanned;
+    }
+
+    /**
+     * Number of folders currently indexed
+     */
+    public int getIndexedFolderCount() {
+        return snapshots.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled || !warmOnStartup) {
+            return;
+        }
+
+        Thread warmer = new Thread(this::scanAll, "MetadataIndexWarmup");
+        warmer.setDaemon(true);
+        warmer.start();
+    }
+
+    @EventListener
+    public void onStorageChange(StorageChangeEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        String path = normalize(event.getPath());
+        String parent = parentOf(path);
+        String name = nameOf(path);
+
+        if (event.getKind() == StorageChangeEvent.Kind.DELETED) {
+            if (event.isDirectory()) {
+                dropSubtree(path);
+            }
+            removeEntry(parent, name);
+            return;
+        }
+
+        if (event.isDirectory() && event.getKind() == StorageChangeEvent.Kind.MODIFIED) {
+            // Contents changed in unknown ways, rescan on next read
+            snapshots.computeIfPresent(path, (key, snapshot) -> snapshot.markStale());
+        }
+        if (path.isEmpty()) {
+            return;
+        }
+
+        upsertEntry(parent, name);
+
+        // A store into a new folder also creates its parents; add them where missing.
+        // Folders not indexed yet are skipped, their indexed ancestors still need the entry.
+        String child = parent;
+        while (!child.isEmpty()) {
+            String grandparent = parentOf(child);
+            FolderSnapshot snapshot = snapshots.get(grandparent);
+            if (snapshot != null) {
+                if (snapshot.contains(nameOf(child))) {
+                    break;
+                }
+                upsertEntry(grandparent, nameOf(child));
+            }
+            child = grandparent;
+        }
+    }
+
+    /**
+     * Drop a folder and everything below it from the index
+     */
+    public void dropSubtree(String folderPath) {
+        String key = normalize(folderPath);
+        snapshots.keySet().removeIf(k -> key.isEmpty() || k.equals(key) || k.startsWith(key + "/"));
+    }
+
+    private void scanAll() {
+        long start = System.currentTimeMillis();
+        Path root = fileStorageService.getStorageRoot();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+
+        List<Path> directories;
+        try (Stream<Path> walk = Files.walk(root)) {
+            directories = walk.filter(Files::isDirectory).toList();
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Metadata index warm-up failed: {}", e.getMessage());
+            return;
+        }
+
+        directories.parallelStream().forEach(dir -> {
+            try {
+                getFolder(fileStorageService.relativePath(dir));
+            } catch (IOException e) {
+                // Folder vanished or is unreadable, it will be scanned on demand
+            }
+        });
+
+        log.info("Indexed {} folders in {} ms", directories.size(), System.currentTimeMillis() - start);
+    }
+
+    private FolderSnapshot scan(String key, Path dir, FolderSnapshot previous) throws IOException {
+        FileTime scanStarted = FileTime.from(Instant.now());
+        FileTime mtime = Files.getLastModifiedTime(dir);
+
+        List<Entry> entries = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    Entry entry = reuseOrBuild(previous != null ? previous.get(path.getFileName().toString()) : null,
+                            key, path, attrs);
+                    if (entry != null) {
+                        entries.add(entry);
+                    }
+                } catch (IOException e) {
+                    // Skip files that can't be read
+                }
+            }
+        }
+
+        return new FolderSnapshot(mtime, scanStarted, entries);
+    }
+
+    private void upsertEntry(String folderKey, String name) {
+        snapshots.computeIfPresent(folderKey, (key, snapshot) -> {
+            try {
+                Path path = resolve(key).resolve(name);
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                Entry entry = buildEntry(key, path, attrs);
+                return entry != null ? snapshot.put(entry, Files.getLastModifiedTime(resolve(key))) : snapshot;
+            } catch (IOException e) {
+                // Could not stat the entry, let the next read rescan the folder
+                return null;
+            }
+        });
+    }
+
+    private void removeEntry(String folderKey, String name) {
+        snapshots.computeIfPresent(folderKey, (key, snapshot) -> {
+            try {
+                return snapshot.remove(name, Files.getLastModifiedTime(resolve(key)));
+            } catch (IOException e) {
+                return null;
+            }
+        });
+    }
+
+    private Entry reuseOrBuild(Entry previous, String folderKey, Path path, BasicFileAttributes attrs) throws IOException {
+        if (previous != null
+                && previous.isDirectory() == attrs.isDirectory()
+                && previous.getSize() == attrs.size()
+                && previous.getModifiedMillis() == attrs.lastModifiedTime().toMillis()) {
+            return previous;
+        }
+        return buildEntry(folderKey, path, attrs);
+    }
+
+    private Entry buildEntry(String folderKey, Path path, BasicFileAttributes attrs) throws IOException {
+        String name = path.getFileName().toString();
+        String relativePath = folderKey.isEmpty() ? name : folderKey + "/" + name;
+
+        if (attrs.isDirectory()) {
+            return new Entry(name, relativePath, true, 0, attrs.creationTime().toMillis(),
+                    attrs.lastModifiedTime().toMillis(), null);
+        }
+        if (attrs.isRegularFile()) {
+            FileItem file = fileStorageService.describeFile(relativePath, path, attrs);
+            return new Entry(name, relativePath, false, attrs.size(), attrs.creationTime().toMillis(),
+                    attrs.lastModifiedTime().toMillis(), file);
+        }
+        return null;
+    }
+
+    private Path resolve(String key) {
+        return key.isEmpty() ? fileStorageService.getStorageRoot() : fileStorageService.getStorageRoot().resolve(key);
+    }
+
+    private String normalize(String folderPath) {
+        if (folderPath == null || folderPath.isEmpty()) {
+            return "";
+        }
+        return fileStorageService.relativePath(Paths.get(fileStorageService.getStorageRoot().toString(), folderPath));
+    }
+
+    private static String parentOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+
+    private static String nameOf(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * An indexed folder or file
+     */
+    public static final class Entry {
+        private final String name;
+        private final String path;
+        private final boolean directory;
+        private final long size;
+        private final long createdMillis;
+        private final long modifiedMillis;
+        private final FileItem file;
+
+        Entry(String name, String path, boolean directory, long size, long createdMillis, long modifiedMillis, FileItem file) {
+            this.name = name;
+            this.path = path;
+            this.directory = directory;
+            this.size = size;
+            this.createdMillis = createdMillis;
+            this.modifiedMillis = modifiedMillis;
+            this.file = file;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCreatedMillis() {
+            return createdMillis;
+        }
+
+        public long getModifiedMillis() {
+            return modifiedMillis;
+        }
+
+        /**
+         * File metadata for regular files, null for folders
+         */
+        public FileItem getFile() {
+            return file;
+        }
+    }
+
+    /**
+     * Name-sorted contents of one folder. Changes reported by events are applied in place,
+     * at O(log n) each, while a rescan replaces the whole snapshot. Readers iterate
+     * concurrently with updates and see each entry either before or after a change.
+     */
+    public static final class FolderSnapshot {
+        private final ConcurrentSkipListMap<String, Entry> folders = new ConcurrentSkipListMap<>();
+        private final ConcurrentSkipListMap<String, Entry> files = new ConcurrentSkipListMap<>();
+        private volatile Version version;
+
+        FolderSnapshot(FileTime directoryMtime, FileTime scanStarted, List<Entry> entries) {
+            for (Entry entry : entries) {
+                (entry.isDirectory() ? folders : files).put(entry.getName(), entry);
+            }
+            this.version = new Version(directoryMtime, scanStarted, false);
+        }
+
+        public Collection<Entry> getFolders() {
+            return Collections.unmodifiableCollection(folders.values());
+        }
+
+        public Collection<Entry> getFiles() {
+            return Collections.unmodifiableCollection(files.values());
+        }
+
+        /**
+         * Folders whose name sorts after the given name
+         */
+        public Collection<Entry> getFoldersAfter(String name) {
+            return Collections.unmodifiableCollection(folders.tailMap(name, false).values());
+        }
+
+        /**
+         * Files whose name sorts after the given name
+         */
+        public Collection<Entry> getFilesAfter(String name) {
+            return Collections.unmodifiableCollection(files.tailMap(name, false).values());
+        }
+
+        /**
+         * A snapshot is current if the directory has not changed since it was taken.
+         * Changes in the same clock tick as the scan cannot be told apart, so those force a rescan.
+         */
+        boolean isCurrent(FileTime mtime) {
+            Version current = version;
+            return !current.stale && current.directoryMtime.equals(mtime) && mtime.compareTo(current.scanStarted) < 0;
+        }
+
+        boolean contains(String name) {
+            return folders.containsKey(name) || files.containsKey(name);
+        }
+
+        Entry get(String name) {
+            Entry folder = folders.get(name);
+            return folder != null ? folder : files.get(name);
+        }
+
+        FolderSnapshot markStale() {
+            Version current = version;
+            version = new Version(current.directoryMtime, current.scanStarted, true);
+            return this;
+        }
+
+        /**
+         * Add or replace an entry. Call from within the index's compute for this folder.
+         */
+        FolderSnapshot put(Entry entry, FileTime mtime) {
+            (entry.isDirectory() ? files : folders).remove(entry.getName());
+            (entry.isDirectory() ? folders : files).put(entry.getName(), entry);
+            changed(mtime);
+            return this;
+        }
+
+        /**
+         * Remove an entry. Call from within the index's compute for this folder.
+         */
+        FolderSnapshot remove(String name, FileTime mtime) {
+            folders.remove(name);
+            files.remove(name);
+            changed(mtime);
+            return this;
+        }
+
+        private void changed(FileTime mtime) {
+            // The entries are updated first, so a reader that sees the new mtime also sees them
+            version = new Version(mtime, FileTime.from(Instant.now()), version.stale);
+        }
+
+        private record Version(FileTime directoryMtime, FileTime scanStarted, boolean stale) {
+        }
+    }
+}
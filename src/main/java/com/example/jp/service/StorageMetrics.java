@@ -0,0 +1,104 @@
+package com.example.jp.service;
+
+import com.example.jp.diagnostics.ServerTiming;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload pipeline and listing metrics, exported at /actuator/prometheus.
+ * Stage timers and the listing timer publish histogram buckets so percentiles
+ * can be aggregated across instances. Upload stages are also reported as
+ * Server-Timing phases of the current request.
+ */
+@Component
+public class StorageMetrics {
+
+    /**
+     * Steps of an upload, timed separately to show where upload latency goes
+     */
+    public enum Stage {
+        /** Moving the multipart body into the staging directory (async uploads) */
+        READ,
+        /** Writing or moving the bytes into storage, including deduplication */
+        STORE,
+        /** Reading the stored file's attributes and type */
+        ATTRIBUTES,
+        /** Building the response DTO */
+        DTO
+    }
+
+    // Upper bounds of the entry count buckets for listing timers
+    private static final int[] LISTING_BUCKETS = {100, 1_000, 10_000};
+    private static final String[] LISTING_BUCKET_TAGS = {"<100", "100-999", "1000-9999", "10000+"};
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Counter storedBytes;
+    private final DistributionSummary storeThroughput;
+    private final Timer[] indexedListingTimers = new Timer[LISTING_BUCKET_TAGS.length];
+    private final Timer[] scannedListingTimers = new Timer[LISTING_BUCKET_TAGS.length];
+
+    public StorageMetrics(MeterRegistry registry) {
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("jp.upload.stage")
+                    .description("Time spent in one stage of an upload")
+                    .tag("stage", stage.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+
+        storedBytes = Counter.builder("jp.upload.bytes")
+                .description("Bytes written to storage by uploads")
+                .baseUnit("bytes")
+                .register(registry);
+        storeThroughput = DistributionSummary.builder("jp.upload.throughput")
+                .description("Per-upload store rate")
+                .baseUnit("bytes.per.second")
+                .publishPercentileHistogram()
+                .register(registry);
+
+        for (int i = 0; i < LISTING_BUCKET_TAGS.length; i++) {
+            indexedListingTimers[i] = listingTimer(registry, "index", LISTING_BUCKET_TAGS[i]);
+            scannedListingTimers[i] = listingTimer(registry, "scan", LISTING_BUCKET_TAGS[i]);
+        }
+    }
+
+    private static Timer listingTimer(MeterRegistry registry, String source, String entries) {
+        return Timer.builder("jp.folder.listing")
+                .description("Time to list a folder's full contents")
+                .tag("source", source)
+                .tag("entries", entries)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void recordStage(Stage stage, long nanos) {
+        stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+        ServerTiming.record(stage.name().toLowerCase(), nanos);
+    }
+
+    /**
+     * Record bytes stored by one upload and the time the store stage took
+     */
+    public void recordStored(long bytes, long nanos) {
+        recordStage(Stage.STORE, nanos);
+        storedBytes.increment(bytes);
+        if (nanos > 0) {
+            storeThroughput.record(bytes * 1e9 / nanos);
+        }
+    }
+
+    public void recordListing(int entries, boolean indexed, long nanos) {
+        int bucket = 0;
+        while (bucket < LISTING_BUCKETS.length && entries >= LISTING_BUCKETS[bucket]) {
+            bucket++;
+        }
+        (indexed ? indexedListingTimers : scannedListingTimers)[bucket].record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
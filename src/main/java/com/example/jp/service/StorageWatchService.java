@@ -0,0 +1,240 @@
+package com.example.jp.service;
+
+import com.example.jp.event.StorageChangeEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the storage root recursively for changes made outside the API
+ * (rsync jobs, admins) and republishes them as StorageChangeEvents.
+ * Events are coalesced per path over a short window; an OVERFLOW triggers a
+ * rescan of just the affected subtree.
+ */
+@Service
+@Slf4j
+public class StorageWatchService {
+
+    private final FileStorageService fileStorageService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.storage.watch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.storage.watch.coalesce-ms:200}")
+    private long coalesceMillis;
+
+    @Value("${app.storage.watch.max-delay-ms:2000}")
+    private long maxDelayMillis;
+
+    private WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+
+    public StorageWatchService(FileStorageService fileStorageService, ApplicationEventPublisher eventPublisher) {
+        this.fileStorageService = fileStorageService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        Path root = fileStorageService.getStorageRoot().toAbsolutePath().normalize();
+        Files.createDirectories(root);
+
+        watchService = root.getFileSystem().newWatchService();
+        registerTree(root);
+
+        Thread watcherThread = new Thread(this::watchLoop, "StorageWatcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+
+        log.info("Watching {} directories under {}", watchedDirectories.size(), root);
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Number of directories currently registered with the watch service
+     */
+    public int getWatchedDirectoryCount() {
+        return watchedDirectories.size();
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                // Block for the first event, then gather the rest of the burst
+                WatchKey key = watchService.take();
+                Map<Path, StorageChangeEvent> pending = new LinkedHashMap<>();
+                long deadline = System.currentTimeMillis() + maxDelayMillis;
+
+                while (key != null) {
+                    drain(key, pending);
+                    long remaining = Math.min(coalesceMillis, deadline - System.currentTimeMillis());
+                    key = remaining > 0 ? watchService.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                }
+
+                for (StorageChangeEvent event : pending.values()) {
+                    try {
+                        eventPublisher.publishEvent(event);
+                    } catch (RuntimeException e) {
+                        log.warn("Storage change listener failed for {}", event, e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    private void drain(WatchKey key, Map<Path, StorageChangeEvent> pending) {
+        Path dir = watchedDirectories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null) {
+                continue;
+            }
+
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                log.warn("Watch events lost under {}, rescanning subtree", dir);
+                rescanSubtree(dir, pending, false);
+                continue;
+            }
+
+            Path child = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                boolean directory = Files.isDirectory(child);
+                if (directory) {
+                    // Files may land in the new directory before it is registered
+                    rescanSubtree(child, pending, true);
+                }
+                merge(pending, child, StorageChangeEvent.Kind.CREATED, directory);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                boolean directory = unregisterTree(child);
+                merge(pending, child, StorageChangeEvent.Kind.DELETED, directory);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                merge(pending, child, StorageChangeEvent.Kind.MODIFIED, Files.isDirectory(child));
+            }
+        }
+
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    /**
+     * Collapse repeated events for one path: a create followed by modifies stays a create,
+     * otherwise the latest event wins.
+     */
+    private void merge(Map<Path, StorageChangeEvent> pending, Path path, StorageChangeEvent.Kind kind, boolean directory) {
+        StorageChangeEvent previous = pending.remove(path);
+        if (previous != null && previous.getKind() == StorageChangeEvent.Kind.CREATED && kind == StorageChangeEvent.Kind.MODIFIED) {
+            kind = StorageChangeEvent.Kind.CREATED;
+        }
+        pending.put(path, new StorageChangeEvent(kind, fileStorageService.relativePath(path), directory));
+    }
+
+    /**
+     * Register any new directories under dir and mark every directory in the subtree as modified.
+     * For a newly created dir, its files are new too and are reported as created, since
+     * no event was delivered for files that landed before the directory was watched.
+     */
+    private void rescanSubtree(Path dir, Map<Path, StorageChangeEvent> pending, boolean created) {
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path subdir, BasicFileAttributes attrs) throws IOException {
+                    // Registering an already watched directory returns its existing key
+                    register(subdir);
+                    merge(pending, subdir, StorageChangeEvent.Kind.MODIFIED, true);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (created && attrs.isRegularFile()) {
+                        merge(pending, file, StorageChangeEvent.Kind.CREATED, false);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to rescan {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private void registerTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void register(Path dir) throws IOException {
+        WatchKey key = dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedDirectories.put(key, dir);
+    }
+
+    /**
+     * Cancel watches for a deleted path and everything under it.
+     * Returns whether the path was a watched directory.
+     */
+    private boolean unregisterTree(Path path) {
+        boolean[] wasDirectory = {false};
+        watchedDirectories.entrySet().removeIf(entry -> {
+            Path dir = entry.getValue();
+            if (dir.equals(path) || dir.startsWith(path)) {
+                wasDirectory[0] |= dir.equals(path);
+                entry.getKey().cancel();
+                return true;
+            }
+            return false;
+        });
+        return wasDirectory[0];
+    }
+}
@@ -0,0 +1,444 @@
+package com.example.jp.service;
+
+import com.example.jp.event.StorageChangeEvent;
+import com.example.jp.metadata.FileTypeDetector;
+import com.example.jp.model.FileCategory;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Fixed-size image thumbnails, so galleries do not have to download originals.
+ * Images are decoded with source subsampling, so memory per thumbnail depends on the thumbnail
+ * size rather than the original's. Thumbnails are kept in an on-disk cache keyed by content hash
+ * and size, capped in bytes and evicted least recently used first. Concurrent requests for the same
+ * thumbnail share one generation, and new images get their default-size thumbnail in the background.
+ */
+@Service
+@Slf4j
+public class ThumbnailService {
+
+    private static final int MAX_REMEMBERED_HASHES = 100_000;
+
+    @Value("${app.thumbnail.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.thumbnail.cache-dir:data/thumbnails}")
+    private String cacheDir;
+
+    @Value("${app.thumbnail.cache-max-bytes:268435456}")
+    private long cacheMaxBytes;
+
+    @Value("${app.thumbnail.sizes:128,256,512}")
+    private List<Integer> sizes;
+
+    @Value("${app.thumbnail.default-size:256}")
+    private int defaultSize;
+
+    @Value("${app.thumbnail.pregenerate:true}")
+    private boolean pregenerate;
+
+    @Value("${app.thumbnail.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    private final FileStorageService fileStorageService;
+    private final ContentAddressableStore contentStore;
+    private final FileTypeDetector fileTypeDetector;
+    private final Executor thumbnailExecutor;
+
+    // Generations in progress by file path, size, mtime and thumbnail size
+    private final Map<String, CompletableFuture<Thumbnail>> inFlight = new ConcurrentHashMap<>();
+    // Relative path -> content hash at a given size and mtime
+    private final Map<String, HashedFile> hashes = new ConcurrentHashMap<>();
+
+    // Cache key -> thumbnail file, in access order; guarded by itself
+    private final LinkedHashMap<String, Thumbnail> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes;
+    private Path cacheRoot;
+
+    @Autowired
+    public ThumbnailService(
+            FileStorageService fileStorageService,
+            ContentAddressableStore contentStore,
+            FileTypeDetector fileTypeDetector,
+            @Qualifier("thumbnailExecutor") Executor thumbnailExecutor) {
+        this.fileStorageService = fileStorageService;
+        this.contentStore = contentStore;
+        this.fileTypeDetector = fileTypeDetector;
+        this.thumbnailExecutor = thumbnailExecutor;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        cacheRoot = Paths.get(cacheDir).toAbsolutePath();
+        Path tmp = cacheRoot.resolve("tmp");
+        Files.createDirectories(tmp);
+
+        // Rebuild the LRU order from file mtimes, which are touched on every hit
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(cacheRoot, 2)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+        List<Path> cached = new ArrayList<>();
+        for (Path file : files) {
+            if (file.getParent().equals(tmp)) {
+                Files.deleteIfExists(file);
+            } else {
+                cached.add(file);
+            }
+        }
+        cached.sort(Comparator.comparing(ThumbnailService::lastModified));
+        for (Path file : cached) {
+            String name = file.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) {
+                add(name.substring(0, dot), file, Files.size(file));
+            }
+        }
+
+        log.info("Thumbnail cache ready: {} thumbnails, {} bytes", cache.size(), cachedBytes);
+    }
+
+    public boolean isSupportedSize(int size) {
+        return sizes.contains(size);
+    }
+
+    public int getDefaultSize() {
+        return defaultSize;
+    }
+
+    /**
+     * Get or generate the thumbnail of an image. Completes with null if there is no such image
+     * or its format cannot be decoded.
+     */
+    public CompletableFuture<Thumbnail> getThumbnail(String filePath, int size) throws IOException {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Path fullPath = fileStorageService.loadFile(filePath);
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(fullPath, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String relativePath = fileStorageService.relativePath(fullPath);
+        long mtime = attrs.lastModifiedTime().toMillis();
+        // Video would need a decoder for its frames; only images get thumbnails
+        if (!attrs.isRegularFile()
+                || fileTypeDetector.detect(fullPath, relativePath, attrs.size(), mtime).getCategory() != FileCategory.IMAGE) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Cache hits are answered on the calling thread
+        HashedFile hashed = hashes.get(relativePath);
+        if (hashed != null && hashed.size == attrs.size() && hashed.mtimeMillis == mtime) {
+            Thumbnail cached = lookup(hashed.hash + "-" + size);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        String requestKey = relativePath + "@" + attrs.size() + "@" + mtime + "@" + size;
+        CompletableFuture<Thumbnail> created = new CompletableFuture<>();
+        CompletableFuture<Thumbnail> existing = inFlight.putIfAbsent(requestKey, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            thumbnailExecutor.execute(() -> {
+                try {
+                    Thumbnail thumbnail = load(fullPath, relativePath, attrs, size);
+                    // Later requests find the thumbnail in the cache
+                    inFlight.remove(requestKey, created);
+                    created.complete(thumbnail);
+                } catch (Throwable e) {
+                    inFlight.remove(requestKey, created);
+                    created.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(requestKey, created);
+            throw e;
+        }
+        return created;
+    }
+
+    @EventListener
+    public void onStorageChange(StorageChangeEvent event) {
+        if (!enabled || !pregenerate || event.isDirectory() || event.getKind() != StorageChangeEvent.Kind.CREATED) {
+            return;
+        }
+        try {
+            getThumbnail(event.getPath(), defaultSize);
+        } catch (IOException | RejectedExecutionException e) {
+            // Generated on first request instead
+            log.debug("Skipped thumbnail for {}: {}", event.getPath(), e.toString());
+        }
+    }
+
+    private Thumbnail load(Path fullPath, String relativePath, BasicFileAttributes attrs, int size) throws IOException {
+        String hash = contentHash(fullPath, relativePath, attrs);
+        String key = hash + "-" + size;
+        Thumbnail cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        BufferedImage image = decode(fullPath, size);
+        if (image == null) {
+            return null;
+        }
+        BufferedImage scaled = scale(image, size);
+        boolean alpha = scaled.getColorModel().hasAlpha();
+
+        Path target = cacheRoot.resolve(hash.substring(0, 2)).resolve(key + (alpha ? ".png" : ".jpg"));
+        Path temp = cacheRoot.resolve("tmp").resolve(UUID.randomUUID() + ".part");
+        Files.createDirectories(target.getParent());
+        try {
+            write(scaled, alpha, temp);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return add(key, target, Files.size(target));
+    }
+
+    /**
+     * Decode an image, skipping pixels so it comes out no smaller than twice the thumbnail size.
+     * Returns null if no ImageIO reader handles the format (e.g. WebP, SVG) or the file is damaged.
+     */
+    private BufferedImage decode(Path file, int size) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int step = Math.max(1, Math.max(reader.getWidth(0), reader.getHeight(0)) / (size * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } catch (IOException | RuntimeException e) {
+                log.debug("Could not decode {} for a thumbnail: {}", file, e.toString());
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Fit the image into a size x size box, keeping its aspect ratio and never enlarging it
+     */
+    private BufferedImage scale(BufferedImage image, int size) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double ratio = Math.min(1.0, (double) size / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage scaled = new BufferedImage(targetWidth, targetHeight,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private void write(BufferedImage image, boolean alpha, Path target) throws IOException {
+        if (alpha) {
+            ImageIO.write(image, "png", target.toFile());
+            return;
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * SHA-256 of the file's content: the blob name for deduplicated files, otherwise hashed once per version
+     */
+    private String contentHash(Path fullPath, String relativePath, BasicFileAttributes attrs) throws IOException {
+        long mtime = attrs.lastModifiedTime().toMillis();
+        HashedFile hashed = hashes.get(relativePath);
+        if (hashed != null && hashed.size == attrs.size() && hashed.mtimeMillis == mtime) {
+            return hashed.hash;
+        }
+
+        String hash = contentStore.contentHash(fullPath);
+        if (hash == null) {
+            hash = ContentAddressableStore.hash(fullPath);
+        }
+        if (hashes.size() >= MAX_REMEMBERED_HASHES) {
+            hashes.clear();
+        }
+        hashes.put(relativePath, new HashedFile(attrs.size(), mtime, hash));
+        return hash;
+    }
+
+    private Thumbnail lookup(String key) {
+        Thumbnail thumbnail;
+        synchronized (cache) {
+            thumbnail = cache.get(key);
+        }
+        if (thumbnail == null) {
+            return null;
+        }
+        try {
+            // Keeps the eviction order across restarts
+            Files.setLastModifiedTime(thumbnail.getFile(), FileTime.from(Instant.now()));
+            return thumbnail;
+        } catch (IOException e) {
+            // Removed behind the cache's back
+            synchronized (cache) {
+                if (cache.remove(key, thumbnail)) {
+                    cachedBytes -= thumbnail.getLength();
+                }
+            }
+            return null;
+        }
+    }
+
+    private Thumbnail add(String key, Path file, long length) {
+        Thumbnail thumbnail = new Thumbnail(key, file, length);
+        List<Path> evicted = new ArrayList<>();
+        synchronized (cache) {
+            Thumbnail previous = cache.put(key, thumbnail);
+            cachedBytes += length - (previous != null ? previous.getLength() : 0);
+
+            Iterator<Thumbnail> eldest = cache.values().iterator();
+            while (cachedBytes > cacheMaxBytes && eldest.hasNext()) {
+                Thumbnail candidate = eldest.next();
+                if (candidate == thumbnail) {
+                    break;
+                }
+                eldest.remove();
+                cachedBytes -= candidate.getLength();
+                evicted.add(candidate.getFile());
+            }
+        }
+
+        for (Path path : evicted) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.debug("Could not delete evicted thumbnail {}: {}", path, e.getMessage());
+            }
+        }
+        return thumbnail;
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * A generated thumbnail file
+     */
+    public static final class Thumbnail {
+        private final String key;
+        private final Path file;
+        private final long length;
+
+        Thumbnail(String key, Path file, long length) {
+            this.key = key;
+            this.file = file;
+            this.length = length;
+        }
+
+        /**
+         * Content hash and size, which identify the thumbnail's bytes
+         */
+        public String getKey() {
+            return key;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public String getMediaType() {
+            return file.getFileName().toString().endsWith(".png") ? "image/png" : "image/jpeg";
+        }
+    }
+
+    private static final class HashedFile {
+        private final long size;
+        private final long mtimeMillis;
+        private final String hash;
+
+        HashedFile(long size, long mtimeMillis, String hash) {
+            this.size = size;
+            this.mtimeMillis = mtimeMillis;
+            this.hash = hash;
+        }
+    }
+}
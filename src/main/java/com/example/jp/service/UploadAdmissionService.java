@@ -0,0 +1,224 @@
+package com.example.jp.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for async uploads.
+ * Uploads are admitted before their task is created and count against limits on
+ * in-flight bytes and queued tasks until they are stored or fail. When a limit is hit,
+ * the caller waits up to max-wait-ms for capacity and is otherwise rejected with an
+ * estimate of when to retry, based on how fast admitted uploads have been finishing.
+ * Requests can also be checked against the limits by their Content-Length before their
+ * body is read, so a request that would be rejected is turned away without parsing it.
+ */
+@Service
+@Slf4j
+public class UploadAdmissionService implements MeterBinder {
+
+    private static final long MIN_RETRY_AFTER_SECONDS = 1;
+    private static final long MAX_RETRY_AFTER_SECONDS = 60;
+    private static final long RATE_SAMPLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Value("${app.async.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.async.admission.max-in-flight-bytes:1073741824}")
+    private long maxInFlightBytes;
+
+    @Value("${app.async.admission.max-queued-tasks:100}")
+    private int maxQueuedTasks;
+
+    @Value("${app.async.admission.max-wait-ms:0}")
+    private long maxWaitMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final LongAdder rejected = new LongAdder();
+
+    // Guarded by lock
+    private long inFlightBytes;
+    private int queuedTasks;
+
+    // Drain rate, sampled at most once a second and smoothed; guarded by lock
+    private long sampleStartNanos = System.nanoTime();
+    private long sampleBytes;
+    private int sampleTasks;
+    private double bytesPerSecond;
+    private double tasksPerSecond;
+
+    /**
+     * Admit uploads totalling the given bytes, all or none.
+     * An upload bigger than the byte limit is admitted once nothing else is in flight.
+     *
+     * @throws UploadRejectedException if there is no capacity within max-wait-ms, or
+     *                                 the batch has more files than can ever be queued
+     */
+    public void acquire(long bytes, int tasks) {
+        if (!enabled) {
+            return;
+        }
+        if (tasks > maxQueuedTasks) {
+            rejected.increment();
+            throw new UploadRejectedException(
+                    "Batch of " + tasks + " files exceeds the limit of " + maxQueuedTasks + " queued uploads", 0);
+        }
+
+        lock.lock();
+        try {
+            awaitCapacity(bytes, tasks);
+            if (queuedTasks == 0) {
+                // Idle time would drag the drain rate down, so samples start with the work
+                sampleStartNanos = System.nanoTime();
+                sampleBytes = 0;
+                sampleTasks = 0;
+            }
+            inFlightBytes += bytes;
+            queuedTasks += tasks;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            throw new UploadRejectedException("Interrupted while waiting for upload capacity", MIN_RETRY_AFTER_SECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait up to max-wait-ms until uploads totalling the given bytes would be admitted,
+     * without taking any capacity. acquire() still has the final say.
+     *
+     * @throws UploadRejectedException if there is no capacity within max-wait-ms
+     */
+    public void check(long bytes, int tasks) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            awaitCapacity(bytes, tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            throw new UploadRejectedException("Interrupted while waiting for upload capacity", MIN_RETRY_AFTER_SECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Call with the lock held
+     */
+    private void awaitCapacity(long bytes, int tasks) throws InterruptedException {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        while (!fits(bytes, tasks)) {
+            if (remainingNanos <= 0) {
+                rejected.increment();
+                long retryAfter = estimateRetryAfterSeconds(bytes, tasks);
+                log.debug("Rejected upload of {} bytes in {} files, retry after {}s", bytes, tasks, retryAfter);
+                throw new UploadRejectedException("Upload capacity exhausted, retry later", retryAfter);
+            }
+            remainingNanos = released.awaitNanos(remainingNanos);
+        }
+    }
+
+    /**
+     * Return capacity taken by acquire() once an upload is stored or has failed
+     */
+    public void release(long bytes, int tasks) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            inFlightBytes = Math.max(0, inFlightBytes - bytes);
+            queuedTasks = Math.max(0, queuedTasks - tasks);
+            sampleDrainRate(bytes, tasks);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Seconds until capacity for the given upload is likely to be free
+     */
+    public long estimateRetryAfterSeconds(long bytes, int tasks) {
+        lock.lock();
+        try {
+            double excessBytes = Math.max(0, inFlightBytes + bytes - maxInFlightBytes);
+            double excessTasks = Math.max(0, queuedTasks + tasks - maxQueuedTasks);
+            double seconds = Math.max(
+                    bytesPerSecond > 0 ? excessBytes / bytesPerSecond : 0,
+                    tasksPerSecond > 0 ? excessTasks / tasksPerSecond : 0);
+            return Math.clamp((long) Math.ceil(seconds), MIN_RETRY_AFTER_SECONDS, MAX_RETRY_AFTER_SECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(long bytes, int tasks) {
+        boolean bytesFit = inFlightBytes == 0 || inFlightBytes + bytes <= maxInFlightBytes;
+        return bytesFit && queuedTasks + tasks <= maxQueuedTasks;
+    }
+
+    private void sampleDrainRate(long bytes, int tasks) {
+        sampleBytes += bytes;
+        sampleTasks += tasks;
+        long now = System.nanoTime();
+        long elapsed = now - sampleStartNanos;
+        if (elapsed < RATE_SAMPLE_NANOS) {
+            return;
+        }
+
+        double seconds = elapsed / 1e9;
+        bytesPerSecond = bytesPerSecond == 0 ? sampleBytes / seconds : (bytesPerSecond + sampleBytes / seconds) / 2;
+        tasksPerSecond = tasksPerSecond == 0 ? sampleTasks / seconds : (tasksPerSecond + sampleTasks / seconds) / 2;
+        sampleStartNanos = now;
+        sampleBytes = 0;
+        sampleTasks = 0;
+    }
+
+    public long getInFlightBytes() {
+        lock.lock();
+        try {
+            return inFlightBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedTasks() {
+        lock.lock();
+        try {
+            return queuedTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("jp.upload.admission.in.flight", this, UploadAdmissionService::getInFlightBytes)
+                .description("Bytes of admitted uploads not yet stored")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("jp.upload.admission.queued", this, UploadAdmissionService::getQueuedTasks)
+                .description("Admitted uploads not yet stored")
+                .baseUnit("tasks")
+                .register(registry);
+        FunctionCounter.builder("jp.upload.admission.rejected", rejected, LongAdder::sum)
+                .description("Uploads rejected by admission control")
+                .register(registry);
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.jp.service;
+
+import com.example.jp.dto.FileUploadTaskDTO;
+import com.example.jp.event.UploadTaskEvent;
+import com.example.jp.model.FileUploadTask;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes upload task progress to Server-Sent Events subscribers.
+ * Workers only mark a task as changed for each interested subscriber; sending happens
+ * on a separate executor. A subscriber keeps one slot per task, so updates that arrive
+ * while it is still busy sending collapse into the latest state and a slow client
+ * never holds up an upload.
+ */
+@Service
+@Slf4j
+public class UploadProgressBroadcaster {
+
+    private final UploadTaskRegistry taskRegistry;
+    private final Executor progressEventExecutor;
+
+    @Value("${app.tasks.events.timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    private final Map<String, Set<Subscription>> subscriptionsByTask = new ConcurrentHashMap<>();
+    private final Map<String, Set<Subscription>> subscriptionsByGroup = new ConcurrentHashMap<>();
+
+    public UploadProgressBroadcaster(
+            UploadTaskRegistry taskRegistry,
+            @Qualifier("progressEventExecutor") Executor progressEventExecutor) {
+        this.taskRegistry = taskRegistry;
+        this.progressEventExecutor = progressEventExecutor;
+    }
+
+    /**
+     * Stream updates of one task until it finishes, or null if the task is unknown
+     */
+    public SseEmitter subscribeTask(String taskId) {
+        FileUploadTask task = taskRegistry.get(taskId);
+        if (task == null) {
+            return null;
+        }
+        return subscribe(subscriptionsByTask, taskId, List.of(task));
+    }
+
+    /**
+     * Stream updates of every task in a batch until all of them finish, or null if the group is unknown
+     */
+    public SseEmitter subscribeGroup(String groupId) {
+        List<FileUploadTask> group = taskRegistry.getGroup(groupId);
+        if (group.isEmpty()) {
+            return null;
+        }
+        return subscribe(subscriptionsByGroup, groupId, group);
+    }
+
+    @EventListener
+    public void onTaskUpdate(UploadTaskEvent event) {
+        FileUploadTask task = event.getTask();
+        notify(subscriptionsByTask.get(task.getTaskId()), task);
+        if (task.getGroupId() != null) {
+            notify(subscriptionsByGroup.get(task.getGroupId()), task);
+        }
+    }
+
+    private SseEmitter subscribe(Map<String, Set<Subscription>> subscriptions, String key,
+                                 Collection<FileUploadTask> tasks) {
+        SseEmitter emitter = new SseEmitter(timeoutMinutes * 60_000);
+        Subscription subscription = new Subscription(emitter, tasks);
+
+        subscriptions.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(subscription);
+        Runnable unsubscribe = () -> subscriptions.computeIfPresent(key, (k, set) -> {
+            set.remove(subscription);
+            return set.isEmpty() ? null : set;
+        });
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+
+        // Send the current state; anything that changed meanwhile is picked up by the same drain
+        for (FileUploadTask task : tasks) {
+            subscription.markChanged(task);
+        }
+        return emitter;
+    }
+
+    private void notify(Set<Subscription> subscriptions, FileUploadTask task) {
+        if (subscriptions == null) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.markChanged(task);
+        }
+    }
+
+    private class Subscription {
+
+        private final SseEmitter emitter;
+        // Latest-state slots: tasks changed since they were last sent
+        private final Map<String, FileUploadTask> changed = new ConcurrentHashMap<>();
+        // Tasks still running; the stream ends when this is empty
+        private final Set<String> unfinished = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Subscription(SseEmitter emitter, Collection<FileUploadTask> tasks) {
+            this.emitter = emitter;
+            for (FileUploadTask task : tasks) {
+                unfinished.add(task.getTaskId());
+            }
+        }
+
+        void markChanged(FileUploadTask task) {
+            if (closed) {
+                return;
+            }
+            changed.put(task.getTaskId(), task);
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    progressEventExecutor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    log.warn("Dropping progress stream, event executor is saturated");
+                    close();
+                }
+            }
+        }
+
+        private void drain() {
+            do {
+                for (String taskId : changed.keySet()) {
+                    FileUploadTask task = changed.remove(taskId);
+                    if (task != null && !send(task)) {
+                        return;
+                    }
+                }
+                draining.set(false);
+                // Re-check: an update may have landed between the last send and the reset
+            } while (!changed.isEmpty() && !closed && draining.compareAndSet(false, true));
+        }
+
+        private boolean send(FileUploadTask task) {
+            // Decide on the snapshot actually sent, the live task may have moved on already
+            FileUploadTaskDTO snapshot = FileUploadTaskDTO.fromTask(task);
+            boolean finished = FileUploadTask.TaskStatus.valueOf(snapshot.getStatus()).isTerminal();
+            try {
+                emitter.send(SseEmitter.event()
+                        .name("progress")
+                        .id(task.getTaskId())
+                        .data(snapshot));
+
+                if (finished && unfinished.remove(task.getTaskId()) && unfinished.isEmpty()) {
+                    emitter.send(SseEmitter.event().name("complete").data(""));
+                    close();
+                    return false;
+                }
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                // Client went away
+                log.debug("Progress stream closed: {}", e.getMessage());
+                closed = true;
+                emitter.completeWithError(e);
+                return false;
+            }
+        }
+
+        private void close() {
+            closed = true;
+            emitter.complete();
+        }
+    }
+}
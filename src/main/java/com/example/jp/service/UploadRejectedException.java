@@ -0,0 +1,31 @@
+package com.example.jp.service;
+
+/**
+ * Thrown when an upload is not admitted because the pipeline is at capacity,
+ * or because it is larger than any upload that can be admitted
+ */
+public class UploadRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public UploadRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Estimated time until enough capacity is free, for the Retry-After header
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * False if the upload can never be admitted as sent, e.g. a batch with too many files
+     */
+    public boolean isRetryable() {
+        return retryAfterSeconds > 0;
+    }
+}
@@ -0,0 +1,576 @@
+package com.example.jp.service;
+
+import com.example.jp.model.FileUploadTask;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of upload task state, so tasks survive a restart.
+ * It records task creation, the staged file of each upload, the file it is about to be
+ * stored as, and every status change.
+ * A single flusher thread writes all records queued since its last sync and syncs
+ * them together (group commit), so concurrent callers share one fsync. A failed write
+ * fails only its batch; the journal's health is down if the flusher has died anyway.
+ * At startup the journal is replayed: finished tasks are restored, uploads whose staged
+ * file survived are handed back to be resumed, those whose file was moved into storage
+ * before the completion was recorded are marked completed, the rest failed, and staging
+ * files no task refers to are deleted. The journal is then rewritten with only the
+ * records still needed, and again whenever it grows past the compaction threshold.
+ */
+@Service
+@Slf4j
+public class UploadTaskJournal implements HealthIndicator {
+
+    private static final char CREATED = 'C';
+    private static final char STAGED = 'S';
+    private static final char STORING = 'M';
+    private static final char STATUS = 'T';
+    private static final char REMOVED = 'R';
+
+    private static final String NULL_FIELD = "\\N";
+
+    private final FileStorageService fileStorageService;
+
+    @Value("${app.tasks.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.tasks.journal.path:data/task-journal.log}")
+    private String journalPath;
+
+    @Value("${app.tasks.journal.compact-threshold-mb:64}")
+    private long compactThresholdMb;
+
+    @Value("${app.tasks.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    // Records of every task still worth keeping; only touched at startup and by the flusher
+    private final Map<String, TaskRecords> liveTasks = new LinkedHashMap<>();
+    private final BlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<>();
+
+    private final List<FileUploadTask> restoredTasks = new ArrayList<>();
+    private final List<ResumableUpload> resumableUploads = new ArrayList<>();
+
+    private FileChannel channel;
+    private Thread flusherThread;
+    private volatile boolean closed;
+
+    public UploadTaskJournal(FileStorageService fileStorageService) {
+        this.fileStorageService = fileStorageService;
+    }
+
+    /**
+     * An upload that was interrupted after its file was staged
+     */
+    public static class ResumableUpload {
+        private final FileUploadTask task;
+        private final Path stagedFile;
+        private final String contentType;
+
+        ResumableUpload(FileUploadTask task, Path stagedFile, String contentType) {
+            this.task = task;
+            this.stagedFile = stagedFile;
+            this.contentType = contentType;
+        }
+
+        public FileUploadTask getTask() {
+            return task;
+        }
+
+        public Path getStagedFile() {
+            return stagedFile;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        Path journal = Paths.get(journalPath).toAbsolutePath();
+        Files.createDirectories(journal.getParent());
+
+        replay(journal);
+        recover();
+        deleteOrphanedStagingFiles();
+        compact();
+
+        flusherThread = new Thread(this::flushLoop, "TaskJournalFlusher");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+    }
+
+    @PreDestroy
+    void close() throws IOException, InterruptedException {
+        if (!enabled || closed) {
+            return;
+        }
+        closed = true;
+
+        // Wake the flusher; it writes what is queued and exits
+        queue.add(new PendingRecord(null, null));
+        flusherThread.join(10_000);
+        channel.close();
+    }
+
+    /**
+     * Down when the flusher thread has died, since nothing queued is written after that
+     */
+    @Override
+    public Health health() {
+        if (!enabled) {
+            return Health.up().withDetail("enabled", false).build();
+        }
+        boolean flushing = closed || flusherThread != null && flusherThread.isAlive();
+        return (flushing ? Health.up() : Health.down())
+                .withDetail("pendingRecords", queue.size())
+                .build();
+    }
+
+    /**
+     * Tasks restored from the journal at startup, finished or about to be resumed
+     */
+    public List<FileUploadTask> getRestoredTasks() {
+        return restoredTasks;
+    }
+
+    /**
+     * Uploads interrupted after staging, whose staged file is still there
+     */
+    public List<ResumableUpload> getResumableUploads() {
+        return resumableUploads;
+    }
+
+    public CompletableFuture<Void> recordCreated(FileUploadTask task) {
+        return append(new JournalRecord(CREATED, task.getTaskId(),
+                task.getGroupId(),
+                Long.toString(task.getStartTimeMillis()),
+                task.getFileName(),
+                task.getFolderPath()));
+    }
+
+    public CompletableFuture<Void> recordStaged(FileUploadTask task, Path stagedFile, String contentType) {
+        return append(new JournalRecord(STAGED, task.getTaskId(),
+                stagedFile.toAbsolutePath().toString(),
+                contentType));
+    }
+
+    public CompletableFuture<Void> recordStoring(FileUploadTask task, Path targetFile) {
+        return append(new JournalRecord(STORING, task.getTaskId(),
+                targetFile.toAbsolutePath().toString()));
+    }
+
+    public CompletableFuture<Void> recordStatus(FileUploadTask task) {
+        return append(statusRecord(task));
+    }
+
+    public CompletableFuture<Void> recordRemoved(String taskId) {
+        return append(new JournalRecord(REMOVED, taskId));
+    }
+
+    private CompletableFuture<Void> append(JournalRecord record) {
+        if (!enabled || closed) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        queue.add(new PendingRecord(record, durable));
+        return durable;
+    }
+
+    private JournalRecord statusRecord(FileUploadTask task) {
+        Long fileSize = task.getFileSize();
+        return new JournalRecord(STATUS, task.getTaskId(),
+                task.getStatus().name(),
+                Long.toString(task.getEndTimeMillis()),
+                fileSize != null ? fileSize.toString() : null,
+                task.getFilePath(),
+                task.getMessage());
+    }
+
+    private void flushLoop() {
+        List<PendingRecord> batch = new ArrayList<>();
+        boolean stop = false;
+
+        while (!stop) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // Everything that queued up during the previous sync goes out with this one
+            queue.drainTo(batch);
+
+            try {
+                StringBuilder lines = new StringBuilder();
+                for (PendingRecord pending : batch) {
+                    if (pending.record == null) {
+                        stop = true;
+                        continue;
+                    }
+                    apply(pending.record);
+                    lines.append(encode(pending.record));
+                }
+
+                ByteBuffer buffer = StandardCharsets.UTF_8.encode(lines.toString());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                complete(batch, null);
+
+                if (channel.size() > compactThresholdMb * 1024 * 1024) {
+                    compact();
+                }
+            } catch (IOException | RuntimeException e) {
+                // Fail this batch only; the flusher must outlive it or every later caller waits forever
+                log.error("Failed to write task journal", e);
+                complete(batch, e instanceof IOException io ? io : new IOException(e));
+            }
+            batch.clear();
+        }
+    }
+
+    private void complete(List<PendingRecord> batch, IOException failure) {
+        for (PendingRecord pending : batch) {
+            if (pending.durable == null) {
+                continue;
+            }
+            if (failure == null) {
+                pending.durable.complete(null);
+            } else {
+                pending.durable.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private void replay(Path journal) throws IOException {
+        int records = 0;
+        int corrupt = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JournalRecord record = decode(line);
+                if (record == null) {
+                    // Usually a record torn by a crash mid-write
+                    corrupt++;
+                    continue;
+                }
+                apply(record);
+                records++;
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        }
+
+        log.info("Replayed {} task journal records ({} unreadable), {} tasks", records, corrupt, liveTasks.size());
+    }
+
+    private void apply(JournalRecord record) {
+        switch (record.type) {
+            case CREATED -> liveTasks.put(record.taskId, new TaskRecords(record));
+            case STAGED -> {
+                TaskRecords task = liveTasks.get(record.taskId);
+                if (task != null) {
+                    task.staged = record;
+                }
+            }
+            case STORING -> {
+                TaskRecords task = liveTasks.get(record.taskId);
+                if (task != null) {
+                    task.storing = record;
+                }
+            }
+            case STATUS -> {
+                TaskRecords task = liveTasks.get(record.taskId);
+                if (task != null) {
+                    task.status = record;
+                    if (FileUploadTask.TaskStatus.valueOf(record.fields[0]).isTerminal()) {
+                        // The staged file has been stored or discarded
+                        task.staged = null;
+                        task.storing = null;
+                    }
+                }
+            }
+            case REMOVED -> liveTasks.remove(record.taskId);
+            default -> log.warn("Unknown task journal record type {}", record.type);
+        }
+    }
+
+    /**
+     * Decide what happens to every task found in the journal
+     */
+    private void recover() {
+        long cutoff = System.currentTimeMillis() - ttlMinutes * 60_000;
+        int failed = 0;
+        int completed = 0;
+
+        for (var iterator = liveTasks.values().iterator(); iterator.hasNext(); ) {
+            TaskRecords records = iterator.next();
+            String[] created = records.created.fields;
+            FileUploadTask task = new FileUploadTask(records.created.taskId, created[0],
+                    created[2], created[3], Long.parseLong(created[1]));
+
+            FileUploadTask.TaskStatus status = records.status != null
+                    ? FileUploadTask.TaskStatus.valueOf(records.status.fields[0])
+                    : FileUploadTask.TaskStatus.PENDING;
+
+            if (status.isTerminal()) {
+                String[] fields = records.status.fields;
+                long endTime = Long.parseLong(fields[1]);
+                if (endTime < cutoff) {
+                    iterator.remove();
+                    continue;
+                }
+                task.restoreFinished(status, endTime, fields[3],
+                        fields[2] != null ? Long.parseLong(fields[2]) : -1, fields[4]);
+            } else if (records.staged != null && Files.exists(Paths.get(records.staged.fields[0]))) {
+                task.moveTo(FileUploadTask.TaskStatus.IN_PROGRESS);
+                resumableUploads.add(new ResumableUpload(task, Paths.get(records.staged.fields[0]), records.staged.fields[1]));
+            } else if (records.storing != null && Files.isRegularFile(Paths.get(records.storing.fields[0]))) {
+                // Crashed after the staged file was moved into storage but before the completion was synced
+                Path stored = Paths.get(records.storing.fields[0]);
+                long size;
+                try {
+                    size = Files.size(stored);
+                } catch (IOException e) {
+                    size = -1;
+                }
+                task.restoreFinished(FileUploadTask.TaskStatus.COMPLETED, System.currentTimeMillis(),
+                        Paths.get(task.getFolderPath(), stored.getFileName().toString()).toString(), size,
+                        "File uploaded successfully");
+                records.status = statusRecord(task);
+                records.staged = null;
+                records.storing = null;
+                completed++;
+            } else {
+                task.restoreFinished(FileUploadTask.TaskStatus.FAILED, System.currentTimeMillis(), null, -1,
+                        "Upload interrupted by a server restart");
+                records.status = statusRecord(task);
+                records.staged = null;
+                failed++;
+            }
+            restoredTasks.add(task);
+        }
+
+        if (!restoredTasks.isEmpty()) {
+            log.info("Restored {} upload tasks: {} to resume, {} completed before the restart, {} failed by it",
+                    restoredTasks.size(), resumableUploads.size(), completed, failed);
+        }
+    }
+
+    /**
+     * Delete staging files left behind by uploads that will not be resumed
+     */
+    private void deleteOrphanedStagingFiles() throws IOException {
+        Path stagingDir = fileStorageService.getStagingRoot();
+        if (!Files.isDirectory(stagingDir)) {
+            return;
+        }
+
+        Set<Path> referenced = new HashSet<>();
+        for (ResumableUpload upload : resumableUploads) {
+            referenced.add(upload.getStagedFile().toAbsolutePath().normalize());
+        }
+
+        int deleted = 0;
+        try (Stream<Path> files = Files.list(stagingDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file) && !referenced.contains(file.toAbsolutePath().normalize())) {
+                    Files.deleteIfExists(file);
+                    deleted++;
+                }
+            }
+        }
+
+        if (deleted > 0) {
+            log.info("Deleted {} orphaned staging files", deleted);
+        }
+    }
+
+    /**
+     * Rewrite the journal with only the records of live tasks
+     */
+    private void compact() throws IOException {
+        Path journal = Paths.get(journalPath).toAbsolutePath();
+        Path tempFile = journal.resolveSibling(journal.getFileName() + ".tmp");
+
+        StringBuilder lines = new StringBuilder();
+        for (TaskRecords records : liveTasks.values()) {
+            lines.append(encode(records.created));
+            if (records.staged != null) {
+                lines.append(encode(records.staged));
+            }
+            if (records.storing != null) {
+                lines.append(encode(records.storing));
+            }
+            if (records.status != null) {
+                lines.append(encode(records.status));
+            }
+        }
+
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(lines.toString());
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(tempFile, journal, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        if (channel != null) {
+            channel.close();
+        }
+        channel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        log.debug("Compacted task journal to {} tasks", liveTasks.size());
+    }
+
+    /**
+     * One line per record: CRC32 of the rest of the line, type, task id and fields,
+     * tab separated with tabs, newlines and backslashes escaped
+     */
+    private String encode(JournalRecord record) {
+        StringBuilder body = new StringBuilder().append(record.type).append('\t').append(escape(record.taskId));
+        for (String field : record.fields) {
+            body.append('\t').append(escape(field));
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(body.toString().getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue()) + '\t' + body + '\n';
+    }
+
+    private JournalRecord decode(String line) {
+        int tab = line.indexOf('\t');
+        if (tab < 0) {
+            return null;
+        }
+
+        String body = line.substring(tab + 1);
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        if (!line.substring(0, tab).equals(Long.toHexString(crc.getValue()))) {
+            return null;
+        }
+
+        String[] parts = body.split("\t", -1);
+        if (parts.length < 2 || parts[0].length() != 1) {
+            return null;
+        }
+        String[] fields = new String[parts.length - 2];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = unescape(parts[i + 2]);
+        }
+        return new JournalRecord(parts[0].charAt(0), unescape(parts[1]), fields);
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return NULL_FIELD;
+        }
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> escaped.append("\\\\");
+                case '\t' -> escaped.append("\\t");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.equals(NULL_FIELD)) {
+            return null;
+        }
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                unescaped.append(switch (next) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> next;
+                });
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    private static class JournalRecord {
+        final char type;
+        final String taskId;
+        final String[] fields;
+
+        JournalRecord(char type, String taskId, String... fields) {
+            this.type = type;
+            this.taskId = taskId;
+            this.fields = fields;
+        }
+    }
+
+    private static class TaskRecords {
+        final JournalRecord created;
+        JournalRecord staged;
+        JournalRecord storing;
+        JournalRecord status;
+
+        TaskRecords(JournalRecord created) {
+            this.created = created;
+        }
+    }
+
+    private static class PendingRecord {
+        final JournalRecord record;
+        final CompletableFuture<Void> durable;
+
+        PendingRecord(JournalRecord record, CompletableFuture<Void> durable) {
+            this.record = record;
+            this.durable = durable;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.example.jp.service;
+
+import com.example.jp.dto.TaskRegistryStatsDTO;
+import com.example.jp.event.UploadTaskEvent;
+import com.example.jp.model.FileUploadTask;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded registry of upload tasks.
+ * Finished tasks are kept for a retention period so clients can poll their outcome,
+ * then evicted. When the registry is full, the oldest finished tasks are evicted early.
+ * Running tasks are never evicted, but a task still running after max-running-minutes
+ * is failed, so a lost task cannot stay in progress forever. All status and progress
+ * changes go through this class, which publishes an UploadTaskEvent for each of them
+ * and records status changes in the task journal. Task counts by status are exported
+ * as metrics.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UploadTaskRegistry implements MeterBinder {
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final UploadTaskJournal journal;
+
+    @Value("${app.tasks.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${app.tasks.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    @Value("${app.tasks.max-running-minutes:360}")
+    private long maxRunningMinutes;
+
+    @Value("${app.tasks.journal.sync-timeout-ms:10000}")
+    private long journalSyncTimeoutMillis;
+
+    private final Map<String, FileUploadTask> tasks = new ConcurrentHashMap<>();
+
+    // Finished tasks in the order they finished, so eviction only looks at the head
+    private final Queue<FileUploadTask> finishedTasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong nextSweepMillis = new AtomicLong();
+    private final LongAdder evictedExpired = new LongAdder();
+    private final LongAdder evictedOverflow = new LongAdder();
+    private final LongAdder removedByClient = new LongAdder();
+    private final LongAdder failedStuck = new LongAdder();
+
+    @PostConstruct
+    void restore() {
+        List<FileUploadTask> restored = new ArrayList<>(journal.getRestoredTasks());
+        restored.sort(Comparator.comparingLong(FileUploadTask::getEndTimeMillis));
+        for (FileUploadTask task : restored) {
+            tasks.put(task.getTaskId(), task);
+            if (task.isTerminal()) {
+                finishedTasks.add(task);
+            }
+        }
+    }
+
+    /**
+     * Add a new task
+     */
+    public void register(FileUploadTask task) {
+        journal.recordCreated(task);
+        tasks.put(task.getTaskId(), task);
+        if (task.isTerminal()) {
+            finishedTasks.add(task);
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * Look up a task, or null if unknown or already evicted
+     */
+    public FileUploadTask get(String taskId) {
+        return tasks.get(taskId);
+    }
+
+    /**
+     * All registered tasks of a batch, in no particular order
+     */
+    public List<FileUploadTask> getGroup(String groupId) {
+        List<FileUploadTask> group = new ArrayList<>();
+        for (FileUploadTask task : tasks.values()) {
+            if (groupId.equals(task.getGroupId())) {
+                group.add(task);
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Remove a task on client request
+     */
+    public boolean remove(String taskId) {
+        FileUploadTask removed = tasks.remove(taskId);
+        if (removed == null) {
+            return false;
+        }
+        finishedTasks.remove(removed);
+        journal.recordRemoved(taskId);
+        removedByClient.increment();
+        return true;
+    }
+
+    /**
+     * Record progress of a running task
+     */
+    public void progress(FileUploadTask task, int percent) {
+        task.setProgressPercent(percent);
+        eventPublisher.publishEvent(new UploadTaskEvent(task));
+    }
+
+    /**
+     * Record where an upload was staged and mark it in progress.
+     * Returns once this is durable in the journal, so the upload can be resumed after a crash.
+     *
+     * @throws InterruptedIOException if the journal has not synced within the timeout
+     */
+    public void staged(FileUploadTask task, Path stagedFile, String contentType) throws InterruptedIOException {
+        journal.recordStaged(task, stagedFile, contentType);
+        try {
+            // Records are synced in order, so this also covers the staged record
+            changeStatus(task, FileUploadTask.TaskStatus.IN_PROGRESS, 10)
+                    .get(journalSyncTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            log.warn("Task {} is not journaled and will not survive a restart: {}", task.getTaskId(),
+                    e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            throw new InterruptedIOException("Task journal did not sync within " + journalSyncTimeoutMillis + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the task journal");
+        }
+    }
+
+    /**
+     * Record the file a staged upload is about to be moved to.
+     * Returns once this is durable, so a crash right after the move is recovered as completed.
+     *
+     * @throws InterruptedIOException if the journal has not synced within the timeout
+     */
+    public void storing(FileUploadTask task, Path targetFile) throws InterruptedIOException {
+        try {
+            journal.recordStoring(task, targetFile).get(journalSyncTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            log.warn("Target of task {} is not journaled: {}", task.getTaskId(), e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            throw new InterruptedIOException("Task journal did not sync within " + journalSyncTimeoutMillis + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the task journal");
+        }
+    }
+
+    /**
+     * Uploads interrupted by the last shutdown that can be resumed
+     */
+    public List<UploadTaskJournal.ResumableUpload> getResumableUploads() {
+        return journal.getResumableUploads();
+    }
+
+    /**
+     * Move a task to a non-terminal status
+     */
+    public void transition(FileUploadTask task, FileUploadTask.TaskStatus status, int percent) {
+        changeStatus(task, status, percent);
+    }
+
+    private CompletableFuture<Void> changeStatus(FileUploadTask task, FileUploadTask.TaskStatus status, int percent) {
+        if (task.isTerminal()) {
+            // Finished already, e.g. failed as stuck; the outcome stands
+            return CompletableFuture.completedFuture(null);
+        }
+        boolean changed = task.moveTo(status);
+        task.setProgressPercent(percent);
+        eventPublisher.publishEvent(new UploadTaskEvent(task));
+        return changed ? journal.recordStatus(task) : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Mark a task completed. Returns false and changes nothing if the task had already finished.
+     */
+    public boolean complete(FileUploadTask task, String filePath, long fileSize, String message) {
+        if (!task.complete(filePath, fileSize, message)) {
+            log.debug("Task {} already {}, ignoring its completion", task.getTaskId(), task.getStatus());
+            return false;
+        }
+        finished(task);
+        return true;
+    }
+
+    /**
+     * Mark a task failed. Returns false and changes nothing if the task had already finished.
+     */
+    public boolean fail(FileUploadTask task, String message) {
+        if (!task.fail(message)) {
+            log.debug("Task {} already {}, ignoring its failure: {}", task.getTaskId(), task.getStatus(), message);
+            return false;
+        }
+        finished(task);
+        return true;
+    }
+
+    private void finished(FileUploadTask task) {
+        finishedTasks.add(task);
+        journal.recordStatus(task);
+        eventPublisher.publishEvent(new UploadTaskEvent(task));
+        evictIfNeeded();
+    }
+
+    /**
+     * Occupancy and eviction counters
+     */
+    public TaskRegistryStatsDTO getStats() {
+        evictExpired(System.currentTimeMillis());
+
+        int active = 0;
+        int terminal = 0;
+        for (FileUploadTask task : tasks.values()) {
+            if (task.isTerminal()) {
+                terminal++;
+            } else {
+                active++;
+            }
+        }
+
+        return new TaskRegistryStatsDTO(
+            tasks.size(),
+            maxEntries,
+            ttlMinutes * 60_000,
+            active,
+            terminal,
+            evictedExpired.sum(),
+            evictedOverflow.sum(),
+            removedByClient.sum(),
+            failedStuck.sum()
+        );
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (FileUploadTask.TaskStatus status : FileUploadTask.TaskStatus.values()) {
+            Gauge.builder("jp.upload.tasks", this, r -> r.countByStatus(status))
+                    .description("Upload tasks in the registry by status")
+                    .tag("status", status.name())
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Number of tasks in the registry with the given status
+     */
+    public int countByStatus(FileUploadTask.TaskStatus status) {
+        int count = 0;
+        for (FileUploadTask task : tasks.values()) {
+            if (task.getStatus() == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void evictIfNeeded() {
+        long now = System.currentTimeMillis();
+        long next = nextSweepMillis.get();
+        if (now >= next && nextSweepMillis.compareAndSet(next, now + Math.max(1_000, ttlMinutes * 60_000 / 10))) {
+            evictExpired(now);
+            failStuckTasks(now);
+        }
+
+        // Over capacity: drop the oldest finished tasks regardless of age
+        while (tasks.size() > maxEntries) {
+            FileUploadTask oldest = finishedTasks.poll();
+            if (oldest == null) {
+                log.debug("Task registry over capacity with {} running tasks", tasks.size());
+                return;
+            }
+            if (tasks.remove(oldest.getTaskId(), oldest)) {
+                journal.recordRemoved(oldest.getTaskId());
+                evictedOverflow.increment();
+            }
+        }
+    }
+
+    /**
+     * Fail tasks that have been running longer than max-running-minutes; a task lost by a bug
+     * would otherwise never finish, never be evicted and hold its registry slot forever
+     */
+    private void failStuckTasks(long now) {
+        long cutoff = now - maxRunningMinutes * 60_000;
+        for (FileUploadTask task : tasks.values()) {
+            if (!task.isTerminal() && task.getStartTimeMillis() < cutoff) {
+                log.warn("Task {} still {} after {} minutes, failing it", task.getTaskId(), task.getStatus(),
+                        maxRunningMinutes);
+                if (fail(task, "Upload did not finish within " + maxRunningMinutes + " minutes")) {
+                    failedStuck.increment();
+                }
+            }
+        }
+    }
+
+    private void evictExpired(long now) {
+        long cutoff = now - ttlMinutes * 60_000;
+        FileUploadTask oldest;
+        while ((oldest = finishedTasks.peek()) != null && oldest.getEndTimeMillis() <= cutoff) {
+            if (finishedTasks.remove(oldest) && tasks.remove(oldest.getTaskId(), oldest)) {
+                journal.recordRemoved(oldest.getTaskId());
+                evictedExpired.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.jp.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LaneSchedulerTest {
+
+    // Holds started jobs until the test runs them, so the order they start in is deterministic
+    private final ArrayDeque<Runnable> started = new ArrayDeque<>();
+    private final List<String> ran = new ArrayList<>();
+
+    @Test
+    void tenantsTakeTurns() {
+        LaneScheduler scheduler = scheduler(1, Map.of(), 100);
+        submit(scheduler, "a", 100, 6);
+        submit(scheduler, "b", 100, 2);
+        runAll();
+        assertEquals(List.of("a", "a", "b", "a", "b", "a", "a", "a"), ran);
+    }
+
+    @Test
+    void weightedTenantGetsMoreJobsPerTurn() {
+        LaneScheduler scheduler = scheduler(1, Map.of("a", 2), 100);
+        submit(scheduler, "b", 100, 1);
+        submit(scheduler, "a", 100, 4);
+        submit(scheduler, "b", 100, 3);
+        runAll();
+        assertEquals(List.of("b", "a", "a", "b", "a", "a", "b", "b"), ran);
+    }
+
+    @Test
+    void largeJobWaitsForCreditOverSeveralTurns() {
+        LaneScheduler scheduler = scheduler(1, Map.of(), 100);
+        submit(scheduler, "a", 100, 1);
+        submit(scheduler, "a", 250, 1);
+        submit(scheduler, "b", 100, 3);
+        runAll();
+        // a needs three turns of credit for its 250-byte job, b's jobs go in the meantime
+        assertEquals(List.of("a", "b", "b", "a", "b"), ran);
+    }
+
+    @Test
+    void dropsLongestIdleTenantsAndTheirMeters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LaneScheduler scheduler = scheduler(1, Map.of(), 2);
+        scheduler.bindTo(registry);
+        for (String tenant : List.of("a", "b", "c", "d")) {
+            submit(scheduler, tenant, 100, 1);
+            runAll();
+        }
+        assertEquals(List.of("c", "d"), scheduler.getTenantSnapshots().stream()
+                .map(LaneScheduler.TenantSnapshot::getTenant).toList());
+        assertNull(registry.find("jp.scheduler.tenant.queued").tag("tenant", "a").gauge());
+        assertNull(registry.find("jp.scheduler.tenant.service").tag("tenant", "b").timer());
+        assertNotNull(registry.find("jp.scheduler.tenant.service").tag("tenant", "d").timer());
+    }
+
+    @Test
+    void keepsTenantsWithQueuedJobsBeyondTheCap() {
+        LaneScheduler scheduler = scheduler(1, Map.of(), 1);
+        submit(scheduler, "a", 100, 1);
+        submit(scheduler, "b", 100, 1);
+        submit(scheduler, "c", 100, 1);
+        assertEquals(3, scheduler.getTenantSnapshots().size());
+        runAll();
+        assertEquals(1, scheduler.getTenantSnapshots().size());
+    }
+
+    @Test
+    void largeLaneGoesFirstOnceItsOldestJobWaitedTooLong() throws InterruptedException {
+        LaneScheduler scheduler = new LaneScheduler("test", started::add, 1, 100, 0, 50, 100,
+                new LaneScheduler.FairShare(1000, 0, Map.of()), 100);
+        submit(scheduler, "small", 10, 1);
+        // Needs several turns of credit, so it is not the next large job in turn
+        submit(scheduler, "a", 5000, 1);
+        Thread.sleep(60);
+        submit(scheduler, "b", 200, 1);
+        submit(scheduler, "small", 10, 2);
+        runAll();
+        assertEquals(List.of("small", "b", "a", "small", "small"), ran);
+    }
+
+    @Test
+    void failsJobWhenDelegateRejects() {
+        List<Runnable> accepted = new ArrayList<>();
+        LaneScheduler scheduler = new LaneScheduler("test", task -> {
+            if (accepted.isEmpty()) {
+                accepted.add(task);
+                return;
+            }
+            throw new RejectedExecutionException("shut down");
+        }, 1, Long.MAX_VALUE, 0, 0, 100, new LaneScheduler.FairShare(100, 0, Map.of()), 100);
+
+        CompletableFuture<String> first = scheduler.supplyAsync("a", 10, () -> "first");
+        CompletableFuture<String> second = scheduler.supplyAsync("a", 10, () -> "second");
+        CompletableFuture<String> third = scheduler.supplyAsync("b", 10, () -> "third");
+        assertFalse(second.isDone());
+
+        // Finishing the first job starts the others, which the delegate now refuses; nothing runs inline
+        accepted.getFirst().run();
+        assertEquals("first", first.getNow(null));
+        for (CompletableFuture<String> refused : List.of(second, third)) {
+            CompletionException e = assertThrows(CompletionException.class, refused::join);
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        }
+
+        assertEquals(0, scheduler.getRunning(LaneScheduler.Lane.SMALL));
+        assertEquals(0, scheduler.getQueued(LaneScheduler.Lane.SMALL));
+        LaneScheduler.TenantSnapshot a = scheduler.getTenantSnapshots().stream()
+                .filter(snapshot -> snapshot.getTenant().equals("a")).findFirst().orElseThrow();
+        assertEquals(0, a.getRunning());
+        assertEquals(1, a.getCompleted());
+    }
+
+    @Test
+    void cancelsFutureTaskWhenDelegateRejects() {
+        LaneScheduler scheduler = new LaneScheduler("test", task -> {
+            throw new RejectedExecutionException("shut down");
+        }, 1, Long.MAX_VALUE, 0, 0, 100, new LaneScheduler.FairShare(100, 0, Map.of()), 100);
+        FutureTask<String> task = new FutureTask<>(() -> "done");
+
+        scheduler.execute("a", 10, task);
+
+        assertTrue(task.isCancelled());
+        assertEquals(0, scheduler.getRunning(LaneScheduler.Lane.SMALL));
+    }
+
+    @Test
+    void supplyAsyncFailsLikeCompletableFuture() {
+        LaneScheduler scheduler = scheduler(1, Map.of(), 100);
+        CompletableFuture<String> result = scheduler.supplyAsync("a", 10, () -> {
+            throw new IllegalStateException("broken");
+        });
+        runAll();
+
+        CompletionException e = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    private LaneScheduler scheduler(int concurrency, Map<String, Integer> weights, int maxTrackedTenants) {
+        return new LaneScheduler("test", started::add, concurrency, Long.MAX_VALUE, 0, 0, 100,
+                new LaneScheduler.FairShare(100, 0, weights), maxTrackedTenants);
+    }
+
+    private void submit(LaneScheduler scheduler, String tenant, long size, int count) {
+        for (int i = 0; i < count; i++) {
+            scheduler.execute(tenant, size, () -> ran.add(tenant));
+        }
+    }
+
+    private void runAll() {
+        Runnable job;
+        while ((job = started.poll()) != null) {
+            job.run();
+        }
+    }
+}
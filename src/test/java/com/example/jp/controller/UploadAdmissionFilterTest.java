@@ -0,0 +1,67 @@
+package com.example.jp.controller;
+
+import com.example.jp.service.UploadAdmissionService;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadAdmissionFilterTest {
+
+    private UploadAdmissionService admission;
+    private UploadAdmissionFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        admission = new UploadAdmissionService();
+        ReflectionTestUtils.setField(admission, "enabled", true);
+        ReflectionTestUtils.setField(admission, "maxInFlightBytes", 100L);
+        ReflectionTestUtils.setField(admission, "maxQueuedTasks", 10);
+        filter = new UploadAdmissionFilter(admission);
+    }
+
+    @Test
+    void passesUploadThatFits() throws Exception {
+        admission.acquire(50, 1);
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = send("/api/async/files/upload", 50, chain);
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    void turnsAwayUploadBeforeItsBodyIsRead() throws Exception {
+        admission.acquire(50, 1);
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = send("/api/async/files/upload-sync", 51, chain);
+
+        assertEquals(429, response.getStatus());
+        assertNotNull(response.getHeader("Retry-After"));
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void leavesOtherRequestsAlone() throws Exception {
+        admission.acquire(100, 1);
+        MockFilterChain chain = new MockFilterChain();
+        send("/api/files/upload", 1_000, chain);
+        assertNotNull(chain.getRequest());
+    }
+
+    private MockHttpServletResponse send(String uri, int contentLength, MockFilterChain chain)
+            throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.setContent(new byte[contentLength]);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.jp.metadata;
+
+import com.example.jp.dto.ArchiveEntryDTO;
+import com.example.jp.model.ArchiveFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveMetadataExtractorTest {
+
+    private final ArchiveMetadataExtractor extractor = new ArchiveMetadataExtractor();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsZipCentralDirectory() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("docs/"));
+            zip.putNextEntry(new ZipEntry("docs/a.txt"));
+            zip.write("hello hello hello".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("b.txt"));
+            zip.write("world".getBytes(StandardCharsets.UTF_8));
+        }
+
+        ArchiveFile archive = extract("a.zip", bytes.toByteArray());
+        assertEquals(2, archive.getFileCount());
+        assertEquals(22L, archive.getUncompressedSize());
+        assertEquals("Deflate", archive.getCompressionMethod());
+        assertFalse(archive.getIsEncrypted());
+
+        try (SeekableReader reader = Fixtures.open(dir, "a.zip", bytes.toByteArray())) {
+            List<ArchiveEntryDTO> entries = extractor.listEntries(reader, "a.zip", "docs/", 10);
+            assertEquals(List.of("docs/", "docs/a.txt"), entries.stream().map(ArchiveEntryDTO::getName).toList());
+            assertTrue(entries.get(0).isDirectory());
+        }
+    }
+
+    @Test
+    void rejectsZipWithBadCentralHeader() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("a.txt"));
+            zip.write(1);
+        }
+        byte[] corrupt = bytes.toByteArray();
+        // First byte of the central directory signature, located through the end record
+        int directoryOffset = ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).getInt(corrupt.length - 6);
+        corrupt[directoryOffset] = 0;
+
+        assertThrows(IOException.class, () -> extract("a.zip", corrupt));
+    }
+
+    @Test
+    void rejectsZipDirectoryPastEndOfFile() {
+        byte[] eocd = new Fixtures()
+                .u32le(0x06054b50).u16le(0).u16le(0).u16le(1).u16le(1)
+                .u32le(46).u32le(1000).u16le(0)
+                .toByteArray();
+
+        assertThrows(IOException.class, () -> extract("a.zip", eocd));
+    }
+
+    @Test
+    void rejectsNegativeZip64Size() {
+        byte[] name = "a.txt".getBytes(StandardCharsets.US_ASCII);
+        Fixtures zip = new Fixtures()
+                .u32le(0x04034b50).u16le(45).u16le(0).u16le(0).u32le(0).u32le(0)
+                .u32le(1).u32le(1).u16le(name.length).u16le(0).bytes(name).bytes('x');
+        int directoryOffset = zip.size();
+        zip.u32le(0x02014b50).u16le(45).u16le(45).u16le(0).u16le(0).u32le(0).u32le(0)
+                .u32le(0xffffffffL).u32le(0xffffffffL).u16le(name.length).u16le(20).u16le(0)
+                .u16le(0).u16le(0).u32le(0).u32le(0).bytes(name)
+                // ZIP64 extra field: size, then compressed size, both with the sign bit set
+                .u16le(1).u16le(16).u64le(-5).u64le(-5);
+        int directorySize = zip.size() - directoryOffset;
+        zip.u32le(0x06054b50).u16le(0).u16le(0).u16le(1).u16le(1)
+                .u32le(directorySize).u32le(directoryOffset).u16le(0);
+
+        assertThrows(IOException.class, () -> extract("a.zip", zip.toByteArray()));
+    }
+
+    @Test
+    void readsTarHeaders() throws IOException {
+        byte[] content = "tar content".getBytes(StandardCharsets.US_ASCII);
+        Fixtures tar = new Fixtures()
+                .bytes(tarHeader("dir/", octal(0), octal(1_700_000_000), '5'))
+                .bytes(tarHeader("dir/a.txt", octal(content.length), octal(1_700_000_000), '0'))
+                .bytes(content).zeros(512 - content.length)
+                .zeros(1024);
+
+        ArchiveFile archive = extract("a.tar", tar.toByteArray());
+        assertEquals(1, archive.getFileCount());
+        assertEquals((long) content.length, archive.getUncompressedSize());
+        assertEquals("None", archive.getCompressionMethod());
+    }
+
+    @Test
+    void rejectsNegativeTarSizeWithoutLooping() {
+        // Base-256 -1024: a naive walk steps back onto the same header forever
+        byte[] size = new Fixtures().bytes(0xff, 0xff, 0xff, 0xff).u32be(0xffffffffL).u32be(-1024).toByteArray();
+        byte[] tar = new Fixtures()
+                .bytes(tarHeader("a.txt", size, octal(0), '0'))
+                .zeros(1024)
+                .toByteArray();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> assertThrows(IOException.class, () -> extract("a.tar", tar)));
+    }
+
+    @Test
+    void rejectsOutOfRangeTarMtime() {
+        byte[] mtime = new Fixtures().bytes(0x80, 0, 0, 0).u32be(0x40000000L).u32be(0).toByteArray();
+        byte[] tar = new Fixtures()
+                .bytes(tarHeader("a.txt", octal(0), mtime, '0'))
+                .zeros(1024)
+                .toByteArray();
+
+        assertThrows(IOException.class, () -> extract("a.tar", tar));
+    }
+
+    @Test
+    void readsGzipNameAndSize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(new byte[1000]);
+        }
+
+        ArchiveFile archive = extract("report.csv.gz", bytes.toByteArray());
+        assertEquals(1, archive.getFileCount());
+        assertEquals(1000L, archive.getUncompressedSize());
+        assertEquals("Deflate", archive.getCompressionMethod());
+
+        try (SeekableReader reader = Fixtures.open(dir, "report.csv.gz", bytes.toByteArray())) {
+            assertEquals("report.csv", extractor.listEntries(reader, "report.csv.gz", null, 10).get(0).getName());
+        }
+    }
+
+    @Test
+    void rejectsGzipExtraFieldPastEndOfFile() {
+        // FEXTRA and FNAME set, extra length 0xffff in a 12-byte file
+        byte[] gzip = new Fixtures().bytes(0x1f, 0x8b, 8, 0x0c).zeros(6).u16le(0xffff).toByteArray();
+
+        assertThrows(IOException.class, () -> extract("a.gz", gzip));
+    }
+
+    @Test
+    void leavesUnrecognisedFilesUnchanged() throws IOException {
+        ArchiveFile archive = extract("a.zip", "not an archive at all".getBytes(StandardCharsets.US_ASCII));
+        assertNull(archive.getFileCount());
+    }
+
+    private ArchiveFile extract(String name, byte[] bytes) throws IOException {
+        ArchiveFile archive = new ArchiveFile(name, name, (long) bytes.length, null);
+        try (SeekableReader reader = Fixtures.open(dir, name, bytes)) {
+            extractor.extract(reader, archive);
+        }
+        return archive;
+    }
+
+    private static byte[] octal(long value) {
+        return String.format("%011o\0", value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] tarHeader(String name, byte[] size, byte[] mtime, char type) {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        System.arraycopy("0000644\0".getBytes(StandardCharsets.US_ASCII), 0, header, 100, 8);
+        System.arraycopy(size, 0, header, 124, 12);
+        System.arraycopy(mtime, 0, header, 136, 12);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        System.arraycopy("        ".getBytes(StandardCharsets.US_ASCII), 0, header, 148, 8);
+        int sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        System.arraycopy(String.format("%06o\0 ", sum).getBytes(StandardCharsets.US_ASCII), 0, header, 148, 8);
+        return header;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.jp.metadata;
+
+import com.example.jp.model.AudioFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioMetadataExtractorTest {
+
+    private final AudioMetadataExtractor extractor = new AudioMetadataExtractor();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsMp3TagsAndConstantBitrate() throws IOException {
+        AudioFile audio = extract("a.mp3", mp3());
+        assertEquals("Artist", audio.getArtist());
+        assertEquals("Album", audio.getAlbum());
+        assertEquals("Rock", audio.getGenre());
+        assertEquals(44100, audio.getSampleRate());
+        assertEquals("128 kbps", audio.getBitrate());
+        assertEquals(5, audio.getDurationSeconds());
+    }
+
+    @Test
+    void readsFlacStreamInfoAndComments() throws IOException {
+        AudioFile audio = extract("a.flac", flac());
+        assertEquals(44100, audio.getSampleRate());
+        assertEquals(10, audio.getDurationSeconds());
+        assertEquals("Band", audio.getArtist());
+        assertEquals("Jazz", audio.getGenre());
+    }
+
+    @Test
+    void rejectsTruncatedFlacStreamInfo() {
+        assertThrows(IOException.class, () -> extract("a.flac", Fixtures.truncate(flac(), 20)));
+    }
+
+    @Test
+    void readsWavFormatAndInfo() throws IOException {
+        AudioFile audio = extract("a.wav", wav());
+        assertEquals(8000, audio.getSampleRate());
+        assertEquals("64 kbps", audio.getBitrate());
+        assertEquals(2, audio.getDurationSeconds());
+        assertEquals("Singer", audio.getArtist());
+    }
+
+    @Test
+    void rejectsTruncatedWavFormat() {
+        assertThrows(IOException.class, () -> extract("a.wav", Fixtures.truncate(wav(), 26)));
+    }
+
+    @Test
+    void readsOggVorbisHeadersAndLastGranule() throws IOException {
+        AudioFile audio = extract("a.ogg", ogg());
+        assertEquals(44100, audio.getSampleRate());
+        assertEquals(3, audio.getDurationSeconds());
+        assertEquals("128 kbps", audio.getBitrate());
+        assertEquals("Record", audio.getAlbum());
+    }
+
+    @Test
+    void rejectsTruncatedOggIdentification() {
+        assertThrows(IOException.class, () -> extract("a.ogg", Fixtures.truncate(ogg(), 40)));
+    }
+
+    private AudioFile extract(String name, byte[] bytes) throws IOException {
+        AudioFile audio = new AudioFile(name, name, (long) bytes.length, null);
+        try (SeekableReader reader = Fixtures.open(dir, name, bytes)) {
+            extractor.extract(reader, audio);
+        }
+        return audio;
+    }
+
+    /**
+     * ID3v2.3 tag, then 5 s of MPEG-1 layer III at 128 kbps and 44.1 kHz
+     */
+    private static byte[] mp3() {
+        Fixtures frames = new Fixtures()
+                .bytes(id3Frame("TPE1", "Artist"))
+                .bytes(id3Frame("TALB", "Album"))
+                .bytes(id3Frame("TCON", "(17)"));
+        int tagSize = frames.size();
+        Fixtures mp3 = new Fixtures()
+                .ascii("ID3").bytes(3, 0, 0)
+                .bytes(tagSize >> 21 & 0x7f, tagSize >> 14 & 0x7f, tagSize >> 7 & 0x7f, tagSize & 0x7f)
+                .bytes(frames.toByteArray());
+        return mp3.bytes(0xff, 0xfb, 0x90, 0x00).zeros(80_000 - 4).toByteArray();
+    }
+
+    private static byte[] id3Frame(String id, String text) {
+        byte[] content = text.getBytes(StandardCharsets.ISO_8859_1);
+        return new Fixtures().ascii(id).u32be(content.length + 1).u16be(0).bytes(0).bytes(content).toByteArray();
+    }
+
+    /**
+     * STREAMINFO for 10 s at 44.1 kHz, then a Vorbis comment block
+     */
+    private static byte[] flac() {
+        long packed = 44100L << 44 | 1L << 41 | 15L << 36 | 441_000;
+        Fixtures flac = new Fixtures().ascii("fLaC")
+                .bytes(0, 0, 0, 34).u16be(4096).u16be(4096).zeros(6)
+                .u32be(packed >>> 32).u32be(packed & 0xffffffffL).zeros(16);
+        byte[] comments = vorbisComments("ARTIST=Band", "GENRE=Jazz");
+        flac.bytes(0x84, comments.length >> 16, comments.length >> 8, comments.length).bytes(comments);
+        return flac.zeros(1000).toByteArray();
+    }
+
+    /**
+     * 2 s of 8 kHz mono 8-bit PCM with a LIST/INFO artist
+     */
+    private static byte[] wav() {
+        byte[] info = new Fixtures().ascii("INFO").ascii("IART").u32le(6).ascii("Singer").toByteArray();
+        return new Fixtures()
+                .ascii("RIFF").u32le(0).ascii("WAVE")
+                .ascii("fmt ").u32le(16).u16le(1).u16le(1).u32le(8000).u32le(8000).u16le(1).u16le(8)
+                .ascii("LIST").u32le(info.length).bytes(info)
+                .ascii("data").u32le(16_000).zeros(16_000)
+                .toByteArray();
+    }
+
+    /**
+     * Vorbis identification and comment pages, then a last page at granule 3 s
+     */
+    private static byte[] ogg() {
+        byte[] identification = new Fixtures().bytes(1).ascii("vorbis").u32le(0).bytes(1).u32le(44100)
+                .u32le(0).u32le(128_000).u32le(0).bytes(0xb8, 1).toByteArray();
+        byte[] comment = new Fixtures().bytes(3).ascii("vorbis").bytes(vorbisComments("ALBUM=Record")).bytes(1)
+                .toByteArray();
+        return new Fixtures()
+                .bytes(oggPage(2, 0, 0, identification))
+                .bytes(oggPage(0, 0, 1, comment))
+                .bytes(oggPage(0, 44100 * 3, 2, new byte[200]))
+                .bytes(oggPage(4, 44100 * 3, 3, new byte[10]))
+                .toByteArray();
+    }
+
+    private static byte[] oggPage(int type, long granule, int sequence, byte[] packet) {
+        return new Fixtures().ascii("OggS").bytes(0, type).u64le(granule).u32le(0x1234).u32le(sequence).u32le(0)
+                .bytes(1, packet.length).bytes(packet).toByteArray();
+    }
+
+    private static byte[] vorbisComments(String... comments) {
+        Fixtures block = new Fixtures().u32le(4).ascii("test").u32le(comments.length);
+        for (String comment : comments) {
+            block.u32le(comment.length()).ascii(comment);
+        }
+        return block.toByteArray();
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.jp.metadata;
+
+import com.example.jp.model.DocumentFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentMetadataExtractorTest {
+
+    // Not reachable from the cross-reference data, so only the fallback scan finds it
+    private static final String STALE_PAGES = "9 0 obj\n<< /Type /Pages /Kids [] /Count 99 >>\nendobj\n";
+
+    private final DocumentMetadataExtractor extractor = new DocumentMetadataExtractor();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsPageCountThroughXrefTable() throws IOException {
+        assertEquals(3, extract("a.pdf", pdfWithTable("xref\n0 4\n")).getPageCount());
+    }
+
+    @Test
+    void scansWhenXrefIsBroken() throws IOException {
+        String pdf = pdfWithTable("xref\n0 4\n").replaceFirst("startxref\n\\d+", "startxref\n5");
+        assertEquals(99, extract("a.pdf", pdf).getPageCount());
+    }
+
+    @Test
+    void scansWhenXrefSubsectionIsNegative() {
+        String pdf = pdfWithTable("xref\n0 -40\n");
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> assertEquals(99, extract("a.pdf", pdf).getPageCount()));
+    }
+
+    @Test
+    void readsPageCountThroughPredictedXrefStream() throws IOException {
+        assertEquals(3, extract("a.pdf", pdfWithStream(4)).getPageCount());
+    }
+
+    @Test
+    void scansWhenPredictorColumnsAreInvalid() throws IOException {
+        assertEquals(99, extract("a.pdf", pdfWithStream(0)).getPageCount());
+        assertEquals(99, extract("a.pdf", pdfWithStream(-4)).getPageCount());
+    }
+
+    @Test
+    void leavesTruncatedPdfWithoutPageCount() throws IOException {
+        assertNull(extract("a.pdf", "%PDF-1.7\n1 0 obj\n<< /Type /Cat").getPageCount());
+    }
+
+    @Test
+    void readsOfficePageCounts() throws IOException {
+        assertEquals(12, extract("a.docx", ooxml("docProps/app.xml",
+                "<Properties><Pages>12</Pages></Properties>")).getPageCount());
+        assertEquals(5, extract("a.pptx", ooxml("docProps/app.xml",
+                "<Properties><Slides>5</Slides></Properties>")).getPageCount());
+        assertEquals(2, extract("a.xlsx", ooxml("docProps/app.xml",
+                "<Properties><HeadingPairs><vt:lpstr>Worksheets</vt:lpstr><vt:i4>2</vt:i4></HeadingPairs></Properties>"))
+                .getPageCount());
+        assertEquals(4, extract("a.odt", ooxml("meta.xml",
+                "<office:meta><meta:document-statistic meta:page-count=\"4\"/></office:meta>")).getPageCount());
+    }
+
+    @Test
+    void rejectsOutOfRangeOfficePageCount() {
+        byte[] docx = ooxml("docProps/app.xml", "<Properties><Pages>99999999999</Pages></Properties>");
+        assertThrows(IOException.class, () -> extract("a.docx", docx));
+    }
+
+    @Test
+    void rejectsCorruptOfficePropertiesPart() {
+        byte[] docx = ooxml("docProps/app.xml", "<Properties><Pages>12</Pages></Properties>");
+        // Deflated data starts after the 30-byte local header and the name
+        int data = 30 + "docProps/app.xml".length();
+        for (int i = data; i < data + 8; i++) {
+            docx[i] = (byte) 0xff;
+        }
+        assertThrows(IOException.class, () -> extract("a.docx", docx));
+    }
+
+    private DocumentFile extract(String name, String content) throws IOException {
+        return extract(name, content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private DocumentFile extract(String name, byte[] bytes) throws IOException {
+        DocumentFile document = new DocumentFile(name, name, (long) bytes.length, null);
+        try (SeekableReader reader = Fixtures.open(dir, name, bytes)) {
+            extractor.extract(reader, document);
+        }
+        return document;
+    }
+
+    private static byte[] ooxml(String part, String xml) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry(part));
+            zip.write(xml.getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("content.xml"));
+            zip.write("<x/>".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Catalog, page tree with three pages, a stale page tree node, then a classic xref table
+     */
+    private static String pdfWithTable(String xrefHeader) {
+        StringBuilder pdf = new StringBuilder("%PDF-1.4\n");
+        List<Integer> offsets = writeObjects(pdf);
+        int xref = pdf.length();
+        pdf.append(xrefHeader).append("0000000000 65535 f\r\n");
+        for (int offset : offsets) {
+            pdf.append(String.format("%010d 00000 n\r\n", offset));
+        }
+        pdf.append("trailer\n<< /Size 4 /Root 1 0 R >>\nstartxref\n").append(xref).append("\n%%EOF\n");
+        return pdf.toString();
+    }
+
+    /**
+     * The same objects indexed by a FlateDecode xref stream with a PNG Up predictor
+     */
+    private static String pdfWithStream(int columns) {
+        StringBuilder pdf = new StringBuilder("%PDF-1.5\n");
+        List<Integer> offsets = writeObjects(pdf);
+        int xref = pdf.length();
+        offsets.add(xref);
+
+        // Rows of {type, offset (2 bytes), generation} for objects 0-4, each row predicted from the one above
+        byte[] predicted = new byte[5 * 5];
+        int[] previous = new int[4];
+        for (int object = 0; object < 5; object++) {
+            int offset = object == 0 ? 0 : offsets.get(object - 1);
+            int[] row = {object == 0 ? 0 : 1, offset >> 8, offset & 0xff, object == 0 ? 0xff : 0};
+            predicted[object * 5] = 2;
+            for (int i = 0; i < 4; i++) {
+                predicted[object * 5 + 1 + i] = (byte) (row[i] - previous[i]);
+            }
+            previous = row;
+        }
+        byte[] data = deflate(predicted);
+
+        pdf.append("4 0 obj\n<< /Type /XRef /Size 5 /W [1 2 1] /Root 1 0 R /Filter /FlateDecode")
+                .append(" /DecodeParms << /Predictor 12 /Columns ").append(columns).append(" >>")
+                .append(" /Length ").append(data.length).append(" >>\nstream\n")
+                .append(new String(data, StandardCharsets.ISO_8859_1))
+                .append("\nendstream\nendobj\nstartxref\n").append(xref).append("\n%%EOF\n");
+        return pdf.toString();
+    }
+
+    private static List<Integer> writeObjects(StringBuilder pdf) {
+        List<Integer> offsets = new ArrayList<>();
+        offsets.add(pdf.length());
+        pdf.append("1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+        offsets.add(pdf.length());
+        pdf.append("2 0 obj\n<< /Type /Pages /Kids [3 0 R] /Count 3 >>\nendobj\n");
+        offsets.add(pdf.length());
+        pdf.append("3 0 obj\n<< /Type /Page /Parent 2 0 R >>\nendobj\n");
+        pdf.append(STALE_PAGES);
+        return offsets;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[data.length + 64];
+        int length = deflater.deflate(buffer);
+        deflater.end();
+        return Arrays.copyOf(buffer, length);
+    }
+}
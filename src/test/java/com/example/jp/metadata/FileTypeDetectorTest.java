@@ -0,0 +1,189 @@
+package com.example.jp.metadata;
+
+import com.example.jp.event.StorageChangeEvent;
+import com.example.jp.model.FileCategory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileTypeDetectorTest {
+
+    private final FileTypeDetector detector = new FileTypeDetector();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void typesMislabeledFilesByContent() throws IOException {
+        assertType("image/png", FileCategory.IMAGE, "photo.txt",
+                new Fixtures().bytes(0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a).zeros(8));
+        assertType("application/zip", FileCategory.ARCHIVE, "report.pdf",
+                new Fixtures().ascii("PK\3\4").zeros(26));
+        assertType("application/pdf", FileCategory.DOCUMENT, "scan.jpg",
+                new Fixtures().ascii("%PDF-1.7\n"));
+    }
+
+    @Test
+    void fallsBackToExtensionWithoutSignature() throws IOException {
+        assertType("text/plain", FileCategory.DOCUMENT, "notes.txt", new Fixtures().ascii("hello"));
+        assertType("application/octet-stream", FileCategory.GENERIC, "data.xyz", new Fixtures().ascii("hello"));
+        // Empty and missing files
+        assertType("image/png", FileCategory.IMAGE, "empty.png", new Fixtures());
+        FileTypeDetector.FileType missing = detector.detect(dir.resolve("gone.mp3"), "gone.mp3", 0, 0);
+        assertEquals("audio/mpeg", missing.getMimeType());
+    }
+
+    @Test
+    void prefersLongestMatchingSignature() throws IOException {
+        // "ftyp" alone means MP4; a longer brand match narrows it down
+        assertType("video/mp4", FileCategory.VIDEO, "clip.bin", ftyp("isom"));
+        assertType("video/quicktime", FileCategory.VIDEO, "clip.bin", ftyp("qt  "));
+        assertType("audio/mp4", FileCategory.AUDIO, "clip.bin", ftyp("M4A "));
+        assertType("video/3gpp", FileCategory.VIDEO, "clip.bin", ftyp("3gp5"));
+        // The root has wildcard edges too; a plain prefix match must still be found
+        assertType("application/x-bzip2", FileCategory.ARCHIVE, "a.bin", new Fixtures().ascii("BZh91AY"));
+    }
+
+    @Test
+    void matchesRiffFormsThroughWildcardSize() throws IOException {
+        assertType("image/webp", FileCategory.IMAGE, "a.bin", riff("WEBP"));
+        assertType("audio/wav", FileCategory.AUDIO, "a.bin", riff("WAVE"));
+        assertType("video/x-msvideo", FileCategory.VIDEO, "a.bin", riff("AVI "));
+        // Unknown RIFF form: no signature matches, so the extension decides
+        assertType("application/octet-stream", FileCategory.GENERIC, "a.bin", riff("CDXA"));
+    }
+
+    @Test
+    void findsTarMagicAtOffset257() throws IOException {
+        Fixtures tar = new Fixtures().ascii("file.txt").zeros(249).ascii("ustar\0").zeros(250);
+        assertType("application/x-tar", FileCategory.ARCHIVE, "backup.dat", tar);
+
+        // Too short to hold the magic
+        assertType("application/octet-stream", FileCategory.GENERIC, "short.dat",
+                new Fixtures().ascii("file.txt").zeros(249).ascii("ust"));
+        // Magic one byte off
+        assertType("application/octet-stream", FileCategory.GENERIC, "shifted.dat",
+                new Fixtures().zeros(258).ascii("ustar\0").zeros(250));
+    }
+
+    @Test
+    void trustsWeakSignaturesOnlyForUnknownExtensions() throws IOException {
+        Fixtures bitmapLike = new Fixtures().ascii("BM is a fine abbreviation");
+        assertType("text/plain", FileCategory.DOCUMENT, "notes.txt", bitmapLike);
+        assertType("image/bmp", FileCategory.IMAGE, "notes.dat", bitmapLike);
+
+        Fixtures frameSync = new Fixtures().bytes(0xff, 0xfb, 0x90, 0x00);
+        assertType("text/csv", FileCategory.DOCUMENT, "table.csv", frameSync);
+        assertType("audio/mpeg", FileCategory.AUDIO, "track", frameSync);
+
+        // A strong signature overrides a known extension
+        assertType("audio/mpeg", FileCategory.AUDIO, "notes.txt", new Fixtures().ascii("ID3\4\0"));
+    }
+
+    @Test
+    void letsExtensionNameAMoreSpecificFormat() throws IOException {
+        Fixtures zip = new Fixtures().ascii("PK\3\4").zeros(26);
+        assertType("application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+                FileCategory.DOCUMENT, "letter.docx", zip);
+        assertType("application/vnd.oasis.opendocument.text", FileCategory.DOCUMENT, "letter.odt", zip);
+        assertType("application/zip", FileCategory.ARCHIVE, "bundle.zip", zip);
+
+        // An empty ZIP cannot be a docx
+        assertType("application/zip", FileCategory.ARCHIVE, "letter.docx", new Fixtures().ascii("PK\5\6").zeros(18));
+        // Matroska confirms WebM
+        assertType("video/webm", FileCategory.VIDEO, "clip.webm", new Fixtures().bytes(0x1a, 0x45, 0xdf, 0xa3));
+    }
+
+    @Test
+    void typesByExtensionAloneWhenSniffingIsOff() throws IOException {
+        ReflectionTestUtils.setField(detector, "sniffContent", false);
+        assertType("text/plain", FileCategory.DOCUMENT, "photo.txt",
+                new Fixtures().bytes(0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a));
+    }
+
+    @Test
+    void cachesBySizeAndMtime() throws IOException {
+        Path file = Files.writeString(dir.resolve("a.txt"), "%PDF-1.4");
+        assertEquals("application/pdf", detector.detect(file, "a.txt", 8, 1000).getMimeType());
+
+        Files.writeString(file, "plain..."); // same size
+        assertEquals("application/pdf", detector.detect(file, "a.txt", 8, 1000).getMimeType());
+        assertEquals("text/plain", detector.detect(file, "a.txt", 8, 2000).getMimeType());
+    }
+
+    @Test
+    void forgetsDeletedFilesAndFolders() throws IOException {
+        Files.createDirectories(dir.resolve("docs/sub"));
+        Path top = Files.writeString(dir.resolve("docs/a.txt"), "%PDF-1.4");
+        Path nested = Files.writeString(dir.resolve("docs/sub/b.txt"), "%PDF-1.4");
+        Path sibling = Files.writeString(dir.resolve("docs2.txt"), "%PDF-1.4");
+        detector.detect(top, "docs/a.txt", 8, 1000);
+        detector.detect(nested, "docs/sub/b.txt", 8, 1000);
+        detector.detect(sibling, "docs2.txt", 8, 1000);
+
+        // Replaced by a file of the same size and mtime, as a delete and re-upload can produce
+        for (Path path : new Path[]{top, nested, sibling}) {
+            Files.writeString(path, "plain...");
+        }
+
+        detector.onStorageChange(StorageChangeEvent.deleted("docs/sub", true));
+        assertEquals("application/pdf", detector.detect(top, "docs/a.txt", 8, 1000).getMimeType());
+        assertEquals("text/plain", detector.detect(nested, "docs/sub/b.txt", 8, 1000).getMimeType());
+
+        detector.onStorageChange(StorageChangeEvent.deleted("docs/a.txt", false));
+        assertEquals("text/plain", detector.detect(top, "docs/a.txt", 8, 1000).getMimeType());
+
+        // Only paths inside the deleted folder, not ones sharing its name as a prefix
+        detector.onStorageChange(StorageChangeEvent.deleted("docs", true));
+        assertEquals("application/pdf", detector.detect(sibling, "docs2.txt", 8, 1000).getMimeType());
+    }
+
+    @Test
+    void ignoresEventsOtherThanDeletion() throws IOException {
+        Path file = Files.writeString(dir.resolve("a.txt"), "%PDF-1.4");
+        detector.detect(file, "a.txt", 8, 1000);
+        Files.writeString(file, "plain...");
+
+        detector.onStorageChange(StorageChangeEvent.created("a.txt", false));
+        assertEquals("application/pdf", detector.detect(file, "a.txt", 8, 1000).getMimeType());
+    }
+
+    @Test
+    void staysBoundedByCacheSize() throws IOException {
+        ReflectionTestUtils.setField(detector, "cacheSize", 2);
+        Path a = Files.writeString(dir.resolve("a.txt"), "%PDF-1.4");
+        Path b = Files.writeString(dir.resolve("b.txt"), "%PDF-1.4");
+        Path c = Files.writeString(dir.resolve("c.txt"), "%PDF-1.4");
+        detector.detect(a, "a.txt", 8, 1000);
+        detector.detect(b, "b.txt", 8, 1000);
+        detector.detect(c, "c.txt", 8, 1000);
+
+        Files.writeString(a, "plain...");
+        assertEquals("text/plain", detector.detect(a, "a.txt", 8, 1000).getMimeType());
+    }
+
+    private void assertType(String mimeType, FileCategory category, String name, Fixtures content) throws IOException {
+        // A fresh path per call, so earlier results are never served from the cache
+        Path file = Files.createDirectories(Files.createTempDirectory(dir, "case")).resolve(name);
+        Files.write(file, content.toByteArray());
+        FileTypeDetector.FileType type = detector.detect(file, dir.relativize(file).toString(), Files.size(file),
+                Files.getLastModifiedTime(file).toMillis());
+        assertEquals(mimeType, type.getMimeType(), name);
+        assertEquals(category, type.getCategory(), name);
+    }
+
+    private static Fixtures ftyp(String brand) {
+        return new Fixtures().u32be(20).ascii("ftyp").bytes(brand.getBytes(StandardCharsets.ISO_8859_1)).zeros(8);
+    }
+
+    private static Fixtures riff(String form) {
+        return new Fixtures().ascii("RIFF").u32le(1000).ascii(form).zeros(8);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.jp.metadata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Builds small binary fixtures for the metadata parser tests
+ */
+class Fixtures {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    Fixtures bytes(byte[] bytes) {
+        out.writeBytes(bytes);
+        return this;
+    }
+
+    Fixtures bytes(int... values) {
+        for (int value : values) {
+            out.write(value);
+        }
+        return this;
+    }
+
+    Fixtures ascii(String text) {
+        return bytes(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    Fixtures zeros(int count) {
+        return bytes(new byte[count]);
+    }
+
+    Fixtures u16be(int value) {
+        return bytes(value >> 8, value);
+    }
+
+    Fixtures u16le(int value) {
+        return bytes(value, value >> 8);
+    }
+
+    Fixtures u32be(long value) {
+        return bytes((int) (value >> 24), (int) (value >> 16), (int) (value >> 8), (int) value);
+    }
+
+    Fixtures u32le(long value) {
+        return bytes((int) value, (int) (value >> 8), (int) (value >> 16), (int) (value >> 24));
+    }
+
+    Fixtures u64le(long value) {
+        return u32le(value).u32le(value >>> 32);
+    }
+
+    int size() {
+        return out.size();
+    }
+
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    /**
+     * ISO-BMFF box: 32-bit size, four-character type, content
+     */
+    static byte[] box(String type, byte[]... children) {
+        Fixtures content = new Fixtures();
+        for (byte[] child : children) {
+            content.bytes(child);
+        }
+        return new Fixtures().u32be(8 + content.size()).ascii(type).bytes(content.toByteArray()).toByteArray();
+    }
+
+    /**
+     * Matroska element with a one- to four-byte ID and an eight-byte size
+     */
+    static byte[] element(long id, byte[]... children) {
+        Fixtures element = new Fixtures();
+        int idLength = (Long.numberOfLeadingZeros(id) ^ 63) / 8 + 1;
+        for (int i = idLength - 1; i >= 0; i--) {
+            element.bytes((int) (id >> (8 * i)));
+        }
+        Fixtures content = new Fixtures();
+        for (byte[] child : children) {
+            content.bytes(child);
+        }
+        element.bytes(0x01).u32be(0).u16be(content.size() >> 8).bytes(content.size());
+        return element.bytes(content.toByteArray()).toByteArray();
+    }
+
+    static byte[] truncate(byte[] bytes, int length) {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    static SeekableReader open(Path dir, String name, byte[] bytes) throws IOException {
+        Path file = dir.resolve(name);
+        Files.write(file, bytes);
+        return SeekableReader.open(file);
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.jp.metadata;
+
+import com.example.jp.model.ImageFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageMetadataExtractorTest {
+
+    private final ImageMetadataExtractor extractor = new ImageMetadataExtractor();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsPngHeader() throws IOException {
+        ImageFile image = extract("a.png", png(BufferedImage.TYPE_INT_ARGB));
+        assertEquals(40, image.getWidth());
+        assertEquals(30, image.getHeight());
+        assertEquals("RGBA", image.getColorSpace());
+        assertTrue(image.getHasTransparency());
+    }
+
+    @Test
+    void readsJpegStartOfFrame() throws IOException {
+        ImageFile image = extract("a.jpg", jpeg());
+        assertEquals(640, image.getWidth());
+        assertEquals(480, image.getHeight());
+        assertEquals("YCbCr", image.getColorSpace());
+    }
+
+    @Test
+    void readsGifScreenDescriptor() throws IOException {
+        byte[] gif = new Fixtures().ascii("GIF89a").u16le(320).u16le(200).zeros(3).toByteArray();
+        ImageFile image = extract("a.gif", gif);
+        assertEquals("320x200", image.getDimensions());
+    }
+
+    @Test
+    void rejectsTruncatedPng() {
+        byte[] png = Fixtures.truncate(png(BufferedImage.TYPE_INT_RGB), 20);
+        assertThrows(IOException.class, () -> extract("a.png", png));
+    }
+
+    @Test
+    void rejectsTruncatedJpegFrame() {
+        byte[] jpeg = jpeg();
+        assertThrows(IOException.class, () -> extract("a.jpg", Fixtures.truncate(jpeg, jpeg.length - 14)));
+    }
+
+    @Test
+    void stopsAtCorruptJpegMarker() throws IOException {
+        byte[] jpeg = jpeg();
+        // The APP0 segment length now points into the middle of nowhere
+        jpeg[4] = 0x7f;
+        ImageFile image = extract("a.jpg", jpeg);
+        assertNull(image.getWidth());
+    }
+
+    @Test
+    void rejectsPngDimensionsPastIntRange() {
+        byte[] png = png(BufferedImage.TYPE_INT_RGB);
+        png[16] = (byte) 0x80;
+        assertThrows(IOException.class, () -> extract("a.png", png));
+    }
+
+    @Test
+    void readsTopDownBmp() throws IOException {
+        ImageFile image = extract("a.bmp", bmp(800, -600));
+        assertEquals("800x600", image.getDimensions());
+        assertEquals("RGB", image.getColorSpace());
+    }
+
+    @Test
+    void rejectsBmpDimensionWithoutPositiveCounterpart() {
+        assertThrows(IOException.class, () -> extract("a.bmp", bmp(800, Integer.MIN_VALUE)));
+        assertThrows(IOException.class, () -> extract("a.bmp", bmp(Integer.MIN_VALUE, 600)));
+    }
+
+    @Test
+    void rejectsTiffDimensionsPastIntRange() {
+        byte[] tiff = new Fixtures().ascii("II*\0").u32le(8)
+                .u16le(1).u16le(256).u16le(4).u32le(1).u32le(0x80000000L)
+                .zeros(4)
+                .toByteArray();
+        assertThrows(IOException.class, () -> extract("a.tif", tiff));
+    }
+
+    private ImageFile extract(String name, byte[] bytes) throws IOException {
+        ImageFile image = new ImageFile(name, name, (long) bytes.length, null);
+        try (SeekableReader reader = Fixtures.open(dir, name, bytes)) {
+            extractor.extract(reader, image);
+        }
+        return image;
+    }
+
+    private static byte[] png(int type) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(new BufferedImage(40, 30, type), "png", bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * File header and a BITMAPINFOHEADER for a 24-bit image
+     */
+    private static byte[] bmp(int width, int height) {
+        return new Fixtures()
+                .ascii("BM").u32le(54).u32le(0).u32le(54)
+                .u32le(40).u32le(width).u32le(height).u16le(1).u16le(24)
+                .zeros(24)
+                .toByteArray();
+    }
+
+    /**
+     * SOI, a JFIF APP0 segment, then a baseline SOF0 for a 640x480 three-component image
+     */
+    private static byte[] jpeg() {
+        return new Fixtures()
+                .bytes(0xff, 0xd8)
+                .bytes(0xff, 0xe0).u16be(16).ascii("JFIF").bytes(0, 1, 1, 0).u16be(1).u16be(1).bytes(0, 0)
+                .bytes(0xff, 0xc0).u16be(17).bytes(8).u16be(480).u16be(640).bytes(3)
+                .bytes(1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1)
+                .bytes(0xff, 0xd9)
+                .toByteArray();
+    }
+}
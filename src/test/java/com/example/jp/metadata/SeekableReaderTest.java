@@ -0,0 +1,50 @@
+package com.example.jp.metadata;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeekableReaderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsAcrossWindowRefills() throws IOException {
+        byte[] bytes = new byte[20_000];
+        bytes[0] = 1;
+        bytes[19_999] = 2;
+        try (SeekableReader reader = Fixtures.open(dir, "a.bin", bytes)) {
+            assertEquals(1, reader.u8(0));
+            assertEquals(2, reader.u8(19_999));
+            assertEquals(1, reader.u8(0));
+            assertEquals(20_000, reader.bytes(0, 20_000).length);
+        }
+    }
+
+    @Test
+    void rejectsReadsOutsideTheFile() throws IOException {
+        try (SeekableReader reader = Fixtures.open(dir, "a.bin", new byte[16])) {
+            assertThrows(EOFException.class, () -> reader.u32le(14));
+            assertThrows(EOFException.class, () -> reader.u8(-1));
+            assertThrows(EOFException.class, () -> reader.map(8, 16));
+            assertFalse(reader.matches(14, new byte[4]));
+        }
+    }
+
+    @Test
+    void failsOnceTheTimeBudgetIsSpent() throws Exception {
+        try (SeekableReader reader = Fixtures.open(dir, "a.bin", new byte[16])) {
+            reader.setTimeBudget(1);
+            Thread.sleep(5);
+            assertThrows(InterruptedIOException.class, reader::checkDeadline);
+            assertThrows(InterruptedIOException.class, () -> reader.u8(0));
+        }
+    }
+}
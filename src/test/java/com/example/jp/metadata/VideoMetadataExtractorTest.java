@@ -0,0 +1,121 @@
+package com.example.jp.metadata;
+
+import com.example.jp.model.VideoFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static com.example.jp.metadata.Fixtures.box;
+import static com.example.jp.metadata.Fixtures.element;
+import static org.junit.jupiter.api.Assertions.*;
+
+class VideoMetadataExtractorTest {
+
+    private final VideoMetadataExtractor extractor = new VideoMetadataExtractor();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsMp4MovieAndTracks() throws IOException {
+        VideoFile video = extract("a.mp4", mp4());
+        assertEquals(10, video.getDurationSeconds());
+        assertEquals("1280x720", video.getResolution());
+        assertEquals("H.264", video.getCodec());
+        assertEquals(25, video.getFrameRate());
+        assertTrue(video.getHasAudio());
+    }
+
+    @Test
+    void leavesTruncatedMp4Unchanged() throws IOException {
+        byte[] mp4 = mp4();
+        VideoFile video = extract("a.mp4", Fixtures.truncate(mp4, mp4.length / 2));
+        assertNull(video.getDurationSeconds());
+        assertNull(video.getResolution());
+    }
+
+    @Test
+    void rejectsMp4WithTruncatedHandler() {
+        byte[] mp4 = new Fixtures()
+                .bytes(box("ftyp", new Fixtures().ascii("isom").u32be(0).ascii("isom").toByteArray()))
+                .bytes(box("moov", box("trak", box("mdia", box("hdlr")))))
+                .toByteArray();
+        assertThrows(IOException.class, () -> extract("a.mp4", mp4));
+    }
+
+    @Test
+    void readsMatroskaInfoAndTracks() throws IOException {
+        VideoFile video = extract("a.mkv", matroska());
+        assertEquals(12, video.getDurationSeconds());
+        assertEquals("1920x1080", video.getResolution());
+        assertEquals("VP9", video.getCodec());
+        assertEquals(30, video.getFrameRate());
+        assertTrue(video.getHasAudio());
+    }
+
+    @Test
+    void leavesTruncatedMatroskaUnchanged() throws IOException {
+        byte[] mkv = matroska();
+        VideoFile video = extract("a.mkv", Fixtures.truncate(mkv, mkv.length - 10));
+        assertNull(video.getDurationSeconds());
+        assertNull(video.getCodec());
+    }
+
+    private VideoFile extract(String name, byte[] bytes) throws IOException {
+        VideoFile video = new VideoFile(name, name, (long) bytes.length, null);
+        try (SeekableReader reader = Fixtures.open(dir, name, bytes)) {
+            extractor.extract(reader, video);
+        }
+        return video;
+    }
+
+    /**
+     * A 10 s movie with a 1280x720 H.264 track at 25 fps and a sound track
+     */
+    private static byte[] mp4() {
+        byte[] mvhd = box("mvhd", new Fixtures().zeros(12).u32be(1000).u32be(10_000).zeros(80).toByteArray());
+        byte[] tkhd = box("tkhd", new Fixtures().zeros(76).u32be(1280L << 16).u32be(720L << 16).toByteArray());
+        byte[] mdhd = box("mdhd", new Fixtures().zeros(12).u32be(12_800).u32be(128_000).zeros(4).toByteArray());
+        byte[] stsd = box("stsd", new Fixtures().zeros(4).u32be(1)
+                .u32be(86).ascii("avc1").zeros(24).u16be(1280).u16be(720).zeros(50).toByteArray());
+        // 250 samples of 512 ticks each
+        byte[] stts = box("stts", new Fixtures().zeros(4).u32be(1).u32be(250).u32be(512).toByteArray());
+
+        byte[] videoTrack = box("trak", tkhd, box("mdia", mdhd, handler("vide"), box("minf", box("stbl", stsd, stts))));
+        byte[] audioTrack = box("trak", box("mdia", handler("soun")));
+        return new Fixtures()
+                .bytes(box("ftyp", new Fixtures().ascii("isom").u32be(512).ascii("isomavc1").toByteArray()))
+                .bytes(box("moov", mvhd, videoTrack, audioTrack))
+                .bytes(box("mdat", new byte[64]))
+                .toByteArray();
+    }
+
+    private static byte[] handler(String type) {
+        return box("hdlr", new Fixtures().zeros(8).ascii(type).zeros(13).toByteArray());
+    }
+
+    /**
+     * A 12 s WebM file with a 1920x1080 VP9 track at 30 fps and an audio track
+     */
+    private static byte[] matroska() {
+        byte[] info = element(0x1549a966L,
+                element(0x2ad7b1L, new Fixtures().bytes(0x0f, 0x42, 0x40).toByteArray()),
+                element(0x4489L, ByteBuffer.allocate(8).putDouble(12_000).array()));
+        byte[] videoTrack = element(0xaeL,
+                element(0x83L, new byte[]{1}),
+                element(0x86L, "V_VP9".getBytes()),
+                element(0x23e383L, new Fixtures().u32be(33_333_333).toByteArray()),
+                element(0xe0L,
+                        element(0xb0L, new Fixtures().u16be(1920).toByteArray()),
+                        element(0xbaL, new Fixtures().u16be(1080).toByteArray())));
+        byte[] audioTrack = element(0xaeL, element(0x83L, new byte[]{2}));
+
+        return new Fixtures()
+                .bytes(element(0x1a45dfa3L, element(0x4282L, "webm".getBytes())))
+                .bytes(element(0x18538067L, info, element(0x1654ae6bL, videoTrack, audioTrack)))
+                .toByteArray();
+    }
+}
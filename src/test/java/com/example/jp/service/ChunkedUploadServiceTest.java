@@ -0,0 +1,195 @@
+package com.example.jp.service;
+
+import com.example.jp.dto.FileItemDTO;
+import com.example.jp.model.ChunkedUploadSession;
+import com.example.jp.model.FileItem;
+import com.example.jp.model.FileItemFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedUploadServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private int failingStores;
+    private ChunkedUploadService service;
+
+    @BeforeEach
+    void setUp() {
+        FileStorageService storage = new FileStorageService(null, null, null, null, null) {
+            @Override
+            public FileItem storeStagedFile(Path stagedFile, String originalFilename, String contentType,
+                                            String folderPath) throws IOException {
+                if (failingStores > 0) {
+                    failingStores--;
+                    throw new IOException("disk full");
+                }
+                Path target = Files.createDirectories(dir.resolve("stored")).resolve(originalFilename);
+                Files.move(stagedFile, target);
+                return FileItemFactory.createFileItem(originalFilename, originalFilename, Files.size(target), contentType);
+            }
+        };
+        ReflectionTestUtils.setField(storage, "stagingRoot", dir.resolve("staging").toString());
+
+        service = new ChunkedUploadService(storage);
+        ReflectionTestUtils.setField(service, "sessionTimeoutMinutes", 60L);
+        ReflectionTestUtils.setField(service, "maxTotalSize", 1000L);
+        ReflectionTestUtils.setField(service, "maxSessions", 2);
+        service.init();
+    }
+
+    @Test
+    void assemblesChunksSentOutOfOrder() throws IOException {
+        byte[] content = content(100);
+        ChunkedUploadSession session = service.initSession("a.bin", "", 100, null);
+        write(session, content, 60, 100);
+        write(session, content, 0, 30);
+        assertEquals(List.of("30-60"), ranges(session.getMissingRanges()));
+        write(session, content, 30, 60);
+
+        assertEquals(List.of("0-100"), ranges(session.getReceivedRanges()));
+        service.completeSession(session.getSessionId());
+        assertArrayEquals(content, Files.readAllBytes(dir.resolve("stored/a.bin")));
+    }
+
+    @Test
+    void mergesOverlappingChunks() throws IOException {
+        byte[] content = content(100);
+        ChunkedUploadSession session = service.initSession("a.bin", "", 100, null);
+        write(session, content, 0, 50);
+        write(session, content, 40, 70);
+        write(session, content, 20, 30);
+        write(session, content, 90, 100);
+
+        assertEquals(List.of("0-70", "90-100"), ranges(session.getReceivedRanges()));
+        assertEquals(80, session.getReceivedBytes());
+        write(session, content, 0, 100);
+        assertTrue(session.isComplete());
+    }
+
+    @Test
+    void writesChunksConcurrently() throws Exception {
+        byte[] content = content(1000);
+        ChunkedUploadSession session = service.initSession("a.bin", "", 1000, null);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int start = 0; start < 1000; start += 10) {
+                int offset = start;
+                writes.add(executor.submit(() -> write(session, content, offset, offset + 10)));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(List.of("0-1000"), ranges(session.getReceivedRanges()));
+        service.completeSession(session.getSessionId());
+        assertArrayEquals(content, Files.readAllBytes(dir.resolve("stored/a.bin")));
+    }
+
+    @Test
+    void refusesToCompleteWithBytesMissing() throws IOException {
+        ChunkedUploadSession session = service.initSession("a.bin", "", 100, null);
+        write(session, content(100), 0, 99);
+
+        assertThrows(IllegalStateException.class, () -> service.completeSession(session.getSessionId()));
+        assertSame(session, service.getSession(session.getSessionId()));
+    }
+
+    @Test
+    void rejectsChunkPastDeclaredSize() throws IOException {
+        ChunkedUploadSession session = service.initSession("a.bin", "", 10, null);
+        assertThrows(IllegalArgumentException.class,
+                () -> service.writeChunk(session.getSessionId(), 5, new ByteArrayInputStream(new byte[6])));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.writeChunk(session.getSessionId(), 11, new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    void keepsSessionWhenStoringFails() throws IOException {
+        byte[] content = content(10);
+        ChunkedUploadSession session = service.initSession("a.bin", "", 10, null);
+        write(session, content, 0, 10);
+
+        failingStores = 1;
+        assertThrows(IOException.class, () -> service.completeSession(session.getSessionId()));
+        assertTrue(Files.exists(session.getStagedFile()));
+
+        FileItemDTO stored = service.completeSession(session.getSessionId());
+        assertEquals("a.bin", stored.getName());
+        assertNull(service.getSession(session.getSessionId()));
+    }
+
+    @Test
+    void discardsStagedFileWhenAbortedAfterFailedStore() throws IOException {
+        ChunkedUploadSession session = service.initSession("a.bin", "", 10, null);
+        write(session, content(10), 0, 10);
+
+        failingStores = 1;
+        assertThrows(IOException.class, () -> service.completeSession(session.getSessionId()));
+        service.abortSession(session.getSessionId());
+
+        assertFalse(Files.exists(session.getStagedFile()));
+        assertNull(service.getSession(session.getSessionId()));
+    }
+
+    @Test
+    void rejectsSessionsOverTheSizeLimit() {
+        UploadRejectedException e = assertThrows(UploadRejectedException.class,
+                () -> service.initSession("a.bin", "", 1001, null));
+        assertFalse(e.isRetryable());
+    }
+
+    @Test
+    void limitsOpenSessions() throws IOException {
+        ChunkedUploadSession first = service.initSession("a.bin", "", 10, null);
+        service.initSession("b.bin", "", 10, null);
+
+        UploadRejectedException e = assertThrows(UploadRejectedException.class,
+                () -> service.initSession("c.bin", "", 10, null));
+        assertTrue(e.isRetryable());
+
+        service.abortSession(first.getSessionId());
+        assertNotNull(service.initSession("c.bin", "", 10, null));
+    }
+
+    private void write(ChunkedUploadSession session, byte[] content, int start, int end) {
+        try {
+            assertSame(session, service.writeChunk(session.getSessionId(), start,
+                    new ByteArrayInputStream(Arrays.copyOfRange(content, start, end))));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31 + 7);
+        }
+        return content;
+    }
+
+    private static List<String> ranges(List<long[]> ranges) {
+        return ranges.stream().map(range -> range[0] + "-" + range[1]).toList();
+    }
+}
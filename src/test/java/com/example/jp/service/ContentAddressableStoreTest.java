@@ -0,0 +1,126 @@
+package com.example.jp.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ContentAddressableStoreTest {
+
+    @TempDir
+    Path root;
+
+    private Path blobRoot;
+    private Path storage;
+    private ContentAddressableStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        assumeTrue(root.getFileSystem().supportedFileAttributeViews().contains("unix"));
+        blobRoot = root.resolve("blobs");
+        storage = Files.createDirectories(root.resolve("storage"));
+        store = newStore();
+    }
+
+    @Test
+    void storesEqualContentOnce() throws IOException {
+        Path a = storage.resolve("a.txt");
+        Path b = storage.resolve("b.txt");
+        store.store(content("same"), a);
+        store.store(staged("same"), b);
+
+        assertEquals(1, blobCount());
+        assertTrue(Files.isSameFile(a, b));
+        // Two logical files plus the blob itself
+        assertEquals(3, linkCount(a));
+        assertEquals(ContentAddressableStore.hash(a), store.contentHash(b));
+    }
+
+    @Test
+    void keepsBlobUntilLastLinkIsReleased() throws IOException {
+        Path a = storage.resolve("a.txt");
+        Path b = storage.resolve("b.txt");
+        store.store(content("same"), a);
+        store.store(content("same"), b);
+
+        store.release(a);
+        assertFalse(Files.exists(a));
+        assertEquals(1, blobCount());
+        assertEquals("same", Files.readString(b));
+
+        store.release(b);
+        assertFalse(Files.exists(b));
+        assertEquals(0, blobCount());
+    }
+
+    @Test
+    void releasesFileThatIsNotDeduplicated() throws IOException {
+        Path plain = Files.writeString(storage.resolve("plain.txt"), "plain");
+        store.store(content("other"), storage.resolve("other.txt"));
+
+        store.release(plain);
+        store.release(storage.resolve("missing.txt"));
+
+        assertFalse(Files.exists(plain));
+        assertEquals(1, blobCount());
+    }
+
+    @Test
+    void collectsUnreferencedBlobsAtStartup() throws IOException {
+        Path kept = storage.resolve("kept.txt");
+        Path dropped = storage.resolve("dropped.txt");
+        store.store(content("kept"), kept);
+        store.store(content("dropped"), dropped);
+        Path leftover = Files.writeString(blobRoot.resolve("tmp").resolve("crashed.part"), "partial");
+
+        // Deleted behind the store's back, e.g. while the application was down
+        Files.delete(dropped);
+
+        ContentAddressableStore restarted = newStore();
+
+        assertEquals(1, blobCount());
+        assertFalse(Files.exists(leftover));
+        assertEquals(ContentAddressableStore.hash(kept), restarted.contentHash(kept));
+
+        restarted.release(kept);
+        assertEquals(0, blobCount());
+    }
+
+    private ContentAddressableStore newStore() throws IOException {
+        ContentAddressableStore cas = new ContentAddressableStore();
+        ReflectionTestUtils.setField(cas, "enabled", true);
+        ReflectionTestUtils.setField(cas, "blobRoot", blobRoot.toString());
+        cas.init();
+        return cas;
+    }
+
+    private Path staged(String text) throws IOException {
+        return Files.writeString(Files.createTempFile(root, "staged", ".tmp"), text);
+    }
+
+    private static ByteArrayInputStream content(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long blobCount() throws IOException {
+        try (Stream<Path> walk = Files.walk(blobRoot)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(path -> !path.getParent().getFileName().toString().equals("tmp"))
+                    .count();
+        }
+    }
+
+    private static int linkCount(Path path) throws IOException {
+        return (Integer) Files.getAttribute(path, "unix:nlink");
+    }
+}
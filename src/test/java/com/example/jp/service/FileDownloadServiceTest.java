@@ -0,0 +1,207 @@
+package com.example.jp.service;
+
+import com.example.jp.controller.FileController;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+
+class FileDownloadServiceTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+    private static final Instant MODIFIED = Instant.parse("2024-03-15T10:00:00Z");
+
+    @TempDir
+    Path root;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        FileStorageService storage = new FileStorageService(null, null, null, null, null);
+        ReflectionTestUtils.setField(storage, "storageRoot", root.toString());
+        mvc = MockMvcBuilders.standaloneSetup(new FileController(null, new FileDownloadService(storage), null)).build();
+
+        Path file = Files.writeString(root.resolve("notes.txt"), CONTENT);
+        Files.setLastModifiedTime(file, FileTime.from(MODIFIED));
+    }
+
+    @Test
+    void servesWholeFileWithValidators() throws Exception {
+        MockHttpServletResponse response = perform(download());
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+        assertEquals(CONTENT.length(), response.getContentLength());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertNotNull(response.getHeader(HttpHeaders.ETAG));
+        assertEquals(MODIFIED.toEpochMilli(), response.getDateHeader(HttpHeaders.LAST_MODIFIED));
+    }
+
+    @Test
+    void answersMissingFileWith404() throws Exception {
+        assertEquals(404, perform(get("/api/files/download").param("path", "missing.txt")).getStatus());
+    }
+
+    @Test
+    void servesSingleRange() throws Exception {
+        MockHttpServletResponse response = perform(download().header(HttpHeaders.RANGE, "bytes=2-5"));
+
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", response.getContentAsString());
+        assertEquals("bytes 2-5/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, response.getContentLength());
+    }
+
+    @Test
+    void servesSuffixRangeClampedToLength() throws Exception {
+        MockHttpServletResponse response = perform(download().header(HttpHeaders.RANGE, "bytes=18-100"));
+
+        assertEquals(206, response.getStatus());
+        assertEquals("ij", response.getContentAsString());
+        assertEquals("bytes 18-19/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void servesSeveralRangesAsMultipart() throws Exception {
+        MockHttpServletResponse response = perform(download().header(HttpHeaders.RANGE, "bytes=0-1,10-12,50-60"));
+
+        assertEquals(206, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+        String boundary = response.getContentType().substring(response.getContentType().indexOf('=') + 1);
+        String body = response.getContentAsString();
+
+        // The range past the end is dropped
+        assertEquals(2, body.split("Content-Range: ", -1).length - 1);
+        assertTrue(body.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"));
+        assertTrue(body.contains("Content-Range: bytes 10-12/20\r\n\r\nabc\r\n"));
+        assertTrue(body.endsWith("\r\n--" + boundary + "--\r\n"));
+    }
+
+    @Test
+    void answersUnsatisfiableRangeWith416() throws Exception {
+        MockHttpServletResponse response = perform(download().header(HttpHeaders.RANGE, "bytes=20-30"));
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void answersMalformedRangeWith416() throws Exception {
+        MockHttpServletResponse response = perform(download().header(HttpHeaders.RANGE, "bytes=5-2"));
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void honoursIfRangeWithEtag() throws Exception {
+        String etag = perform(download()).getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletResponse matching = perform(download()
+                .header(HttpHeaders.RANGE, "bytes=0-3")
+                .header(HttpHeaders.IF_RANGE, etag));
+        assertEquals(206, matching.getStatus());
+        assertEquals("0123", matching.getContentAsString());
+
+        MockHttpServletResponse stale = perform(download()
+                .header(HttpHeaders.RANGE, "bytes=0-3")
+                .header(HttpHeaders.IF_RANGE, "\"0-0\""));
+        assertEquals(200, stale.getStatus());
+        assertEquals(CONTENT, stale.getContentAsString());
+    }
+
+    @Test
+    void honoursIfRangeWithDate() throws Exception {
+        MockHttpServletResponse matching = perform(download()
+                .header(HttpHeaders.RANGE, "bytes=0-3")
+                .header(HttpHeaders.IF_RANGE, httpDate(MODIFIED)));
+        assertEquals(206, matching.getStatus());
+        assertEquals("0123", matching.getContentAsString());
+
+        MockHttpServletResponse stale = perform(download()
+                .header(HttpHeaders.RANGE, "bytes=0-3")
+                .header(HttpHeaders.IF_RANGE, httpDate(MODIFIED.minusSeconds(60))));
+        assertEquals(200, stale.getStatus());
+        assertEquals(CONTENT, stale.getContentAsString());
+    }
+
+    @Test
+    void answersMatchingIfNoneMatchWith304() throws Exception {
+        String etag = perform(download()).getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletResponse response = perform(download().header(HttpHeaders.IF_NONE_MATCH, etag));
+        assertEquals(304, response.getStatus());
+        assertEquals("", response.getContentAsString());
+
+        assertEquals(200, perform(download().header(HttpHeaders.IF_NONE_MATCH, "\"0-0\"")).getStatus());
+    }
+
+    @Test
+    void answersUnmodifiedSinceWith304() throws Exception {
+        MockHttpServletResponse response = perform(download().header(HttpHeaders.IF_MODIFIED_SINCE, httpDate(MODIFIED)));
+        assertEquals(304, response.getStatus());
+
+        MockHttpServletResponse older = perform(download()
+                .header(HttpHeaders.IF_MODIFIED_SINCE, httpDate(MODIFIED.minusSeconds(60))));
+        assertEquals(200, older.getStatus());
+        assertEquals(CONTENT, older.getContentAsString());
+    }
+
+    @Test
+    void answersHeadWithoutBody() throws Exception {
+        MockHttpServletResponse whole = perform(head("/api/files/download").param("path", "notes.txt"));
+        assertEquals(200, whole.getStatus());
+        assertEquals(CONTENT.length(), whole.getContentLength());
+        assertEquals("", whole.getContentAsString());
+
+        MockHttpServletResponse range = perform(head("/api/files/download").param("path", "notes.txt")
+                .header(HttpHeaders.RANGE, "bytes=2-5"));
+        assertEquals(206, range.getStatus());
+        assertEquals("bytes 2-5/20", range.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("", range.getContentAsString());
+    }
+
+    @Test
+    void handsRangeToSendfileWhenSupported() throws Exception {
+        MvcResult result = mvc.perform(download()
+                .header(HttpHeaders.RANGE, "bytes=4-7")
+                .requestAttr("org.apache.tomcat.sendfile.support", true)).andReturn();
+
+        assertEquals(206, result.getResponse().getStatus());
+        assertEquals("", result.getResponse().getContentAsString());
+        assertEquals(root.resolve("notes.txt").toAbsolutePath().toString(),
+                result.getRequest().getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(4L, result.getRequest().getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(8L, result.getRequest().getAttribute("org.apache.tomcat.sendfile.end"));
+    }
+
+    private MockHttpServletRequestBuilder download() {
+        return get("/api/files/download").param("path", "notes.txt");
+    }
+
+    private MockHttpServletResponse perform(MockHttpServletRequestBuilder request) throws Exception {
+        return mvc.perform(request).andReturn().getResponse();
+    }
+
+    private static String httpDate(Instant instant) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atOffset(ZoneOffset.UTC));
+    }
+}
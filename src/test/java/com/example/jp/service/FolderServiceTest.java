@@ -0,0 +1,225 @@
+package com.example.jp.service;
+
+import com.example.jp.controller.FolderController;
+import com.example.jp.dto.FolderContentsDTO;
+import com.example.jp.dto.FolderDTO;
+import com.example.jp.dto.FolderEntryDTO;
+import com.example.jp.dto.FileItemDTO;
+import com.example.jp.event.StorageChangeEvent;
+import com.example.jp.model.FileItem;
+import com.example.jp.model.FileItemFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+
+/**
+ * Paging runs against both the in-memory index and a plain directory scan
+ */
+class FolderServiceTest {
+
+    @TempDir
+    Path root;
+
+    private MetadataIndexService index;
+    private FolderService folderService;
+    private Path docs;
+
+    private void setUp(boolean indexed) throws IOException {
+        FileStorageService storage = new FileStorageService(null, null, null, null, null) {
+            @Override
+            public FileItem describeFile(String filePath, Path fullPath, BasicFileAttributes attrs) {
+                return FileItemFactory.createFileItem(fullPath.getFileName().toString(), filePath, attrs.size(), null);
+            }
+        };
+        ReflectionTestUtils.setField(storage, "storageRoot", root.toString());
+
+        index = new MetadataIndexService(storage);
+        ReflectionTestUtils.setField(index, "enabled", indexed);
+
+        folderService = new FolderService(storage, index, event -> { }, new StorageMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(folderService, "storageRoot", root.toString());
+
+        docs = Files.createDirectories(root.resolve("docs"));
+        Files.createDirectories(docs.resolve("d1"));
+        Files.createDirectories(docs.resolve("d2"));
+        for (String name : List.of("a.txt", "b.txt", "c.txt", "d.txt", "e.txt")) {
+            Files.writeString(docs.resolve(name), name);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void pagesThroughEveryEntryOnce(boolean indexed) throws IOException {
+        setUp(indexed);
+
+        for (int limit = 1; limit <= 8; limit++) {
+            List<String> names = new ArrayList<>();
+            String cursor = null;
+            int pages = 0;
+            do {
+                FolderContentsDTO page = folderService.getFolderContentsPage("docs", cursor, limit);
+                names.addAll(names(page));
+                cursor = page.getNextCursor();
+                pages++;
+            } while (cursor != null);
+
+            assertEquals(List.of("d1", "d2", "a.txt", "b.txt", "c.txt", "d.txt", "e.txt"), names, "limit " + limit);
+            // No trailing empty page, even when the last page is exactly full
+            assertEquals((7 + limit - 1) / limit, pages, "limit " + limit);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void crossesFromFoldersToFiles(boolean indexed) throws IOException {
+        setUp(indexed);
+
+        FolderContentsDTO first = folderService.getFolderContentsPage("docs", null, 2);
+        assertEquals(List.of("d1", "d2"), names(first));
+        assertTrue(first.getFiles().isEmpty());
+
+        FolderContentsDTO second = folderService.getFolderContentsPage("docs", first.getNextCursor(), 2);
+        assertTrue(second.getFolders().isEmpty());
+        assertEquals(List.of("a.txt", "b.txt"), names(second));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void picksUpEntriesInsertedAfterTheCursor(boolean indexed) throws IOException {
+        setUp(indexed);
+        FolderContentsDTO first = folderService.getFolderContentsPage("docs", null, 3);
+        assertEquals(List.of("d1", "d2", "a.txt"), names(first));
+
+        // Before the cursor: not seen until the next listing; after it: on a later page
+        create("docs/d0", true);
+        create("docs/0.txt", false);
+        create("docs/b0.txt", false);
+        create("docs/z.txt", false);
+
+        assertEquals(List.of("b.txt", "b0.txt", "c.txt", "d.txt", "e.txt", "z.txt"), rest(first.getNextCursor(), 3));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void resumesAfterDeletedCursorEntry(boolean indexed) throws IOException {
+        setUp(indexed);
+        FolderContentsDTO first = folderService.getFolderContentsPage("docs", null, 4);
+        assertEquals(List.of("d1", "d2", "a.txt", "b.txt"), names(first));
+
+        delete("docs/b.txt", false);
+        delete("docs/c.txt", false);
+
+        assertEquals(List.of("d.txt", "e.txt"), rest(first.getNextCursor(), 4));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void resumesAfterDeletedFolderCursor(boolean indexed) throws IOException {
+        setUp(indexed);
+        FolderContentsDTO first = folderService.getFolderContentsPage("docs", null, 1);
+        assertEquals(List.of("d1"), names(first));
+
+        delete("docs/d1", true);
+        delete("docs/d2", true);
+
+        assertEquals(List.of("a.txt", "b.txt", "c.txt", "d.txt", "e.txt"), rest(first.getNextCursor(), 2));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void rejectsCursorsItDidNotIssue(boolean indexed) throws IOException {
+        setUp(indexed);
+
+        for (String cursor : List.of("not base64!", encode("x:a.txt"), encode("f:"), encode("d"))) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> folderService.iterateFolderContents("docs", cursor), cursor);
+        }
+        // A well-formed cursor past every entry is simply the end
+        assertFalse(folderService.iterateFolderContents("docs", encode("f:zzz")).hasNext());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void streamsFromCursor(boolean indexed) throws Exception {
+        setUp(indexed);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new FolderController(folderService, new JsonMapper())).build();
+        String cursor = folderService.getFolderContentsPage("docs", null, 3).getNextCursor();
+
+        MockHttpServletResponse ndjson = stream(mvc, "/api/folders/contents/stream?path=docs&cursor=" + cursor);
+        assertEquals(200, ndjson.getStatus());
+        List<String> lines = ndjson.getContentAsString().lines().toList();
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).contains("\"b.txt\""));
+        assertTrue(lines.get(3).contains("\"e.txt\""));
+
+        MockHttpServletResponse array = stream(mvc, "/api/folders/contents/stream?path=docs&format=array");
+        FolderEntryDTO[] entries = new JsonMapper().readValue(array.getContentAsString(), FolderEntryDTO[].class);
+        assertEquals(7, entries.length);
+        assertEquals("d1", entries[0].getFolder().getName());
+        assertEquals("e.txt", entries[6].getFile().getName());
+
+        assertEquals(400, mvc.perform(get("/api/folders/contents/stream?path=docs&cursor=" + encode("x:y")))
+                .andReturn().getResponse().getStatus());
+    }
+
+    private MockHttpServletResponse stream(MockMvc mvc, String uri) throws Exception {
+        return mvc.perform(asyncDispatch(mvc.perform(get(uri)).andReturn())).andReturn().getResponse();
+    }
+
+    /**
+     * Names on every page from the cursor on
+     */
+    private List<String> rest(String cursor, int limit) throws IOException {
+        List<String> names = new ArrayList<>();
+        while (cursor != null) {
+            FolderContentsDTO page = folderService.getFolderContentsPage("docs", cursor, limit);
+            names.addAll(names(page));
+            cursor = page.getNextCursor();
+        }
+        return names;
+    }
+
+    private void create(String path, boolean directory) throws IOException {
+        if (directory) {
+            Files.createDirectories(root.resolve(path));
+        } else {
+            Files.writeString(root.resolve(path), path);
+        }
+        index.onStorageChange(StorageChangeEvent.created(path, directory));
+    }
+
+    private void delete(String path, boolean directory) throws IOException {
+        Files.delete(root.resolve(path));
+        index.onStorageChange(StorageChangeEvent.deleted(path, directory));
+    }
+
+    private static List<String> names(FolderContentsDTO page) {
+        return Stream.concat(
+                page.getFolders().stream().map(FolderDTO::getName),
+                page.getFiles().stream().map(FileItemDTO::getName)).toList();
+    }
+
+    private static String encode(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+}
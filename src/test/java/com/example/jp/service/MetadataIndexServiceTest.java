@@ -0,0 +1,143 @@
+package com.example.jp.service;
+
+import com.example.jp.event.StorageChangeEvent;
+import com.example.jp.model.FileItem;
+import com.example.jp.model.FileItemFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataIndexServiceTest {
+
+    @TempDir
+    Path root;
+
+    private MetadataIndexService index;
+    private Path docs;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileStorageService storage = new FileStorageService(null, null, null, null, null) {
+            @Override
+            public FileItem describeFile(String filePath, Path fullPath, BasicFileAttributes attrs) {
+                return FileItemFactory.createFileItem(fullPath.getFileName().toString(), filePath, attrs.size(), null);
+            }
+        };
+        ReflectionTestUtils.setField(storage, "storageRoot", root.toString());
+
+        index = new MetadataIndexService(storage);
+        ReflectionTestUtils.setField(index, "enabled", true);
+
+        docs = Files.createDirectories(root.resolve("docs"));
+        Files.writeString(docs.resolve("b.txt"), "b");
+        Files.createDirectories(docs.resolve("sub"));
+        settle(docs, 60);
+    }
+
+    @Test
+    void servesUnchangedFolderFromMemory() throws IOException {
+        MetadataIndexService.FolderSnapshot first = index.getFolder("docs");
+        assertSame(first, index.getFolder("docs"));
+        assertEquals(List.of("sub"), names(first.getFolders()));
+        assertEquals(List.of("b.txt"), names(first.getFiles()));
+    }
+
+    @Test
+    void rescansWhenDirectoryChangedOutsideTheApi() throws IOException {
+        MetadataIndexService.FolderSnapshot first = index.getFolder("docs");
+        Files.writeString(docs.resolve("a.txt"), "a");
+        settle(docs, 30);
+
+        MetadataIndexService.FolderSnapshot second = index.getFolder("docs");
+        assertNotSame(first, second);
+        assertEquals(List.of("a.txt", "b.txt"), names(second.getFiles()));
+        // Unchanged entries are carried over rather than described again
+        assertSame(first.getFiles().iterator().next(), second.getFiles().stream().skip(1).findFirst().orElseThrow());
+    }
+
+    @Test
+    void rescansWhileDirectoryMtimeIsNotBeforeTheScan() throws IOException {
+        // A change in the same clock tick as the scan could have been missed by it
+        Files.setLastModifiedTime(docs, FileTime.from(Instant.now().plus(1, ChronoUnit.HOURS)));
+
+        MetadataIndexService.FolderSnapshot first = index.getFolder("docs");
+        assertNotSame(first, index.getFolder("docs"));
+    }
+
+    @Test
+    void appliesStorageEventsInPlace() throws IOException {
+        MetadataIndexService.FolderSnapshot snapshot = index.getFolder("docs");
+
+        Files.writeString(docs.resolve("c.txt"), "c");
+        Files.writeString(docs.resolve("a.txt"), "a");
+        settle(docs, 30);
+        index.onStorageChange(StorageChangeEvent.created("docs/c.txt", false));
+        index.onStorageChange(StorageChangeEvent.created("docs/a.txt", false));
+
+        assertSame(snapshot, index.getFolder("docs"));
+        assertEquals(List.of("a.txt", "b.txt", "c.txt"), names(snapshot.getFiles()));
+        assertEquals(List.of("c.txt"), names(snapshot.getFilesAfter("b.txt")));
+
+        Files.delete(docs.resolve("b.txt"));
+        settle(docs, 20);
+        index.onStorageChange(StorageChangeEvent.deleted("docs/b.txt", false));
+
+        assertSame(snapshot, index.getFolder("docs"));
+        assertEquals(List.of("a.txt", "c.txt"), names(snapshot.getFiles()));
+    }
+
+    @Test
+    void addsNewParentFoldersOfAStoredFile() throws IOException {
+        MetadataIndexService.FolderSnapshot snapshot = index.getFolder("docs");
+
+        Files.writeString(Files.createDirectories(docs.resolve("new/deeper")).resolve("a.txt"), "a");
+        settle(docs, 30);
+        index.onStorageChange(StorageChangeEvent.created("docs/new/deeper/a.txt", false));
+
+        assertSame(snapshot, index.getFolder("docs"));
+        assertEquals(List.of("new", "sub"), names(snapshot.getFolders()));
+    }
+
+    @Test
+    void rescansFolderReportedModified() throws IOException {
+        MetadataIndexService.FolderSnapshot first = index.getFolder("docs");
+        index.onStorageChange(StorageChangeEvent.modified("docs", true));
+        assertNotSame(first, index.getFolder("docs"));
+    }
+
+    @Test
+    void dropsDeletedFolderAndItsSubfolders() throws IOException {
+        index.getFolder("docs");
+        index.getFolder("docs/sub");
+        index.getFolder("");
+        assertEquals(3, index.getIndexedFolderCount());
+
+        index.onStorageChange(StorageChangeEvent.deleted("docs", true));
+
+        assertEquals(1, index.getIndexedFolderCount());
+    }
+
+    /**
+     * Give the directory an mtime safely before any scan that follows
+     */
+    private static void settle(Path dir, int secondsAgo) throws IOException {
+        Files.setLastModifiedTime(dir, FileTime.from(Instant.now().minusSeconds(secondsAgo)));
+    }
+
+    private static List<String> names(Collection<MetadataIndexService.Entry> entries) {
+        return entries.stream().map(MetadataIndexService.Entry::getName).toList();
+    }
+}
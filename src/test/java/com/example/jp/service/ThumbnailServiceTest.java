@@ -0,0 +1,220 @@
+package com.example.jp.service;
+
+import com.example.jp.metadata.FileTypeDetector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThumbnailServiceTest {
+
+    private static final int SIZE = 64;
+
+    @TempDir
+    Path root;
+
+    private Path storageRoot;
+    private FileStorageService storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storageRoot = Files.createDirectories(root.resolve("storage"));
+        storage = new FileStorageService(null, null, null, null, null);
+        ReflectionTestUtils.setField(storage, "storageRoot", storageRoot.toString());
+    }
+
+    @Test
+    void generatesEachThumbnailOnceUnderConcurrentRequests() throws Exception {
+        int images = 500;
+        int requestsPerImage = 4;
+        for (int i = 0; i < images; i++) {
+            image("img" + i + ".png", i);
+        }
+
+        // Generations queue up until every request has been made
+        List<Runnable> generations = Collections.synchronizedList(new ArrayList<>());
+        ThumbnailService service = service(root.resolve("cache"), Long.MAX_VALUE, generations::add);
+
+        ExecutorService clients = Executors.newFixedThreadPool(16);
+        List<Future<CompletableFuture<ThumbnailService.Thumbnail>>> requests = new ArrayList<>();
+        try {
+            for (int r = 0; r < requestsPerImage; r++) {
+                for (int i = 0; i < images; i++) {
+                    String path = "img" + i + ".png";
+                    requests.add(clients.submit(() -> service.getThumbnail(path, SIZE)));
+                }
+            }
+            List<CompletableFuture<ThumbnailService.Thumbnail>> futures = new ArrayList<>();
+            for (Future<CompletableFuture<ThumbnailService.Thumbnail>> request : requests) {
+                futures.add(request.get(30, TimeUnit.SECONDS));
+            }
+
+            assertEquals(images, generations.size());
+            for (Runnable generation : generations) {
+                clients.execute(generation);
+            }
+
+            // Every request for an image gets the one thumbnail generated for it
+            Set<ThumbnailService.Thumbnail> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < futures.size(); i++) {
+                ThumbnailService.Thumbnail thumbnail = futures.get(i).get(30, TimeUnit.SECONDS);
+                assertNotNull(thumbnail);
+                assertSame(futures.get(i % images).get(), thumbnail);
+                distinct.add(thumbnail);
+            }
+            assertEquals(images, distinct.size());
+        } finally {
+            clients.shutdownNow();
+        }
+
+        // Later requests are cache hits answered without a generation
+        assertTrue(service.getThumbnail("img0.png", SIZE).isDone());
+        assertEquals(images, generations.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxBytes() throws Exception {
+        ThumbnailService service = service(root.resolve("cache"), Long.MAX_VALUE, Runnable::run);
+        image("a.png", 1);
+        image("b.png", 2);
+        image("c.png", 3);
+        ThumbnailService.Thumbnail a = thumbnail(service, "a.png");
+        ThumbnailService.Thumbnail b = thumbnail(service, "b.png");
+        long c = lengthOf("c.png");
+
+        // Room for all three but one byte
+        ReflectionTestUtils.setField(service, "cacheMaxBytes", a.getLength() + b.getLength() + c - 1);
+        // Touching a leaves b as the least recently used
+        assertSame(a, thumbnail(service, "a.png"));
+        ThumbnailService.Thumbnail third = thumbnail(service, "c.png");
+
+        assertFalse(Files.exists(b.getFile()));
+        assertTrue(Files.exists(a.getFile()));
+        assertTrue(Files.exists(third.getFile()));
+        assertEquals(a.getLength() + third.getLength(), ReflectionTestUtils.getField(service, "cachedBytes"));
+
+        // An evicted thumbnail is generated again
+        ThumbnailService.Thumbnail regenerated = thumbnail(service, "b.png");
+        assertNotSame(b, regenerated);
+        assertTrue(Files.exists(regenerated.getFile()));
+    }
+
+    @Test
+    void keepsNewestThumbnailEvenIfItAloneExceedsMaxBytes() throws Exception {
+        ThumbnailService service = service(root.resolve("cache"), 1, Runnable::run);
+        image("a.png", 1);
+        image("b.png", 2);
+        ThumbnailService.Thumbnail a = thumbnail(service, "a.png");
+        ThumbnailService.Thumbnail b = thumbnail(service, "b.png");
+
+        assertFalse(Files.exists(a.getFile()));
+        assertTrue(Files.exists(b.getFile()));
+    }
+
+    @Test
+    void rebuildsLruOrderFromMtimesAtStartup() throws Exception {
+        Path cache = root.resolve("cache");
+        ThumbnailService first = service(cache, Long.MAX_VALUE, Runnable::run);
+        image("a.png", 1);
+        image("b.png", 2);
+        image("c.png", 3);
+        image("d.png", 4);
+        ThumbnailService.Thumbnail a = thumbnail(first, "a.png");
+        ThumbnailService.Thumbnail b = thumbnail(first, "b.png");
+        ThumbnailService.Thumbnail c = thumbnail(first, "c.png");
+        long d = lengthOf("d.png");
+
+        // Generated a, b, c but last used b before a before c
+        Instant now = Instant.now();
+        Files.setLastModifiedTime(b.getFile(), FileTime.from(now.minusSeconds(300)));
+        Files.setLastModifiedTime(a.getFile(), FileTime.from(now.minusSeconds(200)));
+        Files.setLastModifiedTime(c.getFile(), FileTime.from(now.minusSeconds(100)));
+        Path leftover = Files.writeString(cache.resolve("tmp").resolve("crashed.part"), "partial");
+
+        ThumbnailService restarted = service(cache, Long.MAX_VALUE, Runnable::run);
+        assertFalse(Files.exists(leftover));
+        assertEquals(a.getLength() + b.getLength() + c.getLength(),
+                ReflectionTestUtils.getField(restarted, "cachedBytes"));
+        Map<?, ?> entries = (Map<?, ?>) ReflectionTestUtils.getField(restarted, "cache");
+        Object cachedA = entries.get(a.getKey());
+        assertNotNull(cachedA);
+
+        // Room for everything once b is gone
+        ReflectionTestUtils.setField(restarted, "cacheMaxBytes", a.getLength() + c.getLength() + d);
+        thumbnail(restarted, "d.png");
+
+        assertFalse(Files.exists(b.getFile()));
+        assertTrue(Files.exists(a.getFile()));
+        assertTrue(Files.exists(c.getFile()));
+        // Found in the rebuilt cache rather than generated again
+        assertSame(cachedA, thumbnail(restarted, "a.png"));
+    }
+
+    @Test
+    void skipsFilesThatAreNotImages() throws Exception {
+        Files.writeString(storageRoot.resolve("notes.txt"), "hello");
+        ThumbnailService service = service(root.resolve("cache"), Long.MAX_VALUE, Runnable::run);
+
+        assertNull(service.getThumbnail("notes.txt", SIZE).get());
+        assertNull(service.getThumbnail("missing.png", SIZE).get());
+    }
+
+    private ThumbnailService service(Path cacheDir, long cacheMaxBytes, Executor executor) throws IOException {
+        ThumbnailService service = new ThumbnailService(storage, new ContentAddressableStore(), new FileTypeDetector(), executor);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "cacheDir", cacheDir.toString());
+        ReflectionTestUtils.setField(service, "cacheMaxBytes", cacheMaxBytes);
+        ReflectionTestUtils.setField(service, "sizes", List.of(SIZE));
+        ReflectionTestUtils.setField(service, "defaultSize", SIZE);
+        ReflectionTestUtils.setField(service, "jpegQuality", 0.85f);
+        service.init();
+        return service;
+    }
+
+    private static ThumbnailService.Thumbnail thumbnail(ThumbnailService service, String path) throws Exception {
+        return service.getThumbnail(path, SIZE).get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Length of an image's thumbnail, generated into a cache of its own
+     */
+    private long lengthOf(String path) throws Exception {
+        Path cacheDir = Files.createTempDirectory(root, "measure");
+        return thumbnail(service(cacheDir, Long.MAX_VALUE, Runnable::run), path).getLength();
+    }
+
+    private void image(String name, int seed) throws IOException {
+        BufferedImage image = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(Color.HSBtoRGB(seed / 500f, 0.8f, 0.9f)));
+        graphics.fillRect(0, 0, 200, 150);
+        graphics.setColor(Color.WHITE);
+        graphics.fillOval(seed % 100, seed % 75, 40 + seed % 50, 30);
+        graphics.dispose();
+        ImageIO.write(image, "png", storageRoot.resolve(name).toFile());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.jp.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadAdmissionServiceTest {
+
+    @Test
+    void admitsUntilBytesRunOut() {
+        UploadAdmissionService admission = admission(100, 10, 0);
+        admission.acquire(60, 1);
+        admission.acquire(40, 1);
+
+        UploadRejectedException e = assertThrows(UploadRejectedException.class, () -> admission.acquire(1, 1));
+        assertTrue(e.isRetryable());
+        assertEquals(100, admission.getInFlightBytes());
+
+        admission.release(40, 1);
+        admission.acquire(40, 1);
+        assertEquals(2, admission.getQueuedTasks());
+    }
+
+    @Test
+    void admitsUntilTasksRunOut() {
+        UploadAdmissionService admission = admission(1000, 2, 0);
+        admission.acquire(1, 2);
+        assertThrows(UploadRejectedException.class, () -> admission.acquire(1, 1));
+    }
+
+    @Test
+    void admitsOversizedUploadOnceIdle() {
+        UploadAdmissionService admission = admission(100, 10, 0);
+        admission.acquire(10, 1);
+        assertThrows(UploadRejectedException.class, () -> admission.acquire(500, 1));
+
+        admission.release(10, 1);
+        admission.acquire(500, 1);
+        assertEquals(500, admission.getInFlightBytes());
+    }
+
+    @Test
+    void rejectsBatchThatCanNeverBeQueued() {
+        UploadAdmissionService admission = admission(1000, 3, 0);
+        UploadRejectedException e = assertThrows(UploadRejectedException.class, () -> admission.acquire(10, 4));
+        assertFalse(e.isRetryable());
+    }
+
+    @Test
+    void waitsForCapacityReleasedMeanwhile() throws Exception {
+        UploadAdmissionService admission = admission(100, 10, 5_000);
+        admission.acquire(100, 1);
+
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> admission.acquire(50, 1));
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+
+        admission.release(100, 1);
+        waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(50, admission.getInFlightBytes());
+    }
+
+    @Test
+    void checkTakesNoCapacity() {
+        UploadAdmissionService admission = admission(100, 1, 0);
+        admission.check(100, 1);
+        admission.check(100, 1);
+        assertEquals(0, admission.getQueuedTasks());
+
+        admission.acquire(100, 1);
+        assertThrows(UploadRejectedException.class, () -> admission.check(1, 1));
+    }
+
+    @Test
+    void retryAfterStaysWithinBounds() {
+        UploadAdmissionService admission = admission(100, 10, 0);
+        // No drain rate measured yet
+        assertEquals(1, admission.estimateRetryAfterSeconds(1_000_000, 1));
+
+        admission.acquire(100, 1);
+        ReflectionTestUtils.setField(admission, "bytesPerSecond", 10.0);
+        assertEquals(60, admission.estimateRetryAfterSeconds(10_000, 1));
+        assertEquals(5, admission.estimateRetryAfterSeconds(50, 1));
+    }
+
+    @Test
+    void admitsEverythingWhenDisabled() {
+        UploadAdmissionService admission = admission(1, 1, 0);
+        ReflectionTestUtils.setField(admission, "enabled", false);
+        admission.acquire(1_000, 1_000);
+        admission.check(1_000, 1_000);
+        assertEquals(0, admission.getInFlightBytes());
+    }
+
+    private static UploadAdmissionService admission(long maxBytes, int maxTasks, long maxWaitMillis) {
+        UploadAdmissionService admission = new UploadAdmissionService();
+        ReflectionTestUtils.setField(admission, "enabled", true);
+        ReflectionTestUtils.setField(admission, "maxInFlightBytes", maxBytes);
+        ReflectionTestUtils.setField(admission, "maxQueuedTasks", maxTasks);
+        ReflectionTestUtils.setField(admission, "maxWaitMillis", maxWaitMillis);
+        return admission;
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.jp.service;
+
+import com.example.jp.model.FileUploadTask;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadTaskJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restoresFinishedTasksWithEscapedFields() throws Exception {
+        UploadTaskJournal journal = open();
+        FileUploadTask task = new FileUploadTask("t1", "a\tb\\c.txt", "docs\nnew");
+        journal.recordCreated(task);
+        task.complete("docs/a.txt", 42, "done");
+        journal.recordStatus(task).get();
+        journal.close();
+
+        FileUploadTask restored = only(open().getRestoredTasks());
+        assertEquals("a\tb\\c.txt", restored.getFileName());
+        assertEquals("docs\nnew", restored.getFolderPath());
+        assertEquals(FileUploadTask.TaskStatus.COMPLETED, restored.getStatus());
+        assertEquals("docs/a.txt", restored.getFilePath());
+        assertEquals(42L, restored.getFileSize());
+    }
+
+    @Test
+    void resumesUploadWhoseStagedFileSurvived() throws Exception {
+        UploadTaskJournal journal = open();
+        Path staged = stagedFile("s1");
+        FileUploadTask task = new FileUploadTask("t1", "a.txt", "docs");
+        journal.recordCreated(task);
+        journal.recordStaged(task, staged, "text/plain").get();
+        journal.close();
+
+        UploadTaskJournal reopened = open();
+        UploadTaskJournal.ResumableUpload upload = only(reopened.getResumableUploads());
+        assertEquals(staged.toAbsolutePath(), upload.getStagedFile());
+        assertEquals("text/plain", upload.getContentType());
+        assertEquals(FileUploadTask.TaskStatus.IN_PROGRESS, upload.getTask().getStatus());
+    }
+
+    @Test
+    void failsUploadWhoseStagedFileIsGone() throws Exception {
+        UploadTaskJournal journal = open();
+        FileUploadTask task = new FileUploadTask("t1", "a.txt", "docs");
+        journal.recordCreated(task);
+        journal.recordStaged(task, dir.resolve("staging/missing"), null).get();
+        journal.close();
+
+        FileUploadTask restored = only(open().getRestoredTasks());
+        assertEquals(FileUploadTask.TaskStatus.FAILED, restored.getStatus());
+    }
+
+    @Test
+    void completesUploadMovedIntoStorageBeforeItsStatusWasWritten() throws Exception {
+        UploadTaskJournal journal = open();
+        Path staged = stagedFile("s1");
+        Path target = Files.createDirectories(dir.resolve("storage/docs")).resolve("a (1).txt");
+        FileUploadTask task = new FileUploadTask("t1", "a.txt", "docs");
+        journal.recordCreated(task);
+        journal.recordStaged(task, staged, "text/plain");
+        journal.recordStoring(task, target).get();
+        // Crash between the move and the COMPLETED record
+        Files.move(staged, target);
+        journal.close();
+
+        UploadTaskJournal reopened = open();
+        FileUploadTask restored = only(reopened.getRestoredTasks());
+        assertEquals(FileUploadTask.TaskStatus.COMPLETED, restored.getStatus());
+        assertEquals(Paths.get("docs", "a (1).txt").toString(), restored.getFilePath());
+        assertEquals(5L, restored.getFileSize());
+        assertTrue(reopened.getResumableUploads().isEmpty());
+        reopened.close();
+
+        // The recovered outcome is written back, so it holds without the stored file too
+        Files.delete(target);
+        assertEquals(FileUploadTask.TaskStatus.COMPLETED, only(open().getRestoredTasks()).getStatus());
+    }
+
+    @Test
+    void ignoresRecordTornByACrash() throws Exception {
+        UploadTaskJournal journal = open();
+        FileUploadTask first = finished("t1");
+        journal.recordCreated(first);
+        journal.recordStatus(first);
+        FileUploadTask second = finished("t2");
+        journal.recordCreated(second);
+        journal.recordStatus(second).get();
+        journal.close();
+
+        rewriteJournal(text -> text.substring(0, text.length() - 10));
+
+        List<FileUploadTask> restored = open().getRestoredTasks();
+        assertEquals(2, restored.size());
+        assertEquals(FileUploadTask.TaskStatus.COMPLETED, restored.get(0).getStatus());
+        // Its status record was torn, so it counts as interrupted
+        assertEquals(FileUploadTask.TaskStatus.FAILED, restored.get(1).getStatus());
+    }
+
+    @Test
+    void ignoresRecordWithBadChecksum() throws Exception {
+        UploadTaskJournal journal = open();
+        FileUploadTask task = finished("t1");
+        journal.recordCreated(task);
+        journal.recordStatus(task).get();
+        journal.recordRemoved("t1").get();
+        journal.close();
+
+        // Corrupt the removal, so the task is still there
+        rewriteJournal(text -> text.replace("\tR\tt1", "\tR\tt2"));
+
+        assertEquals("t1", only(open().getRestoredTasks()).getTaskId());
+    }
+
+    @Test
+    void compactsAwayRemovedTasks() throws Exception {
+        UploadTaskJournal journal = open();
+        for (int i = 0; i < 5; i++) {
+            FileUploadTask task = finished("t" + i);
+            journal.recordCreated(task);
+            journal.recordStatus(task);
+            if (i > 0) {
+                journal.recordRemoved(task.getTaskId());
+            }
+        }
+        journal.recordRemoved("none").get();
+        journal.close();
+
+        open().close();
+
+        List<String> lines = Files.readAllLines(dir.resolve("journal.log"));
+        assertEquals(2, lines.size());
+        assertTrue(lines.stream().allMatch(line -> line.contains("\tt0\t")));
+    }
+
+    @Test
+    void deletesStagingFilesNoTaskRefersTo() throws Exception {
+        UploadTaskJournal journal = open();
+        Path staged = stagedFile("kept");
+        Path orphan = stagedFile("orphan");
+        FileUploadTask task = new FileUploadTask("t1", "a.txt", "docs");
+        journal.recordCreated(task);
+        journal.recordStaged(task, staged, null).get();
+        journal.close();
+
+        open();
+        assertTrue(Files.exists(staged));
+        assertFalse(Files.exists(orphan));
+    }
+
+    private UploadTaskJournal open() throws IOException {
+        FileStorageService storage = new FileStorageService(null, null, null, null, null);
+        ReflectionTestUtils.setField(storage, "stagingRoot", dir.resolve("staging").toString());
+
+        UploadTaskJournal journal = new UploadTaskJournal(storage);
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "journalPath", dir.resolve("journal.log").toString());
+        ReflectionTestUtils.setField(journal, "compactThresholdMb", 64L);
+        ReflectionTestUtils.setField(journal, "ttlMinutes", 30L);
+        journal.open();
+        return journal;
+    }
+
+    private Path stagedFile(String name) throws IOException {
+        Path staging = Files.createDirectories(dir.resolve("staging"));
+        return Files.writeString(staging.resolve(name), "hello");
+    }
+
+    private static FileUploadTask finished(String taskId) {
+        FileUploadTask task = new FileUploadTask(taskId, "a.txt", "docs");
+        task.complete("docs/a.txt", 5, "done");
+        return task;
+    }
+
+    private void rewriteJournal(Function<String, String> edit) throws IOException {
+        Path journal = dir.resolve("journal.log");
+        Files.writeString(journal, edit.apply(Files.readString(journal, StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    private static <T> T only(List<T> items) {
+        assertEquals(1, items.size());
+        return items.getFirst();
+    }
+}
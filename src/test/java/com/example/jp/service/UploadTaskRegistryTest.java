@@ -0,0 +1,119 @@
+package com.example.jp.service;
+
+import com.example.jp.model.FileUploadTask;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadTaskRegistryTest {
+
+    private static final long MINUTE = 60_000;
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void evictsFinishedTasksOnceTheirRetentionHasPassed() {
+        UploadTaskRegistry registry = registry(100);
+        long now = System.currentTimeMillis();
+        registry.register(finishedAt("old", now - 31 * MINUTE));
+        registry.register(finishedAt("recent", now - 29 * MINUTE));
+        registry.register(new FileUploadTask("running", "a.txt", "docs"));
+
+        assertEquals(1L, registry.getStats().getEvictedExpired());
+        assertNull(registry.get("old"));
+        assertNotNull(registry.get("recent"));
+        assertNotNull(registry.get("running"));
+    }
+
+    @Test
+    void evictsOldestFinishedTasksWhenFull() {
+        UploadTaskRegistry registry = registry(2);
+        FileUploadTask running = new FileUploadTask("running", "a.txt", "docs");
+        registry.register(running);
+        FileUploadTask first = new FileUploadTask("first", "a.txt", "docs");
+        registry.register(first);
+        registry.complete(first, "docs/a.txt", 1, "done");
+        FileUploadTask second = new FileUploadTask("second", "a.txt", "docs");
+        registry.register(second);
+        registry.fail(second, "broken");
+
+        assertNull(registry.get("first"));
+        assertNotNull(registry.get("second"));
+        assertNotNull(registry.get("running"));
+        assertEquals(1L, registry.getStats().getEvictedOverflow());
+    }
+
+    @Test
+    void keepsRunningTasksEvenWhenFull() {
+        UploadTaskRegistry registry = registry(1);
+        registry.register(new FileUploadTask("a", "a.txt", "docs"));
+        registry.register(new FileUploadTask("b", "a.txt", "docs"));
+
+        assertNotNull(registry.get("a"));
+        assertNotNull(registry.get("b"));
+        assertEquals(0L, registry.getStats().getEvictedOverflow());
+    }
+
+    @Test
+    void failsStuckTaskAndIgnoresItsLateCompletion() {
+        UploadTaskRegistry registry = registry(100);
+        FileUploadTask stuck = new FileUploadTask("stuck", null, "a.txt", "docs",
+                System.currentTimeMillis() - 361 * MINUTE);
+        registry.register(stuck);
+
+        assertEquals(FileUploadTask.TaskStatus.FAILED, stuck.getStatus());
+        assertEquals(1L, registry.getStats().getFailedStuck());
+
+        assertFalse(registry.complete(stuck, "docs/a.txt", 1, "done"));
+        assertFalse(registry.fail(stuck, "again"));
+        registry.transition(stuck, FileUploadTask.TaskStatus.IN_PROGRESS, 50);
+
+        assertEquals(FileUploadTask.TaskStatus.FAILED, stuck.getStatus());
+        assertNull(stuck.getFilePath());
+        assertEquals(List.of("stuck FAILED 0%"), events);
+        assertEquals(1, finishedTasks(registry).size());
+    }
+
+    @Test
+    void finishesOnlyOnceUnderConcurrentOutcomes() throws InterruptedException {
+        UploadTaskRegistry registry = registry(1000);
+        for (int i = 0; i < 200; i++) {
+            FileUploadTask task = new FileUploadTask("t" + i, "a.txt", "docs");
+            registry.register(task);
+            Thread completer = new Thread(() -> registry.complete(task, "docs/a.txt", 1, "done"));
+            Thread failer = new Thread(() -> registry.fail(task, "broken"));
+            completer.start();
+            failer.start();
+            completer.join();
+            failer.join();
+        }
+        assertEquals(200, finishedTasks(registry).size());
+        assertEquals(200, events.size());
+    }
+
+    private UploadTaskRegistry registry(int maxEntries) {
+        UploadTaskJournal journal = new UploadTaskJournal(null);
+        UploadTaskRegistry registry = new UploadTaskRegistry(event -> events.add(event.toString()), journal);
+        ReflectionTestUtils.setField(registry, "maxEntries", maxEntries);
+        ReflectionTestUtils.setField(registry, "ttlMinutes", 30L);
+        ReflectionTestUtils.setField(registry, "maxRunningMinutes", 360L);
+        ReflectionTestUtils.setField(registry, "journalSyncTimeoutMillis", 1000L);
+        return registry;
+    }
+
+    private static FileUploadTask finishedAt(String taskId, long endTimeMillis) {
+        FileUploadTask task = new FileUploadTask(taskId, "a.txt", "docs");
+        task.restoreFinished(FileUploadTask.TaskStatus.COMPLETED, endTimeMillis, "docs/a.txt", 1, "done");
+        return task;
+    }
+
+    private static Collection<?> finishedTasks(UploadTaskRegistry registry) {
+        return (Collection<?>) ReflectionTestUtils.getField(registry, "finishedTasks");
+    }
+}